@@ -1,6 +1,8 @@
 package com.exchange.config;
 
 import com.exchange.utils.SnowflakeIdGenerator;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
@@ -8,9 +10,21 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 @Configuration
 public class AppConfig {
 
+    // 預設由 WorkerIdLease 分配 workerId / datacenterId；關閉租約（snowflake.worker-lease.enabled=false）時使用固定設定
     @Bean
-    public SnowflakeIdGenerator snowflakeIdGenerator() {
-        return new SnowflakeIdGenerator(1, 1); // 需要根據實際情況設置 workerId 和 datacenterId
+    public SnowflakeIdGenerator snowflakeIdGenerator(ObjectProvider<WorkerIdLease> workerIdLease,
+                                                     @Value("${snowflake.worker-id:1}") long workerId,
+                                                     @Value("${snowflake.datacenter-id:1}") long datacenterId) {
+        WorkerIdLease lease = workerIdLease.getIfAvailable();
+        if (lease == null) {
+            return new SnowflakeIdGenerator(workerId, datacenterId);
+        }
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(lease.getWorkerId(), lease.getDatacenterId());
+        generator.setLeaseExpiresAt(lease.getExpiresAt());
+        lease.setOnReassigned(generator::reassign);
+        // 租約沒有續約成功時產生器在到期後停止發號
+        lease.setOnRenewed(generator::setLeaseExpiresAt);
+        return generator;
     }
 
 }
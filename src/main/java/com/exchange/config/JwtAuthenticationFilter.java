@@ -6,13 +6,10 @@ import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
-import org.springframework.context.ApplicationContextAware;
 
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
@@ -23,45 +20,33 @@ import java.io.IOException;
 import static java.rmi.server.RMISocketFactory.getFailureHandler;
 
 @Component
-public class JwtAuthenticationFilter extends OncePerRequestFilter implements ApplicationContextAware {
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private final JwtUtil jwtUtil;
-    private ApplicationContext applicationContext;  // 動態注入上下文
 
     public JwtAuthenticationFilter(JwtUtil jwtUtil) {
         this.jwtUtil = jwtUtil;
     }
 
-    @Override
-    public void setApplicationContext(ApplicationContext applicationContext) {
-        this.applicationContext = applicationContext;  // 保存Spring上下文
-    }
-
-
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         final String authorizationHeader = request.getHeader("Authorization");
 
-        String username = null;
         String jwt = null;
 
         try {
             // 確保 Authorization Header 存在並以 Bearer 開頭
             if (authorizationHeader != null && authorizationHeader.startsWith("Bearer ")) {
                 jwt = authorizationHeader.substring(7);
-                username = jwtUtil.extractUsername(jwt);  // 從 token 中提取用戶名
             }
 
-            // 驗證 JWT 並設置安全上下文
-            if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
+            // 驗證 JWT 並設置安全上下文：只解析一次（或取用快取），簽名錯誤或過期時 claims 為 null
+            if (jwt != null && SecurityContextHolder.getContext().getAuthentication() == null) {
                 Claims claims = jwtUtil.extractAllClaims(jwt);
-                String userId = jwtUtil.extractUserId(jwt);  // 從 token 中提取 userId
-
-                if (jwtUtil.validateToken(jwt, username)) {
-                    // 動態獲取 UserDetailsService
-                    UserDetailsService userDetailsService = applicationContext.getBean(UserDetailsService.class);
+                String username = claims != null ? claims.get("username", String.class) : null;
 
+                if (username != null) {
                     UsernamePasswordAuthenticationToken authToken = new UsernamePasswordAuthenticationToken(
                             username, null, null
                     );
@@ -69,9 +54,7 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter implements App
                     SecurityContextHolder.getContext().setAuthentication(authToken);
 
                     // 將 userId 設置到 request 以便在控制器中使用
-                    request.setAttribute("userId", userId);
-                } else {
-                    throw new RuntimeException("JWT 驗證失敗");
+                    request.setAttribute("userId", claims.get("userId", String.class));
                 }
             }
         } catch (Exception e) {
@@ -1,7 +1,11 @@
 package com.exchange.config;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.listener.DefaultErrorHandler;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
 import org.springframework.util.backoff.FixedBackOff;
@@ -24,5 +28,16 @@ public class KafkaErrorHandlerConfig {
         // 返回自定義的 DefaultErrorHandler
         return new DefaultErrorHandler(recoverer::accept, fixedBackOff);
     }
-}
 
+    // 用戶成交帳本：寫入失敗的批次每 write-retry-ms 重試一次直到成功，不略過也不提交 offset，避免成交從歷史中消失
+    @Bean
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> userTradeLedgerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            @Value("${user-trades.ledger.write-retry-ms:1000}") long writeRetryMs) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.setCommonErrorHandler(new DefaultErrorHandler(new FixedBackOff(writeRetryMs, FixedBackOff.UNLIMITED_ATTEMPTS)));
+        return factory;
+    }
+}
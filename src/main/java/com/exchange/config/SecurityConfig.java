@@ -1,5 +1,6 @@
 package com.exchange.config;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -27,7 +28,9 @@ public class SecurityConfig {
         http
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(auth -> auth
-                        .requestMatchers("/orders/submit", "/orders/modify/**", "/orders/cancel/**").authenticated()
+                        // 非同步回應（ack=true 下單）的 ASYNC dispatch 已在原本的請求中驗證過
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                        .requestMatchers("/orders/submit", "/orders/batch", "/orders/batch/**", "/orders/modify/**", "/orders/cancel/**").authenticated()
                         .anyRequest().permitAll()
                 )
                 .addFilterBefore(jwtAuthenticationFilter, UsernamePasswordAuthenticationFilter.class);
@@ -0,0 +1,160 @@
+package com.exchange.config;
+
+import com.exchange.utils.SnowflakeIdGenerator;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BiConsumer;
+import java.util.function.LongConsumer;
+
+/**
+ * 啟動時以 Redis 租約取得雪花 ID 的 workerId / datacenterId，讓每個實例使用不同的節點編號：
+ * snowflake:worker:{0..1023} 以 SET NX PX 取得，定期續約。
+ * 其他實例只有在租約過期（超過 ttl 未續約）後才能取得同一個編號。每次取得或續約成功都會把租約的到期時間
+ * （送出指令前的時間 + ttl）通知 SnowflakeIdGenerator，產生器不會發出時間戳不早於到期時間的 ID，
+ * 因此 Redis 無法連線或長時間 GC 造成續約失敗時會停止發號，新的持有者不會發出與舊持有者重複的 ID。
+ * 關閉時不刪除租約，而是縮短為 RELEASE_HOLD_MILLIS，等舊持有者可能已借用的未來時間過去才讓出編號。
+ */
+@Component
+@ConditionalOnProperty(name = "snowflake.worker-lease.enabled", havingValue = "true", matchIfMissing = true)
+public class WorkerIdLease {
+
+    private static final Logger logger = LoggerFactory.getLogger(WorkerIdLease.class);
+
+    static final String KEY_PREFIX = "snowflake:worker:";
+    // 關閉時保留編號的時間，需大於產生器可以超前的時間
+    static final long RELEASE_HOLD_MILLIS = 2 * SnowflakeIdGenerator.DEFAULT_MAX_BORROW_MILLIS;
+    static final int NODE_COUNT = (int) ((SnowflakeIdGenerator.MAX_DATACENTER_ID + 1) * (SnowflakeIdGenerator.MAX_WORKER_ID + 1));
+
+    // 只有自己持有時才續約；關閉時同樣以 PEXPIRE 縮短為 RELEASE_HOLD_MILLIS
+    private static final RedisScript<Long> RENEW = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('PEXPIRE', KEYS[1], ARGV[2]) end return 0", Long.class);
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final Duration ttl;
+    private final String token;
+
+    private volatile int node;
+    private volatile long expiresAt;
+    private volatile BiConsumer<Long, Long> onReassigned = (workerId, datacenterId) -> { };
+    private volatile LongConsumer onRenewed = expiresAt -> { };
+
+    public WorkerIdLease(RedisTemplate<String, String> redisTemplate,
+                         @Value("${snowflake.worker-lease.ttl-seconds:30}") long ttlSeconds) {
+        if (ttlSeconds * 1000 <= SnowflakeIdGenerator.DEFAULT_MAX_BORROW_MILLIS) {
+            throw new IllegalArgumentException("snowflake.worker-lease.ttl-seconds must exceed the generator's borrow window");
+        }
+        this.redisTemplate = redisTemplate;
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.token = hostName() + ":" + UUID.randomUUID();
+        this.node = acquire(-1);
+        logger.info("Acquired snowflake worker lease {} (datacenter {}, worker {})", node, getDatacenterId(), getWorkerId());
+    }
+
+    public long getWorkerId() {
+        return node & SnowflakeIdGenerator.MAX_WORKER_ID;
+    }
+
+    public long getDatacenterId() {
+        return node >> 5;
+    }
+
+    // 目前租約最早可能被其他實例取得的時間（epoch 毫秒）
+    public long getExpiresAt() {
+        return expiresAt;
+    }
+
+    // 租約遺失並改用新的編號時通知（AppConfig 用來更新 SnowflakeIdGenerator）
+    public void setOnReassigned(BiConsumer<Long, Long> onReassigned) {
+        this.onReassigned = onReassigned;
+    }
+
+    // 租約到期時間改變時通知（AppConfig 用來更新 SnowflakeIdGenerator 可以發號的期限）
+    public void setOnRenewed(LongConsumer onRenewed) {
+        this.onRenewed = onRenewed;
+    }
+
+    // 續約失敗時不延長到期時間，超過到期時間後 SnowflakeIdGenerator 拒絕發號，直到下次續約成功
+    @Scheduled(fixedDelayString = "${snowflake.worker-lease.renew-ms:10000}")
+    public void renew() {
+        try {
+            if (expire(ttl.toMillis())) {
+                return;
+            }
+            // 租約已過期：先嘗試取回原本的編號，被其他實例取得時改用新的編號
+            int previous = node;
+            node = acquire(previous);
+            if (node != previous) {
+                logger.warn("Snowflake worker lease {} was lost, switched to {}", previous, node);
+                onReassigned.accept(getWorkerId(), getDatacenterId());
+            }
+            onRenewed.accept(expiresAt);
+        } catch (Exception e) {
+            logger.error("Failed to renew snowflake worker lease {}, ids stop after {}", node, expiresAt, e);
+        }
+    }
+
+    // 不刪除租約：其他實例要等 RELEASE_HOLD_MILLIS 之後才能取得，這段時間本實例也不再發出超過期限的 ID
+    @PreDestroy
+    public void release() {
+        try {
+            expire(RELEASE_HOLD_MILLIS);
+        } catch (Exception e) {
+            logger.warn("Failed to release snowflake worker lease {}: {}", node, e.getMessage());
+        }
+    }
+
+    // 只有自己持有時才設定剩餘時間，成功時更新到期時間並通知
+    private boolean expire(long millis) {
+        long sentAt = System.currentTimeMillis();
+        Long updated = redisTemplate.execute(RENEW, List.of(KEY_PREFIX + node), token, String.valueOf(millis));
+        if (updated == null || updated != 1L) {
+            return false;
+        }
+        expiresAt = sentAt + millis;
+        onRenewed.accept(expiresAt);
+        return true;
+    }
+
+    // 依序嘗試取得編號，preferred >= 0 時先嘗試該編號
+    private int acquire(int preferred) {
+        if (preferred >= 0 && tryAcquire(preferred)) {
+            return preferred;
+        }
+        for (int candidate = 0; candidate < NODE_COUNT; candidate++) {
+            if (tryAcquire(candidate)) {
+                return candidate;
+            }
+        }
+        throw new IllegalStateException("No free snowflake worker id among " + NODE_COUNT);
+    }
+
+    private boolean tryAcquire(int candidate) {
+        long sentAt = System.currentTimeMillis();
+        if (Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(KEY_PREFIX + candidate, token, ttl))) {
+            expiresAt = sentAt + ttl.toMillis();
+            return true;
+        }
+        return false;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "unknown";
+        }
+    }
+}
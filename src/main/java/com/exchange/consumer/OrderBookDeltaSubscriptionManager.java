@@ -1,14 +1,20 @@
 package com.exchange.consumer;
 
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.common.TopicPartition;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.kafka.core.ConsumerFactory;
 import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
 import org.apache.kafka.clients.consumer.ConsumerConfig;
 import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.springframework.kafka.listener.ConsumerAwareRebalanceListener;
 import org.springframework.kafka.listener.ContainerProperties;
 import org.springframework.kafka.listener.KafkaMessageListenerContainer;
 import org.springframework.kafka.listener.MessageListener;
 import org.springframework.stereotype.Service;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
@@ -16,6 +22,8 @@ import java.util.UUID;
 @Service
 public class OrderBookDeltaSubscriptionManager {
 
+    private static final Logger logger = LoggerFactory.getLogger(OrderBookDeltaSubscriptionManager.class);
+
     private final ConsumerFactory<String, String> consumerFactory;
     private final Map<String, KafkaMessageListenerContainer<String, String>> topicContainers = new HashMap<>();
 
@@ -27,6 +35,12 @@ public class OrderBookDeltaSubscriptionManager {
     }
 
     public void subscribeToSymbol(String symbol, MessageListener<String, String> messageListener) {
+        subscribeToSymbol(symbol, messageListener, () -> { });
+    }
+
+    // onAssigned 在消費者執行緒上、取得分區並確定起始 offset 之後、第一次拉取之前執行，
+    // 在其中讀取的狀態之後收到的增量都是起始 offset 之後發布的
+    public void subscribeToSymbol(String symbol, MessageListener<String, String> messageListener, Runnable onAssigned) {
         String topic = "order-book-delta-" + symbol.toLowerCase();
 
         if (!topicContainers.containsKey(topic)) {
@@ -35,6 +49,17 @@ public class OrderBookDeltaSubscriptionManager {
 
             ContainerProperties containerProps = new ContainerProperties(topic);
             containerProps.setMessageListener(messageListener);
+            containerProps.setConsumerRebalanceListener(new ConsumerAwareRebalanceListener() {
+                @Override
+                public void onPartitionsAssigned(Consumer<?, ?> consumer, Collection<TopicPartition> partitions) {
+                    // 先解析 latest 的起始位置，之後的增量才與 onAssigned 讀取的狀態對齊
+                    for (TopicPartition partition : partitions) {
+                        logger.info("Order book deltas for {} start at {}-{} offset {}",
+                                symbol, partition.topic(), partition.partition(), consumer.position(partition));
+                    }
+                    onAssigned.run();
+                }
+            });
 
             // 配置 Kafka 消費者工廠，使用動態的 groupId
             Map<String, Object> consumerConfig = new HashMap<>(consumerFactory.getConfigurationProperties());
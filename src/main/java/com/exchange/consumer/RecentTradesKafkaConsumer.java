@@ -1,6 +1,7 @@
 package com.exchange.consumer;
 
 import com.exchange.model.Trade;
+import com.exchange.service.CandleAggregator;
 import com.exchange.websocket.RecentTradesWebSocketHandler;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -13,6 +14,9 @@ public class RecentTradesKafkaConsumer {
     @Autowired
     private RecentTradesWebSocketHandler recentTradesWebSocketHandler;
 
+    @Autowired
+    private CandleAggregator candleAggregator;
+
     @Autowired
     private ObjectMapper objectMapper;
 
@@ -25,6 +29,8 @@ public class RecentTradesKafkaConsumer {
     public void consume(String message) {
         try {
             Trade trade = objectMapper.readValue(message, Trade.class);
+            // 先更新記憶體中的當前 K 棒，再推送給前端
+            candleAggregator.onTrade(trade);
             recentTradesWebSocketHandler.broadcastRecentTrade(trade.getSymbol(), trade);
         } catch (Exception e) {
             // 處理異常
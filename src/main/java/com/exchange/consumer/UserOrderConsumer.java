@@ -1,6 +1,7 @@
 package com.exchange.consumer;
 
 import com.exchange.dto.OrderDTO;
+import com.exchange.repository.RedisOrderRepository;
 import com.exchange.websocket.UserOrderWebSocketHandler;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -12,11 +13,14 @@ import java.io.IOException;
 @Component
 public class UserOrderConsumer {
     private final UserOrderWebSocketHandler userOrderWebSocketHandler;
+    private final RedisOrderRepository redisOrderRepository;
     private final ObjectMapper objectMapper;
 
     @Autowired
-    public UserOrderConsumer(UserOrderWebSocketHandler userOrderWebSocketHandler, ObjectMapper objectMapper) {
+    public UserOrderConsumer(UserOrderWebSocketHandler userOrderWebSocketHandler, RedisOrderRepository redisOrderRepository,
+                             ObjectMapper objectMapper) {
         this.userOrderWebSocketHandler = userOrderWebSocketHandler;
+        this.redisOrderRepository = redisOrderRepository;
         this.objectMapper = objectMapper;
     }
 
@@ -28,6 +32,8 @@ public class UserOrderConsumer {
     )
     public void consume(String message) throws IOException {
         OrderDTO orderDTO = objectMapper.readValue(message, OrderDTO.class);
+        // 先更新用戶掛單索引，之後重新連線取得的快照才會包含這次變更
+        redisOrderRepository.applyOrderUpdate(orderDTO, message);
         userOrderWebSocketHandler.sendOrderNotification(orderDTO.getUserId(), "ORDER_UPDATED", orderDTO);
     }
 }
@@ -0,0 +1,120 @@
+package com.exchange.consumer;
+
+import com.exchange.model.Trade;
+import com.exchange.service.UserTradeLedger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * 將撮合引擎發布的成交寫入用戶成交帳本。與 RecentTradesKafkaConsumer 讀同一個 topic，
+ * 但使用固定的 consumer group 並從最早的 offset 開始，重啟後會接續上次提交的位置；每次 poll 到的一批成交一次寫入。
+ * 寫入失敗時拋出例外，由 userTradeLedgerContainerFactory 的錯誤處理器重試同一批，不提交 offset（帳本寫入可重複執行）。
+ * 訂單尚未寫入 MySQL 的成交先等待 resolve-retry-ms 重試 resolve-retries 次，仍找不到訂單的成交與無法解析的訊息
+ * 原樣發送到 dead-letter topic 並等待確認後才提交 offset，訂單寫入後可重新發送回 recent-trades 或執行 UserTradeBackfill 補齊。
+ */
+@Component
+public class UserTradeLedgerConsumer {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserTradeLedgerConsumer.class);
+
+    private final UserTradeLedger userTradeLedger;
+    private final ObjectMapper objectMapper;
+    private final KafkaTemplate<String, String> kafkaTemplate;
+    private final String deadLetterTopic;
+    private final int resolveRetries;
+    private final long resolveRetryMs;
+
+    @Autowired
+    public UserTradeLedgerConsumer(UserTradeLedger userTradeLedger, ObjectMapper objectMapper,
+                                   KafkaTemplate<String, String> kafkaTemplate,
+                                   @Value("${user-trades.ledger.dead-letter-topic:recent-trades.user-trade-ledger.dlt}") String deadLetterTopic,
+                                   @Value("${user-trades.ledger.resolve-retries:5}") int resolveRetries,
+                                   @Value("${user-trades.ledger.resolve-retry-ms:200}") long resolveRetryMs) {
+        this.userTradeLedger = userTradeLedger;
+        this.objectMapper = objectMapper;
+        this.kafkaTemplate = kafkaTemplate;
+        this.deadLetterTopic = deadLetterTopic;
+        this.resolveRetries = resolveRetries;
+        this.resolveRetryMs = resolveRetryMs;
+    }
+
+    @KafkaListener(
+            topics = "recent-trades",
+            groupId = "user-trade-ledger",
+            containerFactory = "userTradeLedgerContainerFactory",
+            batch = "true",
+            properties = {"auto.offset.reset=earliest"}
+    )
+    public void consume(List<String> messages) {
+        List<Trade> trades = new ArrayList<>(messages.size());
+        // 成交 ID -> 原始訊息，轉送 dead-letter topic 時保留原本的內容
+        Map<String, String> raw = new HashMap<>();
+        List<String> deadLetters = new ArrayList<>();
+        for (String message : messages) {
+            try {
+                Trade trade = objectMapper.readValue(message, Trade.class);
+                trades.add(trade);
+                raw.put(trade.getId(), message);
+            } catch (IOException e) {
+                logger.warn("Malformed trade message, sending to {}: {}", deadLetterTopic, e.getMessage());
+                deadLetters.add(message);
+            }
+        }
+
+        List<Trade> unresolved = new ArrayList<>();
+        userTradeLedger.append(trades, unresolved);
+        // 撮合引擎寫入訂單與發布成交之間可能有延遲，短暫等待後再查一次
+        for (int attempt = 1; attempt <= resolveRetries && !unresolved.isEmpty(); attempt++) {
+            sleep(resolveRetryMs);
+            List<Trade> retry = unresolved;
+            unresolved = new ArrayList<>();
+            userTradeLedger.append(retry, unresolved);
+        }
+        for (Trade trade : unresolved) {
+            logger.error("Orders of trade {} not found after {} retries, sending to {}", trade.getId(), resolveRetries, deadLetterTopic);
+            deadLetters.add(raw.get(trade.getId()));
+        }
+        if (!deadLetters.isEmpty()) {
+            sendDeadLetters(deadLetters);
+        }
+    }
+
+    // 全部確認送達才返回；失敗時拋出例外，整批重新處理
+    private void sendDeadLetters(List<String> messages) {
+        List<CompletableFuture<?>> futures = new ArrayList<>(messages.size());
+        for (String message : messages) {
+            futures.add(kafkaTemplate.send(deadLetterTopic, message));
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while sending to " + deadLetterTopic, e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Failed to send " + messages.size() + " trades to " + deadLetterTopic, e.getCause());
+        }
+    }
+
+    private void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting to resolve trade orders", e);
+        }
+    }
+}
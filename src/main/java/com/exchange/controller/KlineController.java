@@ -1,12 +1,22 @@
 package com.exchange.controller;
 
+import com.exchange.dto.Candle;
 import com.exchange.model.MarketData;
-import com.exchange.repository.MarketDataRepository;
+import com.exchange.service.CandleAggregator;
+import com.exchange.service.KlineCache;
+import com.exchange.service.KlineEncoder;
+import com.exchange.utils.TimeFrame;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.server.ResponseStatusException;
 
 import java.time.Instant;
 import java.util.ArrayList;
@@ -18,29 +28,83 @@ import java.util.Map;
 public class KlineController {
 
     @Autowired
-    private MarketDataRepository marketDataRepository;
+    private KlineCache klineCache;
 
+    @Autowired
+    private CandleAggregator candleAggregator;
+
+    @Autowired
+    private KlineEncoder klineEncoder;
+
+    // 目前未結束的 K 棒，直接讀取記憶體中的串流聚合結果
+    @GetMapping("/api/kline/{symbol}/current")
+    public ResponseEntity<Map<String, Object>> getCurrentKline(
+            @PathVariable String symbol,
+            @RequestParam(defaultValue = "1m") String timeframe) {
+        TimeFrame timeFrame = TimeFrame.fromCode(timeframe);
+        if (timeFrame == null || !klineCache.isSupported(symbol)) {
+            return ResponseEntity.badRequest().build();
+        }
+        Candle candle = candleAggregator.getCurrentBar(symbol, timeFrame);
+        if (candle == null) {
+            return ResponseEntity.notFound().build();
+        }
+
+        Map<String, Object> dataMap = new HashMap<>();
+        dataMap.put("time", candle.getOpenTime().getEpochSecond());  // 使用秒級 Unix 時間戳
+        dataMap.put("open", candle.getOpen());
+        dataMap.put("high", candle.getHigh());
+        dataMap.put("low", candle.getLow());
+        dataMap.put("close", candle.getClose());
+        dataMap.put("volume", candle.getVolume());
+        return ResponseEntity.ok(dataMap);
+    }
+
+    // K 線快取的命中率與各緩衝區大小，用來調整 kline.cache.capacity
+    @GetMapping("/api/kline/cache/stats")
+    public ResponseEntity<Map<String, Object>> getCacheStats() {
+        return ResponseEntity.ok(klineCache.getStats());
+    }
+
+    // ?format=columnar|binary（或 Accept: application/octet-stream）改用較精簡的格式，預設維持原本的物件陣列
     @GetMapping("/api/kline/{symbol}/{timestamp}")
-    public List<Map<String, Object>> getKlineData(
+    public ResponseEntity<?> getKlineData(
             @PathVariable String symbol,
             @PathVariable long timestamp,
-            @RequestParam(defaultValue = "1m") String timeframe) {
+            @RequestParam(defaultValue = "1m") String timeframe,
+            @RequestParam(required = false) String format,
+            @RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept) {
 
         // 將秒級時間戳轉換為毫秒級
         Instant time = Instant.ofEpochMilli(timestamp * 1000);
 
-        List<MarketData> data;
+        // 不在 exchange.symbols 中的交易對直接回傳 400，避免任意 symbol 建立快取緩衝區
+        if (!klineCache.isSupported(symbol)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported symbol: " + symbol);
+        }
 
-        // 根據 timeframe 調用不同的查詢方法
-        switch (timeframe) {
-            case "5m":
-                data = marketDataRepository.findTop500BySymbolAnd5mTimeFrameBeforeOrderByTimestampDesc(symbol, time);
-                break;
-            case "1h":
-                data = marketDataRepository.findTop500BySymbolAnd1hTimeFrameBeforeOrderByTimestampDesc(symbol, time);
-                break;
+        // 任何支援的時間框架都走同一個查詢，不支援的時間框架直接回傳 400
+        TimeFrame timeFrame = TimeFrame.fromCode(timeframe);
+        if (timeFrame == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported timeframe: " + timeframe);
+        }
+        KlineEncoder.Format klineFormat = KlineEncoder.Format.of(format, accept);
+        if (klineFormat == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Unsupported format: " + format);
+        }
+        List<MarketData> data = klineCache.getBefore(symbol, timeFrame, time, 500);
+
+        switch (klineFormat) {
+            case COLUMNAR:
+                return ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .body(klineEncoder.encodeColumnar(data, symbol, timeframe));
+            case BINARY:
+                return ResponseEntity.ok()
+                        .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                        .body(klineEncoder.encodeBinary(data, symbol, timeframe));
             default:
-                data = marketDataRepository.findTop500BySymbolAnd1mTimeFrameBeforeOrderByTimestampDesc(symbol, time);
+                break;
         }
 
         // 將 MarketData 轉換為符合前端格式的 JSON 格式
@@ -55,7 +119,7 @@ public class KlineController {
             resultData.add(dataMap);
         }
 
-        return resultData;
+        return ResponseEntity.ok(resultData);
     }
 
 }
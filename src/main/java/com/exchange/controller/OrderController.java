@@ -1,21 +1,28 @@
 package com.exchange.controller;
 
+import com.exchange.dto.BatchOrderResult;
 import com.exchange.dto.OrderRequest;
 import com.exchange.model.Order;
 import com.exchange.producer.OrderBookDeltaProducer;
-import com.exchange.repository.OrderRepository;
+import com.exchange.service.IdempotencyCache;
 import com.exchange.service.OrderModifyService;
 import com.exchange.service.OrderService;
+import com.exchange.service.OrderWriteBehind;
 import com.exchange.utils.ApiResponse;
 import com.exchange.utils.SnowflakeIdGenerator;
 import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.web.bind.annotation.*;
 
-import java.math.BigDecimal;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/orders")
@@ -24,161 +31,227 @@ public class OrderController {
     private final OrderService orderService;
     private final SnowflakeIdGenerator idGenerator;
     private final OrderModifyService orderModifyService;
-    private final OrderRepository orderRepository;
+    private final OrderWriteBehind orderWriteBehind;
     private final OrderBookDeltaProducer orderBookDeltaProducer;
+    private final IdempotencyCache idempotencyCache;
+
+    private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 128;
+
+    // 批次下單/取消每次最多的訂單數
+    @Value("${orders.batch.max-size:200}")
+    private int batchMaxSize;
+
+    // 批次下單等待 Kafka 確認的時間，超過時該筆回傳 FAILED
+    @Value("${orders.batch.send-timeout-ms:5000}")
+    private long batchSendTimeoutMs;
+
+    // ack=true 下單等待 Kafka 確認的時間
+    @Value("${orders.submit.ack-timeout-ms:5000}")
+    private long ackTimeoutMs;
 
     @Autowired
-    public OrderController(OrderService orderService, SnowflakeIdGenerator idGenerator, OrderModifyService orderModifyService, OrderRepository orderRepository, OrderBookDeltaProducer orderBookDeltaProducer) {
+    public OrderController(OrderService orderService, SnowflakeIdGenerator idGenerator, OrderModifyService orderModifyService, OrderWriteBehind orderWriteBehind, OrderBookDeltaProducer orderBookDeltaProducer, IdempotencyCache idempotencyCache) {
         this.orderService = orderService;
         this.idGenerator = idGenerator;
         this.orderModifyService = orderModifyService;
-        this.orderRepository = orderRepository;
+        this.orderWriteBehind = orderWriteBehind;
         this.orderBookDeltaProducer = orderBookDeltaProducer;
+        this.idempotencyCache = idempotencyCache;
     }
 
     // 提交新訂單
+    // ack=true 時等 Kafka broker 確認後才回應，等待期間不占用 Tomcat 執行緒（非同步 servlet）；
+    // 帶 Idempotency-Key 時，同一用戶以相同 key 重送只會回傳第一次建立的訂單
     @PostMapping("/submit")
-    public ResponseEntity<ApiResponse<?>> submitOrder(@RequestBody OrderRequest orderRequest, HttpServletRequest request) {
+    public CompletableFuture<ResponseEntity<ApiResponse<?>>> submitOrder(
+            @RequestBody OrderRequest orderRequest,
+            @RequestParam(value = "ack", defaultValue = "false") boolean ack,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
+            HttpServletRequest request) {
         String orderId = String.valueOf(idGenerator.nextId());
         try {
             String userId = (String) request.getAttribute("userId");
 
             // 確認是否有從 JWT 中提取到 userId
             if (userId == null) {
-                return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ApiResponse<>("JWT 無效或過期", 40301));
+                return CompletableFuture.completedFuture(
+                        ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ApiResponse<>("JWT 無效或過期", 40301)));
             }
 
-            Order order = new Order();
-            order.setId(orderId);
-            order.setUserId(userId);
-            order.setSymbol(orderRequest.getSymbol());
-            order.setPrice(orderRequest.getPrice());
-            order.setQuantity(orderRequest.getQuantity());
-            order.setUnfilledQuantity(orderRequest.getQuantity());
-            order.setSide(orderRequest.getSide());
-            order.setOrderType(orderRequest.getOrderType());
-            order.setStatus(Order.OrderStatus.PENDING);
-            order.setCreatedAt(Instant.now());
-            order.setUpdatedAt(Instant.now());
-            order.setModifiedAt(Instant.now());
+            Order order = orderService.buildOrder(orderId, userId, orderRequest);
+            orderService.validateOrder(order);
+
+            IdempotencyCache.Entry entry = null;
+            if (idempotencyKey != null && !idempotencyKey.isEmpty()) {
+                if (idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+                    return CompletableFuture.completedFuture(
+                            ResponseEntity.badRequest().body(new ApiResponse<>("Idempotency-Key 過長", 40006)));
+                }
+                String fingerprint = fingerprint(orderRequest);
+                entry = idempotencyCache.register(userId, idempotencyKey, fingerprint, order);
+                if (entry.getOrder() != order) {
+                    return replay(entry, fingerprint, ack);
+                }
+            }
 
             // 保存訂單並發送到 Kafka
-            orderService.saveOrder(order);
+            CompletableFuture<SendResult<String, String>> sent = orderService.saveOrderAcked(order);
+            if (entry != null) {
+                IdempotencyCache.Entry registered = entry;
+                sent.whenComplete((result, ex) -> {
+                    if (ex != null) {
+                        // 送出失敗時移除 key，客戶端可以用同一個 key 重試
+                        idempotencyCache.remove(userId, idempotencyKey, registered);
+                        registered.getAcked().completeExceptionally(ex);
+                    } else {
+                        registered.getAcked().complete(null);
+                    }
+                });
+            }
 
-            return ResponseEntity.ok(new ApiResponse<>("訂單提交成功", order));
+            if (!ack) {
+                return CompletableFuture.completedFuture(ResponseEntity.ok(new ApiResponse<>("訂單提交成功", order)));
+            }
+            return sent.orTimeout(ackTimeoutMs, TimeUnit.MILLISECONDS)
+                    .handle((result, ex) -> ex == null
+                            ? ResponseEntity.ok(new ApiResponse<>("訂單提交成功", order))
+                            : ResponseEntity.status(500).body(new ApiResponse<>("訂單提交失敗，請稍後再試", 50001)));
 
         } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest().body(new ApiResponse<>(e.getMessage(), 40001));
+            return CompletableFuture.completedFuture(ResponseEntity.badRequest().body(new ApiResponse<>(e.getMessage(), 40001)));
         } catch (Exception e) {
-            return ResponseEntity.status(500).body(new ApiResponse<>("訂單提交失敗，請稍後再試", 50001));
+            return CompletableFuture.completedFuture(
+                    ResponseEntity.status(500).body(new ApiResponse<>("訂單提交失敗，請稍後再試", 50001)));
         }
     }
 
-    // 更新訂單
-// 更新訂單
-    @PutMapping("/modify/{orderId}")
-    public ResponseEntity<ApiResponse<?>> modifyOrder(
-            @PathVariable String orderId,
-            @RequestBody OrderRequest orderRequest,
-            HttpServletRequest request) {
-        try {
-            String userId = (String) request.getAttribute("userId");
+    // 重複的 Idempotency-Key：回傳第一次建立的訂單，ack=true 時等第一次的發送結果
+    private CompletableFuture<ResponseEntity<ApiResponse<?>>> replay(IdempotencyCache.Entry existing, String fingerprint, boolean ack) {
+        if (!existing.getFingerprint().equals(fingerprint)) {
+            return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new ApiResponse<>("Idempotency-Key 已用於其他訂單", 40901)));
+        }
+        if (!ack) {
+            return CompletableFuture.completedFuture(ResponseEntity.ok(new ApiResponse<>("訂單提交成功", existing.getOrder())));
+        }
+        return existing.getAcked().orTimeout(ackTimeoutMs, TimeUnit.MILLISECONDS)
+                .handle((result, ex) -> ex == null
+                        ? ResponseEntity.ok(new ApiResponse<>("訂單提交成功", existing.getOrder()))
+                        : ResponseEntity.status(500).body(new ApiResponse<>("訂單提交失敗，請稍後再試", 50001)));
+    }
 
-            String symbol = orderRequest.getSymbol();
-            Order.Side side = orderRequest.getSide();
-            BigDecimal oldPrice = orderRequest.getOldPrice(); // 舊的價格
-            BigDecimal newPrice = orderRequest.getPrice(); // 新的價格
-            BigDecimal newQuantity = orderRequest.getQuantity(); // 新的數量
-            long modifiedAt = orderRequest.getModifiedAt().toInstant().toEpochMilli(); // 前端傳遞的修改時間
+    // 同一個 Idempotency-Key 只能對應相同內容的訂單
+    private String fingerprint(OrderRequest orderRequest) {
+        return orderRequest.getSymbol() + "|" + orderRequest.getSide() + "|" + orderRequest.getOrderType() + "|"
+                + (orderRequest.getPrice() != null ? orderRequest.getPrice().stripTrailingZeros().toPlainString() : "") + "|"
+                + (orderRequest.getQuantity() != null ? orderRequest.getQuantity().stripTrailingZeros().toPlainString() : "");
+    }
 
-            // 檢查並移除 Redis 中的舊訂單（使用舊價格查詢）
-            ResponseEntity<ApiResponse<?>> response = orderModifyService.checkAndRemoveOrderFromRedis(
-                    symbol, side.name(), orderId, oldPrice, modifiedAt, userId, true, newQuantity);
+    // 批次提交新訂單：一次取得所有 ID，驗證後以一批 Kafka 請求送出，回傳每筆訂單的結果
+    @PostMapping("/batch")
+    public ResponseEntity<ApiResponse<?>> submitOrders(@RequestBody List<OrderRequest> orderRequests, HttpServletRequest request) {
+        String userId = (String) request.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ApiResponse<>("JWT 無效或過期", 40301));
+        }
+        if (orderRequests == null || orderRequests.isEmpty() || orderRequests.size() > batchMaxSize) {
+            return ResponseEntity.badRequest().body(new ApiResponse<>("批次訂單數量需介於 1 到 " + batchMaxSize, 40005));
+        }
 
-            // 如果訂單未找到或數量檢查失敗，直接返回相應的響應（檢查是否有業務邏輯錯誤）
-            if (response.getStatusCode() != HttpStatus.OK) {
-                return response;
+        try {
+            long[] ids = idGenerator.nextIds(orderRequests.size());
+            BatchOrderResult[] results = new BatchOrderResult[orderRequests.size()];
+            List<Order> accepted = new ArrayList<>(orderRequests.size());
+            List<Integer> positions = new ArrayList<>(orderRequests.size());
+            for (int i = 0; i < orderRequests.size(); i++) {
+                Order order = orderService.buildOrder(String.valueOf(ids[i]), userId, orderRequests.get(i));
+                try {
+                    orderService.validateOrder(order);
+                    accepted.add(order);
+                    positions.add(i);
+                } catch (IllegalArgumentException e) {
+                    results[i] = new BatchOrderResult(i, order.getId(), "REJECTED", e.getMessage(), null);
+                }
             }
 
-            // 從 Redis 返回的舊訂單
-            Order oldOrder = (Order) response.getBody().getData();
-
-            // 發送舊訂單數據到 Delta 服務
-            orderBookDeltaProducer.sendDelta(
-                    oldOrder.getSymbol(),
-                    oldOrder.getSide().toString(),
-                    oldOrder.getPrice().toString(),
-                    "-" + oldOrder.getUnfilledQuantity().toString()
-            );
-
-            // 更新訂單的相關字段
-            oldOrder.setPrice(newPrice);
-            oldOrder.setQuantity(newQuantity);
-            oldOrder.setFilledQuantity(oldOrder.getFilledQuantity()); // 更新已成交數量
-            oldOrder.setUnfilledQuantity(newQuantity.subtract(oldOrder.getFilledQuantity())); // 使用 subtract 來更新未成交數量
-            oldOrder.setModifiedAt(Instant.now());
-            oldOrder.setUpdatedAt(Instant.now());
-
-            // 保存更新後的訂單並發送到 Kafka
-            orderRepository.save(oldOrder);
-            orderService.saveOrder(oldOrder);
-
-            return ResponseEntity.ok(new ApiResponse<>("訂單修改成功", oldOrder));
+            List<CompletableFuture<SendResult<String, String>>> futures = orderService.saveOrders(accepted);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(batchSendTimeoutMs);
+            for (int j = 0; j < accepted.size(); j++) {
+                Order order = accepted.get(j);
+                int i = positions.get(j);
+                try {
+                    futures.get(j).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    results[i] = new BatchOrderResult(i, order.getId(), "ACCEPTED", null, order);
+                } catch (Exception e) {
+                    results[i] = new BatchOrderResult(i, order.getId(), "FAILED", "訂單提交失敗，請稍後再試", null);
+                }
+            }
+            return ResponseEntity.ok(new ApiResponse<>("批次訂單已處理", List.of(results)));
 
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest().body(new ApiResponse<>(e.getMessage(), 40002));
         } catch (Exception e) {
-            return ResponseEntity.status(500).body(new ApiResponse<>("訂單更新失敗，請稍後再試", 50002));
+            return ResponseEntity.status(500).body(new ApiResponse<>("訂單提交失敗，請稍後再試", 50001));
         }
     }
 
+    // 更新訂單
+    @PutMapping("/modify/{orderId}")
+    public ResponseEntity<ApiResponse<?>> modifyOrder(
+            @PathVariable String orderId,
+            @RequestBody OrderRequest orderRequest,
+            HttpServletRequest request) {
+        String userId = (String) request.getAttribute("userId");
+        return orderModifyService.modifyOrder(userId, orderId, orderRequest);
+    }
+
     // 取消訂單
     @PutMapping("/cancel/{orderId}")
     public ResponseEntity<ApiResponse<?>> cancelOrder(
             @PathVariable String orderId,
             @RequestBody OrderRequest orderRequest, // 新增需要傳遞的資料
             HttpServletRequest request) {
-        try {
-            String userId = (String) request.getAttribute("userId");
+        String userId = (String) request.getAttribute("userId");
+        return orderModifyService.cancelOrder(userId, orderId, orderRequest);
+    }
 
-            // 從前端請求中提取訂單信息
-            String symbol = orderRequest.getSymbol();
-            Order.Side side = orderRequest.getSide();
-            BigDecimal price = orderRequest.getPrice(); // 訂單的價格
-            long modifiedAt = orderRequest.getModifiedAt().toInstant().toEpochMilli(); // 修改時間
+    // 批次取消訂單：所有訂單在一次 Redis 腳本呼叫中移除，移除成功的訂單一次交給 write-behind 寫入資料庫
+    @PutMapping("/batch/cancel")
+    public ResponseEntity<ApiResponse<?>> cancelOrders(@RequestBody List<OrderRequest> orderRequests, HttpServletRequest request) {
+        String userId = (String) request.getAttribute("userId");
+        if (userId == null) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ApiResponse<>("JWT 無效或過期", 40301));
+        }
+        if (orderRequests == null || orderRequests.isEmpty() || orderRequests.size() > batchMaxSize) {
+            return ResponseEntity.badRequest().body(new ApiResponse<>("批次訂單數量需介於 1 到 " + batchMaxSize, 40005));
+        }
 
-            // 查詢 Redis 中的訂單
-            ResponseEntity<ApiResponse<?>> response = orderModifyService.checkAndRemoveOrderFromRedis(symbol, side.name(), orderId, price, modifiedAt, userId, false, null);
+        try {
+            List<BatchOrderResult> results = orderModifyService.removeOrdersFromRedis(userId, orderRequests);
 
-            // 如果訂單未找到或驗證失敗，直接返回相應的響應
-            if (response.getStatusCode() != HttpStatus.OK) {
-                return response;
+            List<Order> cancelled = new ArrayList<>();
+            for (BatchOrderResult result : results) {
+                if (result.getOrder() != null) {
+                    Order order = result.getOrder();
+                    order.setStatus(Order.OrderStatus.CANCELLED);
+                    order.setUpdatedAt(Instant.now());
+                    order.setModifiedAt(Instant.now());
+                    cancelled.add(order);
+                }
             }
+            orderWriteBehind.enqueueAll(cancelled);
 
-            // 取得要移除的訂單
-            Order order = (Order) response.getBody().getData();
-
-            // 將取消的訂單狀態寫入 MySQL
-            order.setStatus(Order.OrderStatus.CANCELLED);
-            order.setUpdatedAt(Instant.now());
-            order.setModifiedAt(Instant.now());
-
-            // 保存到數據庫
-            orderRepository.save(order);
-
-            orderBookDeltaProducer.sendDelta(
-                    order.getSymbol(),
-                    order.getSide().toString(),
-                    order.getPrice().toString(),
-                    "-" + order.getUnfilledQuantity().toString()
-            );
+            for (Order order : cancelled) {
+                orderBookDeltaProducer.sendDelta(
+                        order.getSymbol(),
+                        order.getSide().toString(),
+                        order.getPrice().toString(),
+                        "-" + order.getUnfilledQuantity().toString()
+                );
+            }
 
-            return ResponseEntity.ok(new ApiResponse<>("訂單取消成功，已更新到資料庫", order));
+            return ResponseEntity.ok(new ApiResponse<>("批次取消已處理", results));
 
-        } catch (IllegalArgumentException e) {
-            return ResponseEntity.badRequest().body(new ApiResponse<>(e.getMessage(), "40004"));
         } catch (Exception e) {
-            return ResponseEntity.status(500).body(new ApiResponse<>("訂單取消失敗，請稍後再試", "50003"));
+            return ResponseEntity.status(500).body(new ApiResponse<>("訂單取消失敗，請稍後再試", 50003));
         }
     }
 }
@@ -13,6 +13,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 
@@ -22,6 +23,13 @@ public class OrderHistoryController {
 
     private final OrderHistoryService orderHistoryService;
 
+    // 每頁筆數，limit 超出範圍時限制在 1 到 MAX_PAGE_SIZE
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    // 下一頁的游標放在回應標頭，格式為「最後一筆的 createdAt（ISO-8601）_訂單 ID」，沒有下一頁時不回傳
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     @Autowired
     public OrderHistoryController(OrderHistoryService orderHistoryService) {
         this.orderHistoryService = orderHistoryService;
@@ -34,18 +42,40 @@ public class OrderHistoryController {
             @RequestParam(required = false, defaultValue = "1d") String timeRange,
             @RequestParam(required = false) Order.OrderType orderType,
             @RequestParam(required = false) Order.Side side,
-            @RequestParam(required = false) Order.OrderStatus status
+            @RequestParam(required = false) Order.OrderStatus status,
+            @RequestParam(required = false, defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(required = false) String cursor
     ) {
         String userId = (String) request.getAttribute("userId");
         if (userId == null) {
             return ResponseEntity.status(HttpServletResponse.SC_UNAUTHORIZED).build();
         }
 
+        Instant beforeCreatedAt = null;
+        String beforeId = null;
+        if (cursor != null && !cursor.isEmpty()) {
+            int separator = cursor.lastIndexOf('_');
+            try {
+                beforeCreatedAt = Instant.parse(cursor.substring(0, Math.max(separator, 0)));
+            } catch (DateTimeParseException e) {
+                return ResponseEntity.badRequest().build();
+            }
+            beforeId = cursor.substring(separator + 1);
+        }
+        int pageSize = Math.max(1, Math.min(limit, MAX_PAGE_SIZE));
+
         Instant endTime = Instant.now();
         Instant startTime = getStartTime(timeRange, endTime);
 
-        List<OrderHistoryDTO> orderHistory = orderHistoryService.getOrderHistory(userId, symbol, startTime, endTime, orderType, side, status);
-        return ResponseEntity.ok(orderHistory);
+        List<OrderHistoryDTO> orderHistory = orderHistoryService.getOrderHistory(userId, symbol, startTime, endTime, orderType, side, status,
+                beforeCreatedAt, beforeId, pageSize);
+        if (orderHistory.size() < pageSize) {
+            return ResponseEntity.ok(orderHistory);
+        }
+        Order last = orderHistory.get(orderHistory.size() - 1).getOrder();
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, last.getCreatedAt() + "_" + last.getId())
+                .body(orderHistory);
     }
 
     private Instant getStartTime(String timeRange, Instant endTime) {
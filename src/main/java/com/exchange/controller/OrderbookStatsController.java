@@ -0,0 +1,58 @@
+package com.exchange.controller;
+
+import com.exchange.repository.RedisOrderRepository;
+import com.exchange.websocket.BroadcastEngine;
+import com.exchange.websocket.OrderbookWebSocketHandler;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+public class OrderbookStatsController {
+
+    private final OrderbookWebSocketHandler orderbookWebSocketHandler;
+    private final BroadcastEngine broadcastEngine;
+    private final RedisOrderRepository redisOrderRepository;
+
+    public OrderbookStatsController(OrderbookWebSocketHandler orderbookWebSocketHandler,
+                                    BroadcastEngine broadcastEngine,
+                                    RedisOrderRepository redisOrderRepository) {
+        this.orderbookWebSocketHandler = orderbookWebSocketHandler;
+        this.broadcastEngine = broadcastEngine;
+        this.redisOrderRepository = redisOrderRepository;
+    }
+
+    // 所有市場資料 WebSocket 共用的廣播統計
+    @GetMapping("/api/ws/stats")
+    public ResponseEntity<Map<String, Object>> getBroadcastStats() {
+        return ResponseEntity.ok(broadcastEngine.getStats());
+    }
+
+    // 訂單簿 WebSocket 各連線的發送佇列深度與丟棄統計
+    @GetMapping("/api/orderbook/stats")
+    public ResponseEntity<Map<String, Object>> getStats() {
+        List<Map<String, Object>> sessions = orderbookWebSocketHandler.getSessionStats();
+        long queued = 0;
+        long dropped = 0;
+        long resets = 0;
+        for (Map<String, Object> session : sessions) {
+            queued += ((Number) session.get("queueDepth")).longValue();
+            dropped += ((Number) session.get("droppedMessages")).longValue();
+            resets += ((Number) session.get("snapshotResets")).longValue();
+        }
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("sessionCount", sessions.size());
+        response.put("queuedMessages", queued);
+        response.put("droppedMessages", dropped);
+        response.put("snapshotResets", resets);
+        // 用戶掛單索引更新時在掛單簿中找不到訂單的次數，持續增加表示索引與掛單簿不一致
+        response.put("indexMemberMisses", redisOrderRepository.getMemberMisses());
+        response.put("sessions", sessions);
+        return ResponseEntity.ok(response);
+    }
+}
@@ -0,0 +1,56 @@
+package com.exchange.controller;
+
+import com.exchange.model.Trade;
+import com.exchange.service.TradeService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@RestController
+public class TradeController {
+
+    // 一次查詢的最大時間範圍，舊的範圍會讀取歸檔檔案，限制範圍避免一次讀取整個月份
+    static final Duration MAX_RANGE = Duration.ofDays(1);
+
+    private final TradeService tradeService;
+
+    @Autowired
+    public TradeController(TradeService tradeService) {
+        this.tradeService = tradeService;
+    }
+
+    // 市場成交紀錄：start / end 為秒級時間戳，包含資料庫中保留的成交與已歸檔的成交
+    @GetMapping("/api/trades/{symbol}")
+    public ResponseEntity<List<Map<String, Object>>> getTrades(
+            @PathVariable String symbol,
+            @RequestParam long start,
+            @RequestParam long end) {
+        Instant startTime = Instant.ofEpochSecond(start);
+        Instant endTime = Instant.ofEpochSecond(end);
+        if (endTime.isBefore(startTime) || Duration.between(startTime, endTime).compareTo(MAX_RANGE) > 0) {
+            return ResponseEntity.badRequest().build();
+        }
+
+        List<Map<String, Object>> resultData = new ArrayList<>();
+        for (Trade trade : tradeService.getTrades(symbol, startTime, endTime)) {
+            Map<String, Object> dataMap = new HashMap<>();
+            dataMap.put("id", trade.getId());
+            dataMap.put("time", trade.getTradeTime().toEpochMilli());  // 毫秒級 Unix 時間戳
+            dataMap.put("price", trade.getPrice());
+            dataMap.put("quantity", trade.getQuantity());
+            dataMap.put("direction", trade.getDirection());
+            resultData.add(dataMap);
+        }
+        return ResponseEntity.ok(resultData);
+    }
+}
@@ -10,6 +10,7 @@ import org.springframework.web.bind.annotation.*;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import java.time.Instant;
+import java.time.format.DateTimeParseException;
 import java.time.temporal.ChronoUnit;
 import java.util.List;
 
@@ -17,13 +18,26 @@ import java.util.List;
 @RequestMapping("/api/trade-history")
 public class TradeHistoryController {
 
+    private final TradeHistoryService tradeHistoryService;
+
+    // 每頁筆數，limit 超出範圍時限制在 1 到 MAX_PAGE_SIZE
+    private static final int DEFAULT_PAGE_SIZE = 100;
+    private static final int MAX_PAGE_SIZE = 500;
+
+    // 下一頁的游標放在回應標頭，格式為「最後一筆的 tradeTime（ISO-8601）_成交 ID」，沒有下一頁時不回傳
+    static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     @Autowired
-    private TradeHistoryService tradeHistoryService;
+    public TradeHistoryController(TradeHistoryService tradeHistoryService) {
+        this.tradeHistoryService = tradeHistoryService;
+    }
 
     @GetMapping
     public ResponseEntity<List<TradeHistoryResponse>> getTradeHistory(
             @RequestParam(required = false, defaultValue = "1") String timeRange,
             @RequestParam(required = false, defaultValue = "ALL") TradeHistoryRequest.TradeDirection direction,
+            @RequestParam(required = false, defaultValue = "" + DEFAULT_PAGE_SIZE) int limit,
+            @RequestParam(required = false) String cursor,
             HttpServletRequest httpRequest) {
 
         String userId = (String) httpRequest.getAttribute("userId");
@@ -38,9 +52,25 @@ public class TradeHistoryController {
         request.setStartTime(startTime);
         request.setEndTime(endTime);
         request.setDirection(direction);
+        request.setLimit(Math.max(1, Math.min(limit, MAX_PAGE_SIZE)));
+        if (cursor != null && !cursor.isEmpty()) {
+            int separator = cursor.lastIndexOf('_');
+            try {
+                request.setBeforeTradeTime(Instant.parse(cursor.substring(0, Math.max(separator, 0))));
+            } catch (DateTimeParseException e) {
+                return ResponseEntity.badRequest().build();
+            }
+            request.setBeforeId(cursor.substring(separator + 1));
+        }
 
         List<TradeHistoryResponse> tradeHistory = tradeHistoryService.getTradeHistory(userId, request);
-        return ResponseEntity.ok(tradeHistory);
+        if (tradeHistory.size() < request.getLimit()) {
+            return ResponseEntity.ok(tradeHistory);
+        }
+        TradeHistoryResponse last = tradeHistory.get(tradeHistory.size() - 1);
+        return ResponseEntity.ok()
+                .header(NEXT_CURSOR_HEADER, last.getTradeTime() + "_" + last.getTradeId())
+                .body(tradeHistory);
     }
 
     // 解析時間範圍
@@ -0,0 +1,18 @@
+package com.exchange.dto;
+
+import com.exchange.model.Order;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+// 批次下單/取消中單筆訂單的結果，index 為請求中的位置
+@Getter
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BatchOrderResult {
+    private int index;
+    private String orderId;
+    private String status;   // 下單：ACCEPTED / REJECTED / FAILED；取消：CANCELLED / NOT_FOUND / FORBIDDEN / REJECTED / FAILED
+    private String message;
+    private Order order;
+}
@@ -0,0 +1,26 @@
+package com.exchange.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class Candle {
+    private String symbol;
+    private String timeFrame;
+    private Instant openTime; // K 棒起點
+    private BigDecimal open;
+    private BigDecimal high;
+    private BigDecimal low;
+    private BigDecimal close;
+    private BigDecimal volume;
+
+    public Candle copy() {
+        return new Candle(symbol, timeFrame, openTime, open, high, low, close, volume);
+    }
+}
@@ -10,6 +10,7 @@ import java.time.ZonedDateTime;
 @Data
 public class OrderRequest {
     private String userId;
+    private String orderId; // 批次取消時指定訂單
     private String symbol;
     private BigDecimal oldPrice; // 用於查詢的舊價格
     private BigDecimal price; // 用於更新的新價格
@@ -10,6 +10,11 @@ public class TradeHistoryRequest {
     private Instant endTime;
     private TradeDirection direction;
 
+    // keyset 分頁：上一頁最後一筆成交的時間與 ID（第一頁為 null），limit 為每頁筆數
+    private Instant beforeTradeTime;
+    private String beforeId;
+    private int limit;
+
     public enum TradeDirection {
         BUY,
         SELL,
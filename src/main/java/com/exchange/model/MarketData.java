@@ -2,6 +2,7 @@ package com.exchange.model;
 
 import jakarta.persistence.Entity;
 import jakarta.persistence.IdClass;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.persistence.Column;
 import jakarta.persistence.Id;
@@ -11,7 +12,10 @@ import java.math.BigDecimal;
 import java.time.Instant;
 
 @Entity
-@Table(name = "market_data")
+// 主鍵 (symbol, time_frame, timestamp) 對應依時間框架的查詢；findLatestBeforeTime / findTop2BySymbol 不分時間框架，另建 (symbol, timestamp)
+@Table(name = "market_data", indexes = {
+        @Index(name = "idx_market_data_symbol_time", columnList = "symbol, timestamp")
+})
 @IdClass(MarketDataId.class)
 @Data
 @NoArgsConstructor
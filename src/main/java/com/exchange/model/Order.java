@@ -6,6 +6,7 @@ import jakarta.persistence.*;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+
 import java.math.BigDecimal;
 import java.time.Instant;
 import java.util.List;
@@ -13,6 +14,7 @@ import java.util.List;
 @Entity
 @Table(name = "orders", indexes = {
         @Index(name = "idx_user_id", columnList = "user_id"),
+        @Index(name = "idx_user_created_at", columnList = "user_id, created_at, id"),
         @Index(name = "idx_symbol", columnList = "symbol")
 })
 @Data
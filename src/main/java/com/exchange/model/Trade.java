@@ -8,9 +8,9 @@ import java.time.Instant;
 
 @Entity
 @Table(name = "trades", indexes = {
-        @Index(name = "idx_buy_order_id", columnList = "buy_order_id"),
-        @Index(name = "idx_sell_order_id", columnList = "sell_order_id"),
-        @Index(name = "idx_trade_time", columnList = "trade_time"),
+        @Index(name = "idx_buy_order_trade_time", columnList = "buy_order_id, trade_time, id"),
+        @Index(name = "idx_sell_order_trade_time", columnList = "sell_order_id, trade_time, id"),
+        @Index(name = "idx_symbol_trade_time", columnList = "symbol, trade_time, id"),
         @Index(name = "idx_taker_order_id", columnList = "taker_order_id")
 })
 @Data
@@ -21,12 +21,15 @@ public class Trade {
     @Column(length = 20, nullable = false)
     private String id;  // 雪花ID
 
+    // 不建立外鍵：trades 依 trade_time 分區（TimeSeriesPartitions），MySQL 的分區表不支援外鍵
     @ManyToOne
-    @JoinColumn(name = "buy_order_id", referencedColumnName = "id", nullable = false)
+    @JoinColumn(name = "buy_order_id", referencedColumnName = "id", nullable = false,
+            foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private Order buyOrder;
 
     @ManyToOne
-    @JoinColumn(name = "sell_order_id", referencedColumnName = "id", nullable = false)
+    @JoinColumn(name = "sell_order_id", referencedColumnName = "id", nullable = false,
+            foreignKey = @ForeignKey(ConstraintMode.NO_CONSTRAINT))
     private Order sellOrder;
 
     @Column(length = 20, nullable = false)
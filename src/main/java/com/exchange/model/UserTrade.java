@@ -0,0 +1,54 @@
+package com.exchange.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+/**
+ * 用戶成交帳本（只新增不修改）：每筆成交寫入買方與賣方各一列，帶上用戶、方向與角色，
+ * 成交歷史與歷史委託直接讀這張表，不需要再關聯 trades 與 orders。
+ * 主鍵為 (tradeId, side)，重複寫入同一筆成交時會被忽略。
+ */
+@Entity
+@Table(name = "user_trades", indexes = {
+        @Index(name = "idx_user_trade_time", columnList = "user_id, trade_time, trade_id"),
+        @Index(name = "idx_user_trades_order_id", columnList = "order_id")
+})
+@IdClass(UserTradeId.class)
+@Data
+@NoArgsConstructor
+public class UserTrade {
+
+    @Id
+    @Column(name = "trade_id", length = 20, nullable = false)
+    private String tradeId;
+
+    @Id
+    @Enumerated(EnumType.STRING)
+    @Column(length = 4, nullable = false)
+    private Order.Side side;
+
+    @Column(name = "user_id", length = 20, nullable = false)
+    private String userId;
+
+    @Column(name = "order_id", length = 20, nullable = false)
+    private String orderId;
+
+    @Column(length = 20, nullable = false)
+    private String symbol;
+
+    @Column(length = 5, nullable = false)
+    private String role;  // TAKER 或 MAKER
+
+    @Column(precision = 18, scale = 8, nullable = false)
+    private BigDecimal price;
+
+    @Column(precision = 18, scale = 8, nullable = false)
+    private BigDecimal quantity;
+
+    @Column(name = "trade_time", nullable = false)
+    private Instant tradeTime;
+}
@@ -0,0 +1,11 @@
+package com.exchange.model;
+
+import lombok.EqualsAndHashCode;
+
+import java.io.Serializable;
+
+@EqualsAndHashCode
+public class UserTradeId implements Serializable {
+    private String tradeId;
+    private Order.Side side;
+}
@@ -5,51 +5,127 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.kafka.support.SendResult;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+/**
+ * 新訂單以 symbol 為 key 發送到 new_orders：同一個 symbol 固定落在同一個 partition，順序不變，
+ * 不同 symbol 分散到不同 partition，撮合端可以每個 partition 一個 consumer 平行處理。
+ * kafka.new-orders.symbol-partitions（例如 BTCUSDT:0,ETHUSDT:1）可以指定 symbol 的 partition，
+ * 未指定的 symbol 使用 Kafka 預設的 key hash。
+ */
 @Service
 public class OrderProducer {
 
     private static final Logger logger = LoggerFactory.getLogger(OrderProducer.class);
 
+    private static final String NEW_ORDERS_TOPIC = "new_orders";
+
     private final KafkaTemplate<String, String> kafkaTemplate;
     private final ObjectMapper objectMapper;
 
+    // symbol -> partition，空的時候全部依 key hash 分配
+    private Map<String, Integer> symbolPartitions = Map.of();
+
     @Autowired
     public OrderProducer(KafkaTemplate<String, String> kafkaTemplate, ObjectMapper objectMapper) {
         this.kafkaTemplate = kafkaTemplate;
         this.objectMapper = objectMapper;
     }
 
+    @Value("${kafka.new-orders.symbol-partitions:}")
+    public void setSymbolPartitions(String mapping) {
+        this.symbolPartitions = parseSymbolPartitions(mapping);
+    }
+
+    // 解析 SYMBOL:partition,SYMBOL:partition，格式錯誤時啟動失敗
+    static Map<String, Integer> parseSymbolPartitions(String mapping) {
+        Map<String, Integer> partitions = new HashMap<>();
+        if (mapping == null || mapping.isBlank()) {
+            return partitions;
+        }
+        for (String entry : mapping.split(",")) {
+            String[] parts = entry.trim().split(":");
+            if (parts.length != 2 || parts[0].isBlank()) {
+                throw new IllegalArgumentException("Invalid kafka.new-orders.symbol-partitions entry: " + entry);
+            }
+            int partition = Integer.parseInt(parts[1].trim());
+            if (partition < 0) {
+                throw new IllegalArgumentException("Negative partition for " + parts[0] + ": " + partition);
+            }
+            partitions.put(parts[0].trim(), partition);
+        }
+        return partitions;
+    }
+
     // 發送新訂單到 Kafka
     public void sendNewOrder(Order order) {
-        sendOrderToTopic(order, "new_orders");
+        sendOrderToTopic(order, NEW_ORDERS_TOPIC);
+    }
+
+    // 發送新訂單並回傳 Kafka 的確認結果，broker 確認後 future 才完成；JSON 轉換失敗時為失敗的 future
+    public CompletableFuture<SendResult<String, String>> sendNewOrderAcked(Order order) {
+        return sendOrderToTopic(order, NEW_ORDERS_TOPIC);
+    }
+
+    // 批次發送新訂單：以 symbol 為 key，全部交給 producer 後只 flush 一次，同一批會合併成少數幾個請求
+    // 回傳每筆訂單的發送結果，JSON 轉換失敗的訂單為失敗的 future
+    public List<CompletableFuture<SendResult<String, String>>> sendNewOrders(List<Order> orders) {
+        List<CompletableFuture<SendResult<String, String>>> futures = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            String orderJson = convertOrderToJson(order);
+            if (orderJson == null) {
+                futures.add(CompletableFuture.failedFuture(new IllegalStateException("Failed to convert order " + order.getId() + " to JSON")));
+                continue;
+            }
+            futures.add(send(NEW_ORDERS_TOPIC, order.getSymbol(), orderJson));
+        }
+        if (!orders.isEmpty()) {
+            kafkaTemplate.flush();
+        }
+        return futures;
     }
 
     // 通用方法，發送訂單到不同的 Kafka topic
-    private void sendOrderToTopic(Order order, String topic) {
+    private CompletableFuture<SendResult<String, String>> sendOrderToTopic(Order order, String topic) {
         String orderJson = convertOrderToJson(order);
-        if (orderJson != null) {
-            // 使用 CompletableFuture 處理 Kafka 發送結果
-            CompletableFuture<SendResult<String, String>> future = kafkaTemplate.send(topic, orderJson);
-
-            // 當消息成功發送時
-            future.thenAccept(result -> {
-                // 這裡可以選擇記錄成功的消息發送結果，根據需要
-                logger.debug("Message sent successfully to topic: {}", topic);
-            });
-
-            // 當消息發送失敗時
-            future.exceptionally(ex -> {
-                // 記錄發送失敗的錯誤
-                logger.error("Failed to send message to Kafka topic {}: {}", topic, ex.getMessage());
-                return null;
-            });
+        if (orderJson == null) {
+            return CompletableFuture.failedFuture(new IllegalStateException("Failed to convert order " + order.getId() + " to JSON"));
+        }
+        // 使用 CompletableFuture 處理 Kafka 發送結果
+        CompletableFuture<SendResult<String, String>> future = send(topic, order.getSymbol(), orderJson);
+
+        // 當消息成功發送時
+        future.thenAccept(result -> {
+            // 這裡可以選擇記錄成功的消息發送結果，根據需要
+            logger.debug("Message sent successfully to topic: {}", topic);
+        });
+
+        // 當消息發送失敗時
+        future.exceptionally(ex -> {
+            // 記錄發送失敗的錯誤
+            logger.error("Failed to send message to Kafka topic {}: {}", topic, ex.getMessage());
+            return null;
+        });
+        return future;
+    }
+
+    // 以 symbol 為 key，有指定 partition 的 symbol 直接送到該 partition
+    private CompletableFuture<SendResult<String, String>> send(String topic, String symbol, String orderJson) {
+        Integer partition = symbol != null ? symbolPartitions.get(symbol) : null;
+        if (partition != null) {
+            return kafkaTemplate.send(topic, partition, symbol, orderJson);
         }
+        return kafkaTemplate.send(topic, symbol, orderJson);
     }
 
     // 將 Order 物件轉換成 JSON，處理 JsonProcessingException
@@ -1,6 +1,7 @@
 package com.exchange.repository;
 
 import com.exchange.model.MarketData;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -21,15 +22,13 @@ public interface MarketDataRepository extends JpaRepository<MarketData, String>
     // 查詢特定時間範圍內的1分鐘K線數據
     List<MarketData> findBySymbolAndTimeFrameAndTimestampBetween(String symbol, String timeFrame, Instant startTime, Instant endTime);
 
-    // 查詢1分鐘K線數據
-    @Query("SELECT md FROM MarketData md WHERE md.symbol = :symbol AND md.timeFrame = '1m' AND md.timestamp < :timestamp ORDER BY md.timestamp DESC LIMIT 500")
-    List<MarketData> findTop500BySymbolAnd1mTimeFrameBeforeOrderByTimestampDesc(String symbol, Instant timestamp);
+    // 查詢任意時間框架在指定時間之前的最近 500 根K線
+    List<MarketData> findTop500BySymbolAndTimeFrameAndTimestampBeforeOrderByTimestampDesc(String symbol, String timeFrame, Instant timestamp);
 
-    // 查詢5分鐘K線數據
-    @Query("SELECT md FROM MarketData md WHERE md.symbol = :symbol AND md.timeFrame = '5m' AND md.timestamp < :timestamp ORDER BY md.timestamp DESC LIMIT 500")
-    List<MarketData> findTop500BySymbolAnd5mTimeFrameBeforeOrderByTimestampDesc(String symbol, Instant timestamp);
+    // 最近的 K 線（新到舊），筆數由 pageable 決定
+    List<MarketData> findBySymbolAndTimeFrameOrderByTimestampDesc(String symbol, String timeFrame, Pageable pageable);
 
-    // 查詢1小時K線數據
-    @Query("SELECT md FROM MarketData md WHERE md.symbol = :symbol AND md.timeFrame = '1h' AND md.timestamp < :timestamp ORDER BY md.timestamp DESC LIMIT 500")
-    List<MarketData> findTop500BySymbolAnd1hTimeFrameBeforeOrderByTimestampDesc(String symbol, Instant timestamp);
+    MarketData findFirstBySymbolAndTimeFrameOrderByTimestampDesc(String symbol, String timeFrame);
+
+    MarketData findFirstBySymbolAndTimeFrameOrderByTimestampAsc(String symbol, String timeFrame);
 }
@@ -0,0 +1,62 @@
+package com.exchange.repository;
+
+import com.exchange.model.Order;
+import com.exchange.utils.PriceTimeKey;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.math.BigDecimal;
+
+/**
+ * Redis 掛單簿的儲存格式，由 orderbook.redis.layout 決定：
+ * score（預設，與目前撮合引擎相容）：SYMBOL:SIDE，member 為訂單 JSON，score 為 price * 10^7 ± modifiedAt；
+ * price-time：SYMBOL:SIDE:PT，score 全為 0，member 為 PriceTimeKey 排序鍵 + 訂單（OrderCodec），排序完全精確。
+ * 撮合引擎改用 price-time 格式並以 OrderBookMigration 轉換既有資料後，再切換這個設定。
+ */
+@Component
+public class OrderBookLayout {
+
+    public static final String SCORE = "score";
+    public static final String PRICE_TIME = "price-time";
+
+    private final boolean priceTime;
+
+    public OrderBookLayout(@Value("${orderbook.redis.layout:score}") String layout) {
+        if (!SCORE.equals(layout) && !PRICE_TIME.equals(layout)) {
+            throw new IllegalArgumentException("Unsupported orderbook.redis.layout: " + layout);
+        }
+        this.priceTime = PRICE_TIME.equals(layout);
+    }
+
+    public boolean isPriceTime() {
+        return priceTime;
+    }
+
+    public String bookKey(String symbol, String side) {
+        return priceTime ? priceTimeKey(symbol, side) : legacyKey(symbol, side);
+    }
+
+    // ZSet member 中的訂單部分（JSON 或 OrderCodec 精簡格式）
+    public String orderJson(String member) {
+        return priceTime ? PriceTimeKey.body(member) : member;
+    }
+
+    public static String legacyKey(String symbol, String side) {
+        return symbol + ":" + side;
+    }
+
+    public static String priceTimeKey(String symbol, String side) {
+        return symbol + ":" + side + ":PT";
+    }
+
+    // 舊格式的 score；價差與時間差會互相抵銷，價格過大時也超出 double 的有效位數，只用於相容舊資料
+    public static double legacyScore(BigDecimal price, long modifiedAt, String side) {
+        int precision = 7;
+        BigDecimal pricePart = price.movePointRight(precision);
+        BigDecimal timePart = BigDecimal.valueOf(modifiedAt);
+        BigDecimal calculatedScore = Order.Side.BUY.name().equalsIgnoreCase(side)
+                ? pricePart.subtract(timePart)
+                : pricePart.add(timePart);
+        return calculatedScore.doubleValue();
+    }
+}
@@ -0,0 +1,156 @@
+package com.exchange.repository;
+
+import com.exchange.model.Order;
+import com.exchange.utils.PriceTimeKey;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 將舊格式的掛單簿（SYMBOL:SIDE，double score）轉換為 price-time 格式（SYMBOL:SIDE:PT），訂單改存為 OrderCodec 精簡格式。
+ * 以 orderbook.migration.enabled=true 啟動一次即執行，舊資料保留不動。
+ * 目標 key 已存在時（已轉換過，撮合引擎可能已在使用）拒絕執行，以免覆蓋或刪除線上的掛單簿；
+ * 確定要以舊資料重新轉換時才設定 orderbook.migration.force=true。
+ * 同價位的先後順序為 modifiedAt（毫秒）* PriceTimeKey.SEQUENCE_PER_MILLI 加上該訂單在舊掛單簿中同價位、同毫秒的名次，
+ * 因此同一毫秒內的訂單維持舊掛單簿的撮合順序，而不是依訂單內容（ID）排序；
+ * 舊格式本身只有毫秒精度（同 score 時 Redis 依 member 字典序），轉換不會比舊資料更精確，只是不再改變原本的順序。
+ * 轉換時會統計舊 score 撞在一起（價差與時間差抵銷或 double 精度不足）以及舊順序與精確順序不一致的筆數。
+ */
+@Component
+@ConditionalOnProperty(name = "orderbook.migration.enabled", havingValue = "true")
+public class OrderBookMigration implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderBookMigration.class);
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final RedisTemplate<String, String> redisTemplate;
+    private final OrderCodec orderCodec;
+    private final List<String> symbols;
+    private final boolean force;
+
+    public OrderBookMigration(RedisTemplate<String, String> redisTemplate, OrderCodec orderCodec,
+                              @Value("${exchange.symbols:BTCUSDT,ETHUSDT}") List<String> symbols,
+                              @Value("${orderbook.migration.force:false}") boolean force) {
+        this.redisTemplate = redisTemplate;
+        this.orderCodec = orderCodec;
+        this.symbols = symbols;
+        this.force = force;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        for (String symbol : symbols) {
+            for (Order.Side side : Order.Side.values()) {
+                try {
+                    MigrationResult result = migrate(symbol, side);
+                    logger.info("Migrated {}:{} to price-time layout: {} orders, {} skipped, {} aliased scores, {} reordered",
+                            symbol, side, result.getMigrated(), result.getSkipped(), result.getAliased(), result.getReordered());
+                } catch (Exception e) {
+                    logger.error("Failed to migrate {}:{} to price-time layout", symbol, side, e);
+                }
+            }
+        }
+    }
+
+    public MigrationResult migrate(String symbol, Order.Side side) {
+        String source = OrderBookLayout.legacyKey(symbol, side.name());
+        String target = OrderBookLayout.priceTimeKey(symbol, side.name());
+        if (!force && Boolean.TRUE.equals(redisTemplate.hasKey(target))) {
+            throw new IllegalStateException(target + " already exists; set orderbook.migration.force=true to overwrite it");
+        }
+        Set<ZSetOperations.TypedTuple<String>> legacy = redisTemplate.opsForZSet().rangeWithScores(source, 0, -1);
+        List<ZSetOperations.TypedTuple<String>> ordered = legacy != null ? new ArrayList<>(legacy) : new ArrayList<>();
+        // 舊格式的撮合順序：賣單 score 由小到大，買單由大到小
+        if (side == Order.Side.BUY) {
+            Collections.reverse(ordered);
+        }
+
+        List<String> members = new ArrayList<>(ordered.size());
+        Set<Double> scores = new HashSet<>();
+        // (tick, 毫秒) -> 已出現的筆數，即下一筆在同價位同毫秒中的名次
+        Map<String, Integer> ties = new HashMap<>();
+        int skipped = 0;
+        int aliased = 0;
+        int reordered = 0;
+        String previous = null;
+        for (ZSetOperations.TypedTuple<String> tuple : ordered) {
+            String member;
+            try {
+                Order order = orderCodec.decode(tuple.getValue());
+                long ticks = PriceTimeKey.toTicks(order.getPrice());
+                long millis = millisOf(order);
+                int rank = ties.getOrDefault(ticks + ":" + millis, 0);
+                member = PriceTimeKey.member(side, ticks, PriceTimeKey.sequence(millis, rank), orderCodec.encode(order));
+                ties.put(ticks + ":" + millis, rank + 1);
+            } catch (Exception e) {
+                logger.warn("Skipping unmigratable order in {}: {}", source, e.getMessage());
+                skipped++;
+                continue;
+            }
+            if (tuple.getScore() != null && !scores.add(tuple.getScore())) {
+                aliased++;
+            }
+            if (previous != null && previous.compareTo(member) > 0) {
+                reordered++;
+            }
+            previous = member;
+            members.add(member);
+        }
+
+        // 先寫入暫存 key 再 RENAME，讀取端不會看到寫到一半的掛單簿
+        String staging = target + ":migrating";
+        redisTemplate.delete(staging);
+        for (int from = 0; from < members.size(); from += BATCH_SIZE) {
+            Set<ZSetOperations.TypedTuple<String>> batch = new HashSet<>();
+            for (String member : members.subList(from, Math.min(from + BATCH_SIZE, members.size()))) {
+                batch.add(new DefaultTypedTuple<>(member, 0.0));
+            }
+            redisTemplate.opsForZSet().add(staging, batch);
+        }
+        if (force) {
+            if (members.isEmpty()) {
+                redisTemplate.delete(target);
+            } else {
+                redisTemplate.rename(staging, target);
+            }
+        } else if (!members.isEmpty() && !Boolean.TRUE.equals(redisTemplate.renameIfAbsent(staging, target))) {
+            // 轉換期間撮合引擎已建立目標 key
+            redisTemplate.delete(staging);
+            throw new IllegalStateException(target + " was created during migration; set orderbook.migration.force=true to overwrite it");
+        }
+        return new MigrationResult(members.size(), skipped, aliased, reordered);
+    }
+
+    private long millisOf(Order order) {
+        Instant time = order.getModifiedAt() != null ? order.getModifiedAt() : order.getCreatedAt();
+        return time != null ? time.toEpochMilli() : 0L;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class MigrationResult {
+        private final int migrated;
+        private final int skipped;
+        private final int aliased;   // 與其他訂單 score 相同的筆數
+        private final int reordered; // 舊順序中排在精確順序之後的相鄰筆數
+    }
+}
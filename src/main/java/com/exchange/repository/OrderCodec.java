@@ -0,0 +1,248 @@
+package com.exchange.repository;
+
+import com.exchange.dto.OrderDTO;
+import com.exchange.model.Order;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+
+/**
+ * Redis 中掛單的編碼（掛單簿 member 的訂單部分、user-orders 索引的值）。
+ * 精簡格式 v1 為以 | 分隔的固定欄位，空欄位代表 null：
+ *   1|id|userId|symbol|side|orderType|status|price|quantity|filledQuantity|unfilledQuantity|stopPrice|takeProfitPrice|createdAt|updatedAt|modifiedAt
+ * side / orderType / status 為列舉的 ordinal（新增列舉值只能加在最後），時間為 epoch 毫秒，數量去掉尾端的 0。
+ * 撮合引擎寫入的仍是 Jackson JSON，讀取時以第一個字元判斷：'{' 為 JSON，其餘為精簡格式。
+ * 欄位位置與 RedisOrderRepository 的 Lua 腳本共用，調整時需要一起修改並提高版本。
+ */
+@Component
+public class OrderCodec {
+
+    public static final String VERSION = "1";
+    public static final char SEPARATOR = '|';
+
+    // 欄位位置（從 0 開始），Lua 腳本中為位置 + 1
+    static final int ID = 1;
+    static final int USER_ID = 2;
+    static final int FILLED_QUANTITY = 9;
+    private static final int FIELD_COUNT = 16;
+
+    private static final Order.Side[] SIDES = Order.Side.values();
+    private static final Order.OrderType[] ORDER_TYPES = Order.OrderType.values();
+    private static final Order.OrderStatus[] STATUSES = Order.OrderStatus.values();
+
+    private final ObjectMapper objectMapper;
+
+    public OrderCodec(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // 快照只需要價格與未成交數量
+    @Getter
+    @AllArgsConstructor
+    public static class Level {
+        private final BigDecimal price;
+        private final BigDecimal unfilledQuantity;
+    }
+
+    public String encode(Order order) {
+        StringBuilder out = new StringBuilder(128).append(VERSION);
+        appendText(out, order.getId());
+        appendText(out, order.getUserId());
+        appendText(out, order.getSymbol());
+        appendOrdinal(out, order.getSide());
+        appendOrdinal(out, order.getOrderType());
+        appendOrdinal(out, order.getStatus());
+        appendDecimal(out, order.getPrice());
+        appendDecimal(out, order.getQuantity());
+        appendDecimal(out, order.getFilledQuantity());
+        appendDecimal(out, order.getUnfilledQuantity());
+        appendDecimal(out, order.getStopPrice());
+        appendDecimal(out, order.getTakeProfitPrice());
+        appendMillis(out, order.getCreatedAt());
+        appendMillis(out, order.getUpdatedAt());
+        appendMillis(out, order.getModifiedAt());
+        return out.toString();
+    }
+
+    public String encode(OrderDTO order) {
+        StringBuilder out = new StringBuilder(128).append(VERSION);
+        appendText(out, order.getId());
+        appendText(out, order.getUserId());
+        appendText(out, order.getSymbol());
+        appendOrdinal(out, order.getSide() != null ? Order.Side.valueOf(order.getSide()) : null);
+        appendOrdinal(out, order.getOrderType() != null ? Order.OrderType.valueOf(order.getOrderType()) : null);
+        appendOrdinal(out, order.getStatus() != null ? Order.OrderStatus.valueOf(order.getStatus()) : null);
+        appendDecimal(out, order.getPrice());
+        appendDecimal(out, order.getQuantity());
+        appendDecimal(out, order.getFilledQuantity());
+        appendDecimal(out, order.getUnfilledQuantity());
+        appendDecimal(out, order.getStopPrice());
+        appendDecimal(out, order.getTakeProfitPrice());
+        appendMillis(out, order.getCreatedAt() != null ? order.getCreatedAt().toInstant() : null);
+        appendMillis(out, order.getUpdatedAt() != null ? order.getUpdatedAt().toInstant() : null);
+        appendMillis(out, order.getModifiedAt() != null ? order.getModifiedAt().toInstant() : null);
+        return out.toString();
+    }
+
+    public Order decode(String value) throws IOException {
+        if (isJson(value)) {
+            return objectMapper.readValue(value, Order.class);
+        }
+        String[] fields = split(value);
+        Order order = new Order();
+        order.setId(text(fields[ID]));
+        order.setUserId(text(fields[USER_ID]));
+        order.setSymbol(text(fields[3]));
+        order.setSide(ordinal(SIDES, fields[4]));
+        order.setOrderType(ordinal(ORDER_TYPES, fields[5]));
+        order.setStatus(ordinal(STATUSES, fields[6]));
+        order.setPrice(decimal(fields[7]));
+        order.setQuantity(decimal(fields[8]));
+        order.setFilledQuantity(decimal(fields[FILLED_QUANTITY]));
+        order.setUnfilledQuantity(decimal(fields[10]));
+        order.setStopPrice(decimal(fields[11]));
+        order.setTakeProfitPrice(decimal(fields[12]));
+        order.setCreatedAt(instant(fields[13]));
+        order.setUpdatedAt(instant(fields[14]));
+        order.setModifiedAt(instant(fields[15]));
+        return order;
+    }
+
+    public OrderDTO decodeDto(String value) throws IOException {
+        if (isJson(value)) {
+            return objectMapper.readValue(value, OrderDTO.class);
+        }
+        String[] fields = split(value);
+        OrderDTO order = new OrderDTO();
+        order.setId(text(fields[ID]));
+        order.setUserId(text(fields[USER_ID]));
+        order.setSymbol(text(fields[3]));
+        order.setSide(name(ordinal(SIDES, fields[4])));
+        order.setOrderType(name(ordinal(ORDER_TYPES, fields[5])));
+        order.setStatus(name(ordinal(STATUSES, fields[6])));
+        order.setPrice(decimal(fields[7]));
+        order.setQuantity(decimal(fields[8]));
+        order.setFilledQuantity(decimal(fields[FILLED_QUANTITY]));
+        order.setUnfilledQuantity(decimal(fields[10]));
+        order.setStopPrice(decimal(fields[11]));
+        order.setTakeProfitPrice(decimal(fields[12]));
+        order.setCreatedAt(zoned(fields[13]));
+        order.setUpdatedAt(zoned(fields[14]));
+        order.setModifiedAt(zoned(fields[15]));
+        return order;
+    }
+
+    // 只讀出價格與未成交數量：精簡格式直接取欄位，JSON 以串流方式略過其他欄位，不建立 Order
+    public Level decodeLevel(String value) throws IOException {
+        if (!isJson(value)) {
+            String[] fields = split(value);
+            return new Level(decimal(fields[7]), decimal(fields[10]));
+        }
+        BigDecimal price = null;
+        BigDecimal unfilledQuantity = null;
+        try (JsonParser parser = objectMapper.getFactory().createParser(value)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new IOException("Order JSON is not an object");
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken token = parser.nextToken();
+                if ("price".equals(field) && token != JsonToken.VALUE_NULL) {
+                    price = new BigDecimal(parser.getText());
+                } else if ("unfilledQuantity".equals(field) && token != JsonToken.VALUE_NULL) {
+                    unfilledQuantity = new BigDecimal(parser.getText());
+                } else {
+                    parser.skipChildren();
+                }
+            }
+        }
+        return new Level(price, unfilledQuantity);
+    }
+
+    public static boolean isJson(String value) {
+        return !value.isEmpty() && value.charAt(0) == '{';
+    }
+
+    private static String[] split(String value) {
+        String[] fields = new String[FIELD_COUNT];
+        int count = 0;
+        int start = 0;
+        for (int i = 0; i <= value.length(); i++) {
+            if (i == value.length() || value.charAt(i) == SEPARATOR) {
+                if (count == FIELD_COUNT) {
+                    throw new IllegalArgumentException("Too many fields in encoded order");
+                }
+                fields[count++] = value.substring(start, i);
+                start = i + 1;
+            }
+        }
+        if (count != FIELD_COUNT || !VERSION.equals(fields[0])) {
+            throw new IllegalArgumentException("Unsupported encoded order: version " + fields[0] + ", " + count + " fields");
+        }
+        return fields;
+    }
+
+    private static void appendText(StringBuilder out, String value) {
+        out.append(SEPARATOR);
+        if (value != null) {
+            if (value.indexOf(SEPARATOR) >= 0) {
+                throw new IllegalArgumentException("Order field contains separator: " + value);
+            }
+            out.append(value);
+        }
+    }
+
+    private static void appendOrdinal(StringBuilder out, Enum<?> value) {
+        out.append(SEPARATOR);
+        if (value != null) {
+            out.append(value.ordinal());
+        }
+    }
+
+    private static void appendDecimal(StringBuilder out, BigDecimal value) {
+        out.append(SEPARATOR);
+        if (value != null) {
+            out.append(value.signum() == 0 ? "0" : value.stripTrailingZeros().toPlainString());
+        }
+    }
+
+    private static void appendMillis(StringBuilder out, Instant value) {
+        out.append(SEPARATOR);
+        if (value != null) {
+            out.append(value.toEpochMilli());
+        }
+    }
+
+    private static String text(String field) {
+        return field.isEmpty() ? null : field;
+    }
+
+    private static <E> E ordinal(E[] values, String field) {
+        return field.isEmpty() ? null : values[Integer.parseInt(field)];
+    }
+
+    private static String name(Enum<?> value) {
+        return value != null ? value.name() : null;
+    }
+
+    private static BigDecimal decimal(String field) {
+        return field.isEmpty() ? null : new BigDecimal(field);
+    }
+
+    private static Instant instant(String field) {
+        return field.isEmpty() ? null : Instant.ofEpochMilli(Long.parseLong(field));
+    }
+
+    private static ZonedDateTime zoned(String field) {
+        return field.isEmpty() ? null : Instant.ofEpochMilli(Long.parseLong(field)).atZone(ZoneOffset.UTC);
+    }
+}
@@ -1,6 +1,7 @@
 package com.exchange.repository;
 
 import com.exchange.model.Order;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -11,21 +12,25 @@ import java.util.List;
 @Repository
 public interface OrderRepository extends JpaRepository<Order, String> {
 
+    // 歷史委託的 keyset 分頁：依 (createdAt, id) 由新到舊，before* 為上一頁最後一筆（第一頁為 null）
     @Query("SELECT o FROM Order o WHERE o.userId = :userId " +
             "AND (:symbol IS NULL OR o.symbol = :symbol) " +
             "AND o.createdAt BETWEEN :startTime AND :endTime " +
             "AND (:orderType IS NULL OR o.orderType = :orderType) " +
             "AND (:side IS NULL OR o.side = :side) " +
             "AND (:status IS NULL OR o.status = :status) " +
-            "ORDER BY o.createdAt DESC")
-    List<Order> findOrderHistory(String userId,
-                                 String symbol,
-                                 Instant startTime,
-                                 Instant endTime,
-                                 Order.OrderType orderType,
-                                 Order.Side side,
-                                 Order.OrderStatus status);
-
-    List<Order> findByUserIdAndUpdatedAtBetween(String userId, Instant startTime, Instant endTime);
+            "AND (:beforeCreatedAt IS NULL OR o.createdAt < :beforeCreatedAt " +
+            "     OR (o.createdAt = :beforeCreatedAt AND o.id < :beforeId)) " +
+            "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Order> findOrderHistoryPage(String userId,
+                                     String symbol,
+                                     Instant startTime,
+                                     Instant endTime,
+                                     Order.OrderType orderType,
+                                     Order.Side side,
+                                     Order.OrderStatus status,
+                                     Instant beforeCreatedAt,
+                                     String beforeId,
+                                     Pageable pageable);
 
 }
\ No newline at end of file
@@ -1,53 +1,430 @@
 package com.exchange.repository;
 
 import com.exchange.dto.OrderDTO;
-import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.exchange.model.Order;
+import com.exchange.utils.PriceTimeKey;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Repository;
 
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
 
+/**
+ * 掛單簿（SYMBOL:BUY / SYMBOL:SELL ZSet，格式見 OrderBookLayout）之外，另外維護每個用戶的未成交訂單索引：
+ * user-orders:{userId} 為 orderId -> 訂單（OrderCodec 精簡格式）的 Hash，open-order-users 記錄有索引的用戶；
+ * order-members 為 orderId -> ZSet member 的 Hash，取消/修改以 orderId 直接定位訂單。
+ * 查詢用戶掛單只需讀取自己的 Hash，不再掃描整個掛單簿。
+ * 索引由 user-order-updates 更新，本服務從 ZSet 移除訂單時以 Lua 腳本同時移除索引；
+ * 撮合引擎不會經過這裡；索引不存在（首次部署、Redis 清空，或刪除 user-orders:built 要求重建）時，
+ * 啟動後由取得 Redis 鎖的一個實例從掛單簿重建。重建讀取掛單簿之後套用的更新不會被還原：
+ * 快照中的訂單只有在 member 仍在掛單簿中時才寫入，不在快照中的索引只有在其 member 已不在任何掛單簿時才移除。
+ */
 @Repository
 public class RedisOrderRepository {
 
+    private static final Logger logger = LoggerFactory.getLogger(RedisOrderRepository.class);
+
+    static final String USER_INDEX_PREFIX = "user-orders:";
+    static final String INDEXED_USERS_KEY = "open-order-users";
+    static final String ORDER_MEMBERS_KEY = "order-members";
+    // 索引已建立的標記，刪除後下次啟動會重建
+    static final String INDEX_BUILT_KEY = "user-orders:built";
+    static final String REBUILD_LOCK_KEY = "user-orders:rebuild-lock";
+
+    // KEYS: 用戶索引, 用戶集合, 訂單位置；ARGV: orderId, userId
+    private static final RedisScript<Long> INDEX_REMOVE = new DefaultRedisScript<>(
+            "local removed = redis.call('HDEL', KEYS[1], ARGV[1]) " +
+            "if redis.call('HLEN', KEYS[1]) == 0 then redis.call('SREM', KEYS[2], ARGV[2]) end " +
+            "redis.call('HDEL', KEYS[3], ARGV[1]) " +
+            "return removed", Long.class);
+
+    /*
+     * 取消/修改（與更新索引時定位訂單）共用的 Lua 函式，在一次往返內完成：查詢、驗證、移除。
+     * remove_one 回傳 1, 訂單（JSON 或 OrderCodec 精簡格式）成功；0 找不到；-1 不是該用戶的訂單；-2 修改後數量不大於已成交數量
+     * find_member 先以 orderId 取得 ZSet member；索引中沒有（或已不是 ZSet 成員）時才在提示的價位內比對 id：
+     * score 格式用 ZRANGEBYSCORE，price-time 格式用 ZRANGEBYLEX（精確的價位範圍）。
+     */
+    private static final String REMOVE_FUNCTIONS =
+            "local function body(layout, m) if layout == 'price-time' then return string.sub(m, " + (PriceTimeKey.KEY_LENGTH + 2) + ") end return m end " +
+            "local function decode(b) " +
+            "  if string.sub(b, 1, 1) == '{' then return cjson.decode(b) end " +
+            "  local f = {} local s = 1 " +
+            "  while true do " +
+            "    local e = string.find(b, '" + OrderCodec.SEPARATOR + "', s, true) " +
+            "    if not e then f[#f + 1] = string.sub(b, s) break end " +
+            "    f[#f + 1] = string.sub(b, s, e - 1) s = e + 1 " +
+            "  end " +
+            "  return {id = f[" + (OrderCodec.ID + 1) + "], userId = f[" + (OrderCodec.USER_ID + 1) + "], " +
+            "filledQuantity = f[" + (OrderCodec.FILLED_QUANTITY + 1) + "]} " +
+            "end " +
+            "local function find_member(book, members, layout, orderId, rmin, rmax) " +
+            "  local member = redis.call('HGET', members, orderId) " +
+            "  if member and redis.call('ZSCORE', book, member) then return member, decode(body(layout, member)) end " +
+            "  if rmin == '' then return false end " +
+            "  local candidates " +
+            "  if layout == 'price-time' then candidates = redis.call('ZRANGEBYLEX', book, rmin, rmax) " +
+            "  else candidates = redis.call('ZRANGEBYSCORE', book, rmin, rmax) end " +
+            "  for _, candidate in ipairs(candidates) do " +
+            "    local decoded = decode(body(layout, candidate)) " +
+            "    if tostring(decoded.id) == orderId then return candidate, decoded end " +
+            "  end " +
+            "  return false " +
+            "end " +
+            "local function remove_one(book, members, index, users, layout, orderId, userId, rmin, rmax, newQty) " +
+            "  local member, order = find_member(book, members, layout, orderId, rmin, rmax) " +
+            "  if not member then return 0 end " +
+            "  if tostring(order.userId) ~= userId then return -1 end " +
+            "  if newQty ~= '' and tonumber(newQty) <= (tonumber(order.filledQuantity) or 0) then return -2 end " +
+            "  redis.call('ZREM', book, member) " +
+            "  redis.call('HDEL', members, orderId) " +
+            "  redis.call('HDEL', index, orderId) " +
+            "  if redis.call('HLEN', index) == 0 then redis.call('SREM', users, userId) end " +
+            "  return 1, body(layout, member) " +
+            "end ";
+
+    // KEYS: 用戶索引, 用戶集合, 訂單位置, 掛單簿 ZSet
+    // ARGV: orderId, 編碼後的訂單, userId, 撮合引擎寫入的訂單 JSON, 格式, 價位範圍下限（可為空字串）, 價位範圍上限
+    // 訂單 JSON 與 ZSet member 完全相同時直接記錄（回傳 1）；否則以 orderId 在該價位內找出 member（回傳 2），
+    // 欄位順序或數字格式與撮合引擎寫入的不同時也能定位；都找不到時保留原本的位置並回傳 0
+    private static final RedisScript<Long> INDEX_UPSERT = new DefaultRedisScript<>(
+            REMOVE_FUNCTIONS +
+            "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2]) " +
+            "redis.call('SADD', KEYS[2], ARGV[3]) " +
+            "if redis.call('ZSCORE', KEYS[4], ARGV[4]) then redis.call('HSET', KEYS[3], ARGV[1], ARGV[4]) return 1 end " +
+            "local member = find_member(KEYS[4], KEYS[3], ARGV[5], ARGV[1], ARGV[6], ARGV[7]) " +
+            "if member then redis.call('HSET', KEYS[3], ARGV[1], member) return 2 end " +
+            "return 0", Long.class);
+
+    // KEYS: 掛單簿 ZSet, 訂單位置, 用戶索引, 用戶集合
+    // ARGV: orderId, userId, 價位範圍下限（可為空字串）, 修改後數量（取消時為空字串）, 格式（score / price-time）, 價位範圍上限
+    // 回傳 {1, 訂單} 或 {狀態碼}
+    private static final RedisScript<List> ORDER_REMOVE = new DefaultRedisScript<>(
+            REMOVE_FUNCTIONS +
+            "local code, order = remove_one(KEYS[1], KEYS[2], KEYS[3], KEYS[4], ARGV[5], ARGV[1], ARGV[2], ARGV[3], ARGV[6], ARGV[4]) " +
+            "if code == 1 then return {1, order} end " +
+            "return {code}", List.class);
+
+    // 批次取消。KEYS: 訂單位置, 用戶索引, 用戶集合, 之後為各個掛單簿 ZSet
+    // ARGV: userId, 格式, 之後每四個一組：掛單簿在 KEYS 中的位置（從 1 開始，不含前三個）, orderId, 價位範圍下限, 價位範圍上限
+    // 回傳每筆訂單兩個元素：狀態碼, 訂單（未移除時為空字串）
+    private static final RedisScript<List> ORDER_REMOVE_BATCH = new DefaultRedisScript<>(
+            REMOVE_FUNCTIONS +
+            "local result = {} " +
+            "for i = 3, #ARGV, 4 do " +
+            "  local code, order = remove_one(KEYS[3 + tonumber(ARGV[i])], KEYS[1], KEYS[2], KEYS[3], ARGV[2], ARGV[i + 1], ARGV[1], ARGV[i + 2], ARGV[i + 3], '') " +
+            "  result[#result + 1] = code " +
+            "  result[#result + 1] = order or '' " +
+            "end " +
+            "return result", List.class);
+
+    // KEYS: 用戶索引, 用戶集合, 訂單位置, 之後為所有掛單簿 ZSet
+    // ARGV: userId, 之後每四個一組 orderId, 編碼後的訂單, ZSet member, 掛單簿在 KEYS 中的位置（從 1 開始，不含前三個）
+    // 以快照合併而不是整個取代：快照讀取之後才成交/取消/修改的訂單（member 已不在掛單簿）不寫入，
+    // 不在快照中的索引（快照之後才新增）只有在記錄的 member 已不在任何掛單簿時才移除；回傳合併後的訂單數
+    private static final RedisScript<Long> INDEX_REPLACE = new DefaultRedisScript<>(
+            "local snapshot = {} " +
+            "for i = 2, #ARGV, 4 do snapshot[ARGV[i]] = true end " +
+            "local function in_books(member) " +
+            "  for k = 4, #KEYS do if redis.call('ZSCORE', KEYS[k], member) then return true end end " +
+            "  return false " +
+            "end " +
+            "for _, orderId in ipairs(redis.call('HKEYS', KEYS[1])) do " +
+            "  if not snapshot[orderId] then " +
+            "    local member = redis.call('HGET', KEYS[3], orderId) " +
+            "    if not member or not in_books(member) then " +
+            "      redis.call('HDEL', KEYS[1], orderId) " +
+            "      redis.call('HDEL', KEYS[3], orderId) " +
+            "    end " +
+            "  end " +
+            "end " +
+            "for i = 2, #ARGV, 4 do " +
+            "  if redis.call('ZSCORE', KEYS[3 + tonumber(ARGV[i + 3])], ARGV[i + 2]) then " +
+            "    redis.call('HSET', KEYS[1], ARGV[i], ARGV[i + 1]) " +
+            "    redis.call('HSET', KEYS[3], ARGV[i], ARGV[i + 2]) " +
+            "  end " +
+            "end " +
+            "local count = redis.call('HLEN', KEYS[1]) " +
+            "if count > 0 then redis.call('SADD', KEYS[2], ARGV[1]) else redis.call('SREM', KEYS[2], ARGV[1]) end " +
+            "return count", Long.class);
+
+    // 只有自己持有時才釋放重建鎖
+    private static final RedisScript<Long> UNLOCK = new DefaultRedisScript<>(
+            "if redis.call('GET', KEYS[1]) == ARGV[1] then return redis.call('DEL', KEYS[1]) end return 0", Long.class);
+
+    public enum RemoveStatus {
+        REMOVED, NOT_FOUND, FORBIDDEN, QUANTITY_TOO_LOW
+    }
+
+    // 批次取消的單筆請求；price / modifiedAt 只是查詢提示，可為 null
+    @Getter
+    @AllArgsConstructor
+    public static class RemoveRequest {
+        private final String symbol;
+        private final String side;
+        private final String orderId;
+        private final BigDecimal price;
+        private final Long modifiedAt;
+    }
+
+    // 移除結果；REMOVED 時 encodedOrder 為被移除的訂單，以 OrderCodec.decode 解碼
+    @Getter
+    @AllArgsConstructor
+    public static class RemoveResult {
+        private final RemoveStatus status;
+        private final String encodedOrder;
+    }
+
+    // 更新索引時在掛單簿中找不到訂單的次數（訂單位置沒有更新，之後取消/修改需要依價位查詢）
+    private final LongAdder memberMisses = new LongAdder();
+
     private final RedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper objectMapper;
+    private final OrderCodec codec;
+    private final OrderBookLayout layout;
+    private final List<String> symbols;
+    private final Duration rebuildLockTtl;
 
     @Autowired
-    public RedisOrderRepository(RedisTemplate<String, String> redisTemplate, ObjectMapper objectMapper) {
+    public RedisOrderRepository(RedisTemplate<String, String> redisTemplate, OrderCodec codec, OrderBookLayout layout,
+                                @Value("${exchange.symbols:BTCUSDT,ETHUSDT}") List<String> symbols,
+                                @Value("${orders.user-index.rebuild-lock-seconds:300}") long rebuildLockSeconds) {
         this.redisTemplate = redisTemplate;
-        this.objectMapper = objectMapper;
+        this.codec = codec;
+        this.layout = layout;
+        this.symbols = symbols;
+        this.rebuildLockTtl = Duration.ofSeconds(rebuildLockSeconds);
     }
 
+    // 只讀取該用戶的索引，成本與用戶自己的掛單數成正比
     public List<OrderDTO> getUserOrders(String userId) {
         List<OrderDTO> orders = new ArrayList<>();
-        String[] symbols = {"BTCUSDT","ETHUSDT"}; // 可以擴展到更多交易對
-        String[] sides = {"BUY", "SELL"};
+        List<Object> encodedOrders = redisTemplate.opsForHash().values(userIndexKey(userId));
+        for (Object encodedOrder : encodedOrders) {
+            try {
+                // 舊版本寫入的 JSON 也可以讀取
+                orders.add(codec.decodeDto((String) encodedOrder));
+            } catch (IOException | IllegalArgumentException e) {
+                logger.warn("Skipping malformed indexed order for user {}: {}", userId, e.getMessage());
+            }
+        }
+        return orders;
+    }
+
+    // 依訂單狀態更新索引：未成交/部分成交以精簡格式寫入，其餘（完全成交、取消）移除
+    // orderJson 為 user-order-updates 的原始消息，用來比對撮合引擎寫入掛單簿的 member
+    public void applyOrderUpdate(OrderDTO order, String orderJson) {
+        if (order.getId() == null || order.getUserId() == null) {
+            return;
+        }
+        if (isOpen(order.getStatus())) {
+            List<String> keys = new ArrayList<>(indexKeys(order.getUserId()));
+            keys.add(layout.bookKey(order.getSymbol(), order.getSide()));
+            String[] range = levelRange(order.getSide(), order.getPrice(),
+                    order.getModifiedAt() != null ? order.getModifiedAt().toInstant().toEpochMilli() : null);
+            Long located = redisTemplate.execute(INDEX_UPSERT, keys, order.getId(), codec.encode(order), order.getUserId(),
+                    orderJson, layoutName(), range[0], range[1]);
+            if (located != null && located == 0) {
+                memberMisses.increment();
+                logger.warn("Order {} not found in {} while indexing; its book position was not updated",
+                        order.getId(), keys.get(3));
+            }
+        } else {
+            redisTemplate.execute(INDEX_REMOVE, indexKeys(order.getUserId()), order.getId(), order.getUserId());
+        }
+    }
+
+    // 以 orderId 從掛單簿移除訂單並同步移除索引，查詢、擁有者檢查與移除在同一個 Lua 腳本內完成
+    // price（score 格式還需要 modifiedAt）只在索引沒有該訂單時用來縮小範圍，可為 null；
+    // newQuantity 不為 null 時為修改，需大於已成交數量
+    public RemoveResult removeOrder(String symbol, String side, String orderId, String userId,
+                                    BigDecimal price, Long modifiedAt, BigDecimal newQuantity) {
+        String[] range = levelRange(side, price, modifiedAt);
+        List<?> result = redisTemplate.execute(ORDER_REMOVE,
+                List.of(layout.bookKey(symbol, side), ORDER_MEMBERS_KEY, userIndexKey(userId), INDEXED_USERS_KEY),
+                orderId, userId, range[0],
+                newQuantity != null ? newQuantity.toPlainString() : "",
+                layoutName(),
+                range[1]);
+        if (result == null || result.isEmpty()) {
+            return new RemoveResult(RemoveStatus.NOT_FOUND, null);
+        }
+        return toRemoveResult(((Number) result.get(0)).longValue(), result.size() > 1 ? (String) result.get(1) : null);
+    }
+
+    // 批次取消同一個用戶的多筆訂單，整批在一次 Lua 腳本呼叫中完成；結果順序與請求相同
+    public List<RemoveResult> removeOrders(String userId, List<RemoveRequest> requests) {
+        List<String> keys = new ArrayList<>(List.of(ORDER_MEMBERS_KEY, userIndexKey(userId), INDEXED_USERS_KEY));
+        Map<String, Integer> bookPositions = new HashMap<>();
+        Object[] args = new Object[2 + requests.size() * 4];
+        args[0] = userId;
+        args[1] = layoutName();
+        int i = 2;
+        for (RemoveRequest request : requests) {
+            String bookKey = layout.bookKey(request.getSymbol(), request.getSide());
+            Integer position = bookPositions.get(bookKey);
+            if (position == null) {
+                keys.add(bookKey);
+                position = bookPositions.size() + 1;
+                bookPositions.put(bookKey, position);
+            }
+            String[] range = levelRange(request.getSide(), request.getPrice(), request.getModifiedAt());
+            args[i++] = String.valueOf(position);
+            args[i++] = request.getOrderId();
+            args[i++] = range[0];
+            args[i++] = range[1];
+        }
+        List<?> result = redisTemplate.execute(ORDER_REMOVE_BATCH, keys, args);
+        List<RemoveResult> results = new ArrayList<>(requests.size());
+        for (int j = 0; j < requests.size(); j++) {
+            if (result == null || result.size() < 2 * (j + 1)) {
+                results.add(new RemoveResult(RemoveStatus.NOT_FOUND, null));
+                continue;
+            }
+            results.add(toRemoveResult(((Number) result.get(2 * j)).longValue(), (String) result.get(2 * j + 1)));
+        }
+        return results;
+    }
+
+    // 索引沒有訂單時的查詢範圍：price-time 為精確價位，score 格式需要 price 與 modifiedAt 算出舊的 score
+    private String[] levelRange(String side, BigDecimal price, Long modifiedAt) {
+        if (layout.isPriceTime() && price != null) {
+            Order.Side orderSide = Order.Side.valueOf(side.toUpperCase());
+            long ticks = PriceTimeKey.toTicks(price);
+            return new String[]{PriceTimeKey.levelMin(orderSide, ticks), PriceTimeKey.levelMax(orderSide, ticks)};
+        }
+        if (!layout.isPriceTime() && price != null && modifiedAt != null) {
+            String score = BigDecimal.valueOf(OrderBookLayout.legacyScore(price, modifiedAt, side)).toPlainString();
+            return new String[]{score, score};
+        }
+        return new String[]{"", ""};
+    }
+
+    private String layoutName() {
+        return layout.isPriceTime() ? OrderBookLayout.PRICE_TIME : OrderBookLayout.SCORE;
+    }
+
+    private RemoveResult toRemoveResult(long code, String encodedOrder) {
+        if (code == 1) {
+            return new RemoveResult(RemoveStatus.REMOVED, encodedOrder);
+        }
+        if (code == -1) {
+            return new RemoveResult(RemoveStatus.FORBIDDEN, null);
+        }
+        if (code == -2) {
+            return new RemoveResult(RemoveStatus.QUANTITY_TOO_LOW, null);
+        }
+        return new RemoveResult(RemoveStatus.NOT_FOUND, null);
+    }
+
+    // 索引已建立時不重建；多個實例同時啟動時只有取得鎖的實例重建
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuildUserIndexOnStartup() {
+        try {
+            if (Boolean.TRUE.equals(redisTemplate.hasKey(INDEX_BUILT_KEY))) {
+                logger.info("Open-order index already built, skipping rebuild");
+                return;
+            }
+            String token = UUID.randomUUID().toString();
+            if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(REBUILD_LOCK_KEY, token, rebuildLockTtl))) {
+                logger.info("Open-order index is being rebuilt by another instance");
+                return;
+            }
+            try {
+                int users = rebuildUserIndex();
+                redisTemplate.opsForValue().set(INDEX_BUILT_KEY, String.valueOf(System.currentTimeMillis()));
+                logger.info("Rebuilt open-order index for {} users", users);
+            } finally {
+                redisTemplate.execute(UNLOCK, List.of(REBUILD_LOCK_KEY), token);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to rebuild open-order index", e);
+        }
+    }
 
+    // 由所有設定的交易對掛單簿重建索引，回傳有掛單的用戶數；不在用戶連線時掃描
+    // 每個用戶以 INDEX_REPLACE 與快照合併，重建期間 user-order-updates 套用的更新不會被還原
+    public int rebuildUserIndex() {
+        List<String> bookKeys = new ArrayList<>();
+        // userId -> orderId -> {編碼後的訂單, ZSet member, 掛單簿位置}
+        Map<String, Map<String, String[]>> byUser = new HashMap<>();
         for (String symbol : symbols) {
-            for (String side : sides) {
-                String key = symbol + ":" + side;
-                Set<String> orderSet = redisTemplate.opsForZSet().range(key, 0, -1);
-
-                if (orderSet != null) {
-                    for (String orderJson : orderSet) {
-                        try {
-                            OrderDTO order = objectMapper.readValue(orderJson, OrderDTO.class);
-                            if (order.getUserId().equals(userId)) {
-                                orders.add(order);
-                            }
-                        } catch (JsonProcessingException e) {
-                            e.printStackTrace();
-                        }
+            for (Order.Side side : Order.Side.values()) {
+                String bookKey = layout.bookKey(symbol, side.name());
+                bookKeys.add(bookKey);
+                String position = String.valueOf(bookKeys.size());
+                Set<String> orderSet = redisTemplate.opsForZSet().range(bookKey, 0, -1);
+                if (orderSet == null) {
+                    continue;
+                }
+                for (String member : orderSet) {
+                    try {
+                        OrderDTO order = codec.decodeDto(layout.orderJson(member));
+                        byUser.computeIfAbsent(order.getUserId(), k -> new HashMap<>())
+                                .put(order.getId(), new String[]{codec.encode(order), member, position});
+                    } catch (IOException | IllegalArgumentException e) {
+                        logger.warn("Skipping malformed order in {}:{}: {}", symbol, side, e.getMessage());
                     }
                 }
             }
         }
 
-        return orders;
+        // 已不在掛單簿中的用戶也要清掉舊索引
+        Set<String> users = new HashSet<>(byUser.keySet());
+        Set<String> indexed = redisTemplate.opsForSet().members(INDEXED_USERS_KEY);
+        if (indexed != null) {
+            users.addAll(indexed);
+        }
+        for (String userId : users) {
+            Map<String, String[]> orders = byUser.getOrDefault(userId, Map.of());
+            Object[] args = new Object[1 + orders.size() * 4];
+            args[0] = userId;
+            int i = 1;
+            for (Map.Entry<String, String[]> entry : orders.entrySet()) {
+                args[i++] = entry.getKey();
+                args[i++] = entry.getValue()[0];
+                args[i++] = entry.getValue()[1];
+                args[i++] = entry.getValue()[2];
+            }
+            List<String> keys = new ArrayList<>(indexKeys(userId));
+            keys.addAll(bookKeys);
+            redisTemplate.execute(INDEX_REPLACE, keys, args);
+        }
+        return byUser.size();
+    }
+
+    public long getMemberMisses() {
+        return memberMisses.sum();
+    }
+
+    private boolean isOpen(String status) {
+        return status == null
+                || Order.OrderStatus.PENDING.name().equals(status)
+                || Order.OrderStatus.PARTIALLY_FILLED.name().equals(status);
+    }
+
+    private List<String> indexKeys(String userId) {
+        return List.of(userIndexKey(userId), INDEXED_USERS_KEY, ORDER_MEMBERS_KEY);
+    }
+
+    static String userIndexKey(String userId) {
+        return USER_INDEX_PREFIX + userId;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,342 @@
+package com.exchange.repository;
+
+import com.exchange.model.MarketData;
+import com.exchange.model.Order;
+import com.exchange.model.Trade;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 已從 MySQL 移出的冷資料（整個月份分區）保存在檔案系統：{dir}/{table}/{symbol}/{yyyy-MM}.tsv.gz，
+ * 每個檔案是 gzip 壓縮的 tab 分隔文字，第一行為欄位名稱（順序同 TimeSeriesTable.columns），NULL 寫成 \N，時間為 ISO-8601 UTC。
+ * 查詢舊的時間範圍時只讀取該 symbol 與範圍重疊的月份檔案。
+ * 歸檔只由取得鎖的一個實例寫入，但每個實例都會讀取，因此 dir 必須是所有實例共用的掛載目錄（例如 EFS），
+ * 並以 timeseries.archive.shared=true 明確標示；未標示或目錄不存在時 TimeSeriesRetention 不會刪除分區。
+ */
+@Component
+public class TimeSeriesArchive {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeSeriesArchive.class);
+
+    static final String NULL = "\\N";
+    private static final String SUFFIX = ".tsv.gz";
+
+    private final Path dir;
+    private final boolean shared;
+
+    @Autowired
+    public TimeSeriesArchive(@Value("${timeseries.archive.dir:archive}") String dir,
+                             @Value("${timeseries.archive.shared:false}") boolean shared) {
+        this(Path.of(dir), shared);
+    }
+
+    public TimeSeriesArchive(Path dir, boolean shared) {
+        this.dir = dir;
+        this.shared = shared;
+    }
+
+    // 共用目錄沒有掛載時，這個實例查不到已歸檔的舊資料，K 線歷史會比其他實例短
+    @PostConstruct
+    public void checkDirectory() {
+        if (shared && !Files.isDirectory(dir)) {
+            logger.warn("Archive directory {} is missing; archived history will not be served by this instance " +
+                    "until the shared mount is available", dir.toAbsolutePath());
+        }
+    }
+
+    // 可以寫入歸檔並刪除分區：目錄已標示為共用且存在（不自動建立，避免掛載失敗時寫到本機磁碟）
+    public boolean isWritable() {
+        return shared && Files.isDirectory(dir);
+    }
+
+    public Path getDir() {
+        return dir;
+    }
+
+    // 開始寫入一個月份分區；資料需依 symbol 排序，commit 前寫入暫存檔，未 commit 就 close 時刪除暫存檔
+    public PartitionWriter openPartition(TimeSeriesTable table, YearMonth month) {
+        return new PartitionWriter(table, month);
+    }
+
+    // 該 symbol 已歸檔的月份（舊到新）
+    public List<YearMonth> archivedMonths(TimeSeriesTable table, String symbol) {
+        Path symbolDir = dir.resolve(table.getTableName()).resolve(symbol);
+        if (!Files.isDirectory(symbolDir)) {
+            return List.of();
+        }
+        List<YearMonth> months = new ArrayList<>();
+        try (Stream<Path> files = Files.list(symbolDir)) {
+            files.map(path -> path.getFileName().toString())
+                    .filter(name -> name.endsWith(SUFFIX))
+                    .forEach(name -> {
+                        try {
+                            months.add(YearMonth.parse(name.substring(0, name.length() - SUFFIX.length())));
+                        } catch (RuntimeException e) {
+                            logger.warn("Ignoring unexpected archive file {}", symbolDir.resolve(name));
+                        }
+                    });
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        months.sort(Comparator.naturalOrder());
+        return months;
+    }
+
+    // 依序讀取一個月份檔案的每一列，visitor 回傳 false 時停止；檔案不存在時不呼叫 visitor
+    // 不把整個檔案放進記憶體，檔案內的列依 symbol、時間排序（見 TimeSeriesRetention 的匯出查詢）
+    public void readRows(TimeSeriesTable table, String symbol, YearMonth month, Predicate<String[]> visitor) {
+        Path file = file(table, symbol, month);
+        if (!Files.exists(file)) {
+            return;
+        }
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file), 64 * 1024), StandardCharsets.UTF_8))) {
+            reader.readLine(); // 欄位名稱
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] values = line.split("\t", -1);
+                for (int i = 0; i < values.length; i++) {
+                    if (NULL.equals(values[i])) {
+                        values[i] = null;
+                    }
+                }
+                if (!visitor.test(values)) {
+                    return;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // 已歸檔的成交中 tradeTime 在 [startTime, endTime] 的部分，依時間排序；讀到 endTime 之後即停止
+    public List<Trade> readTrades(String symbol, Instant startTime, Instant endTime) {
+        List<Trade> trades = new ArrayList<>();
+        int timeIndex = TimeSeriesTable.TRADES.columnIndex("trade_time");
+        for (YearMonth month : archivedMonths(TimeSeriesTable.TRADES, symbol)) {
+            if (month.isBefore(monthOf(startTime)) || month.isAfter(monthOf(endTime))) {
+                continue;
+            }
+            readRows(TimeSeriesTable.TRADES, symbol, month, row -> {
+                Instant tradeTime = Instant.parse(row[timeIndex]);
+                if (tradeTime.isAfter(endTime)) {
+                    return false;
+                }
+                if (!tradeTime.isBefore(startTime)) {
+                    trades.add(toTrade(row));
+                }
+                return true;
+            });
+        }
+        trades.sort(Comparator.comparing(Trade::getTradeTime).thenComparing(Trade::getId));
+        return trades;
+    }
+
+    // 已歸檔的 K 棒中 before 之前最近的 limit 根（新到舊），從 before 所在月份往前讀到湊滿為止
+    // 每個月份只保留最後 limit 根，讀到 before 之後即停止
+    public List<MarketData> readMarketDataBefore(String symbol, String timeFrame, Instant before, int limit) {
+        List<MarketData> result = new ArrayList<>();
+        List<YearMonth> months = archivedMonths(TimeSeriesTable.MARKET_DATA, symbol);
+        YearMonth beforeMonth = monthOf(before);
+        int timeFrameIndex = TimeSeriesTable.MARKET_DATA.columnIndex("time_frame");
+        int timeIndex = TimeSeriesTable.MARKET_DATA.columnIndex("timestamp");
+        for (int i = months.size() - 1; i >= 0 && result.size() < limit; i--) {
+            if (months.get(i).isAfter(beforeMonth)) {
+                continue;
+            }
+            int remaining = limit - result.size();
+            ArrayDeque<String[]> latest = new ArrayDeque<>(remaining);
+            readRows(TimeSeriesTable.MARKET_DATA, symbol, months.get(i), row -> {
+                if (!Instant.parse(row[timeIndex]).isBefore(before)) {
+                    return false;
+                }
+                if (timeFrame.equals(row[timeFrameIndex])) {
+                    if (latest.size() == remaining) {
+                        latest.removeFirst();
+                    }
+                    latest.addLast(row);
+                }
+                return true;
+            });
+            for (Iterator<String[]> rows = latest.descendingIterator(); rows.hasNext(); ) {
+                result.add(toMarketData(rows.next()));
+            }
+        }
+        return result;
+    }
+
+    private Trade toTrade(String[] row) {
+        TimeSeriesTable table = TimeSeriesTable.TRADES;
+        Trade trade = new Trade();
+        trade.setId(row[table.columnIndex("id")]);
+        trade.setBuyOrder(orderRef(row[table.columnIndex("buy_order_id")]));
+        trade.setSellOrder(orderRef(row[table.columnIndex("sell_order_id")]));
+        trade.setSymbol(row[table.columnIndex("symbol")]);
+        trade.setPrice(new BigDecimal(row[table.columnIndex("price")]));
+        trade.setQuantity(new BigDecimal(row[table.columnIndex("quantity")]));
+        trade.setTradeTime(Instant.parse(row[table.columnIndex("trade_time")]));
+        trade.setDirection(row[table.columnIndex("direction")]);
+        trade.setTakerOrderId(row[table.columnIndex("taker_order_id")]);
+        return trade;
+    }
+
+    // 歸檔中只保存訂單 ID，與 Kafka 成交訊息相同
+    private Order orderRef(String orderId) {
+        Order order = new Order();
+        order.setId(orderId);
+        return order;
+    }
+
+    private MarketData toMarketData(String[] row) {
+        TimeSeriesTable table = TimeSeriesTable.MARKET_DATA;
+        MarketData bar = new MarketData();
+        bar.setSymbol(row[table.columnIndex("symbol")]);
+        bar.setTimeFrame(row[table.columnIndex("time_frame")]);
+        bar.setTimestamp(Instant.parse(row[table.columnIndex("timestamp")]));
+        bar.setOpen(new BigDecimal(row[table.columnIndex("open")]));
+        bar.setHigh(new BigDecimal(row[table.columnIndex("high")]));
+        bar.setLow(new BigDecimal(row[table.columnIndex("low")]));
+        bar.setClose(new BigDecimal(row[table.columnIndex("close")]));
+        bar.setVolume(new BigDecimal(row[table.columnIndex("volume")]));
+        return bar;
+    }
+
+    private Path file(TimeSeriesTable table, String symbol, YearMonth month) {
+        return dir.resolve(table.getTableName()).resolve(symbol).resolve(month + SUFFIX);
+    }
+
+    private static YearMonth monthOf(Instant time) {
+        return YearMonth.from(time.atZone(ZoneOffset.UTC));
+    }
+
+    /**
+     * 一個月份分區的歸檔：每個 symbol 一個檔案，先寫到 .tmp，commit 時才改名成正式檔案，
+     * 因此查詢不會讀到寫到一半的檔案；重新歸檔同一個月份會覆蓋之前的檔案。
+     */
+    public class PartitionWriter implements Closeable {
+
+        private final TimeSeriesTable table;
+        private final YearMonth month;
+        private final int symbolIndex;
+        private final List<Path> written = new ArrayList<>();
+        private String currentSymbol;
+        private BufferedWriter writer;
+        private long rows;
+        private boolean committed;
+
+        private PartitionWriter(TimeSeriesTable table, YearMonth month) {
+            this.table = table;
+            this.month = month;
+            this.symbolIndex = table.columnIndex("symbol");
+        }
+
+        // values 依 TimeSeriesTable.columns 的順序，時間欄位為 ISO-8601 字串
+        public void append(String[] values) {
+            try {
+                String symbol = values[symbolIndex];
+                if (!symbol.equals(currentSymbol)) {
+                    openSymbol(symbol);
+                }
+                for (int i = 0; i < values.length; i++) {
+                    if (i > 0) {
+                        writer.write('\t');
+                    }
+                    writer.write(values[i] == null ? NULL : values[i]);
+                }
+                writer.newLine();
+                rows++;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        public long getRows() {
+            return rows;
+        }
+
+        public void commit() {
+            try {
+                closeCurrent();
+                for (Path tmp : written) {
+                    String name = tmp.getFileName().toString();
+                    Files.move(tmp, tmp.resolveSibling(name.substring(0, name.length() - ".tmp".length())),
+                            StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                }
+                committed = true;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (committed) {
+                return;
+            }
+            try {
+                closeCurrent();
+            } catch (IOException e) {
+                logger.warn("Failed to close archive file for {} {}", table.getTableName(), month, e);
+            }
+            for (Path tmp : written) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e) {
+                    logger.warn("Failed to delete temporary archive file {}", tmp, e);
+                }
+            }
+        }
+
+        private void openSymbol(String symbol) throws IOException {
+            if (written.stream().anyMatch(path -> path.getParent().getFileName().toString().equals(symbol))) {
+                throw new IllegalStateException("Rows must be ordered by symbol: " + symbol + " appeared twice");
+            }
+            closeCurrent();
+            Path target = file(table, symbol, month);
+            Files.createDirectories(target.getParent());
+            Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+            written.add(tmp);
+            writer = new BufferedWriter(new OutputStreamWriter(
+                    new GZIPOutputStream(Files.newOutputStream(tmp), 64 * 1024), StandardCharsets.UTF_8));
+            writer.write(String.join("\t", table.getColumns()));
+            writer.newLine();
+            currentSymbol = symbol;
+        }
+
+        private void closeCurrent() throws IOException {
+            if (writer != null) {
+                writer.close();
+                writer = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.exchange.repository;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * trades / market_data 的 MySQL 範圍分區管理：每個月一個分區 pYYYYMM（上界為下個月 1 日 00:00 UTC），
+ * 最後一個 pmax 接住超出範圍的資料。時間欄位為 TIMESTAMP 時以 UNIX_TIMESTAMP 分區，DATETIME 時以 RANGE COLUMNS 分區。
+ * 第一次轉換會移除外鍵並調整主鍵（分區表不支援外鍵），並重建整張表，需在維護時段執行。
+ */
+@Component
+public class TimeSeriesPartitions {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeSeriesPartitions.class);
+
+    static final String MAX_PARTITION = "pmax";
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private final JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    public TimeSeriesPartitions(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    // 尚未分區時轉換成分區表（從最早資料的月份到 through），已分區時補上到 through 為止的月份
+    public void ensurePartitions(TimeSeriesTable table, YearMonth through) {
+        List<String> partitions = listPartitions(table);
+        if (partitions.isEmpty()) {
+            YearMonth from = earliestMonth(table);
+            if (from == null || from.isAfter(through)) {
+                from = through;
+            }
+            convert(table, months(from, through));
+            return;
+        }
+        YearMonth last = null;
+        for (String partition : partitions) {
+            YearMonth month = monthOf(partition);
+            if (month != null) {
+                last = month;
+            }
+        }
+        if (last != null && last.isBefore(through)) {
+            addPartitions(table, months(last.plusMonths(1), through));
+        }
+    }
+
+    // 依分區順序列出分區名稱，未分區時回傳空 List
+    public List<String> listPartitions(TimeSeriesTable table) {
+        return jdbcTemplate.queryForList("SELECT PARTITION_NAME FROM information_schema.PARTITIONS " +
+                        "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND PARTITION_NAME IS NOT NULL " +
+                        "ORDER BY PARTITION_ORDINAL_POSITION",
+                String.class, table.getTableName());
+    }
+
+    public long countRows(TimeSeriesTable table, String partition) {
+        Long count = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + table.getTableName() +
+                " PARTITION (" + partition + ")", Long.class);
+        return count == null ? 0 : count;
+    }
+
+    public void dropPartition(TimeSeriesTable table, String partition) {
+        if (monthOf(partition) == null) {
+            throw new IllegalArgumentException("Not a monthly partition: " + partition);
+        }
+        jdbcTemplate.execute("ALTER TABLE " + table.getTableName() + " DROP PARTITION " + partition);
+        logger.info("Dropped partition {} of {}", partition, table.getTableName());
+    }
+
+    private void convert(TimeSeriesTable table, List<YearMonth> months) {
+        String name = table.getTableName();
+        for (String foreignKey : jdbcTemplate.queryForList("SELECT CONSTRAINT_NAME FROM information_schema.REFERENTIAL_CONSTRAINTS " +
+                "WHERE CONSTRAINT_SCHEMA = DATABASE() AND TABLE_NAME = ?", String.class, name)) {
+            jdbcTemplate.execute("ALTER TABLE " + name + " DROP FOREIGN KEY " + foreignKey);
+            logger.info("Dropped foreign key {} on {} before partitioning", foreignKey, name);
+        }
+        List<String> primaryKey = jdbcTemplate.queryForList("SELECT COLUMN_NAME FROM information_schema.KEY_COLUMN_USAGE " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND CONSTRAINT_NAME = 'PRIMARY' ORDER BY ORDINAL_POSITION",
+                String.class, name);
+        if (!primaryKey.contains(table.getTimeColumn())) {
+            jdbcTemplate.execute("ALTER TABLE " + name + " DROP PRIMARY KEY, ADD PRIMARY KEY (" +
+                    quote(table.getPrimaryKey()) + ")");
+        }
+        long started = System.currentTimeMillis();
+        jdbcTemplate.execute("ALTER TABLE " + name + " " + partitionBy(table.getTimeColumn(), isTimestamp(table), months));
+        logger.info("Partitioned {} into {} monthly partitions ({} to {}) in {} ms", name, months.size(),
+                months.get(0), months.get(months.size() - 1), System.currentTimeMillis() - started);
+    }
+
+    // 從 pmax 切出新的月份分區，pmax 通常是空的，不需要搬移資料
+    private void addPartitions(TimeSeriesTable table, List<YearMonth> months) {
+        boolean timestamp = isTimestamp(table);
+        List<String> definitions = new ArrayList<>();
+        for (YearMonth month : months) {
+            definitions.add(partitionDefinition(month, timestamp));
+        }
+        definitions.add(maxPartitionDefinition());
+        jdbcTemplate.execute("ALTER TABLE " + table.getTableName() + " REORGANIZE PARTITION " + MAX_PARTITION +
+                " INTO (" + String.join(", ", definitions) + ")");
+        logger.info("Added partitions {} to {} of {}", partitionName(months.get(0)),
+                partitionName(months.get(months.size() - 1)), table.getTableName());
+    }
+
+    private YearMonth earliestMonth(TimeSeriesTable table) {
+        Timestamp earliest = jdbcTemplate.queryForObject("SELECT MIN(" + quote(table.getTimeColumn()) + ") FROM " +
+                table.getTableName(), Timestamp.class);
+        return earliest == null ? null : YearMonth.from(earliest.toInstant().atZone(ZoneOffset.UTC));
+    }
+
+    private boolean isTimestamp(TimeSeriesTable table) {
+        String type = jdbcTemplate.queryForObject("SELECT DATA_TYPE FROM information_schema.COLUMNS " +
+                "WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = ? AND COLUMN_NAME = ?",
+                String.class, table.getTableName(), table.getTimeColumn());
+        return "timestamp".equalsIgnoreCase(type);
+    }
+
+    static String partitionBy(String timeColumn, boolean timestamp, List<YearMonth> months) {
+        List<String> definitions = new ArrayList<>();
+        for (YearMonth month : months) {
+            definitions.add(partitionDefinition(month, timestamp));
+        }
+        definitions.add(maxPartitionDefinition());
+        String expression = timestamp
+                ? "RANGE (UNIX_TIMESTAMP(" + quote(timeColumn) + "))"
+                : "RANGE COLUMNS (" + quote(timeColumn) + ")";
+        return "PARTITION BY " + expression + " (" + String.join(", ", definitions) + ")";
+    }
+
+    static String partitionDefinition(YearMonth month, boolean timestamp) {
+        YearMonth next = month.plusMonths(1);
+        String bound = timestamp
+                ? String.valueOf(next.atDay(1).atStartOfDay(ZoneOffset.UTC).toEpochSecond())
+                : "'" + next.atDay(1) + " 00:00:00'";
+        return "PARTITION " + partitionName(month) + " VALUES LESS THAN (" + bound + ")";
+    }
+
+    private static String maxPartitionDefinition() {
+        return "PARTITION " + MAX_PARTITION + " VALUES LESS THAN (MAXVALUE)";
+    }
+
+    public static String partitionName(YearMonth month) {
+        return "p" + month.format(PARTITION_MONTH);
+    }
+
+    // 月份分區的月份，pmax 或其他名稱回傳 null
+    public static YearMonth monthOf(String partition) {
+        if (partition == null || partition.length() != 7 || partition.charAt(0) != 'p') {
+            return null;
+        }
+        try {
+            return YearMonth.parse(partition.substring(1), PARTITION_MONTH);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+    static List<YearMonth> months(YearMonth from, YearMonth through) {
+        List<YearMonth> months = new ArrayList<>();
+        for (YearMonth month = from; !month.isAfter(through); month = month.plusMonths(1)) {
+            months.add(month);
+        }
+        return months;
+    }
+
+    private static String quote(String column) {
+        return "`" + column + "`";
+    }
+
+    private static String quote(List<String> columns) {
+        List<String> quoted = new ArrayList<>(columns.size());
+        for (String column : columns) {
+            quoted.add(quote(column));
+        }
+        return String.join(", ", quoted);
+    }
+}
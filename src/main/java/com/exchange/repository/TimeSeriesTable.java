@@ -0,0 +1,50 @@
+package com.exchange.repository;
+
+import java.util.List;
+
+/**
+ * 依時間做範圍分區與歸檔的資料表。columns 為歸檔檔案的欄位順序；
+ * primaryKey 為分區後的主鍵（MySQL 要求分區欄位包含在每個唯一鍵中，trades 原本只以 id 為主鍵）。
+ */
+public enum TimeSeriesTable {
+
+    TRADES("trades", "trade_time",
+            List.of("id", "buy_order_id", "sell_order_id", "symbol", "price", "quantity", "trade_time", "direction", "taker_order_id"),
+            List.of("id", "trade_time")),
+
+    MARKET_DATA("market_data", "timestamp",
+            List.of("symbol", "time_frame", "timestamp", "open", "high", "low", "close", "volume"),
+            List.of("symbol", "time_frame", "timestamp"));
+
+    private final String tableName;
+    private final String timeColumn;
+    private final List<String> columns;
+    private final List<String> primaryKey;
+
+    TimeSeriesTable(String tableName, String timeColumn, List<String> columns, List<String> primaryKey) {
+        this.tableName = tableName;
+        this.timeColumn = timeColumn;
+        this.columns = columns;
+        this.primaryKey = primaryKey;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    public String getTimeColumn() {
+        return timeColumn;
+    }
+
+    public List<String> getColumns() {
+        return columns;
+    }
+
+    public List<String> getPrimaryKey() {
+        return primaryKey;
+    }
+
+    public int columnIndex(String column) {
+        return columns.indexOf(column);
+    }
+}
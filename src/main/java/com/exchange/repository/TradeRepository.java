@@ -4,6 +4,7 @@ import com.exchange.dto.SimpleTradeInfo;
 import com.exchange.model.Trade;
 import io.lettuce.core.dynamic.annotation.Param;
 import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
@@ -23,5 +24,7 @@ public interface TradeRepository extends JpaRepository<Trade, String> {
             "ORDER BY t.tradeTime")
     List<SimpleTradeInfo> findSimpleTradeInfoByOrderId(@Param("orderId") String orderId);
 
-    List<Trade> findByBuyOrderIdOrSellOrderId(String buyOrderId, String sellOrderId);
+    // 依成交 ID 順序逐批讀取（連同買賣雙方訂單），回填用戶成交帳本時使用
+    @Query("SELECT t FROM Trade t JOIN FETCH t.buyOrder JOIN FETCH t.sellOrder WHERE t.id > :afterId ORDER BY t.id")
+    List<Trade> findBatchAfter(@Param("afterId") String afterId, Pageable pageable);
 }
\ No newline at end of file
@@ -0,0 +1,35 @@
+package com.exchange.repository;
+
+import com.exchange.model.Order;
+import com.exchange.model.UserTrade;
+import com.exchange.model.UserTradeId;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface UserTradeRepository extends JpaRepository<UserTrade, UserTradeId> {
+
+    // 用戶的成交，依 (tradeTime, tradeId) 由新到舊做 keyset 分頁，before* 為上一頁最後一筆（第一頁為 null）；side 為 null 時不分方向
+    @Query("SELECT u FROM UserTrade u WHERE u.userId = :userId " +
+            "AND (:side IS NULL OR u.side = :side) " +
+            "AND u.tradeTime BETWEEN :startTime AND :endTime " +
+            "AND (:beforeTradeTime IS NULL OR u.tradeTime < :beforeTradeTime " +
+            "     OR (u.tradeTime = :beforeTradeTime AND u.tradeId < :beforeId)) " +
+            "ORDER BY u.tradeTime DESC, u.tradeId DESC, u.side")
+    List<UserTrade> findUserTrades(String userId,
+                                   Order.Side side,
+                                   Instant startTime,
+                                   Instant endTime,
+                                   Instant beforeTradeTime,
+                                   String beforeId,
+                                   Pageable pageable);
+
+    // 一頁訂單的所有成交，呼叫端依訂單 ID 分組
+    List<UserTrade> findByOrderIdInOrderByTradeTime(Collection<String> orderIds);
+}
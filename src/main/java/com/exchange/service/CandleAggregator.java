@@ -0,0 +1,225 @@
+package com.exchange.service;
+
+import com.exchange.dto.Candle;
+import com.exchange.model.MarketData;
+import com.exchange.model.Trade;
+import com.exchange.repository.MarketDataRepository;
+import com.exchange.repository.TradeRepository;
+import com.exchange.utils.TimeFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 串流 K 線聚合：由 recent-trades 的成交即時更新每個交易對、每個時間框架目前未結束的 K 棒，
+ * 讀取當前 K 棒只需要讀記憶體。每個交易對第一次使用時從資料庫初始化一次：
+ * 已結束的分鐘由 1m K 線合併，當前這一分鐘才讀成交明細；初始化失敗時依退避時間重試，成功前先由即時成交建立 K 棒。
+ * 與既有前端一致，新 K 棒的開盤價為前一根的收盤價，最高/最低價只由成交決定。
+ * K 棒結束時寫入 KlineCache，讓歷史 K 線查詢不需要回到資料庫。
+ */
+@Service
+public class CandleAggregator {
+
+    private static final Logger logger = LoggerFactory.getLogger(CandleAggregator.class);
+
+    private static final long SEED_RETRY_MIN_MILLIS = 1_000;
+    private static final long SEED_RETRY_MAX_MILLIS = 60_000;
+
+    private final ConcurrentHashMap<String, SymbolBars> symbols = new ConcurrentHashMap<>();
+    private final MarketDataRepository marketDataRepository;
+    private final TradeRepository tradeRepository;
+    private final KlineCache klineCache;
+    private final Clock clock;
+
+    @Autowired
+    public CandleAggregator(MarketDataRepository marketDataRepository, TradeRepository tradeRepository,
+                            KlineCache klineCache) {
+        this(marketDataRepository, tradeRepository, klineCache, Clock.systemUTC());
+    }
+
+    CandleAggregator(MarketDataRepository marketDataRepository, TradeRepository tradeRepository,
+                     KlineCache klineCache, Clock clock) {
+        this.marketDataRepository = marketDataRepository;
+        this.tradeRepository = tradeRepository;
+        this.klineCache = klineCache;
+        this.clock = clock;
+    }
+
+    public void onTrade(Trade trade) {
+        barsOf(trade.getSymbol()).applyTrade(trade.getId(), trade.getPrice(), trade.getQuantity(), trade.getTradeTime());
+    }
+
+    // 目前未結束的 K 棒；本期尚無成交時以前一根收盤價產生平盤 K 棒，完全沒有資料時回傳 null
+    public Candle getCurrentBar(String symbol, TimeFrame timeFrame) {
+        return barsOf(symbol).current(timeFrame, clock.instant());
+    }
+
+    private SymbolBars barsOf(String symbol) {
+        SymbolBars bars = symbols.computeIfAbsent(symbol, SymbolBars::new);
+        bars.ensureSeeded();
+        return bars;
+    }
+
+    private class SymbolBars {
+        private final String symbol;
+        private final Candle[] bars = new Candle[TimeFrame.values().length];
+        private final Set<String> seededTradeIds = new HashSet<>(); // 初始化時已讀過的當前分鐘成交，避免重複計算
+        private Instant seededMinute;
+        private BigDecimal lastClose;
+        private boolean seeded = false;
+        private int seedFailures = 0;
+        private Instant seedRetryAt = Instant.MIN;
+
+        SymbolBars(String symbol) {
+            this.symbol = symbol;
+        }
+
+        // 只有初始化成功才標記為已初始化；失敗時以指數退避重試，避免每筆成交都查詢資料庫
+        synchronized void ensureSeeded() {
+            Instant now = clock.instant();
+            if (seeded || now.isBefore(seedRetryAt)) {
+                return;
+            }
+            try {
+                seed(now);
+                seeded = true;
+            } catch (Exception e) {
+                seedFailures++;
+                long delay = Math.min(SEED_RETRY_MAX_MILLIS, SEED_RETRY_MIN_MILLIS << Math.min(seedFailures - 1, 16));
+                seedRetryAt = now.plusMillis(delay);
+                logger.warn("Failed to seed candles for {} (retry in {} ms): {}", symbol, delay, e.getMessage());
+            }
+        }
+
+        private void seed(Instant now) {
+            // 重試時捨棄初始化前由即時成交建立的 K 棒，改由資料庫重建，避免同一筆成交計算兩次
+            Arrays.fill(bars, null);
+            seededTradeIds.clear();
+            seededMinute = null;
+            lastClose = null;
+
+            Instant currentMinute = TimeFrame.M1.barStart(now);
+            Instant earliest = currentMinute;
+            for (TimeFrame timeFrame : TimeFrame.values()) {
+                Instant start = timeFrame.barStart(now);
+                if (start.isBefore(earliest)) {
+                    earliest = start;
+                }
+            }
+
+            MarketData previous = marketDataRepository.findLatestBeforeTime(symbol, earliest);
+            if (previous != null) {
+                lastClose = previous.getClose();
+            }
+
+            // 已結束的分鐘直接合併 1m K 線
+            List<MarketData> minutes = new ArrayList<>(marketDataRepository.findBySymbolAndTimeFrameAndTimestampBetween(
+                    symbol, TimeFrame.M1.getCode(), earliest, currentMinute.minusSeconds(1)));
+            minutes.sort(Comparator.comparing(MarketData::getTimestamp));
+            for (MarketData minute : minutes) {
+                for (TimeFrame timeFrame : TimeFrame.values()) {
+                    Instant start = timeFrame.barStart(now);
+                    if (!minute.getTimestamp().isBefore(start)) {
+                        mergeMinute(timeFrame, start, minute);
+                    }
+                }
+                lastClose = minute.getClose();
+            }
+
+            // 當前這一分鐘還沒有 1m K 線，改讀成交明細
+            List<Trade> trades = new ArrayList<>(tradeRepository.findBySymbolAndTradeTimeBetween(symbol, currentMinute, now));
+            trades.sort(Comparator.comparing(Trade::getTradeTime));
+            for (Trade trade : trades) {
+                applyTrade(trade.getId(), trade.getPrice(), trade.getQuantity(), trade.getTradeTime());
+                seededTradeIds.add(trade.getId());
+            }
+            seededMinute = currentMinute;
+        }
+
+        private void mergeMinute(TimeFrame timeFrame, Instant start, MarketData minute) {
+            Candle bar = bars[timeFrame.ordinal()];
+            if (bar == null) {
+                bars[timeFrame.ordinal()] = new Candle(symbol, timeFrame.getCode(), start, minute.getOpen(),
+                        minute.getHigh(), minute.getLow(), minute.getClose(), minute.getVolume());
+                return;
+            }
+            bar.setHigh(bar.getHigh().max(minute.getHigh()));
+            bar.setLow(bar.getLow().min(minute.getLow()));
+            bar.setClose(minute.getClose());
+            bar.setVolume(bar.getVolume().add(minute.getVolume()));
+        }
+
+        synchronized void applyTrade(String tradeId, BigDecimal price, BigDecimal quantity, Instant tradeTime) {
+            if (!seededTradeIds.isEmpty()) {
+                if (seededTradeIds.contains(tradeId)) {
+                    return;
+                }
+                if (!TimeFrame.M1.barStart(tradeTime).equals(seededMinute)) {
+                    seededTradeIds.clear(); // 已進入下一分鐘，不會再收到初始化時讀過的成交
+                }
+            }
+            // 屬於已結束 K 棒的延遲成交在所有時間框架都略過：1m 已寫入快取，
+            // 只計入較大的時間框架會讓 5m/1h 與組成它的 1m K 棒不一致
+            for (Candle bar : bars) {
+                if (bar != null && tradeTime.isBefore(bar.getOpenTime())) {
+                    return;
+                }
+            }
+            for (TimeFrame timeFrame : TimeFrame.values()) {
+                Instant start = timeFrame.barStart(tradeTime);
+                Candle bar = bars[timeFrame.ordinal()];
+                if (bar == null || bar.getOpenTime().isBefore(start)) {
+                    if (bar != null) {
+                        klineCache.put(toMarketData(bar)); // 前一根已結束
+                    }
+                    // 新 K 棒：開盤價沿用前一根收盤價
+                    BigDecimal open = lastClose != null ? lastClose : price;
+                    bars[timeFrame.ordinal()] = new Candle(symbol, timeFrame.getCode(), start, open, price, price, price, quantity);
+                } else {
+                    bar.setHigh(bar.getHigh().max(price));
+                    bar.setLow(bar.getLow().min(price));
+                    bar.setClose(price);
+                    bar.setVolume(bar.getVolume().add(quantity));
+                }
+            }
+            lastClose = price;
+        }
+
+        private MarketData toMarketData(Candle bar) {
+            MarketData marketData = new MarketData();
+            marketData.setSymbol(bar.getSymbol());
+            marketData.setTimeFrame(bar.getTimeFrame());
+            marketData.setTimestamp(bar.getOpenTime());
+            marketData.setOpen(bar.getOpen());
+            marketData.setHigh(bar.getHigh());
+            marketData.setLow(bar.getLow());
+            marketData.setClose(bar.getClose());
+            marketData.setVolume(bar.getVolume());
+            return marketData;
+        }
+
+        synchronized Candle current(TimeFrame timeFrame, Instant now) {
+            Instant start = timeFrame.barStart(now);
+            Candle bar = bars[timeFrame.ordinal()];
+            if (bar != null && !bar.getOpenTime().isBefore(start)) {
+                return bar.copy();
+            }
+            if (lastClose == null) {
+                return null;
+            }
+            return new Candle(symbol, timeFrame.getCode(), start, lastClose, lastClose, lastClose, lastClose, BigDecimal.ZERO);
+        }
+    }
+}
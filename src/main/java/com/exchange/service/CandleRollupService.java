@@ -0,0 +1,232 @@
+package com.exchange.service;
+
+import com.exchange.model.MarketData;
+import com.exchange.repository.MarketDataRepository;
+import com.exchange.utils.TimeFrame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 由 1m K 線增量推導較大的時間框架（預設 15m/4h/1d/1w）。
+ * 每個 (symbol, 時間框架) 記錄下一根尚未產生的 K 棒起點，排程只讀取之後已結束的 1m K 線，
+ * 合併後批次寫回 market_data，並同步寫入 KlineCache 供查詢。
+ * 每個實例都會執行排程（各自更新自己的 KlineCache），因此以 INSERT ... ON DUPLICATE KEY UPDATE 寫入：
+ * 同一根 K 棒由相同的 1m K 線推導，重複寫入結果相同，不會像 saveAll 先 SELECT 再 INSERT 而在實例之間撞到重複主鍵。
+ */
+@Service
+public class CandleRollupService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CandleRollupService.class);
+
+    private static final long MAX_CHUNK_SECONDS = 7 * 24 * 60 * 60; // 單次最多讀取 7 天的 1m K 線
+
+    static final String UPSERT_SQL = "INSERT INTO market_data " +
+            "(symbol, time_frame, timestamp, open, high, low, close, volume) VALUES (?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE open = VALUES(open), high = VALUES(high), low = VALUES(low), " +
+            "close = VALUES(close), volume = VALUES(volume)";
+
+    // 與 Hibernate 寫入 Instant 的方式相同，以 UTC 儲存
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final MarketDataRepository marketDataRepository;
+    private final JdbcTemplate jdbcTemplate;
+    private final KlineCache klineCache;
+    private final List<String> symbols;
+    private final List<TimeFrame> derivedTimeFrames = new ArrayList<>();
+    private final int backfillBars;
+    private final long settleSeconds;
+    private final Clock clock;
+
+    private final ConcurrentHashMap<String, Instant> watermarks = new ConcurrentHashMap<>();
+
+    @Autowired
+    public CandleRollupService(MarketDataRepository marketDataRepository,
+                               JdbcTemplate jdbcTemplate,
+                               KlineCache klineCache,
+                               @Value("${exchange.symbols:BTCUSDT,ETHUSDT}") List<String> symbols,
+                               @Value("${kline.rollup.timeframes:15m,4h,1d,1w}") List<String> timeFrames,
+                               @Value("${kline.rollup.backfill-bars:500}") int backfillBars,
+                               @Value("${kline.rollup.settle-seconds:10}") long settleSeconds) {
+        this(marketDataRepository, jdbcTemplate, klineCache, symbols, timeFrames, backfillBars, settleSeconds, Clock.systemUTC());
+    }
+
+    CandleRollupService(MarketDataRepository marketDataRepository, JdbcTemplate jdbcTemplate, KlineCache klineCache,
+                        List<String> symbols, List<String> timeFrames, int backfillBars, long settleSeconds, Clock clock) {
+        this.marketDataRepository = marketDataRepository;
+        this.jdbcTemplate = jdbcTemplate;
+        this.klineCache = klineCache;
+        this.symbols = symbols;
+        for (String code : timeFrames) {
+            TimeFrame timeFrame = TimeFrame.fromCode(code);
+            if (timeFrame == null || timeFrame == TimeFrame.M1) {
+                throw new IllegalArgumentException("Unsupported roll-up time frame: " + code);
+            }
+            derivedTimeFrames.add(timeFrame);
+        }
+        this.backfillBars = backfillBars;
+        this.settleSeconds = settleSeconds;
+        this.clock = clock;
+    }
+
+    @Scheduled(fixedDelayString = "${kline.rollup.interval-ms:60000}", initialDelayString = "${kline.rollup.initial-delay-ms:10000}")
+    public void rollupAll() {
+        for (String symbol : symbols) {
+            for (TimeFrame timeFrame : derivedTimeFrames) {
+                try {
+                    rollup(symbol, timeFrame);
+                } catch (Exception e) {
+                    logger.error("Failed to roll up {} {}", symbol, timeFrame.getCode(), e);
+                }
+            }
+        }
+    }
+
+    // 產生並寫入所有已結束但尚未產生的 K 棒，回傳寫入的數量
+    public int rollup(String symbol, TimeFrame timeFrame) {
+        String key = key(symbol, timeFrame);
+        // 保留一小段時間讓撮合引擎寫完最後一根 1m K 線
+        Instant until = timeFrame.barStart(clock.instant().minusSeconds(settleSeconds));
+        Instant from = watermarks.get(key);
+        if (from == null) {
+            from = initialWatermark(symbol, timeFrame, until);
+            if (from == null) {
+                return 0; // 還沒有任何 1m K 線
+            }
+        }
+
+        // 前一根 K 棒的收盤價，用於沒有成交的區間
+        List<MarketData> previous = klineCache.getBefore(symbol, timeFrame, from, 1);
+        BigDecimal lastClose = previous.isEmpty() ? null : previous.get(0).getClose();
+
+        int written = 0;
+        while (from.isBefore(until)) {
+            Instant chunkEnd = timeFrame.barStart(from.plusSeconds(Math.max(MAX_CHUNK_SECONDS, timeFrame.getSeconds())));
+            if (chunkEnd.isAfter(until)) {
+                chunkEnd = until;
+            }
+            List<MarketData> minutes = new ArrayList<>(marketDataRepository.findBySymbolAndTimeFrameAndTimestampBetween(
+                    symbol, TimeFrame.M1.getCode(), from, chunkEnd.minusSeconds(1)));
+            List<MarketData> bars = aggregate(symbol, timeFrame, from, chunkEnd, minutes, lastClose);
+            if (!bars.isEmpty()) {
+                // 一個區段的 K 棒一次寫入
+                upsert(bars);
+                klineCache.putAll(bars);
+                lastClose = bars.get(bars.size() - 1).getClose();
+                written += bars.size();
+            }
+            from = chunkEnd;
+            watermarks.put(key, from);
+        }
+        return written;
+    }
+
+    private void upsert(List<MarketData> bars) {
+        jdbcTemplate.batchUpdate(UPSERT_SQL, new BatchPreparedStatementSetter() {
+            private final Calendar utc = Calendar.getInstance(UTC);
+
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                MarketData bar = bars.get(i);
+                ps.setString(1, bar.getSymbol());
+                ps.setString(2, bar.getTimeFrame());
+                ps.setTimestamp(3, Timestamp.from(bar.getTimestamp()), utc);
+                ps.setBigDecimal(4, bar.getOpen());
+                ps.setBigDecimal(5, bar.getHigh());
+                ps.setBigDecimal(6, bar.getLow());
+                ps.setBigDecimal(7, bar.getClose());
+                ps.setBigDecimal(8, bar.getVolume());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return bars.size();
+            }
+        });
+    }
+
+    // 依時間框架分桶合併 1m K 線；沒有成交的區間以前一根收盤價產生平盤 K 棒
+    static List<MarketData> aggregate(String symbol, TimeFrame timeFrame, Instant from, Instant until,
+                                      List<MarketData> minutes, BigDecimal lastClose) {
+        minutes.sort(Comparator.comparing(MarketData::getTimestamp));
+        List<MarketData> bars = new ArrayList<>();
+        int index = 0;
+        for (Instant start = from; start.isBefore(until); start = start.plusSeconds(timeFrame.getSeconds())) {
+            Instant end = start.plusSeconds(timeFrame.getSeconds());
+            MarketData bar = null;
+            while (index < minutes.size() && minutes.get(index).getTimestamp().isBefore(end)) {
+                MarketData minute = minutes.get(index++);
+                if (minute.getTimestamp().isBefore(start)) {
+                    continue;
+                }
+                if (bar == null) {
+                    bar = newBar(symbol, timeFrame, start, minute.getOpen(), minute.getHigh(), minute.getLow(),
+                            minute.getClose(), minute.getVolume());
+                } else {
+                    bar.setHigh(bar.getHigh().max(minute.getHigh()));
+                    bar.setLow(bar.getLow().min(minute.getLow()));
+                    bar.setClose(minute.getClose());
+                    bar.setVolume(bar.getVolume().add(minute.getVolume()));
+                }
+            }
+            if (bar == null && lastClose != null) {
+                bar = newBar(symbol, timeFrame, start, lastClose, lastClose, lastClose, lastClose, BigDecimal.ZERO);
+            }
+            if (bar != null) {
+                bars.add(bar);
+                lastClose = bar.getClose();
+            }
+        }
+        return bars;
+    }
+
+    // 已有推導結果時從最後一根之後繼續，否則從最早的 1m K 線（最多回補 backfillBars 根）開始
+    private Instant initialWatermark(String symbol, TimeFrame timeFrame, Instant until) {
+        MarketData latest = marketDataRepository.findFirstBySymbolAndTimeFrameOrderByTimestampDesc(symbol, timeFrame.getCode());
+        if (latest != null) {
+            return latest.getTimestamp().plusSeconds(timeFrame.getSeconds());
+        }
+        MarketData firstMinute = marketDataRepository.findFirstBySymbolAndTimeFrameOrderByTimestampAsc(symbol, TimeFrame.M1.getCode());
+        if (firstMinute == null) {
+            return null;
+        }
+        Instant backfillStart = until.minusSeconds(timeFrame.getSeconds() * backfillBars);
+        return timeFrame.barStart(firstMinute.getTimestamp().isAfter(backfillStart) ? firstMinute.getTimestamp() : backfillStart);
+    }
+
+    private static MarketData newBar(String symbol, TimeFrame timeFrame, Instant start, BigDecimal open, BigDecimal high,
+                                     BigDecimal low, BigDecimal close, BigDecimal volume) {
+        MarketData bar = new MarketData();
+        bar.setSymbol(symbol);
+        bar.setTimeFrame(timeFrame.getCode());
+        bar.setTimestamp(start);
+        bar.setOpen(open);
+        bar.setHigh(high);
+        bar.setLow(low);
+        bar.setClose(close);
+        bar.setVolume(volume);
+        return bar;
+    }
+
+    private String key(String symbol, TimeFrame timeFrame) {
+        return symbol + ":" + timeFrame.getCode();
+    }
+}
@@ -0,0 +1,83 @@
+package com.exchange.service;
+
+import com.exchange.model.Order;
+import lombok.Getter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 下單的 Idempotency-Key 去重：同一用戶重送相同 key 時回傳第一次建立的訂單，不會再送出新訂單。
+ * 只保留最近 maxEntries 個 key，且超過 ttl 後失效；送出失敗的 key 會被移除，客戶端可以用同一個 key 重試。
+ * 快取在單一服務實例的記憶體中，多實例部署時需要讓同一用戶的請求落在同一個實例。
+ */
+@Component
+public class IdempotencyCache {
+
+    @Getter
+    public static class Entry {
+        private final String fingerprint;       // 請求內容，同一個 key 只能用於相同的訂單
+        private final Order order;
+        private final CompletableFuture<Void> acked = new CompletableFuture<>();  // Kafka 確認後完成
+        private final long createdAt;
+
+        Entry(String fingerprint, Order order, long createdAt) {
+            this.fingerprint = fingerprint;
+            this.order = order;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlMillis;
+    private final Clock clock;
+
+    // access-order 的 LinkedHashMap，超過容量時移除最久未使用的 key
+    private final LinkedHashMap<String, Entry> entries;
+
+    @Autowired
+    public IdempotencyCache(@Value("${orders.idempotency.max-entries:100000}") int maxEntries,
+                            @Value("${orders.idempotency.ttl-seconds:600}") long ttlSeconds) {
+        this(maxEntries, ttlSeconds, Clock.systemUTC());
+    }
+
+    IdempotencyCache(int maxEntries, long ttlSeconds, Clock clock) {
+        this.maxEntries = maxEntries;
+        this.ttlMillis = ttlSeconds * 1000;
+        this.clock = clock;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > IdempotencyCache.this.maxEntries;
+            }
+        };
+    }
+
+    // 回傳 key 目前對應的 Entry：第一次看到（或已過期）時以 order 登記新的 Entry，
+    // 呼叫端以 entry.getOrder() == order 判斷是否為新的請求
+    public synchronized Entry register(String userId, String key, String fingerprint, Order order) {
+        String cacheKey = userId + ":" + key;
+        long now = clock.millis();
+        Entry existing = entries.get(cacheKey);
+        if (existing != null && now - existing.getCreatedAt() < ttlMillis) {
+            return existing;
+        }
+        Entry entry = new Entry(fingerprint, order, now);
+        entries.put(cacheKey, entry);
+        return entry;
+    }
+
+    // 送出失敗時移除，只移除同一個 Entry，避免刪掉之後重新登記的 key
+    public synchronized void remove(String userId, String key, Entry entry) {
+        entries.remove(userId + ":" + key, entry);
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,249 @@
+package com.exchange.service;
+
+import com.exchange.model.MarketData;
+import com.exchange.repository.MarketDataRepository;
+import com.exchange.repository.TimeSeriesArchive;
+import com.exchange.utils.TimeFrame;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 每個 (symbol, 時間框架) 一個固定大小的環形緩衝區，保存最近已結束的 K 棒（舊到新）。
+ * 第一次讀取時從 MySQL 載入一次，之後由串流聚合與 roll-up 寫入的 K 棒保持最新；
+ * 依 timestamp 往前翻頁只要在緩衝區範圍內都直接從記憶體回傳；資料庫也沒有更早的資料時，再從已歸檔的月份補足。
+ * 只為 exchange.symbols 中的交易對建立緩衝區，其他 symbol 不佔用記憶體也不查詢資料庫。
+ */
+@Component
+public class KlineCache {
+
+    private final ConcurrentHashMap<String, CandleRing> rings = new ConcurrentHashMap<>();
+    private final MarketDataRepository marketDataRepository;
+    private final TimeSeriesArchive timeSeriesArchive;
+    private final Set<String> symbols;
+    private final int capacity;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder archiveReads = new LongAdder();
+
+    public KlineCache(MarketDataRepository marketDataRepository,
+                      TimeSeriesArchive timeSeriesArchive,
+                      @Value("${exchange.symbols:BTCUSDT,ETHUSDT}") List<String> symbols,
+                      @Value("${kline.cache.capacity:1000}") int capacity) {
+        this.marketDataRepository = marketDataRepository;
+        this.timeSeriesArchive = timeSeriesArchive;
+        this.symbols = Set.copyOf(symbols);
+        this.capacity = capacity;
+    }
+
+    public boolean isSupported(String symbol) {
+        return symbol != null && symbols.contains(symbol);
+    }
+
+    // before 之前最近的 limit 根 K 棒（新到舊）；緩衝區無法完整回答時才查詢資料庫
+    public List<MarketData> getBefore(String symbol, TimeFrame timeFrame, Instant before, int limit) {
+        if (!isSupported(symbol)) {
+            return List.of();
+        }
+        CandleRing ring = loadedRing(symbol, timeFrame);
+        List<MarketData> result;
+        boolean complete;
+        synchronized (ring) {
+            result = ring.before(before, limit);
+            complete = ring.complete;
+        }
+        // 湊滿 limit 根，或緩衝區已包含資料庫中該時間框架的全部資料時，不需要查詢資料庫
+        if (result.size() == limit || complete) {
+            hits.increment();
+            return withArchived(symbol, timeFrame, before, limit, result);
+        }
+        misses.increment();
+        List<MarketData> fromDatabase = marketDataRepository.findTop500BySymbolAndTimeFrameAndTimestampBeforeOrderByTimestampDesc(
+                symbol, timeFrame.getCode(), before);
+        if (fromDatabase.size() > limit) {
+            return fromDatabase.subList(0, limit);
+        }
+        // 查詢最多回傳 500 根，剛好 500 根時資料庫可能還有更早的資料
+        if (fromDatabase.size() == 500) {
+            return fromDatabase;
+        }
+        return withArchived(symbol, timeFrame, before, limit, fromDatabase);
+    }
+
+    // 不足 limit 根時表示資料庫已沒有更早的 K 棒，接著讀取已歸檔（已從資料庫移出）的月份
+    private List<MarketData> withArchived(String symbol, TimeFrame timeFrame, Instant before, int limit, List<MarketData> bars) {
+        if (bars.size() >= limit) {
+            return bars;
+        }
+        Instant oldest = bars.isEmpty() ? before : bars.get(bars.size() - 1).getTimestamp();
+        List<MarketData> archived = timeSeriesArchive.readMarketDataBefore(symbol, timeFrame.getCode(), oldest, limit - bars.size());
+        if (archived.isEmpty()) {
+            return bars;
+        }
+        archiveReads.increment();
+        List<MarketData> result = new ArrayList<>(bars.size() + archived.size());
+        result.addAll(bars);
+        result.addAll(archived);
+        return result;
+    }
+
+    // 最新一根已結束的 K 棒，沒有資料時回傳 null
+    public MarketData latest(String symbol, TimeFrame timeFrame) {
+        if (!isSupported(symbol)) {
+            return null;
+        }
+        CandleRing ring = loadedRing(symbol, timeFrame);
+        synchronized (ring) {
+            return ring.size == 0 ? null : ring.get(ring.size - 1);
+        }
+    }
+
+    // 寫入已結束的 K 棒：比最後一根新則附加，時間相同則覆蓋；尚未載入的緩衝區忽略，下次讀取時會從資料庫載入
+    public void put(MarketData bar) {
+        CandleRing ring = rings.get(key(bar.getSymbol(), bar.getTimeFrame()));
+        if (ring == null) {
+            return;
+        }
+        synchronized (ring) {
+            if (ring.loaded) {
+                ring.upsert(bar);
+            }
+        }
+    }
+
+    public void putAll(List<MarketData> bars) {
+        bars.forEach(this::put);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        stats.put("capacity", capacity);
+        stats.put("buffers", rings.size());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("loads", loads.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("archiveReads", archiveReads.sum());
+        List<Map<String, Object>> buffers = new ArrayList<>();
+        rings.forEach((key, ring) -> {
+            synchronized (ring) {
+                Map<String, Object> buffer = new LinkedHashMap<>();
+                buffer.put("key", key);
+                buffer.put("size", ring.size);
+                buffer.put("complete", ring.complete);
+                buffers.add(buffer);
+            }
+        });
+        stats.put("details", buffers);
+        return stats;
+    }
+
+    private CandleRing loadedRing(String symbol, TimeFrame timeFrame) {
+        CandleRing ring = rings.computeIfAbsent(key(symbol, timeFrame.getCode()), k -> new CandleRing(capacity));
+        synchronized (ring) {
+            if (!ring.loaded) {
+                // 資料庫回傳新到舊，緩衝區保存舊到新
+                List<MarketData> latest = marketDataRepository.findBySymbolAndTimeFrameOrderByTimestampDesc(
+                        symbol, timeFrame.getCode(), PageRequest.of(0, capacity));
+                for (int i = latest.size() - 1; i >= 0; i--) {
+                    ring.upsert(latest.get(i));
+                }
+                ring.complete = latest.size() < capacity;
+                ring.loaded = true;
+                loads.increment();
+            }
+        }
+        return ring;
+    }
+
+    private String key(String symbol, String timeFrame) {
+        return symbol + ":" + timeFrame;
+    }
+
+    private class CandleRing {
+        private final MarketData[] bars;
+        private int start = 0; // 最舊一根的位置
+        private int size = 0;
+        private boolean loaded = false;
+        private boolean complete = false; // 是否包含全部資料（從未淘汰過）
+
+        CandleRing(int capacity) {
+            this.bars = new MarketData[capacity];
+        }
+
+        MarketData get(int index) {
+            return bars[(start + index) % bars.length];
+        }
+
+        void upsert(MarketData bar) {
+            Instant timestamp = bar.getTimestamp();
+            if (size > 0) {
+                MarketData last = get(size - 1);
+                if (!timestamp.isAfter(last.getTimestamp())) {
+                    int index = lowerBound(timestamp);
+                    if (index < size && get(index).getTimestamp().equals(timestamp)) {
+                        bars[(start + index) % bars.length] = bar;
+                    } else if (index > 0 || size < bars.length) {
+                        insertAt(index, bar); // roll-up 補上的平盤 K 棒會落在中間
+                    }
+                    return;
+                }
+            }
+            insertAt(size, bar);
+        }
+
+        private void insertAt(int index, MarketData bar) {
+            if (size == bars.length) {
+                // 緩衝區已滿，淘汰最舊的一根
+                start = (start + 1) % bars.length;
+                size--;
+                index--;
+                complete = false;
+                evictions.increment();
+            }
+            for (int i = size; i > index; i--) {
+                bars[(start + i) % bars.length] = get(i - 1);
+            }
+            bars[(start + index) % bars.length] = bar;
+            size++;
+        }
+
+        // 第一個 timestamp >= time 的位置
+        int lowerBound(Instant time) {
+            int low = 0;
+            int high = size;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (get(mid).getTimestamp().isBefore(time)) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        List<MarketData> before(Instant time, int limit) {
+            List<MarketData> result = new ArrayList<>(Math.min(limit, size));
+            for (int i = lowerBound(time) - 1; i >= 0 && result.size() < limit; i--) {
+                result.add(get(i));
+            }
+            return result;
+        }
+    }
+}
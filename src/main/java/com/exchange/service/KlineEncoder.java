@@ -0,0 +1,164 @@
+package com.exchange.service;
+
+import com.exchange.model.MarketData;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 歷史 K 線的三種輸出格式，REST 與 /ws/kline 共用：
+ * ROWS 為原本每根一個物件的 JSON；COLUMNAR 為平行陣列（time/open/high/low/close/volume），
+ * symbol 與 timeFrame 只出現一次；BINARY 為固定寬度的 big-endian long 欄位。
+ * 直接以 JsonGenerator / ByteBuffer 輸出，不建立中間的 Map。
+ */
+@Component
+public class KlineEncoder {
+
+    public static final byte BINARY_VERSION = 1;
+    // 價格與數量放大 10^8 後以 long 表示
+    public static final int BINARY_SCALE = 8;
+
+    public enum Format {
+        ROWS, COLUMNAR, BINARY;
+
+        // ?format= 優先，其次 Accept: application/octet-stream 視為 BINARY，其餘維持原本格式
+        public static Format of(String format, String accept) {
+            if (format != null && !format.isEmpty()) {
+                for (Format value : values()) {
+                    if (value.name().equalsIgnoreCase(format)) {
+                        return value;
+                    }
+                }
+                return null;
+            }
+            if (accept != null && accept.contains("application/octet-stream")) {
+                return BINARY;
+            }
+            return ROWS;
+        }
+    }
+
+    private final ObjectMapper objectMapper;
+
+    public KlineEncoder(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+
+    // 原本的格式：[{type:"historical", symbol, timeFrame, open, high, low, close, time}, ...]，順序與輸入相同
+    public String encodeRows(List<MarketData> bars, String symbol, String timeFrame) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bars.size() * 128 + 2);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartArray();
+            for (MarketData bar : bars) {
+                generator.writeStartObject();
+                generator.writeStringField("type", "historical");
+                generator.writeStringField("symbol", symbol);
+                generator.writeStringField("timeFrame", timeFrame);
+                generator.writeNumberField("open", bar.getOpen());
+                generator.writeNumberField("high", bar.getHigh());
+                generator.writeNumberField("low", bar.getLow());
+                generator.writeNumberField("close", bar.getClose());
+                generator.writeNumberField("time", bar.getTimestamp().getEpochSecond());
+                generator.writeEndObject();
+            }
+            generator.writeEndArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    // {type:"historical_columnar", symbol, timeFrame, time:[...], open:[...], ...}，時間由舊到新
+    public byte[] encodeColumnar(List<MarketData> bars, String symbol, String timeFrame) {
+        List<MarketData> ordered = oldestFirst(bars);
+        ByteArrayOutputStream out = new ByteArrayOutputStream(ordered.size() * 64 + 128);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeStringField("type", "historical_columnar");
+            generator.writeStringField("symbol", symbol);
+            generator.writeStringField("timeFrame", timeFrame);
+            generator.writeArrayFieldStart("time");
+            for (MarketData bar : ordered) {
+                generator.writeNumber(bar.getTimestamp().getEpochSecond());
+            }
+            generator.writeEndArray();
+            writeColumn(generator, "open", ordered, MarketData::getOpen);
+            writeColumn(generator, "high", ordered, MarketData::getHigh);
+            writeColumn(generator, "low", ordered, MarketData::getLow);
+            writeColumn(generator, "close", ordered, MarketData::getClose);
+            writeColumn(generator, "volume", ordered, MarketData::getVolume);
+            generator.writeEndObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /*
+     * 二進位格式（big-endian），時間由舊到新：
+     *   byte version, byte scale,
+     *   short symbolLength, symbol (UTF-8), short timeFrameLength, timeFrame (UTF-8),
+     *   int count,
+     *   long[count] time（秒）, long[count] open, high, low, close, volume（乘以 10^scale）
+     */
+    public byte[] encodeBinary(List<MarketData> bars, String symbol, String timeFrame) {
+        List<MarketData> ordered = oldestFirst(bars);
+        byte[] symbolBytes = symbol.getBytes(StandardCharsets.UTF_8);
+        byte[] timeFrameBytes = timeFrame.getBytes(StandardCharsets.UTF_8);
+        int count = ordered.size();
+        ByteBuffer buffer = ByteBuffer.allocate(2 + 2 + symbolBytes.length + 2 + timeFrameBytes.length + 4 + count * 6 * Long.BYTES);
+        buffer.put(BINARY_VERSION);
+        buffer.put((byte) BINARY_SCALE);
+        buffer.putShort((short) symbolBytes.length).put(symbolBytes);
+        buffer.putShort((short) timeFrameBytes.length).put(timeFrameBytes);
+        buffer.putInt(count);
+        for (MarketData bar : ordered) {
+            buffer.putLong(bar.getTimestamp().getEpochSecond());
+        }
+        putColumn(buffer, ordered, MarketData::getOpen);
+        putColumn(buffer, ordered, MarketData::getHigh);
+        putColumn(buffer, ordered, MarketData::getLow);
+        putColumn(buffer, ordered, MarketData::getClose);
+        putColumn(buffer, ordered, MarketData::getVolume);
+        return buffer.array();
+    }
+
+    private void writeColumn(JsonGenerator generator, String name, List<MarketData> bars,
+                             Function<MarketData, BigDecimal> column) throws IOException {
+        generator.writeArrayFieldStart(name);
+        for (MarketData bar : bars) {
+            BigDecimal value = column.apply(bar);
+            generator.writeNumber(value != null ? value : BigDecimal.ZERO);
+        }
+        generator.writeEndArray();
+    }
+
+    private void putColumn(ByteBuffer buffer, List<MarketData> bars, Function<MarketData, BigDecimal> column) {
+        for (MarketData bar : bars) {
+            BigDecimal value = column.apply(bar);
+            buffer.putLong(value != null ? value.movePointRight(BINARY_SCALE).setScale(0, RoundingMode.HALF_UP).longValueExact() : 0L);
+        }
+    }
+
+    // 快取與資料庫回傳新到舊；欄位格式固定由舊到新，前端不需要再排序
+    private List<MarketData> oldestFirst(List<MarketData> bars) {
+        if (bars.size() < 2 || !bars.get(0).getTimestamp().isAfter(bars.get(bars.size() - 1).getTimestamp())) {
+            return bars;
+        }
+        List<MarketData> reversed = new ArrayList<>(bars);
+        Collections.reverse(reversed);
+        return reversed;
+    }
+}
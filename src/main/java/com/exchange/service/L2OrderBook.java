@@ -0,0 +1,272 @@
+package com.exchange.service;
+
+import com.exchange.model.Order;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Function;
+
+/**
+ * 單一交易對的價位聚合訂單簿（L2）：價格 -> 該價位的未成交總量。
+ * 由 Redis ZSet 初始化，之後透過 order-book-delta 增量更新，快照直接讀記憶體。
+ * Redis 與增量 topic 之間沒有共同的序號，初始化前後的增量可能重複或缺漏，
+ * 因此會定期與 Redis 比對，不一致時以 reseed 重新初始化並換一個 epoch，客戶端據此重新取得快照。
+ * 除了原始價位外，另外為每個支援的價格間隔（granularity）維護一份預先聚合的深度，
+ * 增量套用時一併更新，因此任何支援的間隔都不需要重新分桶。
+ * 每筆套用的增量都會分配遞增的序號，並保留最近的增量供客戶端補齊缺漏。
+ */
+public class L2OrderBook {
+
+    public static final List<BigDecimal> DEFAULT_GRANULARITIES = List.of(
+            new BigDecimal("0.01"), new BigDecimal("0.1"), BigDecimal.ONE, BigDecimal.TEN, new BigDecimal("100"));
+
+    private final NavigableMap<BigDecimal, BigDecimal> bids = new TreeMap<>(Comparator.reverseOrder());
+    private final NavigableMap<BigDecimal, BigDecimal> asks = new TreeMap<>();
+    private final BigDecimal[] granularities;
+    private final List<NavigableMap<BigDecimal, BigDecimal>> bidLadders = new ArrayList<>();
+    private final List<NavigableMap<BigDecimal, BigDecimal>> askLadders = new ArrayList<>();
+    private final ArrayDeque<Delta> recentDeltas = new ArrayDeque<>();
+    private final int deltaHistorySize;
+    private boolean seeded = false;
+    private long epoch = 0L;    // 初始化時間，序號只在同一個 epoch 內可比較
+    private long sequence = 0L; // 最後一筆已套用增量的序號
+
+    public L2OrderBook() {
+        this(1024, DEFAULT_GRANULARITIES);
+    }
+
+    public L2OrderBook(int deltaHistorySize, List<BigDecimal> granularities) {
+        this.deltaHistorySize = deltaHistorySize;
+        this.granularities = granularities.toArray(new BigDecimal[0]);
+        for (int i = 0; i < this.granularities.length; i++) {
+            bidLadders.add(new TreeMap<>(Comparator.reverseOrder()));
+            askLadders.add(new TreeMap<>());
+        }
+    }
+
+    public synchronized boolean isSeeded() {
+        return seeded;
+    }
+
+    // 以 loader 讀取的價位初始化訂單簿；在鎖內執行，初始化期間到達的增量會等待初始化完成後再套用
+    public synchronized boolean seedIfAbsent(Function<Order.Side, Map<BigDecimal, BigDecimal>> loader) {
+        if (seeded) {
+            return false;
+        }
+        reseed(loader);
+        return true;
+    }
+
+    // 不論是否已初始化都以 loader 的價位取代目前內容，換一個新的 epoch，舊 epoch 的序號與補送全部失效
+    public synchronized void reseed(Function<Order.Side, Map<BigDecimal, BigDecimal>> loader) {
+        Map<BigDecimal, BigDecimal> bidLevels = loader.apply(Order.Side.BUY);
+        Map<BigDecimal, BigDecimal> askLevels = loader.apply(Order.Side.SELL);
+        bids.clear();
+        asks.clear();
+        bidLadders.forEach(Map::clear);
+        askLadders.forEach(Map::clear);
+        recentDeltas.clear();
+        bidLevels.forEach((price, quantity) -> applyToAllLevels(Order.Side.BUY, price, quantity, null, null));
+        askLevels.forEach((price, quantity) -> applyToAllLevels(Order.Side.SELL, price, quantity, null, null));
+        // 同一毫秒內重新初始化時 epoch 仍需不同
+        epoch = Math.max(System.currentTimeMillis(), epoch + 1);
+        sequence = 0L;
+        seeded = true;
+    }
+
+    // 原始價位是否與給定的價位完全相同（數量為 0 的價位視為不存在）
+    public synchronized boolean matches(Map<BigDecimal, BigDecimal> bidLevels, Map<BigDecimal, BigDecimal> askLevels) {
+        return seeded && sameLevels(bids, bidLevels) && sameLevels(asks, askLevels);
+    }
+
+    // 套用增量，quantityChange 為未成交數量的變化（可為負）；回傳帶序號的增量，尚未初始化時回傳 null
+    public synchronized Delta applyDelta(Order.Side side, BigDecimal price, BigDecimal quantityChange) {
+        if (!seeded) {
+            return null; // 尚未初始化時忽略，由呼叫端原樣轉發，初始化會直接讀取 Redis 的最新狀態
+        }
+        BigDecimal[] bucketPrices = new BigDecimal[granularities.length];
+        BigDecimal[] bucketQuantities = new BigDecimal[granularities.length];
+        applyToAllLevels(side, price, quantityChange, bucketPrices, bucketQuantities);
+
+        Delta delta = new Delta(epoch, ++sequence, side, price, quantityChange, bucketPrices, bucketQuantities);
+        recentDeltas.addLast(delta);
+        if (recentDeltas.size() > deltaHistorySize) {
+            recentDeltas.removeFirst();
+        }
+        return delta;
+    }
+
+    // 取得 fromSeq 之後的所有增量；若已超出保留範圍或 epoch 不同則回傳 null，呼叫端需改送完整快照
+    public synchronized List<Delta> deltasSince(long fromEpoch, long fromSeq) {
+        if (!seeded || fromEpoch != epoch || fromSeq > sequence) {
+            return null;
+        }
+        long oldestSeq = recentDeltas.isEmpty() ? sequence + 1 : recentDeltas.peekFirst().getSeq();
+        if (fromSeq + 1 < oldestSeq) {
+            return null;
+        }
+        List<Delta> missed = new ArrayList<>();
+        for (Delta delta : recentDeltas) {
+            if (delta.getSeq() > fromSeq) {
+                missed.add(delta);
+            }
+        }
+        return missed;
+    }
+
+    // 同一把鎖內取得兩邊的聚合價位與序號，保證快照與序號一致
+    public synchronized Snapshot snapshot(BigDecimal interval, int maxLevels) {
+        return new Snapshot(epoch, sequence,
+                aggregate(Order.Side.BUY, interval, maxLevels),
+                aggregate(Order.Side.SELL, interval, maxLevels));
+    }
+
+    // 依 interval 聚合價位並按最優價排序後取前 maxLevels 檔；支援的間隔直接讀預先聚合的深度
+    public synchronized Map<BigDecimal, BigDecimal> aggregate(Order.Side side, BigDecimal interval, int maxLevels) {
+        boolean isBuy = side == Order.Side.BUY;
+        Map<BigDecimal, BigDecimal> result = new LinkedHashMap<>();
+        int index = granularityIndex(interval);
+        if (index >= 0) {
+            for (Map.Entry<BigDecimal, BigDecimal> level : (isBuy ? bidLadders : askLadders).get(index).entrySet()) {
+                if (result.size() >= maxLevels) {
+                    break;
+                }
+                result.put(level.getKey(), level.getValue());
+            }
+            return result;
+        }
+
+        // 不支援的間隔才從原始價位重新分桶
+        for (Map.Entry<BigDecimal, BigDecimal> level : (isBuy ? bids : asks).entrySet()) {
+            BigDecimal intervalPrice = bucketPrice(side, level.getKey(), interval);
+            if (!result.containsKey(intervalPrice) && result.size() >= maxLevels) {
+                break; // 價位已排序，後面的區間只會更差
+            }
+            result.merge(intervalPrice, level.getValue(), BigDecimal::add);
+        }
+        return result;
+    }
+
+    // interval 對應的預先聚合深度索引，不支援時回傳 -1
+    public int granularityIndex(BigDecimal interval) {
+        for (int i = 0; i < granularities.length; i++) {
+            if (granularities[i].compareTo(interval) == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 將任意間隔對應到不大於它的最大支援間隔（小於最小間隔時使用最小間隔）
+    public BigDecimal resolveGranularity(BigDecimal interval) {
+        BigDecimal resolved = null;
+        for (BigDecimal granularity : granularities) {
+            if (granularity.compareTo(interval) <= 0 && (resolved == null || granularity.compareTo(resolved) > 0)) {
+                resolved = granularity;
+            }
+        }
+        if (resolved != null) {
+            return resolved;
+        }
+        BigDecimal smallest = granularities[0];
+        for (BigDecimal granularity : granularities) {
+            if (granularity.compareTo(smallest) < 0) {
+                smallest = granularity;
+            }
+        }
+        return smallest;
+    }
+
+    public synchronized int levelCount(Order.Side side) {
+        return side == Order.Side.BUY ? bids.size() : asks.size();
+    }
+
+    // 更新原始價位與每個間隔的聚合深度，並記錄各間隔更新後的價位與總量
+    private void applyToAllLevels(Order.Side side, BigDecimal price, BigDecimal quantityChange,
+                                  BigDecimal[] bucketPrices, BigDecimal[] bucketQuantities) {
+        boolean isBuy = side == Order.Side.BUY;
+        NavigableMap<BigDecimal, BigDecimal> levels = isBuy ? bids : asks;
+        BigDecimal before = levels.getOrDefault(price, BigDecimal.ZERO);
+        // 原始價位不會小於 0，聚合深度只套用實際生效的變化，保持與原始價位加總一致
+        BigDecimal effectiveChange = addToLevel(levels, price, quantityChange).subtract(before);
+        for (int i = 0; i < granularities.length; i++) {
+            BigDecimal bucket = bucketPrice(side, price, granularities[i]);
+            BigDecimal total = addToLevel((isBuy ? bidLadders : askLadders).get(i), bucket, effectiveChange);
+            if (bucketPrices != null) {
+                bucketPrices[i] = bucket;
+                bucketQuantities[i] = total;
+            }
+        }
+    }
+
+    private static boolean sameLevels(NavigableMap<BigDecimal, BigDecimal> current, Map<BigDecimal, BigDecimal> expected) {
+        int count = 0;
+        for (Map.Entry<BigDecimal, BigDecimal> level : expected.entrySet()) {
+            if (level.getValue().signum() <= 0) {
+                continue;
+            }
+            BigDecimal quantity = current.get(level.getKey());
+            if (quantity == null || quantity.compareTo(level.getValue()) != 0) {
+                return false;
+            }
+            count++;
+        }
+        return count == current.size();
+    }
+
+    // 買單向下取整、賣單向上取整到 interval 的倍數
+    private static BigDecimal bucketPrice(Order.Side side, BigDecimal price, BigDecimal interval) {
+        return price.divide(interval, 0, side == Order.Side.BUY ? RoundingMode.FLOOR : RoundingMode.CEILING)
+                .multiply(interval);
+    }
+
+    // 回傳更新後的價位總量，數量歸零時移除價位並回傳 0
+    private BigDecimal addToLevel(NavigableMap<BigDecimal, BigDecimal> levels, BigDecimal price, BigDecimal quantityChange) {
+        BigDecimal updated = levels.getOrDefault(price, BigDecimal.ZERO).add(quantityChange);
+        if (updated.signum() <= 0) {
+            levels.remove(price);
+            return BigDecimal.ZERO;
+        }
+        levels.put(price, updated);
+        return updated;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Delta {
+        private final long epoch;
+        private final long seq;
+        private final Order.Side side;
+        private final BigDecimal price;
+        private final BigDecimal quantityChange;
+        private final BigDecimal[] bucketPrices;     // 各間隔下此增量所屬的價位
+        private final BigDecimal[] bucketQuantities; // 各間隔下該價位更新後的總量
+
+        public BigDecimal getBucketPrice(int granularityIndex) {
+            return bucketPrices[granularityIndex];
+        }
+
+        public BigDecimal getBucketQuantity(int granularityIndex) {
+            return bucketQuantities[granularityIndex];
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Snapshot {
+        private final long epoch;
+        private final long seq;
+        private final Map<BigDecimal, BigDecimal> buy;
+        private final Map<BigDecimal, BigDecimal> sell;
+    }
+}
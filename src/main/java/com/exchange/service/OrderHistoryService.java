@@ -6,11 +6,15 @@ import java.time.Instant;
 import java.util.List;
 
 public interface OrderHistoryService {
+    // 依 (createdAt, id) 由新到舊取一頁，beforeCreatedAt / beforeId 為上一頁最後一筆訂單，第一頁傳 null
     List<OrderHistoryDTO> getOrderHistory(String userId,
                                           String symbol,
                                           Instant startTime,
                                           Instant endTime,
                                           Order.OrderType orderType,
                                           Order.Side side,
-                                          Order.OrderStatus status);
-}
\ No newline at end of file
+                                          Order.OrderStatus status,
+                                          Instant beforeCreatedAt,
+                                          String beforeId,
+                                          int limit);
+}
@@ -3,27 +3,32 @@ package com.exchange.service;
 import com.exchange.dto.OrderHistoryDTO;
 import com.exchange.dto.SimpleTradeInfo;
 import com.exchange.model.Order;
+import com.exchange.model.UserTrade;
 import com.exchange.repository.OrderRepository;
-import com.exchange.repository.TradeRepository;
+import com.exchange.repository.UserTradeRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Map;
 
 @Service
 public class OrderHistoryServiceImpl implements OrderHistoryService {
 
     private final OrderRepository orderRepository;
-    private final TradeRepository tradeRepository;
+    private final UserTradeRepository userTradeRepository;
 
     @Autowired
-    public OrderHistoryServiceImpl(OrderRepository orderRepository, TradeRepository tradeRepository) {
+    public OrderHistoryServiceImpl(OrderRepository orderRepository, UserTradeRepository userTradeRepository) {
         this.orderRepository = orderRepository;
-        this.tradeRepository = tradeRepository;
+        this.userTradeRepository = userTradeRepository;
     }
 
+    // 一頁訂單一次查詢，該頁所有訂單的成交再從用戶成交帳本一次查詢後在記憶體中依訂單分組（原本每筆訂單各查一次成交）
     @Override
     public List<OrderHistoryDTO> getOrderHistory(String userId,
                                                  String symbol,
@@ -31,15 +36,33 @@ public class OrderHistoryServiceImpl implements OrderHistoryService {
                                                  Instant endTime,
                                                  Order.OrderType orderType,
                                                  Order.Side side,
-                                                 Order.OrderStatus status) {
+                                                 Order.OrderStatus status,
+                                                 Instant beforeCreatedAt,
+                                                 String beforeId,
+                                                 int limit) {
 
-        List<Order> orders = orderRepository.findOrderHistory(userId, symbol, startTime, endTime, orderType, side, status);
+        List<Order> orders = orderRepository.findOrderHistoryPage(userId, symbol, startTime, endTime, orderType, side, status,
+                beforeCreatedAt, beforeId, PageRequest.of(0, limit));
+        if (orders.isEmpty()) {
+            return List.of();
+        }
 
-        return orders.stream()
-                .map(order -> {
-                    List<SimpleTradeInfo> trades = tradeRepository.findSimpleTradeInfoByOrderId(order.getId());
-                    return new OrderHistoryDTO(order, trades);
-                })
-                .collect(Collectors.toList());
+        Map<String, List<SimpleTradeInfo>> tradesByOrder = new HashMap<>();
+        for (Order order : orders) {
+            tradesByOrder.put(order.getId(), new ArrayList<>());
+        }
+        // 成交已依時間排序；帳本每列只屬於一筆訂單，角色也已寫在帳本中
+        for (UserTrade trade : userTradeRepository.findByOrderIdInOrderByTradeTime(tradesByOrder.keySet())) {
+            List<SimpleTradeInfo> trades = tradesByOrder.get(trade.getOrderId());
+            if (trades != null) {
+                trades.add(new SimpleTradeInfo(trade.getPrice(), trade.getQuantity(), trade.getTradeTime(), trade.getRole()));
+            }
+        }
+
+        List<OrderHistoryDTO> history = new ArrayList<>(orders.size());
+        for (Order order : orders) {
+            history.add(new OrderHistoryDTO(order, tradesByOrder.get(order.getId())));
+        }
+        return history;
     }
-}
\ No newline at end of file
+}
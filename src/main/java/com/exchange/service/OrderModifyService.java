@@ -1,89 +1,207 @@
 package com.exchange.service;
 
+import com.exchange.dto.BatchOrderResult;
+import com.exchange.dto.OrderRequest;
 import com.exchange.model.Order;
+import com.exchange.producer.OrderBookDeltaProducer;
+import com.exchange.repository.OrderCodec;
+import com.exchange.repository.RedisOrderRepository;
 import com.exchange.utils.ApiResponse;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
 import java.time.Instant;
-import java.util.Optional;
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.List;
 
 @Service
 public class OrderModifyService {
 
-    private final RedisTemplate<String, Object> redisTemplate;
-    private final ObjectMapper objectMapper;
+    private final RedisOrderRepository redisOrderRepository;
+    private final OrderCodec orderCodec;
+    private final OrderWriteBehind orderWriteBehind;
+    private final OrderService orderService;
+    private final OrderBookDeltaProducer orderBookDeltaProducer;
 
     @Autowired
-    public OrderModifyService(RedisTemplate<String, Object> redisTemplate, ObjectMapper objectMapper) {
-        this.redisTemplate = redisTemplate;
-        this.objectMapper = objectMapper;
+    public OrderModifyService(RedisOrderRepository redisOrderRepository, OrderCodec orderCodec, OrderWriteBehind orderWriteBehind,
+                              OrderService orderService, OrderBookDeltaProducer orderBookDeltaProducer) {
+        this.redisOrderRepository = redisOrderRepository;
+        this.orderCodec = orderCodec;
+        this.orderWriteBehind = orderWriteBehind;
+        this.orderService = orderService;
+        this.orderBookDeltaProducer = orderBookDeltaProducer;
     }
 
-    public ResponseEntity<ApiResponse<?>> checkAndRemoveOrderFromRedis(String symbol, String side, String orderId, BigDecimal price, long modifiedAt, String userId, boolean isModify, BigDecimal newQuantity) {
+    // 修改訂單（REST 與 WebSocket 下單共用）：從掛單簿移除舊訂單後以新的價格與數量重新送出
+    public ResponseEntity<ApiResponse<?>> modifyOrder(String userId, String orderId, OrderRequest orderRequest) {
         try {
-            // 計算 ZSet 的 score
-            double score = calculateScore(price, modifiedAt, side);
-
-            // 生成 Redis 的 key (根據 symbol 和 side)
-            String redisKey = getRedisKey(symbol, side);
+            String symbol = orderRequest.getSymbol();
+            Order.Side side = orderRequest.getSide();
+            BigDecimal oldPrice = orderRequest.getOldPrice(); // 舊的價格
+            BigDecimal newPrice = orderRequest.getPrice(); // 新的價格
+            BigDecimal newQuantity = orderRequest.getQuantity(); // 新的數量
+            Long modifiedAt = orderRequest.getModifiedAt() != null
+                    ? orderRequest.getModifiedAt().toInstant().toEpochMilli() : null; // 前端傳遞的修改時間，只作為查詢提示
+
+            // 以 orderId 檢查並移除 Redis 中的舊訂單
+            ResponseEntity<ApiResponse<?>> response = checkAndRemoveOrderFromRedis(
+                    symbol, side.name(), orderId, oldPrice, modifiedAt, userId, true, newQuantity);
+
+            // 如果訂單未找到或數量檢查失敗，直接返回相應的響應（檢查是否有業務邏輯錯誤）
+            if (response.getStatusCode() != HttpStatus.OK) {
+                return response;
+            }
 
-            // 查詢 ZSet 中該 score 對應的所有訂單
-            Set<Object> orders = redisTemplate.opsForZSet().rangeByScore(redisKey, score, score);
+            // 從 Redis 返回的舊訂單
+            Order oldOrder = (Order) response.getBody().getData();
+
+            // 發送舊訂單數據到 Delta 服務
+            orderBookDeltaProducer.sendDelta(
+                    oldOrder.getSymbol(),
+                    oldOrder.getSide().toString(),
+                    oldOrder.getPrice().toString(),
+                    "-" + oldOrder.getUnfilledQuantity().toString()
+            );
+
+            // 更新訂單的相關字段
+            oldOrder.setPrice(newPrice);
+            oldOrder.setQuantity(newQuantity);
+            oldOrder.setFilledQuantity(oldOrder.getFilledQuantity()); // 更新已成交數量
+            oldOrder.setUnfilledQuantity(newQuantity.subtract(oldOrder.getFilledQuantity())); // 使用 subtract 來更新未成交數量
+            oldOrder.setModifiedAt(Instant.now());
+            oldOrder.setUpdatedAt(Instant.now());
+
+            // 先同步寫入 MySQL 再發送到 Kafka，撮合引擎寫入的成交不會被稍後才寫入的舊副本覆蓋
+            orderWriteBehind.writeNow(oldOrder);
+            orderService.saveOrder(oldOrder);
+
+            return ResponseEntity.ok(new ApiResponse<>("訂單修改成功", oldOrder));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ApiResponse<>(e.getMessage(), 40002));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(new ApiResponse<>("訂單更新失敗，請稍後再試", 50002));
+        }
+    }
 
-            // 如果查詢結果為空，表示訂單不存在
-            if (orders == null || orders.isEmpty()) {
-                return ResponseEntity.badRequest().body(new ApiResponse<>("訂單未找到", "40401"));
+    // 取消訂單（REST 與 WebSocket 下單共用）：從掛單簿移除後將 CANCELLED 交給 write-behind 寫入 MySQL 並發送增量
+    public ResponseEntity<ApiResponse<?>> cancelOrder(String userId, String orderId, OrderRequest orderRequest) {
+        try {
+            // 從請求中提取訂單信息
+            String symbol = orderRequest.getSymbol();
+            Order.Side side = orderRequest.getSide();
+            BigDecimal price = orderRequest.getPrice(); // 訂單的價格
+            Long modifiedAt = orderRequest.getModifiedAt() != null
+                    ? orderRequest.getModifiedAt().toInstant().toEpochMilli() : null; // 修改時間，只作為查詢提示
+
+            // 以 orderId 查詢並移除 Redis 中的訂單
+            ResponseEntity<ApiResponse<?>> response = checkAndRemoveOrderFromRedis(symbol, side.name(), orderId, price, modifiedAt, userId, false, null);
+
+            // 如果訂單未找到或驗證失敗，直接返回相應的響應
+            if (response.getStatusCode() != HttpStatus.OK) {
+                return response;
             }
 
-            // 遍歷查詢到的訂單，確認 orderId 和 userId
-            for (Object orderObj : orders) {
-                String orderJson = (String) orderObj; // 假設你儲存的是 JSON 格式的訂單
-                // 提取 value 中的訂單資料
-                Order order = objectMapper.readValue(orderJson, Order.class);
+            // 取得要移除的訂單
+            Order order = (Order) response.getBody().getData();
 
-                // 檢查 orderId 和 userId 是否符合
-                if (order.getId().equals(orderId) && order.getUserId().equals(userId)) {
+            // 將取消的訂單狀態寫入 MySQL
+            order.setStatus(Order.OrderStatus.CANCELLED);
+            order.setUpdatedAt(Instant.now());
+            order.setModifiedAt(Instant.now());
 
-                    // 如果是修改操作，檢查新數量是否存在並且大於未成交數量
-                    if (isModify && (newQuantity == null || newQuantity.compareTo(order.getFilledQuantity()) <= 0)) {
-                        return ResponseEntity.badRequest().body(new ApiResponse<>("修改後的數量小於已成交數量", "40001"));
-                    }
+            // 交給 write-behind 批次寫入數據庫
+            orderWriteBehind.enqueue(order);
 
-                    // 找到對應訂單，移除 ZSet 中的該訂單
-                    redisTemplate.opsForZSet().remove(redisKey, orderJson);
-                    return ResponseEntity.ok(new ApiResponse<>("訂單查詢並移除成功", order));
-                }
+            orderBookDeltaProducer.sendDelta(
+                    order.getSymbol(),
+                    order.getSide().toString(),
+                    order.getPrice().toString(),
+                    "-" + order.getUnfilledQuantity().toString()
+            );
+
+            return ResponseEntity.ok(new ApiResponse<>("訂單取消成功，已更新到資料庫", order));
+
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(new ApiResponse<>(e.getMessage(), "40004"));
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body(new ApiResponse<>("訂單取消失敗，請稍後再試", "50003"));
+        }
+    }
+
+    // 以 orderId 查詢並移除掛單，整個流程是一次 Redis 往返的 Lua 腳本
+    // price 與 modifiedAt 只在索引中找不到訂單時用來縮小查詢範圍，可為 null
+    public ResponseEntity<ApiResponse<?>> checkAndRemoveOrderFromRedis(String symbol, String side, String orderId, BigDecimal price, Long modifiedAt, String userId, boolean isModify, BigDecimal newQuantity) {
+        try {
+            // 修改時必須帶新數量
+            if (isModify && newQuantity == null) {
+                return ResponseEntity.badRequest().body(new ApiResponse<>("修改後的數量小於已成交數量", "40001"));
             }
 
-            // 如果沒有找到符合條件的訂單
-            return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ApiResponse<>("無權操作該訂單", "40302"));
+            RedisOrderRepository.RemoveResult result = redisOrderRepository.removeOrder(
+                    symbol, side, orderId, userId, price, modifiedAt, isModify ? newQuantity : null);
+
+            switch (result.getStatus()) {
+                case REMOVED:
+                    Order order = orderCodec.decode(result.getEncodedOrder());
+                    return ResponseEntity.ok(new ApiResponse<>("訂單查詢並移除成功", order));
+                case FORBIDDEN:
+                    return ResponseEntity.status(HttpStatus.FORBIDDEN).body(new ApiResponse<>("無權操作該訂單", "40302"));
+                case QUANTITY_TOO_LOW:
+                    return ResponseEntity.badRequest().body(new ApiResponse<>("修改後的數量小於已成交數量", "40001"));
+                default:
+                    // 訂單不存在（或已被撮合引擎移除）
+                    return ResponseEntity.badRequest().body(new ApiResponse<>("訂單未找到", "40401"));
+            }
 
         } catch (Exception e) {
             return ResponseEntity.status(500).body(new ApiResponse<>("處理訂單時發生錯誤", "50001"));
         }
     }
 
-    // 計算 ZSet 的 score
-    public double calculateScore(BigDecimal price, long modifiedAt, String side) {
-        int precision = 7; // 假設使用 7 位精度
-        BigDecimal precisionFactor = BigDecimal.TEN.pow(precision);
-        BigDecimal pricePart = price.multiply(precisionFactor);
-        BigDecimal timePart = BigDecimal.valueOf(modifiedAt);
-        BigDecimal calculatedScore = side.equalsIgnoreCase("BUY")
-                ? pricePart.subtract(timePart)
-                : pricePart.add(timePart);
-        return calculatedScore.doubleValue();
-    }
+    // 批次取消：缺少必要欄位的請求直接拒絕，其餘在一次 Redis 腳本呼叫中移除
+    // 移除成功的結果狀態為 CANCELLED 並帶上原本的訂單，寫入資料庫與發送增量由呼叫端處理
+    public List<BatchOrderResult> removeOrdersFromRedis(String userId, List<OrderRequest> requests) {
+        BatchOrderResult[] results = new BatchOrderResult[requests.size()];
+        List<RedisOrderRepository.RemoveRequest> removeRequests = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < requests.size(); i++) {
+            OrderRequest request = requests.get(i);
+            if (request.getOrderId() == null || request.getSymbol() == null || request.getSide() == null) {
+                results[i] = new BatchOrderResult(i, request.getOrderId(), "REJECTED", "缺少 orderId、symbol 或 side", null);
+                continue;
+            }
+            Long modifiedAt = request.getModifiedAt() != null ? request.getModifiedAt().toInstant().toEpochMilli() : null;
+            removeRequests.add(new RedisOrderRepository.RemoveRequest(request.getSymbol(), request.getSide().name(),
+                    request.getOrderId(), request.getPrice(), modifiedAt));
+            positions.add(i);
+        }
 
-    // 根據 symbol 和 side 生成 Redis 的 key
-    public String getRedisKey(String symbol, String side) {
-        return symbol + ":" + side;
+        List<RedisOrderRepository.RemoveResult> removed = removeRequests.isEmpty()
+                ? List.of() : redisOrderRepository.removeOrders(userId, removeRequests);
+        for (int j = 0; j < removed.size(); j++) {
+            int i = positions.get(j);
+            String orderId = removeRequests.get(j).getOrderId();
+            RedisOrderRepository.RemoveResult result = removed.get(j);
+            switch (result.getStatus()) {
+                case REMOVED:
+                    try {
+                        results[i] = new BatchOrderResult(i, orderId, "CANCELLED", null, orderCodec.decode(result.getEncodedOrder()));
+                    } catch (Exception e) {
+                        results[i] = new BatchOrderResult(i, orderId, "FAILED", "處理訂單時發生錯誤", null);
+                    }
+                    break;
+                case FORBIDDEN:
+                    results[i] = new BatchOrderResult(i, orderId, "FORBIDDEN", "無權操作該訂單", null);
+                    break;
+                default:
+                    results[i] = new BatchOrderResult(i, orderId, "NOT_FOUND", "訂單未找到", null);
+            }
+        }
+        return List.of(results);
     }
 }
@@ -1,9 +1,15 @@
 package com.exchange.service;
 
+import com.exchange.dto.OrderRequest;
 import com.exchange.model.Order;
 import com.exchange.producer.OrderProducer;
+import org.springframework.kafka.support.SendResult;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 @Service
 public class OrderService {
 
@@ -21,8 +27,38 @@ public class OrderService {
         orderProducer.sendNewOrder(order);
     }
 
+    // 驗證後發送新訂單，回傳 Kafka 確認結果的 future
+    public CompletableFuture<SendResult<String, String>> saveOrderAcked(Order order) {
+        validateOrder(order);
+        return orderProducer.sendNewOrderAcked(order);
+    }
+
+    // 批次提交已驗證的訂單，一次送出後回傳每筆的發送結果
+    public List<CompletableFuture<SendResult<String, String>>> saveOrders(List<Order> orders) {
+        return orderProducer.sendNewOrders(orders);
+    }
+
+    // 由下單請求建立新訂單（REST 與 WebSocket 下單共用），狀態為 PENDING，尚未驗證
+    public Order buildOrder(String orderId, String userId, OrderRequest orderRequest) {
+        Instant now = Instant.now();
+        Order order = new Order();
+        order.setId(orderId);
+        order.setUserId(userId);
+        order.setSymbol(orderRequest.getSymbol());
+        order.setPrice(orderRequest.getPrice());
+        order.setQuantity(orderRequest.getQuantity());
+        order.setUnfilledQuantity(orderRequest.getQuantity());
+        order.setSide(orderRequest.getSide());
+        order.setOrderType(orderRequest.getOrderType());
+        order.setStatus(Order.OrderStatus.PENDING);
+        order.setCreatedAt(now);
+        order.setUpdatedAt(now);
+        order.setModifiedAt(now);
+        return order;
+    }
+
     // 驗證訂單的有效性
-    private void validateOrder(Order order) {
+    public void validateOrder(Order order) {
         if (order.getOrderType() == Order.OrderType.MARKET && order.getPrice() != null) {
             throw new IllegalArgumentException("市價單不應該設置價格");
         }
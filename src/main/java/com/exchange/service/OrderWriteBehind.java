@@ -0,0 +1,291 @@
+package com.exchange.service;
+
+import com.exchange.model.Order;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.TimeZone;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 修改與取消訂單後的 MySQL 寫入（write-behind）：呼叫端只把訂單放進待寫入表，
+ * 同一筆訂單在寫入前多次更新只保留最後一次，由背景執行緒最多每 flush-ms 毫秒（或累積到 batch-size 筆時）
+ * 以一次 JDBC batch 的 INSERT ... ON DUPLICATE KEY UPDATE 寫入，不會像 JpaRepository.save 先 SELECT 再寫入。
+ * 待寫入的訂單超過 max-pending 時由呼叫端同步寫入；關閉時寫完所有待寫入的訂單。
+ * 寫入後才會送往撮合引擎的訂單（修改）需以 writeNow 同步寫入，否則撮合引擎寫入的成交可能早於這次寫入。
+ * 已存在的訂單只在 modified_at 不倒退且 filled_quantity 不減少時更新。
+ * background-flush=false 時不啟動背景執行緒，只在 flush、達到 max-pending 與關閉時寫入（測試用）。
+ */
+@Service
+public class OrderWriteBehind {
+
+    private static final Logger logger = LoggerFactory.getLogger(OrderWriteBehind.class);
+
+    // 資料庫中的訂單比這次寫入的版本舊時才更新：modified_at 不倒退，filled_quantity 不減少，
+    // 撮合引擎在 write-behind 寫入前已寫入的成交不會被舊的副本覆蓋
+    private static final String NEWER = "(modified_at IS NULL OR VALUES(modified_at) >= modified_at) " +
+            "AND VALUES(filled_quantity) >= COALESCE(filled_quantity, 0)";
+
+    // 訂單不存在時新增（撮合引擎可能尚未寫入），存在時只更新會隨修改/取消改變的欄位
+    private static final String UPSERT_SQL = "INSERT INTO orders " +
+            "(id, user_id, symbol, price, quantity, filled_quantity, unfilled_quantity, side, order_type, status, " +
+            "stop_price, take_profit_price, created_at, updated_at, modified_at) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?) " +
+            "ON DUPLICATE KEY UPDATE " + ifNewer("price") + ", " + ifNewer("quantity") + ", " +
+            ifNewer("filled_quantity") + ", " + ifNewer("unfilled_quantity") + ", " +
+            ifNewer("status") + ", " + ifNewer("updated_at") + ", " +
+            // MySQL 依序套用，modified_at 必須最後更新，前面的欄位比較的才是原本的值
+            ifNewer("modified_at");
+
+    // 與 Hibernate 寫入 Instant 的方式相同，以 UTC 儲存
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final long flushMs;
+    private final int batchSize;
+    private final int maxPending;
+    private final boolean backgroundFlush;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition batchReady = lock.newCondition();
+    private LinkedHashMap<String, Order> pending = new LinkedHashMap<>();
+    // 同一時間只有一個 drain + 寫入，避免較舊的版本在較新的版本之後寫入
+    private final Object writeLock = new Object();
+
+    private Thread flusher;
+    private volatile boolean running = true;
+
+    @Autowired
+    public OrderWriteBehind(JdbcTemplate jdbcTemplate,
+                            @Value("${orders.write-behind.flush-ms:50}") long flushMs,
+                            @Value("${orders.write-behind.batch-size:500}") int batchSize,
+                            @Value("${orders.write-behind.max-pending:50000}") int maxPending,
+                            @Value("${orders.write-behind.background-flush:true}") boolean backgroundFlush) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.flushMs = flushMs;
+        this.batchSize = batchSize;
+        this.maxPending = maxPending;
+        this.backgroundFlush = backgroundFlush;
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!backgroundFlush) {
+            logger.info("Order write-behind background flush is disabled");
+            return;
+        }
+        flusher = new Thread(this::runFlusher, "order-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // 放入待寫入表；待寫入數量已達上限時在呼叫端執行緒直接寫入，寫入失敗時拋出例外
+    public void enqueue(Order order) {
+        enqueueAll(List.of(order));
+    }
+
+    // 立即寫入單筆訂單並取代待寫入表中的舊版本，寫入失敗時拋出例外
+    public void writeNow(Order order) {
+        synchronized (writeLock) {
+            lock.lock();
+            try {
+                pending.remove(order.getId());
+            } finally {
+                lock.unlock();
+            }
+            write(List.of(order));
+        }
+    }
+
+    public void enqueueAll(List<Order> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        boolean full;
+        lock.lock();
+        try {
+            for (Order order : orders) {
+                // 重新放入以移到最後，寫入順序與最後一次更新的順序一致
+                pending.remove(order.getId());
+                pending.put(order.getId(), order);
+            }
+            full = pending.size() >= maxPending;
+            if (pending.size() >= batchSize) {
+                batchReady.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (full) {
+            flush(true);
+        }
+    }
+
+    // 寫入目前所有待寫入的訂單，回傳寫入的筆數
+    public int flush() {
+        return flush(true);
+    }
+
+    public int getPendingCount() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (flusher != null) {
+            flusher.interrupt();
+            try {
+                flusher.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            int count = flush(true);
+            logger.info("Flushed {} pending order writes on shutdown", count);
+        } catch (Exception e) {
+            logger.error("Failed to flush {} pending order writes on shutdown", getPendingCount(), e);
+        }
+    }
+
+    private void runFlusher() {
+        while (running) {
+            try {
+                awaitBatch();
+                flush(false);
+            } catch (InterruptedException e) {
+                // shutdown() 會在停止後寫完剩下的訂單
+                return;
+            } catch (Exception e) {
+                // 已記錄並放回待寫入表，下一輪重試
+            }
+        }
+    }
+
+    // 等到累積一個 batch 或超過 flush-ms
+    private void awaitBatch() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushMs);
+        lock.lock();
+        try {
+            long remaining;
+            while (pending.size() < batchSize && (remaining = deadline - System.nanoTime()) > 0) {
+                batchReady.awaitNanos(remaining);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private int flush(boolean rethrow) {
+        synchronized (writeLock) {
+            List<Order> orders = drain();
+            int count = 0;
+            for (int from = 0; from < orders.size(); from += batchSize) {
+                List<Order> batch = orders.subList(from, Math.min(orders.size(), from + batchSize));
+                try {
+                    write(batch);
+                    count += batch.size();
+                } catch (RuntimeException e) {
+                    logger.error("Failed to write {} orders, keeping them for retry", orders.size() - from, e);
+                    requeue(orders.subList(from, orders.size()));
+                    if (rethrow) {
+                        throw e;
+                    }
+                    break;
+                }
+            }
+            return count;
+        }
+    }
+
+    private List<Order> drain() {
+        lock.lock();
+        try {
+            if (pending.isEmpty()) {
+                return List.of();
+            }
+            List<Order> orders = new ArrayList<>(pending.values());
+            pending = new LinkedHashMap<>();
+            return orders;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 寫入失敗的訂單放回待寫入表，已有較新版本的訂單以新版本為準
+    private void requeue(List<Order> orders) {
+        lock.lock();
+        try {
+            LinkedHashMap<String, Order> merged = new LinkedHashMap<>();
+            for (Order order : orders) {
+                merged.put(order.getId(), order);
+            }
+            merged.putAll(pending);
+            pending = merged;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void write(List<Order> orders) {
+        jdbcTemplate.batchUpdate(UPSERT_SQL, new BatchPreparedStatementSetter() {
+            private final Calendar utc = Calendar.getInstance(UTC);
+
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                Order order = orders.get(i);
+                ps.setString(1, order.getId());
+                ps.setString(2, order.getUserId());
+                ps.setString(3, order.getSymbol());
+                ps.setBigDecimal(4, order.getPrice());
+                ps.setBigDecimal(5, order.getQuantity());
+                ps.setBigDecimal(6, order.getFilledQuantity());
+                ps.setBigDecimal(7, order.getUnfilledQuantity());
+                ps.setString(8, order.getSide().name());
+                ps.setString(9, order.getOrderType().name());
+                ps.setString(10, order.getStatus().name());
+                ps.setBigDecimal(11, order.getStopPrice());
+                ps.setBigDecimal(12, order.getTakeProfitPrice());
+                ps.setTimestamp(13, timestamp(order.getCreatedAt()), utc);
+                ps.setTimestamp(14, timestamp(order.getUpdatedAt()), utc);
+                ps.setTimestamp(15, timestamp(order.getModifiedAt()), utc);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return orders.size();
+            }
+        });
+    }
+
+    private static String ifNewer(String column) {
+        return column + " = CASE WHEN " + NEWER + " THEN VALUES(" + column + ") ELSE " + column + " END";
+    }
+
+    private static Timestamp timestamp(Instant instant) {
+        return Timestamp.from(instant != null ? instant : Instant.now());
+    }
+}
@@ -1,218 +1,194 @@
 package com.exchange.service;
 
 import com.exchange.model.Order;
+import com.exchange.repository.OrderBookLayout;
+import com.exchange.repository.OrderCodec;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.ZSetOperations;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
 import java.math.BigDecimal;
-import java.time.Instant;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 public class OrderbookSnapshotService {
 
+    private static final Logger logger = LoggerFactory.getLogger(OrderbookSnapshotService.class);
+
+    // 快照每邊最多回傳的價格區間數
+    private static final int MAX_SNAPSHOT_LEVELS = 50000;
+
+    @Value("${orderbook.delta-history-size:1024}")
+    private int deltaHistorySize;
+
+    // 預先聚合深度的價格間隔
+    @Value("${orderbook.granularities:0.01,0.1,1,10,100}")
+    private List<BigDecimal> granularities;
+
+    // 初始化失敗後至少間隔多久再重試，避免每筆增量都讀取 Redis
+    @Value("${orderbook.seed-retry-ms:1000}")
+    private long seedRetryMs;
+
     private final RedisTemplate<String, String> redisTemplate;
     private final ObjectMapper objectMapper;
+    private final OrderBookLayout layout;
+    private final OrderCodec orderCodec;
+
+    // 每個交易對一份記憶體內的 L2 訂單簿
+    private final ConcurrentHashMap<String, L2OrderBook> books = new ConcurrentHashMap<>();
+    // symbol -> 下一次可以重試初始化的時間
+    private final ConcurrentHashMap<String, Long> seedRetryAt = new ConcurrentHashMap<>();
+    // 上一次比對與 Redis 不一致的 symbol，連續兩次不一致才重新初始化
+    private final Set<String> drifted = ConcurrentHashMap.newKeySet();
 
     @Autowired
-    public OrderbookSnapshotService(RedisTemplate<String, String> redisTemplate, ObjectMapper objectMapper) {
+    public OrderbookSnapshotService(RedisTemplate<String, String> redisTemplate, ObjectMapper objectMapper, OrderBookLayout layout,
+                                    OrderCodec orderCodec) {
         this.redisTemplate = redisTemplate;
         this.objectMapper = objectMapper;
+        this.layout = layout;
+        this.orderCodec = orderCodec;
     }
 
     public Map<String, Object> getOrderbookSnapshot(String symbol, BigDecimal interval) {
-        long startTime = System.currentTimeMillis(); // 開始計時
-
         // 默認的價格區間為 100，如果傳入為 null 則使用默認值
         BigDecimal priceInterval = (interval != null) ? interval : BigDecimal.valueOf(100);
 
-        // 取得買單和賣單第一檔，檢查返回的結果是否為空
-        ZSetOperations.TypedTuple<String> firstBuyOrder = fetchFirstOrder(symbol, ":BUY", true);
-        ZSetOperations.TypedTuple<String> firstSellOrder = fetchFirstOrder(symbol, ":SELL", false);
-
-        // 初始化快照
-        Map<String, Object> snapshot = new HashMap<>();
-
-        // 如果買單和賣單都為空，返回空快照
-        if (firstBuyOrder == null && firstSellOrder == null) {
-            return Collections.emptyMap();
-        }
-
-        // Lua腳本查詢構建
-        String luaScript =
-                "local buyOrders = redis.call('ZRANGEBYSCORE', KEYS[1], ARGV[1], ARGV[2], 'WITHSCORES') " +
-                        "local sellOrders = redis.call('ZRANGEBYSCORE', KEYS[2], ARGV[3], ARGV[4], 'WITHSCORES') " +
-                        "return {buyOrders, sellOrders}";
-
-        List<String> keys = new ArrayList<>();
-        List<String> args = new ArrayList<>();
-
-        // 如果買單有資料，處理買單部分
-        if (firstBuyOrder != null) {
-            BigDecimal buyPrice = parseOrderPrice(firstBuyOrder).orElse(BigDecimal.ZERO);
-            double[] buyScoreRange = calculateScoreRange(buyPrice, priceInterval, true);
-
-            // 添加買單的 key 和參數
-            keys.add(symbol + ":BUY");
-            args.add(String.valueOf(buyScoreRange[0]));
-            args.add(String.valueOf(buyScoreRange[1]));
-        } else {
-            // 如果買單為空，添加佔位 key 和參數
-            keys.add("dummy:BUY"); // 確保 Lua 腳本正確執行
-            args.add("0");
-            args.add("0");
-        }
-
-        // 如果賣單有資料，處理賣單部分
-        if (firstSellOrder != null) {
-            BigDecimal sellPrice = parseOrderPrice(firstSellOrder).orElse(BigDecimal.ZERO);
-            double[] sellScoreRange = calculateScoreRange(sellPrice, priceInterval, false);
-
-            // 添加賣單的 key 和參數
-            keys.add(symbol + ":SELL");
-            args.add(String.valueOf(sellScoreRange[0]));
-            args.add(String.valueOf(sellScoreRange[1]));
-        } else {
-            // 如果賣單為空，添加佔位 key 和參數
-            keys.add("dummy:SELL"); // 確保 Lua 腳本正確執行
-            args.add("0");
-            args.add("0");
-        }
-
-        // 執行 Lua 腳本
-        DefaultRedisScript<List> redisScript = new DefaultRedisScript<>(luaScript, List.class);
-        List result = redisTemplate.execute(redisScript, keys, args.toArray());
-
-        // 解析買單和賣單的結果
-        Set<ZSetOperations.TypedTuple<String>> buyOrders = firstBuyOrder != null ? parseRedisResult((List<Object>) result.get(0)) : Collections.emptySet();
-        Set<ZSetOperations.TypedTuple<String>> sellOrders = firstSellOrder != null ? parseRedisResult((List<Object>) result.get(1)) : Collections.emptySet();
-
-        // 聚合買單和賣單快照
-        if (!buyOrders.isEmpty()) {
-            Map<BigDecimal, BigDecimal> buySnapshot = aggregateOrderSnapshot(buyOrders, priceInterval, true);
-            snapshot.put("buy", getTopNOrders(buySnapshot, 50000, true));
+        L2OrderBook.Snapshot bookSnapshot = ensureSeeded(symbol).snapshot(priceInterval, MAX_SNAPSHOT_LEVELS);
+
+        // 快照帶上 epoch 和序號，客戶端只套用序號更大的增量
+        Map<String, Object> snapshot = new LinkedHashMap<>();
+        snapshot.put("type", "snapshot");
+        snapshot.put("symbol", symbol);
+        snapshot.put("interval", priceInterval);
+        snapshot.put("epoch", bookSnapshot.getEpoch());
+        snapshot.put("seq", bookSnapshot.getSeq());
+        if (!bookSnapshot.getBuy().isEmpty()) {
+            snapshot.put("buy", bookSnapshot.getBuy());
         }
-
-        if (!sellOrders.isEmpty()) {
-            Map<BigDecimal, BigDecimal> sellSnapshot = aggregateOrderSnapshot(sellOrders, priceInterval, false);
-            snapshot.put("sell", getTopNOrders(sellSnapshot, 50000, false));
+        if (!bookSnapshot.getSell().isEmpty()) {
+            snapshot.put("sell", bookSnapshot.getSell());
         }
-
-        long endTime = System.currentTimeMillis(); // 結束計時
-        long duration = endTime - startTime; // 計算執行時間
-        System.out.println("執行時間: " + duration + " 毫秒");
-
         return snapshot;
     }
 
-    // 解析Redis查詢結果
-    private Set<ZSetOperations.TypedTuple<String>> parseRedisResult(List<Object> redisResult) {
-        Set<ZSetOperations.TypedTuple<String>> orders = new HashSet<>();
-        if (redisResult == null || redisResult.isEmpty()) {
-            return orders;
-        }
-        for (int i = 0; i < redisResult.size(); i += 2) {
-            String value = (String) redisResult.get(i);
-            Double score = Double.parseDouble(redisResult.get(i + 1).toString());
-            orders.add(new DefaultTypedTuple<>(value, score));
-        }
-        return orders;
+    // 將客戶端要求的間隔對應到有預先聚合深度的間隔
+    public BigDecimal resolveInterval(String symbol, BigDecimal interval) {
+        return ensureSeeded(symbol).resolveGranularity(interval);
     }
 
-    private ZSetOperations.TypedTuple<String> fetchFirstOrder(String symbol, String type, boolean isBuy) {
-        Set<ZSetOperations.TypedTuple<String>> orders = isBuy
-                ? redisTemplate.opsForZSet().reverseRangeWithScores(symbol + type, 0, 0)
-                : redisTemplate.opsForZSet().rangeWithScores(symbol + type, 0, 0);
+    // 間隔在預先聚合深度中的索引，用於從增量取出該間隔的價位
+    public int granularityIndex(String symbol, BigDecimal interval) {
+        return ensureSeeded(symbol).granularityIndex(interval);
+    }
 
-        return (orders == null || orders.isEmpty()) ? null : orders.iterator().next();
+    // 取得客戶端缺少的增量，無法補齊時回傳 null
+    public List<L2OrderBook.Delta> getDeltasSince(String symbol, long epoch, long fromSeq) {
+        L2OrderBook book = books.get(symbol);
+        return book != null ? book.deltasSince(epoch, fromSeq) : null;
     }
 
-    private Optional<BigDecimal> parseOrderPrice(ZSetOperations.TypedTuple<String> orderTuple) {
+    // 套用 order-book-delta topic 的增量消息：{symbol, side, price, unfilledQuantity}，回傳帶序號的增量
+    // 訂單簿尚未初始化時先重試初始化，仍失敗則回傳 null，由呼叫端原樣轉發
+    public L2OrderBook.Delta applyDelta(String symbol, String deltaMessage) {
+        ensureSeeded(symbol);
         try {
-            Order order = objectMapper.readValue(orderTuple.getValue(), Order.class);
-            return Optional.of(order.getPrice());
+            JsonNode delta = objectMapper.readTree(deltaMessage);
+            Order.Side side = Order.Side.valueOf(delta.get("side").asText());
+            BigDecimal price = new BigDecimal(delta.get("price").asText());
+            BigDecimal quantityChange = new BigDecimal(delta.get("unfilledQuantity").asText());
+            return books.computeIfAbsent(symbol, k -> new L2OrderBook(deltaHistorySize, granularities)).applyDelta(side, price, quantityChange);
         } catch (Exception e) {
-            e.printStackTrace();
-            return Optional.empty();
+            logger.error("Failed to apply order book delta for {}: {}", symbol, deltaMessage, e);
+            return null;
         }
     }
 
-    private double[] calculateScoreRange(BigDecimal price, BigDecimal priceInterval, boolean isBuy) {
-        double rangeMultiplier = 50000; // 例如，擴大到 25 倍區間，兩邊加總50檔
-        double minScore = calculateScore(price.subtract(priceInterval.multiply(BigDecimal.valueOf(rangeMultiplier))), priceInterval, isBuy, true);
-        double maxScore = calculateScore(price.add(priceInterval.multiply(BigDecimal.valueOf(rangeMultiplier))), priceInterval, isBuy, false);
-        return new double[]{minScore, maxScore};
-    }
-
-    private double calculateScore(BigDecimal price, BigDecimal priceInterval, boolean isBuy, boolean isLowerBound) {
-        int precision = 7;
-        BigDecimal precisionFactor = BigDecimal.TEN.pow(precision);
-
-        // 確定價格區間
-        BigDecimal adjustedPrice = (isLowerBound ? price.divide(priceInterval, 0, BigDecimal.ROUND_FLOOR)
-                : price.divide(priceInterval, 0, BigDecimal.ROUND_CEILING)).multiply(priceInterval);
-
-        // 設定時間戳
-        Instant timestamp = (isBuy && isLowerBound) || (!isBuy && !isLowerBound) ? Instant.now() : Instant.ofEpochMilli(0);
-
-        // 根據買賣方向調整時間權重
-        BigDecimal calculatedScore = adjustedPrice.multiply(precisionFactor)
-                .add((isBuy ? BigDecimal.valueOf(-1) : BigDecimal.ONE).multiply(BigDecimal.valueOf(timestamp.toEpochMilli())));
-        return calculatedScore.doubleValue();
+    public boolean isSeeded(String symbol) {
+        L2OrderBook book = books.get(symbol);
+        return book != null && book.isSeeded();
     }
 
-    private Map<BigDecimal, BigDecimal> aggregateOrderSnapshot(Set<ZSetOperations.TypedTuple<String>> orders, BigDecimal priceInterval, boolean isBuy) {
-        Map<BigDecimal, BigDecimal> snapshot = new HashMap<>();
-
-        if (orders != null) {
-            for (ZSetOperations.TypedTuple<String> orderTuple : orders) {
-                try {
-                    // 解析訂單 JSON
-                    Order order = objectMapper.readValue(orderTuple.getValue(), Order.class);
-                    BigDecimal orderPrice = order.getPrice();
-                    BigDecimal orderQuantity = order.getUnfilledQuantity();
-
-                    // 計算價格區間的 key
-                    BigDecimal intervalPrice = calculateIntervalPrice(orderPrice, priceInterval, isBuy);
-
-                    // 打印對應價格和價格區間
-//                    System.out.println("Order Price: " + orderPrice + ", Interval Price: " + intervalPrice);
-
-                    // 聚合對應價格區間的訂單數量
-                    snapshot.merge(intervalPrice, orderQuantity, BigDecimal::add);
-                } catch (Exception e) {
-                    e.printStackTrace(); // 處理解析異常
+    // 從 Redis ZSet 初始化訂單簿（每個交易對只做一次），失敗後間隔 seed-retry-ms 才重試
+    public L2OrderBook ensureSeeded(String symbol) {
+        L2OrderBook book = books.computeIfAbsent(symbol, k -> new L2OrderBook(deltaHistorySize, granularities));
+        if (!book.isSeeded() && System.currentTimeMillis() >= seedRetryAt.getOrDefault(symbol, 0L)) {
+            try {
+                if (book.seedIfAbsent(side -> loadLevelsFromRedis(symbol, side))) {
+                    logger.info("Seeded order book for {}: {} bid levels, {} ask levels",
+                            symbol, book.levelCount(Order.Side.BUY), book.levelCount(Order.Side.SELL));
                 }
+            } catch (Exception e) {
+                seedRetryAt.put(symbol, System.currentTimeMillis() + seedRetryMs);
+                logger.error("Failed to seed order book for {} from Redis", symbol, e);
             }
         }
-
-        return snapshot;
+        return book;
     }
 
+    // 無條件從 Redis 重新初始化並換 epoch；增量消費者取得分區、記下起始位置後呼叫，之後的增量都在此之後套用
+    public boolean reseed(String symbol) {
+        L2OrderBook book = books.computeIfAbsent(symbol, k -> new L2OrderBook(deltaHistorySize, granularities));
+        try {
+            book.reseed(side -> loadLevelsFromRedis(symbol, side));
+            drifted.remove(symbol);
+            logger.info("Reseeded order book for {}: {} bid levels, {} ask levels",
+                    symbol, book.levelCount(Order.Side.BUY), book.levelCount(Order.Side.SELL));
+            return true;
+        } catch (Exception e) {
+            seedRetryAt.put(symbol, System.currentTimeMillis() + seedRetryMs);
+            logger.error("Failed to reseed order book for {} from Redis", symbol, e);
+            return false;
+        }
+    }
 
-    private Map<BigDecimal, BigDecimal> getTopNOrders(Map<BigDecimal, BigDecimal> snapshot, int n, boolean isBuy) {
-        // 根據價格排序並取前 n 個
-        return snapshot.entrySet().stream()
-                .sorted(isBuy ? Map.Entry.<BigDecimal, BigDecimal>comparingByKey().reversed() :
-                        Map.Entry.comparingByKey()) // 對於買單按降序排序，賣單按升序排序
-                .limit(n) // 取前 n 筆
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        Map.Entry::getValue,
-                        (oldValue, newValue) -> oldValue,
-                        LinkedHashMap::new // 保持插入順序
-                ));
+    // 與 Redis 比對，連續兩次不一致時重新初始化（單次不一致可能只是尚未消費到的增量），回傳是否已重新初始化
+    public boolean reconcile(String symbol) {
+        L2OrderBook book = books.get(symbol);
+        if (book == null || !book.isSeeded()) {
+            return false;
+        }
+        boolean matches;
+        try {
+            matches = book.matches(loadLevelsFromRedis(symbol, Order.Side.BUY), loadLevelsFromRedis(symbol, Order.Side.SELL));
+        } catch (Exception e) {
+            logger.error("Failed to reconcile order book for {} with Redis", symbol, e);
+            return false;
+        }
+        if (matches) {
+            drifted.remove(symbol);
+            return false;
+        }
+        if (drifted.add(symbol)) {
+            return false;
+        }
+        logger.warn("Order book for {} drifted from Redis, reseeding", symbol);
+        return reseed(symbol);
     }
 
-    private BigDecimal calculateIntervalPrice(BigDecimal orderPrice, BigDecimal priceInterval, boolean isBuy) {
-        // 根據價格和區間大小計算對應的價格區間
-        BigDecimal intervalPrice = orderPrice.divide(priceInterval).setScale(0, isBuy ? BigDecimal.ROUND_FLOOR : BigDecimal.ROUND_CEILING);
-        return intervalPrice.multiply(priceInterval);
+    // 讀取 symbol:side ZSet 中所有掛單，按價格聚合未成交數量；只解出價格與數量，不建立完整的 Order
+    private Map<BigDecimal, BigDecimal> loadLevelsFromRedis(String symbol, Order.Side side) {
+        Map<BigDecimal, BigDecimal> levels = new TreeMap<>();
+        Set<String> orders = redisTemplate.opsForZSet().range(layout.bookKey(symbol, side.name()), 0, -1);
+        if (orders == null) {
+            return levels;
+        }
+        for (String member : orders) {
+            try {
+                OrderCodec.Level level = orderCodec.decodeLevel(layout.orderJson(member));
+                if (level.getPrice() != null && level.getUnfilledQuantity() != null) {
+                    levels.merge(level.getPrice(), level.getUnfilledQuantity(), BigDecimal::add);
+                }
+            } catch (Exception e) {
+                logger.error("Failed to parse order in {}:{}", symbol, side, e);
+            }
+        }
+        return levels;
     }
 }
@@ -0,0 +1,171 @@
+package com.exchange.service;
+
+import com.exchange.repository.TimeSeriesArchive;
+import com.exchange.repository.TimeSeriesPartitions;
+import com.exchange.repository.TimeSeriesTable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.List;
+import java.util.TimeZone;
+
+/**
+ * trades / market_data 的分區維護與歸檔：啟動時與每天排程執行一次，
+ * 先確保未來 months-ahead 個月的分區存在，再把整個月份都超過保留期限的分區依 symbol 匯出成壓縮檔（TimeSeriesArchive），
+ * 確認匯出筆數與分區筆數一致後才 DROP PARTITION。多個實例同時執行時以 MySQL GET_LOCK 只讓一個實例進行。
+ * 歸檔目錄不是共用掛載（TimeSeriesArchive.isWritable）時只維護分區、不刪除任何資料，否則其他實例會讀不到歸檔。
+ * 以 timeseries.partitioning.enabled=true 啟用；第一次啟用會把既有的資料表轉換成分區表。
+ */
+@Component
+@ConditionalOnProperty(name = "timeseries.partitioning.enabled", havingValue = "true")
+public class TimeSeriesRetention implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimeSeriesRetention.class);
+
+    private static final String LOCK_NAME = "timeseries-retention";
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TimeSeriesPartitions partitions;
+    private final TimeSeriesArchive archive;
+    private final int monthsAhead;
+    private final int tradesRetentionMonths;
+    private final int marketDataRetentionMonths;
+
+    public TimeSeriesRetention(DataSource dataSource, TimeSeriesPartitions partitions, TimeSeriesArchive archive,
+                               @Value("${timeseries.partitioning.months-ahead:3}") int monthsAhead,
+                               @Value("${timeseries.retention.trades-months:6}") int tradesRetentionMonths,
+                               @Value("${timeseries.retention.market-data-months:24}") int marketDataRetentionMonths) {
+        // MySQL Connector/J 在 fetchSize 為 Integer.MIN_VALUE 時逐列串流，匯出整個分區時不會一次載入記憶體
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.jdbcTemplate.setFetchSize(Integer.MIN_VALUE);
+        this.partitions = partitions;
+        this.archive = archive;
+        this.monthsAhead = monthsAhead;
+        this.tradesRetentionMonths = tradesRetentionMonths;
+        this.marketDataRetentionMonths = marketDataRetentionMonths;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        maintain();
+    }
+
+    @Scheduled(cron = "${timeseries.retention.cron:0 30 0 * * *}", zone = "UTC")
+    public void maintain() {
+        try {
+            Boolean ran = jdbcTemplate.execute((ConnectionCallback<Boolean>) connection -> {
+                if (!lock(connection)) {
+                    return false;
+                }
+                try {
+                    YearMonth current = YearMonth.now(ZoneOffset.UTC);
+                    boolean archiving = archive.isWritable();
+                    if (!archiving) {
+                        logger.warn("Not archiving expired partitions: {} is not an existing directory marked " +
+                                "timeseries.archive.shared=true", archive.getDir().toAbsolutePath());
+                    }
+                    maintain(TimeSeriesTable.TRADES, current, tradesRetentionMonths, archiving);
+                    maintain(TimeSeriesTable.MARKET_DATA, current, marketDataRetentionMonths, archiving);
+                    return true;
+                } finally {
+                    try (PreparedStatement release = connection.prepareStatement("SELECT RELEASE_LOCK(?)")) {
+                        release.setString(1, LOCK_NAME);
+                        release.execute();
+                    }
+                }
+            });
+            if (!Boolean.TRUE.equals(ran)) {
+                logger.info("Skipped time series maintenance: another instance holds the lock");
+            }
+        } catch (Exception e) {
+            logger.error("Time series maintenance failed", e);
+        }
+    }
+
+    private boolean lock(Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT GET_LOCK(?, 0)")) {
+            statement.setString(1, LOCK_NAME);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() && rs.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void maintain(TimeSeriesTable table, YearMonth current, int retentionMonths, boolean archiving) {
+        partitions.ensurePartitions(table, current.plusMonths(monthsAhead));
+        if (!archiving) {
+            return;
+        }
+        // 保留當月與之前 retentionMonths 個月，更早的月份分區整個歸檔
+        YearMonth oldestRetained = current.minusMonths(retentionMonths);
+        for (String partition : partitions.listPartitions(table)) {
+            YearMonth month = TimeSeriesPartitions.monthOf(partition);
+            if (month != null && month.isBefore(oldestRetained)) {
+                archivePartition(table, partition, month);
+            }
+        }
+    }
+
+    // 匯出後再次比對筆數，任何一步失敗都保留分區，下次排程重試
+    private void archivePartition(TimeSeriesTable table, String partition, YearMonth month) {
+        long started = System.currentTimeMillis();
+        long expected = partitions.countRows(table, partition);
+        long exported;
+        try (TimeSeriesArchive.PartitionWriter writer = archive.openPartition(table, month)) {
+            exportPartition(table, partition, writer);
+            exported = writer.getRows();
+            if (exported != expected) {
+                logger.error("Not dropping {} of {}: exported {} rows but the partition has {}",
+                        partition, table.getTableName(), exported, expected);
+                return;
+            }
+            writer.commit();
+        }
+        partitions.dropPartition(table, partition);
+        logger.info("Archived {} rows from {} of {} in {} ms", exported, partition, table.getTableName(),
+                System.currentTimeMillis() - started);
+    }
+
+    private void exportPartition(TimeSeriesTable table, String partition, TimeSeriesArchive.PartitionWriter writer) {
+        List<String> columns = table.getColumns();
+        int timeIndex = table.columnIndex(table.getTimeColumn());
+        List<String> quoted = new ArrayList<>(columns.size());
+        for (String column : columns) {
+            quoted.add("`" + column + "`");
+        }
+        String sql = "SELECT " + String.join(", ", quoted) + " FROM " + table.getTableName() +
+                " PARTITION (" + partition + ") ORDER BY `symbol`, `" + table.getTimeColumn() + "`";
+        Calendar utc = Calendar.getInstance(UTC);
+        jdbcTemplate.query(sql, rs -> {
+            String[] values = new String[columns.size()];
+            for (int i = 0; i < values.length; i++) {
+                if (i == timeIndex) {
+                    Timestamp time = rs.getTimestamp(i + 1, utc);
+                    values[i] = time == null ? null : time.toInstant().toString();
+                } else {
+                    values[i] = rs.getString(i + 1);
+                }
+            }
+            writer.append(values);
+        });
+    }
+}
@@ -3,64 +3,58 @@ package com.exchange.service;
 import com.exchange.dto.TradeHistoryRequest;
 import com.exchange.dto.TradeHistoryResponse;
 import com.exchange.model.Order;
-import com.exchange.model.Trade;
-import com.exchange.repository.OrderRepository;
-import com.exchange.repository.TradeRepository;
+import com.exchange.model.UserTrade;
+import com.exchange.repository.UserTradeRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Service
 public class TradeHistoryServiceImpl implements TradeHistoryService {
 
-    @Autowired
-    private OrderRepository orderRepository;
+    private final UserTradeRepository userTradeRepository;
 
     @Autowired
-    private TradeRepository tradeRepository;
+    public TradeHistoryServiceImpl(UserTradeRepository userTradeRepository) {
+        this.userTradeRepository = userTradeRepository;
+    }
 
+    // 直接讀用戶成交帳本的一頁，方向與角色已在帳本中，不需要關聯 trades 與 orders
     @Override
     public List<TradeHistoryResponse> getTradeHistory(String userId, TradeHistoryRequest request) {
-        // 使用 request 中的 startTime 和 endTime
-        List<Order> orders = orderRepository.findByUserIdAndUpdatedAtBetween(userId, request.getStartTime(), request.getEndTime());
-
-        return orders.stream()
-                .flatMap(order -> tradeRepository.findByBuyOrderIdOrSellOrderId(order.getId(), order.getId()).stream()
-                        .filter(trade -> shouldIncludeTrade(trade, order, request.getDirection()))
-                        .map(trade -> createTradeHistoryResponse(trade, order)))
-                .collect(Collectors.toList());
-    }
+        Order.Side side = request.getDirection() == TradeHistoryRequest.TradeDirection.ALL
+                ? null : Order.Side.valueOf(request.getDirection().name());
+        int limit = request.getLimit();
+        // 多取一筆：同一用戶的買單與賣單互相成交時帳本有買賣兩列，頁尾剛好切在兩列之間時把另一列也放進這一頁，
+        // 避免下一頁的游標（嚴格小於）把它略過
+        List<UserTrade> rows = userTradeRepository.findUserTrades(userId, side, request.getStartTime(), request.getEndTime(),
+                request.getBeforeTradeTime(), request.getBeforeId(), PageRequest.of(0, limit + 1));
+        int size = Math.min(rows.size(), limit);
+        if (rows.size() > limit && rows.get(limit).getTradeId().equals(rows.get(limit - 1).getTradeId())) {
+            size++;
+        }
 
-    // 根據方向篩選 trade
-    private boolean shouldIncludeTrade(Trade trade, Order order, TradeHistoryRequest.TradeDirection direction) {
-        if (direction == TradeHistoryRequest.TradeDirection.ALL) {
-            return true;
+        List<TradeHistoryResponse> responses = new ArrayList<>(size);
+        for (UserTrade row : rows.subList(0, size)) {
+            responses.add(createTradeHistoryResponse(row));
         }
-        boolean isBuy = trade.getBuyOrder().getId().equals(order.getId());
-        return (direction == TradeHistoryRequest.TradeDirection.BUY && isBuy) ||
-                (direction == TradeHistoryRequest.TradeDirection.SELL && !isBuy);
+        return responses;
     }
 
     // 創建 TradeHistoryResponse
-    private TradeHistoryResponse createTradeHistoryResponse(Trade trade, Order order) {
+    private TradeHistoryResponse createTradeHistoryResponse(UserTrade trade) {
         TradeHistoryResponse response = new TradeHistoryResponse();
-        response.setTradeId(trade.getId());  // 使用 trade ID
+        response.setTradeId(trade.getTradeId());
         response.setTradeTime(trade.getTradeTime());
         response.setSymbol(trade.getSymbol());
-
-        boolean isBuy = trade.getBuyOrder().getId().equals(order.getId());
-        response.setDirection(isBuy ? "BUY" : "SELL");
-
+        response.setDirection(trade.getSide().name());
         response.setAvgPrice(trade.getPrice());
         response.setQuantity(trade.getQuantity());
-
-        boolean isTaker = trade.getTakerOrderId().equals(order.getId());
-        response.setRole(isTaker ? "TAKER" : "MAKER");
-
+        response.setRole(trade.getRole());
         response.setTotalAmount(trade.getPrice().multiply(trade.getQuantity()));
-
         return response;
     }
 }
@@ -1,12 +1,18 @@
 package com.exchange.service;
 
 import com.exchange.model.Trade;
+import com.exchange.repository.TimeSeriesArchive;
 import com.exchange.repository.TradeRepository;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 @Service
 public class TradeService {
@@ -14,7 +20,31 @@ public class TradeService {
     @Autowired
     private TradeRepository tradeRepository;
 
+    @Autowired
+    private TimeSeriesArchive timeSeriesArchive;
+
     public List<Trade> getRecentTrades(String symbol, int limit) {
         return tradeRepository.findBySymbolOrderByTradeTimeDesc(symbol, PageRequest.of(0, limit));
     }
+
+    // 時間範圍內的成交（依時間排序）：資料庫中仍保留的分區加上已歸檔的月份；
+    // 歸檔後到刪除分區前兩邊會有相同的成交，以 ID 去重
+    public List<Trade> getTrades(String symbol, Instant startTime, Instant endTime) {
+        List<Trade> trades = new ArrayList<>(tradeRepository.findBySymbolAndTradeTimeBetween(symbol, startTime, endTime));
+        List<Trade> archived = timeSeriesArchive.readTrades(symbol, startTime, endTime);
+        if (archived.isEmpty()) {
+            return trades;
+        }
+        Set<String> ids = new HashSet<>();
+        for (Trade trade : trades) {
+            ids.add(trade.getId());
+        }
+        for (Trade trade : archived) {
+            if (ids.add(trade.getId())) {
+                trades.add(trade);
+            }
+        }
+        trades.sort(Comparator.comparing(Trade::getTradeTime).thenComparing(Trade::getId));
+        return trades;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+package com.exchange.service;
+
+import com.exchange.model.Trade;
+import com.exchange.repository.TradeRepository;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 將既有的成交回填到用戶成交帳本：依成交 ID 順序逐批讀取 trades（連同買賣雙方訂單）後交給 UserTradeLedger 寫入。
+ * 以 user-trades.backfill.enabled=true 啟動一次即執行；帳本寫入會略過已存在的列，可重複執行或與即時寫入同時進行。
+ */
+@Component
+@ConditionalOnProperty(name = "user-trades.backfill.enabled", havingValue = "true")
+public class UserTradeBackfill implements ApplicationRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserTradeBackfill.class);
+
+    private final TradeRepository tradeRepository;
+    private final UserTradeLedger userTradeLedger;
+    private final int batchSize;
+
+    public UserTradeBackfill(TradeRepository tradeRepository, UserTradeLedger userTradeLedger,
+                             @Value("${user-trades.backfill.batch-size:1000}") int batchSize) {
+        this.tradeRepository = tradeRepository;
+        this.userTradeLedger = userTradeLedger;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        try {
+            long started = System.currentTimeMillis();
+            BackfillResult result = backfill();
+            logger.info("Backfilled user trade ledger: {} trades read, {} rows inserted in {} ms",
+                    result.getTrades(), result.getInserted(), System.currentTimeMillis() - started);
+        } catch (Exception e) {
+            logger.error("Failed to backfill user trade ledger", e);
+        }
+    }
+
+    public BackfillResult backfill() {
+        long read = 0;
+        long inserted = 0;
+        String afterId = "";
+        while (true) {
+            List<Trade> trades = tradeRepository.findBatchAfter(afterId, PageRequest.of(0, batchSize));
+            if (trades.isEmpty()) {
+                return new BackfillResult(read, inserted);
+            }
+            List<Trade> unresolved = new ArrayList<>();
+            inserted += userTradeLedger.append(trades, unresolved);
+            for (Trade trade : unresolved) {
+                logger.warn("Skipping trade {} during backfill: buy or sell order not found", trade.getId());
+            }
+            read += trades.size();
+            afterId = trades.get(trades.size() - 1).getId();
+            if (read % (batchSize * 100L) < trades.size()) {
+                logger.info("Backfilling user trade ledger: {} trades read, last trade {}", read, afterId);
+            }
+        }
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class BackfillResult {
+        private final long trades;
+        private final long inserted;
+    }
+}
@@ -0,0 +1,152 @@
+package com.exchange.service;
+
+import com.exchange.model.Order;
+import com.exchange.model.Trade;
+import com.exchange.model.UserTrade;
+import com.exchange.repository.OrderRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TimeZone;
+
+/**
+ * 寫入用戶成交帳本（user_trades）：每筆成交拆成買方與賣方兩列，整批以一次 JDBC batch 寫入。
+ * 使用 INSERT IGNORE，同一筆成交重複寫入（Kafka 重送、回填與即時寫入重疊）時不會重複也不會失敗。
+ */
+@Service
+public class UserTradeLedger {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserTradeLedger.class);
+
+    private static final String INSERT_SQL = "INSERT IGNORE INTO user_trades " +
+            "(trade_id, side, user_id, order_id, symbol, role, price, quantity, trade_time) " +
+            "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // 與 Hibernate 寫入 Instant 的方式相同，以 UTC 儲存
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final OrderRepository orderRepository;
+
+    @Autowired
+    public UserTradeLedger(JdbcTemplate jdbcTemplate, OrderRepository orderRepository) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.orderRepository = orderRepository;
+    }
+
+    // 寫入一批成交，回傳實際新增的列數；找不到訂單（無法判斷用戶）的成交不寫入
+    public int append(List<Trade> trades) {
+        return append(trades, new ArrayList<>());
+    }
+
+    // 同上，找不到訂單的成交放進 unresolved，由呼叫端重試或轉送 dead-letter topic；寫入失敗時拋出例外
+    public int append(List<Trade> trades, List<Trade> unresolved) {
+        Map<String, String> userIds = resolveUserIds(trades);
+        List<UserTrade> rows = new ArrayList<>(trades.size() * 2);
+        for (Trade trade : trades) {
+            if (trade.getBuyOrder() == null || trade.getSellOrder() == null) {
+                logger.warn("Trade {} has no buy or sell order", trade.getId());
+                unresolved.add(trade);
+                continue;
+            }
+            String buyOrderId = trade.getBuyOrder().getId();
+            String sellOrderId = trade.getSellOrder().getId();
+            String buyerId = userIds.get(buyOrderId);
+            String sellerId = userIds.get(sellOrderId);
+            if (buyerId == null || sellerId == null) {
+                logger.debug("Trade {}: order {} not found", trade.getId(), buyerId == null ? buyOrderId : sellOrderId);
+                unresolved.add(trade);
+                continue;
+            }
+            rows.add(row(trade, Order.Side.BUY, buyerId, buyOrderId));
+            rows.add(row(trade, Order.Side.SELL, sellerId, sellOrderId));
+        }
+        if (rows.isEmpty()) {
+            return 0;
+        }
+        int inserted = 0;
+        for (int count : jdbcTemplate.batchUpdate(INSERT_SQL, new BatchPreparedStatementSetter() {
+            private final Calendar utc = Calendar.getInstance(UTC);
+
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                UserTrade row = rows.get(i);
+                ps.setString(1, row.getTradeId());
+                ps.setString(2, row.getSide().name());
+                ps.setString(3, row.getUserId());
+                ps.setString(4, row.getOrderId());
+                ps.setString(5, row.getSymbol());
+                ps.setString(6, row.getRole());
+                ps.setBigDecimal(7, row.getPrice());
+                ps.setBigDecimal(8, row.getQuantity());
+                ps.setTimestamp(9, Timestamp.from(row.getTradeTime()), utc);
+            }
+
+            @Override
+            public int getBatchSize() {
+                return rows.size();
+            }
+        })) {
+            // 部分驅動程式在 batch 中回傳 SUCCESS_NO_INFO，視為已寫入
+            inserted += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+        }
+        return inserted;
+    }
+
+    // 成交訊息中的訂單通常已帶 userId；沒有時一次查詢所有缺少的訂單
+    private Map<String, String> resolveUserIds(List<Trade> trades) {
+        Map<String, String> userIds = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (Trade trade : trades) {
+            collect(trade.getBuyOrder(), userIds, missing);
+            collect(trade.getSellOrder(), userIds, missing);
+        }
+        missing.removeAll(userIds.keySet());
+        if (!missing.isEmpty()) {
+            for (Order order : orderRepository.findAllById(missing)) {
+                userIds.put(order.getId(), order.getUserId());
+            }
+        }
+        return userIds;
+    }
+
+    private void collect(Order order, Map<String, String> userIds, Set<String> missing) {
+        if (order == null) {
+            return;
+        }
+        if (order.getUserId() != null) {
+            userIds.put(order.getId(), order.getUserId());
+        } else {
+            missing.add(order.getId());
+        }
+    }
+
+    private UserTrade row(Trade trade, Order.Side side, String userId, String orderId) {
+        UserTrade row = new UserTrade();
+        row.setTradeId(trade.getId());
+        row.setSide(side);
+        row.setUserId(userId);
+        row.setOrderId(orderId);
+        row.setSymbol(trade.getSymbol());
+        row.setRole(orderId.equals(trade.getTakerOrderId()) ? "TAKER" : "MAKER");
+        row.setPrice(trade.getPrice());
+        row.setQuantity(trade.getQuantity());
+        row.setTradeTime(trade.getTradeTime());
+        return row;
+    }
+}
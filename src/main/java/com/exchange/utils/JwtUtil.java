@@ -1,30 +1,67 @@
 package com.exchange.utils;
 
 import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 import javax.crypto.SecretKey;
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * JWT 的簽發與驗證。密鑰與 parser 只建立一次；驗證過的 token 會快取其 claims 直到 token 過期，
+ * 同一個 token 之後的請求（REST 過濾器與 /ws 握手共用）不再重新解析與計算 HMAC。
+ * 快取以 ConcurrentHashMap 保存，讀取不需要鎖；超過 maxEntries 時由一個執行緒移除已過期與最快過期的 token，
+ * 降到上限的九成，其他執行緒不等待。過期的 token 查詢時即移除。
+ */
 @Component
 public class JwtUtil {
 
-    // 從 application.properties 中加載密鑰和過期時間
-    @Value("${jwt.secret}")
-    private String secretKey;
+    private static final Logger logger = LoggerFactory.getLogger(JwtUtil.class);
+
+    private final SecretKey key;
+    private final JwtParser parser;
+    private final long jwtExpirationMs;
+    private final int cacheMaxEntries;
+    private final Clock clock;
 
-    @Value("${jwt.expiration}")
-    private long jwtExpirationMs;
+    // token -> 已驗證的 claims
+    private final ConcurrentHashMap<String, Claims> verified = new ConcurrentHashMap<>();
+    // 同一時間只有一個執行緒執行淘汰
+    private final AtomicBoolean evicting = new AtomicBoolean();
 
-    // 生成 SecretKey
-    private SecretKey getKey() {
-        return Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+    // 從 application.properties 中加載密鑰和過期時間
+    @Autowired
+    public JwtUtil(@Value("${jwt.secret}") String secretKey,
+                   @Value("${jwt.expiration}") long jwtExpirationMs,
+                   @Value("${jwt.cache.max-entries:10000}") int cacheMaxEntries) {
+        this(secretKey, jwtExpirationMs, cacheMaxEntries, Clock.systemUTC());
+    }
+
+    JwtUtil(String secretKey, long jwtExpirationMs, int cacheMaxEntries, Clock clock) {
+        this.key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        this.jwtExpirationMs = jwtExpirationMs;
+        this.cacheMaxEntries = cacheMaxEntries;
+        this.clock = clock;
+        this.parser = Jwts.parserBuilder()
+                .setSigningKey(key)  // 設置密鑰
+                .setClock(() -> new Date(clock.millis()))
+                .build();
     }
 
     // 生成 JWT，將用戶名存入 claims
@@ -32,47 +69,71 @@ public class JwtUtil {
         return Jwts.builder()
                 .claim("username", username)
                 .claim("userId", userId)
-                .setIssuedAt(new Date())  // 使用 java.util.Date
-                .setExpiration(new Date(System.currentTimeMillis() + jwtExpirationMs))  // 設置過期時間
-                .signWith(getKey(), SignatureAlgorithm.HS256)  // 使用密鑰和演算法
+                .setIssuedAt(new Date(clock.millis()))  // 使用 java.util.Date
+                .setExpiration(new Date(clock.millis() + jwtExpirationMs))  // 設置過期時間
+                .signWith(key, SignatureAlgorithm.HS256)  // 使用密鑰和演算法
                 .compact();
     }
 
-    // 從 JWT 中提取所有 Claims
+    // 從 JWT 中提取所有 Claims；簽名錯誤、格式錯誤或已過期時回傳 null，呼叫端以 null 判斷 token 無效
     public Claims extractAllClaims(String token) {
+        if (token == null) {
+            return null;
+        }
+        long now = clock.millis();
+        Claims cached = verified.get(token);
+        if (cached != null) {
+            if (!isExpired(cached, now)) {
+                return cached;
+            }
+            verified.remove(token, cached);
+            return null;
+        }
+        Claims claims;
         try {
-            return Jwts.parserBuilder()
-                    .setSigningKey(getKey())  // 設置密鑰
-                    .build()  // 構建 JwtParser
-                    .parseClaimsJws(token)  // 解析 JWT
-                    .getBody();
+            claims = parser.parseClaimsJws(token).getBody();  // 解析 JWT
         } catch (JwtException | IllegalArgumentException e) {
-            // 記錄具體的異常信息，並返回具體的錯誤
-            System.out.println("JWT Token 驗證失敗: " + e.getMessage());
+            logger.debug("JWT Token 驗證失敗: {}", e.getMessage());
             return null;
         }
+        verified.put(token, claims);
+        if (verified.size() > cacheMaxEntries) {
+            evict(now);
+        }
+        return claims;
     }
 
-    // 提取用戶名
-    public String extractUsername(String token) {
-        Claims claims = extractAllClaims(token);
-        return claims != null ? claims.get("username", String.class) : null;
+    int cacheSize() {
+        return verified.size();
     }
 
-    // 提取 userId
-    public String extractUserId(String token) {
-        return extractAllClaims(token).get("userId", String.class);
+    // 先移除已過期的 token，仍超過上限時依過期時間移除最早過期的 token
+    private void evict(long now) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            verified.values().removeIf(claims -> isExpired(claims, now));
+            int target = cacheMaxEntries - cacheMaxEntries / 10;
+            int excess = verified.size() - target;
+            if (excess <= 0) {
+                return;
+            }
+            List<Map.Entry<String, Claims>> entries = new ArrayList<>(verified.entrySet());
+            entries.sort(Comparator.comparingLong(entry -> expiresAt(entry.getValue())));
+            for (int i = 0; i < excess && i < entries.size(); i++) {
+                verified.remove(entries.get(i).getKey(), entries.get(i).getValue());
+            }
+        } finally {
+            evicting.set(false);
+        }
     }
 
-    // 驗證 JWT 是否過期
-    public boolean isTokenExpired(String token) {
-        Claims claims = extractAllClaims(token);
-        return claims != null && claims.getExpiration().before(new Date());
+    private static long expiresAt(Claims claims) {
+        return claims.getExpiration() != null ? claims.getExpiration().getTime() : Long.MAX_VALUE;
     }
 
-    // 驗證 JWT 的合法性
-    public boolean validateToken(String token, String username) {
-        final String extractedUsername = extractUsername(token);
-        return (extractedUsername != null && extractedUsername.equals(username) && !isTokenExpired(token));
+    private static boolean isExpired(Claims claims, long now) {
+        return claims.getExpiration() != null && claims.getExpiration().getTime() <= now;
     }
 }
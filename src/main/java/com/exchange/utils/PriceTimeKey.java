@@ -0,0 +1,119 @@
+package com.exchange.utils;
+
+import com.exchange.model.Order;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 掛單簿的精確價格-時間排序鍵，取代 price * 10^7 ± epochMillis 轉成 double 的 score。
+ * 價格以 10^-8 為單位換成整數 tick，加上序號作為同價位的先後順序，編碼成固定寬度的 16 進位字串：
+ *   [價格 16 位][序號 16 位]|訂單 JSON
+ * 買單的價格部分取 Long.MAX_VALUE - tick，因此不論買賣，字典序由小到大就是撮合優先順序。
+ * 這個格式用於 score 全為 0 的 ZSet，以 ZRANGEBYLEX 讀取；編碼與解碼只有 long 運算。
+ * 序號為 epochMillis * SEQUENCE_PER_MILLI + 同一毫秒內的到達順序（見 sequence(long, long)），寫入端需使用相同的刻度。
+ */
+public final class PriceTimeKey {
+
+    public static final int PRICE_SCALE = 8;
+    public static final int KEY_LENGTH = 32;
+    public static final char SEPARATOR = '|';
+    // 每毫秒可區分的訂單數；Long.MAX_VALUE / 10^6 毫秒約到西元 2262 年
+    public static final long SEQUENCE_PER_MILLI = 1_000_000L;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private PriceTimeKey() {
+    }
+
+    // 價格換成 tick；小數超過 8 位或超出 long 範圍時拋出 IllegalArgumentException
+    public static long toTicks(BigDecimal price) {
+        if (price == null || price.signum() < 0) {
+            throw new IllegalArgumentException("Invalid price: " + price);
+        }
+        try {
+            return price.setScale(PRICE_SCALE, RoundingMode.UNNECESSARY).unscaledValue().longValueExact();
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Price not representable in ticks: " + price, e);
+        }
+    }
+
+    public static BigDecimal fromTicks(long ticks) {
+        return BigDecimal.valueOf(ticks, PRICE_SCALE);
+    }
+
+    // 32 字元的排序鍵，sequence 越小越優先（不可為負）
+    public static String encode(Order.Side side, long ticks, long sequence) {
+        if (ticks < 0 || sequence < 0) {
+            throw new IllegalArgumentException("ticks and sequence must be non-negative");
+        }
+        char[] key = new char[KEY_LENGTH];
+        writeHex(key, 0, priceRank(side, ticks));
+        writeHex(key, 16, sequence);
+        return new String(key);
+    }
+
+    // 毫秒時間與同一毫秒內的順序（從 0 開始）組成的序號
+    public static long sequence(long epochMillis, long tieBreak) {
+        if (epochMillis < 0 || tieBreak < 0 || tieBreak >= SEQUENCE_PER_MILLI) {
+            throw new IllegalArgumentException("Invalid sequence: " + epochMillis + "/" + tieBreak);
+        }
+        return Math.multiplyExact(epochMillis, SEQUENCE_PER_MILLI) + tieBreak;
+    }
+
+    // ZSet member：排序鍵 + | + 訂單 JSON
+    public static String member(Order.Side side, long ticks, long sequence, String orderJson) {
+        return encode(side, ticks, sequence) + SEPARATOR + orderJson;
+    }
+
+    public static String body(String member) {
+        return member.substring(KEY_LENGTH + 1);
+    }
+
+    public static long ticks(Order.Side side, String member) {
+        long rank = readHex(member, 0);
+        return side == Order.Side.BUY ? Long.MAX_VALUE - rank : rank;
+    }
+
+    public static long sequence(String member) {
+        return readHex(member, 16);
+    }
+
+    // 某個價位所有 member 的 ZRANGEBYLEX 範圍：[min, max)
+    public static String levelMin(Order.Side side, long ticks) {
+        char[] prefix = new char[17];
+        prefix[0] = '[';
+        writeHex(prefix, 1, priceRank(side, ticks));
+        return new String(prefix);
+    }
+
+    public static String levelMax(Order.Side side, long ticks) {
+        long rank = priceRank(side, ticks);
+        if (rank == Long.MAX_VALUE) {
+            return "+";
+        }
+        char[] prefix = new char[17];
+        prefix[0] = '(';
+        writeHex(prefix, 1, rank + 1);
+        return new String(prefix);
+    }
+
+    private static long priceRank(Order.Side side, long ticks) {
+        return side == Order.Side.BUY ? Long.MAX_VALUE - ticks : ticks;
+    }
+
+    private static void writeHex(char[] target, int offset, long value) {
+        for (int i = 15; i >= 0; i--) {
+            target[offset + i] = HEX[(int) (value & 0xF)];
+            value >>>= 4;
+        }
+    }
+
+    private static long readHex(String source, int offset) {
+        long value = 0;
+        for (int i = 0; i < 16; i++) {
+            value = (value << 4) | Character.digit(source.charAt(offset + i), 16);
+        }
+        return value;
+    }
+}
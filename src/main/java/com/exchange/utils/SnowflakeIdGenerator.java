@@ -1,69 +1,127 @@
 package com.exchange.utils;
 
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * 雪花 ID：41 位毫秒時間戳 | 5 位 datacenterId | 5 位 workerId | 12 位序號。
+ * 「時間戳 + 序號」合併成一個 long 以 CAS 推進，不使用鎖：
+ * 同一毫秒內序號用完時直接進位到下一毫秒（向未來借用），時鐘小幅倒退時沿用上次的時間繼續遞增，
+ * 因此 ID 始終遞增且不會重複。借用超過 maxBorrowMillis 時，若是時鐘倒退就拋出例外，
+ * 若只是發號速度超過每毫秒 4096 個，則等待時鐘追上。
+ * 由 WorkerIdLease 分配節點編號時，ID 的時間戳必須早於租約到期時間（見 setLeaseExpiresAt），
+ * 租約未能及時續約時拋出例外而不是發出可能與新持有者重複的 ID。
+ */
 public class SnowflakeIdGenerator {
 
-    private final long workerId;
-    private final long datacenterId;
-    private final long sequence = 0L;
-    private final long twepoch = 1288834974657L;
+    // 預設可以超前（或容忍時鐘倒退）的毫秒數
+    public static final long DEFAULT_MAX_BORROW_MILLIS = 1000L;
+
+    private static final long TWEPOCH = 1288834974657L;
+
+    private static final long WORKER_ID_BITS = 5L;
+    private static final long DATACENTER_ID_BITS = 5L;
+    private static final long SEQUENCE_BITS = 12L;
+    public static final long MAX_WORKER_ID = ~(-1L << WORKER_ID_BITS);
+    public static final long MAX_DATACENTER_ID = ~(-1L << DATACENTER_ID_BITS);
 
-    private final long workerIdBits = 5L;
-    private final long datacenterIdBits = 5L;
-    private final long maxWorkerId = -1L ^ (-1L << workerIdBits);
-    private final long maxDatacenterId = -1L ^ (-1L << datacenterIdBits);
-    private final long sequenceBits = 12L;
+    private static final long WORKER_ID_SHIFT = SEQUENCE_BITS;
+    private static final long DATACENTER_ID_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS;
+    private static final long TIMESTAMP_LEFT_SHIFT = SEQUENCE_BITS + WORKER_ID_BITS + DATACENTER_ID_BITS;
+    private static final long SEQUENCE_MASK = ~(-1L << SEQUENCE_BITS);
 
-    private final long workerIdShift = sequenceBits;
-    private final long datacenterIdShift = sequenceBits + workerIdBits;
-    private final long timestampLeftShift = sequenceBits + workerIdBits + datacenterIdBits;
-    private final long sequenceMask = -1L ^ (-1L << sequenceBits);
+    // datacenterId 與 workerId 的位元；租約遺失後改用新的 worker 時會替換
+    private volatile long nodeBits;
+    // 節點編號租約的到期時間（epoch 毫秒），不使用租約時為 Long.MAX_VALUE
+    private volatile long leaseExpiresAt = Long.MAX_VALUE;
+    private final long maxBorrowMillis;
+    private final LongSupplier clock;
 
-    private long lastTimestamp = -1L;
-    private long sequenceId = 0L;
+    // 最後發出的 (timestamp - twepoch) << 12 | sequence
+    private final AtomicLong last = new AtomicLong(-1L);
+    // 看過的最大時鐘，用來區分時鐘倒退與發號過快
+    private final AtomicLong maxSeenMillis = new AtomicLong(0L);
 
     public SnowflakeIdGenerator(long workerId, long datacenterId) {
-        if (workerId > maxWorkerId || workerId < 0) {
-            throw new IllegalArgumentException(String.format("Worker ID can't be greater than %d or less than 0", maxWorkerId));
+        this(workerId, datacenterId, DEFAULT_MAX_BORROW_MILLIS, System::currentTimeMillis);
+    }
+
+    SnowflakeIdGenerator(long workerId, long datacenterId, long maxBorrowMillis, LongSupplier clock) {
+        this.nodeBits = nodeBits(workerId, datacenterId);
+        this.maxBorrowMillis = maxBorrowMillis;
+        this.clock = clock;
+    }
+
+    // 改用另一組 workerId / datacenterId（由 WorkerIdLease 在租約遺失並取得新租約後呼叫）
+    public void reassign(long workerId, long datacenterId) {
+        this.nodeBits = nodeBits(workerId, datacenterId);
+    }
+
+    // 租約取得或續約成功後呼叫，之後只發出時間戳早於 expiresAt 的 ID
+    public void setLeaseExpiresAt(long expiresAt) {
+        this.leaseExpiresAt = expiresAt;
+    }
+
+    private static long nodeBits(long workerId, long datacenterId) {
+        if (workerId > MAX_WORKER_ID || workerId < 0) {
+            throw new IllegalArgumentException(String.format("Worker ID can't be greater than %d or less than 0", MAX_WORKER_ID));
         }
-        if (datacenterId > maxDatacenterId || datacenterId < 0) {
-            throw new IllegalArgumentException(String.format("Datacenter ID can't be greater than %d or less than 0", maxDatacenterId));
+        if (datacenterId > MAX_DATACENTER_ID || datacenterId < 0) {
+            throw new IllegalArgumentException(String.format("Datacenter ID can't be greater than %d or less than 0", MAX_DATACENTER_ID));
         }
-        this.workerId = workerId;
-        this.datacenterId = datacenterId;
+        return (datacenterId << DATACENTER_ID_SHIFT) | (workerId << WORKER_ID_SHIFT);
     }
 
-    public synchronized long nextId() {
-        long timestamp = timeGen();
+    public long nextId() {
+        return toId(reserve(1));
+    }
 
-        if (timestamp < lastTimestamp) {
-            throw new RuntimeException("Clock moved backwards. Refusing to generate ID for " + (lastTimestamp - timestamp) + " milliseconds");
+    // 一次保留連續的 count 個序號（一次 CAS），同一毫秒用完時延續到下一毫秒
+    public long[] nextIds(int count) {
+        if (count <= 0) {
+            return new long[0];
         }
-
-        if (lastTimestamp == timestamp) {
-            sequenceId = (sequenceId + 1) & sequenceMask;
-            if (sequenceId == 0) {
-                timestamp = tilNextMillis(lastTimestamp);
-            }
-        } else {
-            sequenceId = 0L;
+        if (count > (maxBorrowMillis + 1) << SEQUENCE_BITS) {
+            throw new IllegalArgumentException("Too many ids requested at once: " + count);
         }
-
-        lastTimestamp = timestamp;
-        return ((timestamp - twepoch) << timestampLeftShift)
-                | (datacenterId << datacenterIdShift)
-                | (workerId << workerIdShift)
-                | sequenceId;
+        long first = reserve(count);
+        long[] ids = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = toId(first + i);
+        }
+        return ids;
     }
 
-    private long tilNextMillis(long lastTimestamp) {
-        long timestamp = timeGen();
-        while (timestamp <= lastTimestamp) {
-            timestamp = timeGen();
+    // 回傳保留區段的第一個值
+    private long reserve(int count) {
+        while (true) {
+            long now = clock.getAsLong() - TWEPOCH;
+            long maxSeen = maxSeenMillis.get();
+            if (now > maxSeen) {
+                maxSeenMillis.compareAndSet(maxSeen, now);
+            }
+            long current = last.get();
+            long start = Math.max(current + 1, now << SEQUENCE_BITS);
+            long end = start + count - 1;
+            long ahead = (end >>> SEQUENCE_BITS) - now;
+            if (ahead > maxBorrowMillis) {
+                if (now < maxSeen - maxBorrowMillis) {
+                    throw new IllegalStateException("Clock moved backwards. Refusing to generate ID for " + (maxSeen - now) + " milliseconds");
+                }
+                // 發號速度超過序號空間，等時鐘追上
+                Thread.onSpinWait();
+                continue;
+            }
+            if ((end >>> SEQUENCE_BITS) + TWEPOCH >= leaseExpiresAt) {
+                throw new IllegalStateException("Snowflake worker lease expired at " + leaseExpiresAt + ". Refusing to generate ID");
+            }
+            if (last.compareAndSet(current, end)) {
+                return start;
+            }
         }
-        return timestamp;
     }
 
-    private long timeGen() {
-        return System.currentTimeMillis();
+    private long toId(long timeAndSequence) {
+        return ((timeAndSequence >>> SEQUENCE_BITS) << TIMESTAMP_LEFT_SHIFT) | nodeBits | (timeAndSequence & SEQUENCE_MASK);
     }
 }
@@ -0,0 +1,56 @@
+package com.exchange.utils;
+
+import java.time.Instant;
+
+/**
+ * K 線時間框架。K 棒起點對齊 UTC：週線從週一 00:00 開始，其餘從 epoch 起等長切分。
+ */
+public enum TimeFrame {
+    M1("1m", 60),
+    M5("5m", 5 * 60),
+    M15("15m", 15 * 60),
+    H1("1h", 60 * 60),
+    H4("4h", 4 * 60 * 60),
+    D1("1d", 24 * 60 * 60),
+    W1("1w", 7 * 24 * 60 * 60);
+
+    // 1970-01-01 是週四，週線需要往後偏移 4 天對齊到週一
+    private static final long WEEK_OFFSET_SECONDS = 4 * 24 * 60 * 60;
+
+    private final String code;
+    private final long seconds;
+
+    TimeFrame(String code, long seconds) {
+        this.code = code;
+        this.seconds = seconds;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public long getSeconds() {
+        return seconds;
+    }
+
+    // 不支援的代碼回傳 null
+    public static TimeFrame fromCode(String code) {
+        for (TimeFrame timeFrame : values()) {
+            if (timeFrame.code.equals(code)) {
+                return timeFrame;
+            }
+        }
+        return null;
+    }
+
+    // time 所在 K 棒的起點
+    public Instant barStart(Instant time) {
+        long offset = this == W1 ? WEEK_OFFSET_SECONDS : 0;
+        long epochSecond = time.getEpochSecond();
+        return Instant.ofEpochSecond(Math.floorDiv(epochSecond - offset, seconds) * seconds + offset);
+    }
+
+    public Instant barEnd(Instant time) {
+        return barStart(time).plusSeconds(seconds);
+    }
+}
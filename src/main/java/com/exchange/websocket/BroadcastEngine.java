@@ -0,0 +1,175 @@
+package com.exchange.websocket;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 市場資料 WebSocket 共用的廣播引擎。每個事件只序列化一次成同一個 frame，
+ * 再放入頻道（例如某個 symbol）內每個連線的有界發送佇列，實際寫出在固定大小的發送執行緒池上進行。
+ * 呼叫端（Kafka 監聽執行緒）不會被任何連線阻塞；佇列已滿的慢速連線只會丟棄自己的訊息。
+ */
+@Component
+public class BroadcastEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(BroadcastEngine.class);
+
+    private final ConcurrentHashMap<String, Set<SessionOutbox>> channels = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, SessionOutbox> outboxes = new ConcurrentHashMap<>();
+    private final ObjectMapper objectMapper;
+    private final ThreadPoolExecutor senderExecutor;
+    private final int maxQueuedMessages;
+
+    private final LongAdder publishedFrames = new LongAdder();
+    private final LongAdder enqueuedMessages = new LongAdder();
+    private final LongAdder droppedMessages = new LongAdder();
+
+    public BroadcastEngine(ObjectMapper objectMapper,
+                           @Value("${websocket.broadcast.sender-threads:8}") int senderThreads,
+                           @Value("${websocket.broadcast.max-queued-messages:64}") int maxQueuedMessages,
+                           @Value("${websocket.broadcast.executor-queue-size:100000}") int executorQueueSize) {
+        this.objectMapper = objectMapper;
+        this.maxQueuedMessages = maxQueuedMessages;
+        AtomicInteger threadCount = new AtomicInteger();
+        // 有界的工作佇列：每個連線同時最多只有一個待執行的發送工作，因此大小與連線數同級即可
+        this.senderExecutor = new ThreadPoolExecutor(senderThreads, senderThreads, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(executorQueueSize), runnable -> {
+                    Thread thread = new Thread(runnable, "ws-broadcast-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+    }
+
+    // 取得連線的發送佇列，同一連線的所有訊息都必須經過它，避免並發寫入 session
+    public SessionOutbox outbox(WebSocketSession session) {
+        return outboxes.computeIfAbsent(session.getId(),
+                id -> new SessionOutbox(session, senderExecutor, maxQueuedMessages));
+    }
+
+    // 頻道的新增與移除都在 compute 內進行，最後一個訂閱者離開時頻道一併移除，不會與新訂閱互相覆蓋
+    public void subscribe(String channel, WebSocketSession session) {
+        SessionOutbox outbox = outbox(session);
+        channels.compute(channel, (k, subscribers) -> {
+            Set<SessionOutbox> result = subscribers != null ? subscribers : ConcurrentHashMap.newKeySet();
+            result.add(outbox);
+            return result;
+        });
+    }
+
+    public void unsubscribe(String channel, WebSocketSession session) {
+        SessionOutbox outbox = outboxes.get(session.getId());
+        if (outbox != null) {
+            removeSubscriber(channel, outbox);
+        }
+    }
+
+    // 連線關閉時移除它的發送佇列與所有頻道訂閱
+    public void unregister(WebSocketSession session) {
+        SessionOutbox outbox = outboxes.remove(session.getId());
+        if (outbox != null) {
+            for (String channel : channels.keySet()) {
+                removeSubscriber(channel, outbox);
+            }
+        }
+    }
+
+    private void removeSubscriber(String channel, SessionOutbox outbox) {
+        channels.computeIfPresent(channel, (k, subscribers) -> {
+            subscribers.remove(outbox);
+            return subscribers.isEmpty() ? null : subscribers;
+        });
+    }
+
+    public boolean hasSubscribers(String channel) {
+        return channels.containsKey(channel);
+    }
+
+    // 只序列化一次，之後每個連線共用同一個 frame
+    public TextMessage encode(Object payload) throws JsonProcessingException {
+        return new TextMessage(objectMapper.writeValueAsString(payload));
+    }
+
+    public int broadcast(String channel, Object payload) {
+        Set<SessionOutbox> subscribers = channels.get(channel);
+        if (subscribers == null || subscribers.isEmpty()) {
+            return 0;
+        }
+        try {
+            return publish(channel, encode(payload));
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to encode broadcast for channel {}", channel, e);
+            return 0;
+        }
+    }
+
+    // 回傳成功放入佇列的連線數，佇列已滿的連線直接丟棄此 frame
+    public int publish(String channel, WebSocketMessage<?> frame) {
+        Set<SessionOutbox> subscribers = channels.get(channel);
+        if (subscribers == null) {
+            return 0;
+        }
+        publishedFrames.increment();
+        int delivered = 0;
+        for (SessionOutbox outbox : subscribers) {
+            if (outbox.offer(frame)) {
+                delivered++;
+            } else {
+                droppedMessages.increment();
+            }
+        }
+        enqueuedMessages.add(delivered);
+        return delivered;
+    }
+
+    // 送給單一連線（例如連線建立時的初始資料），與廣播共用同一個發送佇列以保持順序
+    public boolean send(WebSocketSession session, Object payload) {
+        try {
+            return send(session, encode(payload));
+        } catch (JsonProcessingException e) {
+            logger.error("Failed to encode message for session {}", session.getId(), e);
+            return false;
+        }
+    }
+
+    public boolean send(WebSocketSession session, WebSocketMessage<?> message) {
+        boolean queued = outbox(session).offer(message);
+        if (!queued) {
+            droppedMessages.increment();
+        }
+        return queued;
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("sessions", outboxes.size());
+        stats.put("channels", channels.size());
+        stats.put("publishedFrames", publishedFrames.sum());
+        stats.put("enqueuedMessages", enqueuedMessages.sum());
+        stats.put("droppedMessages", droppedMessages.sum());
+        stats.put("pendingSendTasks", senderExecutor.getQueue().size());
+        stats.put("activeSenders", senderExecutor.getActiveCount());
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senderExecutor.shutdownNow();
+    }
+}
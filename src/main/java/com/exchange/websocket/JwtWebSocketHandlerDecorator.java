@@ -1,6 +1,7 @@
 package com.exchange.websocket;
 
 import com.exchange.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.WebSocketHandler;
 import org.springframework.web.socket.WebSocketSession;
@@ -20,11 +21,18 @@ public class JwtWebSocketHandlerDecorator extends WebSocketHandlerDecorator {
         String token = extractToken(session);
         String symbol = extractSymbol(session);
         if (token != null) {
-            String username = jwtUtil.extractUsername(token);
-            if (username != null && !jwtUtil.isTokenExpired(token)) {
-                String userId = jwtUtil.extractUserId(token);
+            // 與 REST 過濾器共用已驗證 token 的快取，簽名錯誤或過期時為 null
+            Claims claims = jwtUtil.extractAllClaims(token);
+            String username = claims != null ? claims.get("username", String.class) : null;
+            if (username != null) {
+                String userId = claims.get("userId", String.class);
                 session.getAttributes().put("userId", userId);
                 session.getAttributes().put("username", username);
+                // 連線期間的下單/改單/取消以此判斷 token 是否已過期
+                if (claims.getExpiration() != null) {
+                    session.getAttributes().put(UserOrderWebSocketHandler.TOKEN_EXPIRES_AT_ATTRIBUTE,
+                            claims.getExpiration().getTime());
+                }
                 if (symbol != null) {
                     session.getAttributes().put("symbol", symbol);
                 }
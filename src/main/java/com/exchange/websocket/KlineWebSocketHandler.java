@@ -1,127 +1,134 @@
 package com.exchange.websocket;
 
+import com.exchange.dto.Candle;
 import com.exchange.model.MarketData;
-import com.exchange.model.Trade;
-import com.exchange.repository.MarketDataRepository;
-import com.exchange.repository.TradeRepository;
+import com.exchange.service.CandleAggregator;
+import com.exchange.service.KlineCache;
+import com.exchange.service.KlineEncoder;
+import com.exchange.utils.TimeFrame;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
-
 import java.math.BigDecimal;
-import java.time.*;
-import java.time.temporal.ChronoUnit;
-import java.util.ArrayList;
+import java.time.Instant;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class KlineWebSocketHandler extends TextWebSocketHandler {
 
-    private final CopyOnWriteArraySet<WebSocketSession> sessions = new CopyOnWriteArraySet<>();
+    // symbol -> 有人訂閱過的 timeFrame，成交只推送到這些 (symbol, timeFrame) 頻道
+    private final ConcurrentHashMap<String, Set<String>> symbolTimeFrames = new ConcurrentHashMap<>();
+
+    @Autowired
+    private BroadcastEngine broadcastEngine;
+
+    @Autowired
+    private ObjectMapper objectMapper;
 
     @Autowired
-    private MarketDataRepository marketDataRepository;
+    private KlineCache klineCache;
 
     @Autowired
-    private TradeRepository tradeRepository;
+    private CandleAggregator candleAggregator;
+
+    @Autowired
+    private KlineEncoder klineEncoder;
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
-        sessions.add(session);
-
         // 提取 WebSocket 連接中的 symbol 和 timeFrame 參數
         String query = session.getUri().getQuery();
         Map<String, String> params = getQueryParams(query);
         String symbol = params.getOrDefault("symbol", "BTCUSDT");
         String timeFrame = params.getOrDefault("timeFrame", "1m");
 
-        // 查詢對應的歷史K線數據
-        List<MarketData> historicalData = marketDataRepository.findTop500BySymbolAndTimeFrameOrderByTimestampDesc(symbol, timeFrame);
-
-        // 將歷史數據轉換為簡單的JSON結構並發送
-        String historicalMessage = createHistoricalDataMessage(historicalData);
-        session.sendMessage(new TextMessage(historicalMessage));
-
-        // 根據 timeFrame 計算當前未結束的 K 棒時間範圍
-        Instant now = Instant.now();
-        Instant startOfCurrentKline;
-        Instant endOfCurrentKline;
+        subscribe(session, symbol, timeFrame, params.get("format"));
+    }
 
-        switch (timeFrame) {
-            case "1m":
-                startOfCurrentKline = now.truncatedTo(ChronoUnit.MINUTES);
-                endOfCurrentKline = startOfCurrentKline.plus(1, ChronoUnit.MINUTES);
-                break;
-            case "5m":
-                startOfCurrentKline = now.truncatedTo(ChronoUnit.MINUTES).minus(now.getEpochSecond() % (5 * 60), ChronoUnit.SECONDS);
-                endOfCurrentKline = startOfCurrentKline.plus(5, ChronoUnit.MINUTES);
-                break;
-            case "1h":
-                startOfCurrentKline = now.truncatedTo(ChronoUnit.HOURS);
-                endOfCurrentKline = startOfCurrentKline.plus(1, ChronoUnit.HOURS);
-                break;
-            default:
-                startOfCurrentKline = now.truncatedTo(ChronoUnit.MINUTES);
-                endOfCurrentKline = startOfCurrentKline.plus(1, ChronoUnit.MINUTES);
-                break;
+    // 同一條連線可以用 {"type":"subscribe","symbol":..,"timeFrame":..} / {"type":"unsubscribe",..} 訂閱多個交易對與時間框架
+    // 訂閱訊息可帶 "format" 指定歷史K線格式，未指定時沿用連線參數
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        JsonNode request = objectMapper.readTree(message.getPayload());
+        String symbol = request.path("symbol").asText(null);
+        String timeFrame = request.path("timeFrame").asText("1m");
+        if (symbol == null) {
+            return;
         }
-
-        // 查詢當前未結束的 K 棒數據
-        List<Trade> currentTrades = tradeRepository.findBySymbolAndTradeTimeBetween(symbol, startOfCurrentKline, endOfCurrentKline);
-
-        BigDecimal highPrice = BigDecimal.ZERO;
-        BigDecimal lowPrice = BigDecimal.ZERO;
-        BigDecimal currentPrice = BigDecimal.ZERO;
-        BigDecimal openPrice = BigDecimal.ZERO;
-
-        // 查詢上一個 K 棒的 MarketData
-        MarketData previousMarketData;
-        switch (timeFrame) {
-            case "1m":
-                previousMarketData = marketDataRepository.findLatestBeforeTime(symbol, startOfCurrentKline);
-                break;
-            case "5m":
-                previousMarketData = marketDataRepository.findTop500BySymbolAnd5mTimeFrameBeforeOrderByTimestampDesc(symbol, startOfCurrentKline).stream().findFirst().orElse(null);
+        switch (request.path("type").asText()) {
+            case "subscribe":
+                String format = request.hasNonNull("format") ? request.get("format").asText()
+                        : getQueryParams(session.getUri().getQuery()).get("format");
+                subscribe(session, symbol, timeFrame, format);
                 break;
-            case "1h":
-                previousMarketData = marketDataRepository.findTop500BySymbolAnd1hTimeFrameBeforeOrderByTimestampDesc(symbol, startOfCurrentKline).stream().findFirst().orElse(null);
+            case "unsubscribe":
+                broadcastEngine.unsubscribe(channelOf(symbol, timeFrame), session);
+                pruneTimeFrames(symbol);
                 break;
             default:
-                previousMarketData = marketDataRepository.findLatestBeforeTime(symbol, startOfCurrentKline);
                 break;
         }
+    }
 
-        if (previousMarketData != null) {
-            openPrice = previousMarketData.getClose();
+    // 加入 (symbol, timeFrame) 頻道，並送出該頻道的歷史K線與當前K棒
+    private void subscribe(WebSocketSession session, String symbol, String timeFrame, String format) {
+        // 只接受 exchange.symbols 中的交易對，避免任意 symbol 建立頻道與快取
+        if (!klineCache.isSupported(symbol)) {
+            sendError(session, symbol, timeFrame, "Unsupported symbol");
+            return;
         }
-
-        if (currentTrades.isEmpty()) {
-            if (previousMarketData != null) {
-                highPrice = previousMarketData.getClose();
-                lowPrice = previousMarketData.getClose();
-                currentPrice = previousMarketData.getClose();
-            }
-        } else {
-            highPrice = currentTrades.stream().map(Trade::getPrice).max(BigDecimal::compareTo).orElse(BigDecimal.ZERO);
-            lowPrice = currentTrades.stream().map(Trade::getPrice).min(BigDecimal::compareTo).orElse(BigDecimal.ZERO);
-            currentPrice = currentTrades.get(currentTrades.size() - 1).getPrice();
+        TimeFrame currentTimeFrame = TimeFrame.fromCode(timeFrame);
+        if (currentTimeFrame == null) {
+            sendError(session, symbol, timeFrame, "Unsupported timeFrame");
+            return;
+        }
+        KlineEncoder.Format historicalFormat = KlineEncoder.Format.of(format, null);
+        if (historicalFormat == null) {
+            sendError(session, symbol, timeFrame, "Unsupported format");
+            return;
         }
 
-        long currentTime = now.getEpochSecond();
+        // 先加入頻道再查詢，避免查詢期間遺漏成交；先訂閱頻道再登記 timeFrame，清理時才不會移除剛加入的訂閱
+        broadcastEngine.subscribe(channelOf(symbol, timeFrame), session);
+        symbolTimeFrames.compute(symbol, (k, timeFrames) -> {
+            Set<String> result = timeFrames != null ? timeFrames : ConcurrentHashMap.newKeySet();
+            result.add(timeFrame);
+            return result;
+        });
+
+        // 查詢對應的歷史K線數據
+        List<MarketData> historicalData = klineCache.getBefore(symbol, currentTimeFrame, currentTimeFrame.barEnd(Instant.now()), 500);
+
+        // 依要求的格式編碼歷史數據並發送
+        broadcastEngine.send(session, createHistoricalDataMessage(historicalData, symbol, timeFrame, historicalFormat));
+
+        // 當前未結束的 K 棒直接從記憶體讀取
+        Candle currentBar = candleAggregator.getCurrentBar(symbol, currentTimeFrame);
 
         // 發送當前K線數據
-        String currentKlineMessage = "{\"type\": \"current_kline\", \"symbol\": \"" + symbol + "\", \"open\": "
-                + openPrice + ", \"high\": " + highPrice + ", \"low\": " + lowPrice + ", \"close\": " + currentPrice + ", \"time\": " + currentTime + "}";
-        session.sendMessage(new TextMessage(currentKlineMessage));
+        Map<String, Object> currentKlineMessage = new LinkedHashMap<>();
+        currentKlineMessage.put("type", "current_kline");
+        currentKlineMessage.put("symbol", symbol);
+        currentKlineMessage.put("timeFrame", timeFrame);
+        currentKlineMessage.put("open", currentBar != null ? currentBar.getOpen() : BigDecimal.ZERO);
+        currentKlineMessage.put("high", currentBar != null ? currentBar.getHigh() : BigDecimal.ZERO);
+        currentKlineMessage.put("low", currentBar != null ? currentBar.getLow() : BigDecimal.ZERO);
+        currentKlineMessage.put("close", currentBar != null ? currentBar.getClose() : BigDecimal.ZERO);
+        currentKlineMessage.put("time", Instant.now().getEpochSecond());
+        broadcastEngine.send(session, currentKlineMessage);
     }
 
     private Map<String, String> getQueryParams(String query) {
@@ -138,46 +145,72 @@ public class KlineWebSocketHandler extends TextWebSocketHandler {
     }
 
 
-    private String createHistoricalDataMessage(List<MarketData> historicalData) {
-        ObjectMapper objectMapper = new ObjectMapper();
-        objectMapper.registerModule(new JavaTimeModule());
-
-        List<Map<String, Object>> historicalDataWithTimestamps = new ArrayList<>();
-        for (MarketData data : historicalData) {
-            Map<String, Object> dataMap = new HashMap<>();
-            dataMap.put("type", "historical");  // 添加 type 標識
-            dataMap.put("symbol", data.getSymbol());
-            dataMap.put("open", data.getOpen());
-            dataMap.put("high", data.getHigh());
-            dataMap.put("low", data.getLow());
-            dataMap.put("close", data.getClose());
-            dataMap.put("time", data.getTimestamp().getEpochSecond());  // Unix 時間戳
-            historicalDataWithTimestamps.add(dataMap);
+    private WebSocketMessage<?> createHistoricalDataMessage(List<MarketData> historicalData, String symbol,
+                                                            String timeFrame, KlineEncoder.Format format) {
+        switch (format) {
+            case COLUMNAR:
+                return new TextMessage(klineEncoder.encodeColumnar(historicalData, symbol, timeFrame));
+            case BINARY:
+                return new BinaryMessage(klineEncoder.encodeBinary(historicalData, symbol, timeFrame));
+            default:
+                return new TextMessage(klineEncoder.encodeRows(historicalData, symbol, timeFrame));
         }
+    }
 
-        try {
-            return objectMapper.writeValueAsString(historicalDataWithTimestamps);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return "[]"; // 如果轉換失敗，返回空數組
-        }
+    private void sendError(WebSocketSession session, String symbol, String timeFrame, String message) {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("type", "error");
+        error.put("symbol", symbol);
+        error.put("timeFrame", timeFrame);
+        error.put("message", message);
+        broadcastEngine.send(session, error);
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        sessions.remove(session);
+        broadcastEngine.unregister(session);
     }
 
+    // 只推送給訂閱了該 symbol 的連線，每個 timeFrame 頻道只序列化一次
     public void broadcastKlineUpdate(String symbol, BigDecimal price, Instant tradeTime) {
-        sessions.forEach(session -> {
-            try {
-                // 構建實時成交數據的消息，包含時間戳
-                String message = "{\"type\": \"trade\", \"symbol\": \"" + symbol + "\", \"price\": " + price + ", \"time\": " + tradeTime.getEpochSecond() + "}";
-                session.sendMessage(new TextMessage(message));
-            } catch (Exception e) {
-                e.printStackTrace();
+        Set<String> timeFrames = symbolTimeFrames.get(symbol);
+        if (timeFrames == null) {
+            return;
+        }
+        boolean stale = false;
+        for (String timeFrame : timeFrames) {
+            if (!broadcastEngine.hasSubscribers(channelOf(symbol, timeFrame))) {
+                stale = true;
+                continue;
             }
+            // 構建實時成交數據的消息，包含時間戳
+            Map<String, Object> message = new LinkedHashMap<>();
+            message.put("type", "trade");
+            message.put("symbol", symbol);
+            message.put("timeFrame", timeFrame);
+            message.put("price", price);
+            message.put("time", tradeTime.getEpochSecond());
+            broadcastEngine.broadcast(channelOf(symbol, timeFrame), message);
+        }
+        if (stale) {
+            pruneTimeFrames(symbol);
+        }
+    }
+
+    // 移除已沒有訂閱者的 timeFrame，全部移除時連同 symbol 一起移除；與訂閱在同一個 compute 內序列化
+    private void pruneTimeFrames(String symbol) {
+        symbolTimeFrames.computeIfPresent(symbol, (k, timeFrames) -> {
+            timeFrames.removeIf(timeFrame -> !broadcastEngine.hasSubscribers(channelOf(symbol, timeFrame)));
+            return timeFrames.isEmpty() ? null : timeFrames;
         });
     }
 
+    int getTrackedSymbolCount() {
+        return symbolTimeFrames.size();
+    }
+
+    private String channelOf(String symbol, String timeFrame) {
+        return "kline:" + symbol + ":" + timeFrame;
+    }
+
 }
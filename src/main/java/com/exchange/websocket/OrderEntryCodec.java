@@ -0,0 +1,132 @@
+package com.exchange.websocket;
+
+import com.exchange.dto.OrderRequest;
+import com.exchange.model.Order;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.math.BigDecimal;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * /ws 下單通道的二進位 frame（big-endian）。
+ * 請求：byte version, byte type, int requestId，之後依 type：
+ *   SUBMIT：byte side, byte orderType, byte symbolLength, symbol (ASCII), long price, long quantity
+ *   MODIFY：long orderId, byte side, byte symbolLength, symbol, long oldPrice, long price, long quantity
+ *   CANCEL：long orderId, byte side, byte symbolLength, symbol, long price
+ * 回應（ACK）：byte version, byte type, int requestId, int code, long orderId, short messageLength, message (UTF-8)
+ * side / orderType 為列舉的 ordinal；價格與數量放大 10^8 後以 long 表示，NO_PRICE 代表 null（市價單或不帶查詢提示）。
+ * code 為 0 時成功，其餘與 REST 的錯誤碼相同；requestId 由客戶端指定，原樣帶回以對應請求。
+ */
+public final class OrderEntryCodec {
+
+    public static final byte VERSION = 1;
+    public static final int SCALE = 8;
+    public static final long NO_PRICE = Long.MIN_VALUE;
+
+    public static final byte SUBMIT = 1;
+    public static final byte MODIFY = 2;
+    public static final byte CANCEL = 3;
+    public static final byte ACK = 4;
+
+    public static final int OK = 0;
+
+    private static final Order.Side[] SIDES = Order.Side.values();
+    private static final Order.OrderType[] ORDER_TYPES = Order.OrderType.values();
+
+    private OrderEntryCodec() {
+    }
+
+    // 解析後的請求；orderId 只有 MODIFY / CANCEL 有值，欄位沿用 REST 的 OrderRequest
+    @Getter
+    @AllArgsConstructor
+    public static class Command {
+        private final byte type;
+        private final int requestId;
+        private final String orderId;
+        private final OrderRequest request;
+    }
+
+    public static Command decode(ByteBuffer frame) {
+        try {
+            byte version = frame.get();
+            if (version != VERSION) {
+                throw new IllegalArgumentException("Unsupported order entry version: " + version);
+            }
+            byte type = frame.get();
+            int requestId = frame.getInt();
+            OrderRequest request = new OrderRequest();
+            String orderId = null;
+            switch (type) {
+                case SUBMIT:
+                    request.setSide(ordinal(SIDES, frame.get()));
+                    request.setOrderType(ordinal(ORDER_TYPES, frame.get()));
+                    request.setSymbol(symbol(frame));
+                    request.setPrice(decimal(frame.getLong()));
+                    request.setQuantity(decimal(frame.getLong()));
+                    break;
+                case MODIFY:
+                    orderId = Long.toString(frame.getLong());
+                    request.setSide(ordinal(SIDES, frame.get()));
+                    request.setSymbol(symbol(frame));
+                    request.setOldPrice(decimal(frame.getLong()));
+                    request.setPrice(decimal(frame.getLong()));
+                    request.setQuantity(decimal(frame.getLong()));
+                    break;
+                case CANCEL:
+                    orderId = Long.toString(frame.getLong());
+                    request.setSide(ordinal(SIDES, frame.get()));
+                    request.setSymbol(symbol(frame));
+                    request.setPrice(decimal(frame.getLong()));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown order entry type: " + type);
+            }
+            if (frame.hasRemaining()) {
+                throw new IllegalArgumentException("Trailing bytes in order entry frame");
+            }
+            request.setOrderId(orderId);
+            return new Command(type, requestId, orderId, request);
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Truncated order entry frame");
+        }
+    }
+
+    // 讀不到 requestId 時回傳 0，讓格式錯誤的請求也能收到 ACK
+    public static int peekRequestId(ByteBuffer frame) {
+        return frame.remaining() >= 6 ? frame.getInt(frame.position() + 2) : 0;
+    }
+
+    public static byte[] encodeAck(int requestId, int code, String orderId, String message) {
+        byte[] messageBytes = message != null ? message.getBytes(StandardCharsets.UTF_8) : new byte[0];
+        int length = Math.min(messageBytes.length, Short.MAX_VALUE);
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 1 + 4 + 4 + 8 + 2 + length);
+        buffer.put(VERSION);
+        buffer.put(ACK);
+        buffer.putInt(requestId);
+        buffer.putInt(code);
+        buffer.putLong(orderId != null ? Long.parseLong(orderId) : 0L);
+        buffer.putShort((short) length).put(messageBytes, 0, length);
+        return buffer.array();
+    }
+
+    private static String symbol(ByteBuffer frame) {
+        int length = frame.get() & 0xFF;
+        byte[] bytes = new byte[length];
+        frame.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static <E> E ordinal(E[] values, byte ordinal) {
+        if (ordinal < 0 || ordinal >= values.length) {
+            throw new IllegalArgumentException("Invalid enum ordinal: " + ordinal);
+        }
+        return values[ordinal];
+    }
+
+    private static BigDecimal decimal(long units) {
+        return units == NO_PRICE ? null : BigDecimal.valueOf(units, SCALE);
+    }
+}
@@ -1,8 +1,16 @@
 package com.exchange.websocket;
 
 import com.exchange.consumer.OrderBookDeltaSubscriptionManager;
+import com.exchange.model.Order;
+import com.exchange.service.L2OrderBook;
 import com.exchange.service.OrderbookSnapshotService;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
@@ -11,95 +19,239 @@ import org.springframework.web.socket.handler.TextWebSocketHandler;
 
 import java.io.IOException;
 import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
+import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class OrderbookWebSocketHandler extends TextWebSocketHandler {
 
-    private final ConcurrentHashMap<String, Set<WebSocketSession>> symbolSessions = new ConcurrentHashMap<>();
+    private static final Logger logger = LoggerFactory.getLogger(OrderbookWebSocketHandler.class);
+
+    private final ConcurrentHashMap<String, DeltaChannel> channels = new ConcurrentHashMap<>();
     private final ObjectMapper objectMapper;
     private final OrderbookSnapshotService orderbookService;
     private final OrderBookDeltaSubscriptionManager subscriptionManager;
+    private final BroadcastEngine broadcastEngine;
+    // 訂閱所需的 symbol 列表，與撮合引擎使用同一份設定
+    private final List<String> symbols;
 
     public OrderbookWebSocketHandler(ObjectMapper objectMapper,
                                      OrderbookSnapshotService orderbookService,
-                                     OrderBookDeltaSubscriptionManager subscriptionManager) {
+                                     OrderBookDeltaSubscriptionManager subscriptionManager,
+                                     BroadcastEngine broadcastEngine,
+                                     @Value("${exchange.symbols:BTCUSDT,ETHUSDT}") List<String> symbols) {
         this.objectMapper = objectMapper;
         this.orderbookService = orderbookService;
         this.subscriptionManager = subscriptionManager;
+        this.broadcastEngine = broadcastEngine;
+        this.symbols = List.copyOf(symbols);
 
         // 預先初始化 Kafka 消費者，訂閱所有需要的 symbol topic
         initializeKafkaSubscriptions();
     }
 
     private void initializeKafkaSubscriptions() {
-        // 訂閱所需的 symbol 列表
-        String[] symbols = {"BTCUSDT", "ETHUSDT"};
-
         for (String symbol : symbols) {
             subscriptionManager.subscribeToSymbol(symbol, record -> {
-                String deltaMessage = record.value();
-                sendDeltaToWebSocket(symbol, deltaMessage);
+                // 先更新記憶體訂單簿並取得序號，再轉發給前端
+                L2OrderBook.Delta delta = orderbookService.applyDelta(symbol, record.value());
+                if (delta != null) {
+                    sendDeltaToWebSocket(symbol, delta);
+                } else if (!orderbookService.isSeeded(symbol)) {
+                    // 訂單簿無法初始化時仍轉發原始增量，前端自行累加
+                    sendRawDeltaToWebSocket(symbol, record.value());
+                }
+            }, () -> {
+                // 取得分區、確定起始 offset 後才從 Redis 初始化，之前發布的增量已反映在 Redis 中
+                if (orderbookService.reseed(symbol)) {
+                    resetSubscriptions(symbol);
+                }
             });
         }
     }
 
+    // 定期與 Redis 比對，重新初始化後所有連線改送新 epoch 的快照
+    @Scheduled(fixedDelayString = "${orderbook.reconcile-interval-ms:30000}")
+    public void reconcileBooks() {
+        for (String symbol : symbols) {
+            if (orderbookService.reconcile(symbol)) {
+                resetSubscriptions(symbol);
+            }
+        }
+    }
+
+    private void resetSubscriptions(String symbol) {
+        DeltaChannel channel = channels.get(symbol);
+        if (channel != null) {
+            channel.subscriptions.forEach(OrderbookSubscription::sendSnapshot);
+        }
+    }
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         String symbol = extractSymbolFromUrl(session);
-        BigDecimal interval = extractIntervalFromUrl(session);
 
-        if (symbol != null) {
-//            System.out.println("OrderbookWebSocket connection established for symbol: " + symbol + ", sessionId: " + session.getId());
+        // 只接受 exchange.symbols 中的交易對，其他 symbol 不建立頻道
+        if (symbol != null && symbols.contains(symbol)) {
+            // 間隔對應到有預先聚合深度的間隔，快照與增量都不需要重新分桶
+            BigDecimal interval = orderbookService.resolveInterval(symbol, extractIntervalFromUrl(session));
             session.getAttributes().put("symbol", symbol); // 將 symbol 設置到 session 屬性中
             session.getAttributes().put("interval", interval); // 將 interval 設置到 session 屬性中
-            symbolSessions.computeIfAbsent(symbol, k -> ConcurrentHashMap.newKeySet()).add(session);
+
+            // 先加入訂閱再排入快照：快照在發送當下才建立，排在它後面的批次若序號不大於快照會被客戶端略過
+            OrderbookSubscription subscription = new OrderbookSubscription(session, symbol, interval,
+                    orderbookService.granularityIndex(symbol, interval));
+            session.getAttributes().put("subscription", subscription);
+            channels.computeIfAbsent(symbol, k -> new DeltaChannel()).subscriptions.add(subscription);
 
             // 發送訂單簿快照
-            sendOrderbookSnapshot(session, symbol, interval);
+            subscription.sendSnapshot();
         } else {
-            session.close(CloseStatus.POLICY_VIOLATION); // 如果沒有 symbol，則關閉連接
+            session.close(CloseStatus.POLICY_VIOLATION); // 沒有 symbol 或不支援的 symbol，則關閉連接
+        }
+    }
+
+    // 客戶端發現序號不連續時送出 {"type":"resync","epoch":..,"fromSeq":..}，只補送缺少的增量
+    @Override
+    protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
+        OrderbookSubscription subscription = getSubscriptionFromSession(session);
+        if (subscription == null) {
+            return;
+        }
+        JsonNode request = objectMapper.readTree(message.getPayload());
+        if ("resync".equals(request.path("type").asText())) {
+            subscription.resync(request.path("epoch").asLong(), request.path("fromSeq").asLong());
+        } else if ("snapshot".equals(request.path("type").asText())) {
+            subscription.sendSnapshot();
         }
     }
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
-        String symbol = getSymbolFromSession(session);
-        if (symbol != null) {
-            Set<WebSocketSession> sessions = symbolSessions.get(symbol);
-            if (sessions != null) {
-                sessions.remove(session);
-                if (sessions.isEmpty()) {
-                    symbolSessions.remove(symbol);
-                }
+        OrderbookSubscription subscription = getSubscriptionFromSession(session);
+        if (subscription != null) {
+            DeltaChannel channel = channels.get(subscription.symbol);
+            if (channel != null) {
+                channel.subscriptions.remove(subscription);
             }
         }
+        broadcastEngine.unregister(session);
     }
 
-    private void sendDeltaToWebSocket(String symbol, String deltaMessage) {
-        Set<WebSocketSession> sessions = symbolSessions.get(symbol);
+    // Kafka 執行緒只把增量合併進該 symbol 的待發送價位，不直接寫入任何連線
+    private void sendDeltaToWebSocket(String symbol, L2OrderBook.Delta delta) {
+        DeltaChannel channel = channels.get(symbol);
+        if (channel != null && !channel.subscriptions.isEmpty()) {
+            channel.merge(delta);
+        }
+    }
 
-        // 添加日誌以查看增量消息內容和符號
-//        System.out.println("Sending delta to symbol: " + symbol + ", message: " + deltaMessage);
+    // 原始增量加上 type=raw 後直接放入各連線的發送佇列，只序列化一次
+    private void sendRawDeltaToWebSocket(String symbol, String deltaMessage) {
+        DeltaChannel channel = channels.get(symbol);
+        if (channel == null || channel.subscriptions.isEmpty()) {
+            return;
+        }
+        try {
+            JsonNode delta = objectMapper.readTree(deltaMessage);
+            if (!delta.isObject()) {
+                return;
+            }
+            ((ObjectNode) delta).put("type", "raw");
+            TextMessage message = broadcastEngine.encode(delta);
+            for (OrderbookSubscription subscription : channel.subscriptions) {
+                subscription.outbox.offerOrReset(message, subscription::buildSnapshotMessage);
+            }
+        } catch (IOException e) {
+            logger.error("Failed to forward raw order book delta for {}: {}", symbol, deltaMessage, e);
+        }
+    }
 
-        if (sessions != null && !sessions.isEmpty()) {
-            for (WebSocketSession session : sessions) {
-                try {
-                    session.sendMessage(new TextMessage(deltaMessage));
-//                    System.out.println("Message sent to session: " + session.getId());
-                } catch (IOException e) {
-                    e.printStackTrace();
+    // 每個視窗把同一價位的多筆增量合併成一則批次訊息，每個間隔只序列化一次
+    @Scheduled(fixedDelayString = "${orderbook.ws.flush-interval-ms:100}")
+    public void flushDeltas() {
+        for (Map.Entry<String, DeltaChannel> entry : channels.entrySet()) {
+            DeltaChannel channel = entry.getValue();
+            DeltaBatch batch = channel.drain();
+            if (batch == null) {
+                continue;
+            }
+            Map<Integer, TextMessage> messagesByGranularity = new HashMap<>();
+            for (OrderbookSubscription subscription : channel.subscriptions) {
+                TextMessage batchMessage = messagesByGranularity.computeIfAbsent(subscription.granularityIndex, index -> {
+                    try {
+                        return broadcastEngine.encode(toBatchMessage(entry.getKey(), batch, index));
+                    } catch (IOException e) {
+                        logger.error("Failed to serialize order book batch for {}", entry.getKey(), e);
+                        return null;
+                    }
+                });
+                if (batchMessage != null) {
+                    // 佇列已滿表示客戶端跟不上，丟棄排隊中的批次改送最新快照
+                    subscription.outbox.offerOrReset(batchMessage, subscription::buildSnapshotMessage);
                 }
             }
-        } else {
-//            System.out.println("No WebSocket sessions available for symbol: " + symbol);
         }
     }
 
+    // 各連線發送佇列的深度與丟棄統計；統計端點不需登入，不包含 session id
+    public List<Map<String, Object>> getSessionStats() {
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (DeltaChannel channel : channels.values()) {
+            for (OrderbookSubscription subscription : channel.subscriptions) {
+                Map<String, Object> stat = new LinkedHashMap<>();
+                stat.put("symbol", subscription.symbol);
+                stat.put("interval", subscription.interval.toPlainString());
+                stat.put("queueDepth", subscription.outbox.getQueueDepth());
+                stat.put("sentMessages", subscription.outbox.getSentMessages());
+                stat.put("droppedMessages", subscription.outbox.getDroppedMessages());
+                stat.put("snapshotResets", subscription.outbox.getResets());
+                stats.add(stat);
+            }
+        }
+        return stats;
+    }
+
+    // prevSeq 為此批次第一筆增量的前一個序號，客戶端只有在 prevSeq <= 本地序號 < seq 時才能直接套用
+    private Map<String, Object> toBatchMessage(String symbol, DeltaBatch batch, int granularityIndex) {
+        List<Map<String, Object>> updates = new ArrayList<>();
+        for (Map.Entry<BigDecimal, BigDecimal> level : batch.levels(Order.Side.BUY, granularityIndex).entrySet()) {
+            updates.add(toLevelUpdate(Order.Side.BUY, level.getKey(), level.getValue()));
+        }
+        for (Map.Entry<BigDecimal, BigDecimal> level : batch.levels(Order.Side.SELL, granularityIndex).entrySet()) {
+            updates.add(toLevelUpdate(Order.Side.SELL, level.getKey(), level.getValue()));
+        }
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "deltas");
+        message.put("symbol", symbol);
+        message.put("epoch", batch.epoch);
+        message.put("prevSeq", batch.prevSeq);
+        message.put("seq", batch.seq);
+        message.put("updates", updates);
+        return message;
+    }
+
+    private Map<String, Object> toLevelUpdate(Order.Side side, BigDecimal price, BigDecimal quantity) {
+        Map<String, Object> update = new LinkedHashMap<>();
+        update.put("side", side.name());
+        update.put("price", price.toPlainString());
+        update.put("quantity", quantity.toPlainString());
+        return update;
+    }
+
+    // price 為該間隔下的價位，quantity 為該價位更新後的總量（0 表示移除），unfilledQuantity 為此次變化量
+    private Map<String, Object> toDeltaMessage(String symbol, L2OrderBook.Delta delta, int granularityIndex) {
+        Map<String, Object> message = new LinkedHashMap<>();
+        message.put("type", "delta");
+        message.put("symbol", symbol);
+        message.put("epoch", delta.getEpoch());
+        message.put("seq", delta.getSeq());
+        message.put("side", delta.getSide().name());
+        message.put("price", delta.getBucketPrice(granularityIndex).toPlainString());
+        message.put("quantity", delta.getBucketQuantity(granularityIndex).toPlainString());
+        message.put("unfilledQuantity", delta.getQuantityChange().toPlainString());
+        return message;
+    }
 
     private Map<String, String> extractQueryParams(WebSocketSession session) {
         Map<String, String> queryParams = new HashMap<>();
@@ -131,14 +283,132 @@ public class OrderbookWebSocketHandler extends TextWebSocketHandler {
         return BigDecimal.valueOf(100); // Default value
     }
 
-    private void sendOrderbookSnapshot(WebSocketSession session, String symbol, BigDecimal Interval) throws IOException {
-        Map<String, Object> snapshot = orderbookService.getOrderbookSnapshot(symbol, Interval);
-//        System.out.println("Sending orderbook snapshot: " + snapshot);
-        String snapshotJson = objectMapper.writeValueAsString(snapshot);
-        session.sendMessage(new TextMessage(snapshotJson));
+    private OrderbookSubscription getSubscriptionFromSession(WebSocketSession session) {
+        return (OrderbookSubscription) session.getAttributes().get("subscription");
+    }
+
+    /**
+     * 單一連線的訂閱狀態。所有發送都經過該連線的有界佇列，由發送執行緒依序寫出；
+     * 快照在發送當下才建立，因此重置後送出的一定是最新狀態。
+     */
+    private class OrderbookSubscription {
+        private final WebSocketSession session;
+        private final String symbol;
+        private final BigDecimal interval;
+        private final int granularityIndex;
+        private final SessionOutbox outbox;
+
+        OrderbookSubscription(WebSocketSession session, String symbol, BigDecimal interval, int granularityIndex) {
+            this.session = session;
+            this.symbol = symbol;
+            this.interval = interval;
+            this.granularityIndex = granularityIndex;
+            this.outbox = broadcastEngine.outbox(session);
+        }
+
+        // 丟棄尚未送出的訊息，改送一份最新快照
+        void sendSnapshot() {
+            outbox.reset(this::buildSnapshotMessage);
+        }
+
+        TextMessage buildSnapshotMessage() {
+            try {
+                return broadcastEngine.encode(orderbookService.getOrderbookSnapshot(symbol, interval));
+            } catch (IOException e) {
+                logger.error("Failed to build order book snapshot for {}", symbol, e);
+                return null;
+            }
+        }
+
+        void resync(long clientEpoch, long fromSeq) throws IOException {
+            List<L2OrderBook.Delta> missed = orderbookService.getDeltasSince(symbol, clientEpoch, fromSeq);
+            if (missed == null) {
+                // 缺漏已超出保留範圍（或 epoch 已變），只能重送快照
+                sendSnapshot();
+                return;
+            }
+            List<Map<String, Object>> deltas = new ArrayList<>();
+            long toSeq = fromSeq;
+            for (L2OrderBook.Delta delta : missed) {
+                deltas.add(toDeltaMessage(symbol, delta, granularityIndex));
+                toSeq = delta.getSeq();
+            }
+            Map<String, Object> response = new LinkedHashMap<>();
+            response.put("type", "resync");
+            response.put("symbol", symbol);
+            response.put("epoch", clientEpoch);
+            response.put("fromSeq", fromSeq);
+            response.put("seq", toSeq);
+            response.put("deltas", deltas);
+            outbox.offerOrReset(broadcastEngine.encode(response), this::buildSnapshotMessage);
+        }
+    }
+
+    /**
+     * 單一 symbol 在目前視窗內尚未送出的變動。每個間隔、每個價位只保留最後的總量，
+     * 同一價位在視窗內變動多次也只會送出一次。
+     */
+    private class DeltaChannel {
+        private final Set<OrderbookSubscription> subscriptions = ConcurrentHashMap.newKeySet();
+        private List<Map<BigDecimal, BigDecimal>> bidLevels;
+        private List<Map<BigDecimal, BigDecimal>> askLevels;
+        private long epoch;
+        private long prevSeq = -1L; // 視窗內第一筆增量的前一個序號，-1 表示視窗內沒有變動
+        private long seq;
+
+        synchronized void merge(L2OrderBook.Delta delta) {
+            int granularityCount = delta.getBucketPrices().length;
+            if (prevSeq < 0 || delta.getEpoch() != epoch) {
+                bidLevels = newLevels(granularityCount);
+                askLevels = newLevels(granularityCount);
+                prevSeq = delta.getSeq() - 1;
+            }
+            List<Map<BigDecimal, BigDecimal>> levels = delta.getSide() == Order.Side.BUY ? bidLevels : askLevels;
+            for (int i = 0; i < granularityCount; i++) {
+                levels.get(i).put(delta.getBucketPrice(i), delta.getBucketQuantity(i));
+            }
+            epoch = delta.getEpoch();
+            seq = delta.getSeq();
+        }
+
+        synchronized DeltaBatch drain() {
+            if (prevSeq < 0) {
+                return null;
+            }
+            DeltaBatch batch = new DeltaBatch(epoch, prevSeq, seq, bidLevels, askLevels);
+            bidLevels = null;
+            askLevels = null;
+            prevSeq = -1L;
+            return batch;
+        }
+
+        private List<Map<BigDecimal, BigDecimal>> newLevels(int granularityCount) {
+            List<Map<BigDecimal, BigDecimal>> levels = new ArrayList<>(granularityCount);
+            for (int i = 0; i < granularityCount; i++) {
+                levels.add(new LinkedHashMap<>());
+            }
+            return levels;
+        }
     }
 
-    private String getSymbolFromSession(WebSocketSession session) {
-        return (String) session.getAttributes().get("symbol");
+    private static class DeltaBatch {
+        private final long epoch;
+        private final long prevSeq;
+        private final long seq;
+        private final List<Map<BigDecimal, BigDecimal>> bidLevels;
+        private final List<Map<BigDecimal, BigDecimal>> askLevels;
+
+        DeltaBatch(long epoch, long prevSeq, long seq,
+                   List<Map<BigDecimal, BigDecimal>> bidLevels, List<Map<BigDecimal, BigDecimal>> askLevels) {
+            this.epoch = epoch;
+            this.prevSeq = prevSeq;
+            this.seq = seq;
+            this.bidLevels = bidLevels;
+            this.askLevels = askLevels;
+        }
+
+        Map<BigDecimal, BigDecimal> levels(Order.Side side, int granularityIndex) {
+            return (side == Order.Side.BUY ? bidLevels : askLevels).get(granularityIndex);
+        }
     }
 }
@@ -2,41 +2,41 @@ package com.exchange.websocket;
 
 import com.exchange.model.Trade;
 import com.exchange.service.TradeService;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
-import org.springframework.web.socket.TextMessage;
 import org.springframework.web.socket.WebSocketSession;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
-import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class RecentTradesWebSocketHandler extends TextWebSocketHandler {
 
-    private final ConcurrentHashMap<String, Set<WebSocketSession>> symbolSessions = new ConcurrentHashMap<>();
-
-    @Autowired
-    private ObjectMapper objectMapper;
-
     private final TradeService tradeService;
+    private final BroadcastEngine broadcastEngine;
+    private final Set<String> symbols;
 
-    public RecentTradesWebSocketHandler(TradeService tradeService, ObjectMapper objectMapper) {
+    public RecentTradesWebSocketHandler(TradeService tradeService, BroadcastEngine broadcastEngine,
+                                        @Value("${exchange.symbols:BTCUSDT,ETHUSDT}") List<String> symbols) {
         this.tradeService = tradeService;
-        this.objectMapper = objectMapper;
+        this.broadcastEngine = broadcastEngine;
+        this.symbols = Set.copyOf(symbols);
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws Exception {
         String symbol = extractSymbolFromUri(session.getUri().toString());
+        // 只接受 exchange.symbols 中的交易對，避免任意 symbol 建立頻道
+        if (!symbols.contains(symbol)) {
+            session.close(CloseStatus.POLICY_VIOLATION);
+            return;
+        }
         session.getAttributes().put("symbol", symbol); // 設置到 session
 
-        symbolSessions.computeIfAbsent(symbol, k -> ConcurrentHashMap.newKeySet()).add(session);
+        broadcastEngine.subscribe(channelOf(symbol), session);
 
         // 獲取最近的六筆成交記錄
         List<Trade> recentTrades = tradeService.getRecentTrades(symbol, 6);
@@ -49,6 +49,10 @@ public class RecentTradesWebSocketHandler extends TextWebSocketHandler {
     }
 
 
+    private String channelOf(String symbol) {
+        return "recent-trades:" + symbol;
+    }
+
     private String extractSymbolFromUri(String uri) {
         String[] parts = uri.split("/");
         return parts[parts.length - 1].split("\\?")[0]; // 提取交易對
@@ -56,50 +60,15 @@ public class RecentTradesWebSocketHandler extends TextWebSocketHandler {
 
     @Override
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) throws Exception {
-        String symbol = getSymbolFromSession(session);
-        if (symbol != null) {
-            Set<WebSocketSession> sessions = symbolSessions.get(symbol);
-            if (sessions != null) {
-                sessions.remove(session);
-                if (sessions.isEmpty()) {
-                    symbolSessions.remove(symbol);
-                }
-            }
-        }
+        broadcastEngine.unregister(session);
     }
 
+    // 每筆成交只序列化一次，由廣播引擎分送給該 symbol 的所有連線
     public void broadcastRecentTrade(String symbol, Object tradeData) {
-        String tradeJson;
-        try {
-            tradeJson = objectMapper.writeValueAsString(tradeData);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return;
-        }
-
-        Set<WebSocketSession> sessions = symbolSessions.get(symbol);
-        if (sessions != null) {
-            sessions.forEach(session -> {
-                try {
-                    if (session.isOpen()) {
-                        session.sendMessage(new TextMessage(tradeJson));
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-            });
-        }
+        broadcastEngine.broadcast(channelOf(symbol), tradeData);
     }
 
     public void sendRecentTrades(WebSocketSession session, List<Trade> recentTrades) {
-        try {
-            session.sendMessage(new TextMessage(objectMapper.writeValueAsString(recentTrades)));
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    private String getSymbolFromSession(WebSocketSession session) {
-        return (String) session.getAttributes().get("symbol");
+        broadcastEngine.send(session, recentTrades);
     }
 }
@@ -0,0 +1,135 @@
+package com.exchange.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * 單一 WebSocket 連線的有界發送佇列。呼叫端只負責放入訊息，實際發送在 executor 上進行，
+ * 同一連線同時只有一個執行緒在發送，確保順序也避免並發寫入 session。
+ * 佇列滿時（慢速客戶端）丟棄所有排隊訊息，改為送出一份發送當下才建立的最新快照。
+ */
+public class SessionOutbox {
+
+    private static final Logger logger = LoggerFactory.getLogger(SessionOutbox.class);
+
+    private final WebSocketSession session;
+    private final Executor executor;
+    private final int capacity;
+
+    private final Queue<WebSocketMessage<?>> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    private final AtomicReference<Supplier<WebSocketMessage<?>>> resetSupplier = new AtomicReference<>();
+
+    private final AtomicLong sentMessages = new AtomicLong();
+    private final AtomicLong droppedMessages = new AtomicLong();
+    private final AtomicLong resets = new AtomicLong();
+
+    public SessionOutbox(WebSocketSession session, Executor executor, int capacity) {
+        this.session = session;
+        this.executor = executor;
+        this.capacity = capacity;
+    }
+
+    // 放入訊息，佇列已滿時回傳 false（不阻塞呼叫端）
+    public boolean offer(WebSocketMessage<?> message) {
+        if (depth.incrementAndGet() > capacity) {
+            depth.decrementAndGet();
+            droppedMessages.incrementAndGet();
+            return false;
+        }
+        queue.add(message);
+        scheduleDrain();
+        return true;
+    }
+
+    // 放入訊息，佇列已滿時改以 snapshotSupplier 重置
+    public void offerOrReset(WebSocketMessage<?> message, Supplier<WebSocketMessage<?>> snapshotSupplier) {
+        if (!offer(message)) {
+            reset(snapshotSupplier);
+        }
+    }
+
+    // 丟棄所有排隊中的訊息，下一次發送改為 snapshotSupplier 產生的快照
+    public void reset(Supplier<WebSocketMessage<?>> snapshotSupplier) {
+        int cleared = 0;
+        while (queue.poll() != null) {
+            depth.decrementAndGet();
+            cleared++;
+        }
+        droppedMessages.addAndGet(cleared);
+        resets.incrementAndGet();
+        resetSupplier.set(snapshotSupplier);
+        scheduleDrain();
+    }
+
+    public int getQueueDepth() {
+        return depth.get();
+    }
+
+    public long getSentMessages() {
+        return sentMessages.get();
+    }
+
+    public long getDroppedMessages() {
+        return droppedMessages.get();
+    }
+
+    public long getResets() {
+        return resets.get();
+    }
+
+    private void scheduleDrain() {
+        if (draining.compareAndSet(false, true)) {
+            try {
+                executor.execute(this::drain);
+            } catch (RejectedExecutionException e) {
+                draining.set(false);
+                logger.warn("Outbox executor rejected drain for session {}", session.getId());
+            }
+        }
+    }
+
+    private void drain() {
+        try {
+            while (session.isOpen()) {
+                // 快照優先於排隊中的訊息
+                Supplier<WebSocketMessage<?>> reset = resetSupplier.getAndSet(null);
+                WebSocketMessage<?> message;
+                if (reset != null) {
+                    message = reset.get();
+                } else {
+                    message = queue.poll();
+                    if (message == null) {
+                        break;
+                    }
+                    depth.decrementAndGet();
+                }
+                if (message != null) {
+                    session.sendMessage(message);
+                    sentMessages.incrementAndGet();
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Failed to send to session {}: {}", session.getId(), e.getMessage());
+        } finally {
+            draining.set(false);
+            // 發送期間若有新訊息進來，重新排程
+            if (session.isOpen() && (!queue.isEmpty() || resetSupplier.get() != null)) {
+                scheduleDrain();
+            }
+        }
+    }
+}
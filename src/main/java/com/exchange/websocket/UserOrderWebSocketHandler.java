@@ -1,39 +1,84 @@
 package com.exchange.websocket;
 
 import com.exchange.dto.OrderDTO;
+import com.exchange.model.Order;
+import com.exchange.service.OrderModifyService;
+import com.exchange.service.OrderService;
 import com.exchange.service.UserOrderService;
+import com.exchange.utils.ApiResponse;
+import com.exchange.utils.SnowflakeIdGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
+import org.springframework.web.socket.BinaryMessage;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
-import org.springframework.web.socket.handler.TextWebSocketHandler;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
+/**
+ * 用戶訂單 WebSocket（/ws）：推送掛單快照與訂單更新（JSON 文字 frame），
+ * 並接受 OrderEntryCodec 格式的二進位下單/改單/取消，連線建立時已驗證 JWT，之後每筆請求不再經過 HTTP 與 JSON 綁定。
+ * 連線時間可能超過 token 的有效期限，每筆請求檢查握手時記錄的過期時間，過期後拒絕請求並關閉連線，客戶端需以新 token 重新連線。
+ * 下單與 REST 共用 OrderService 的驗證與 Kafka 發送，ACK 在 broker 確認後送出；改單與取消共用 OrderModifyService。
+ * ACK 由 Kafka 回呼執行緒送出、訂單更新由消費者執行緒送出，因此所有寫出都經過 ConcurrentWebSocketSessionDecorator。
+ */
 @Component
-public class UserOrderWebSocketHandler extends TextWebSocketHandler {
+public class UserOrderWebSocketHandler extends AbstractWebSocketHandler {
+
+    private static final Logger logger = LoggerFactory.getLogger(UserOrderWebSocketHandler.class);
+
+    private static final String SENDER_ATTRIBUTE = "orderSender";
+    // JwtWebSocketHandlerDecorator 握手時寫入的 token 過期時間（epoch 毫秒）
+    static final String TOKEN_EXPIRES_AT_ATTRIBUTE = "tokenExpiresAt";
+    static final int TOKEN_EXPIRED = 40101;
+    private static final int SEND_TIME_LIMIT_MS = 5000;
+    private static final int SEND_BUFFER_LIMIT = 512 * 1024;
 
     private final ConcurrentHashMap<String, WebSocketSession> userSessions = new ConcurrentHashMap<>();
     private final UserOrderService userOrderService;
     private final ObjectMapper objectMapper;
+    private final OrderService orderService;
+    private final OrderModifyService orderModifyService;
+    private final SnowflakeIdGenerator idGenerator;
+
+    // 下單等待 Kafka 確認的時間，與 REST ack=true 相同
+    @Value("${orders.submit.ack-timeout-ms:5000}")
+    private long ackTimeoutMs = 5000;
 
     @Autowired
-    public UserOrderWebSocketHandler(UserOrderService userOrderService, ObjectMapper objectMapper) {
+    public UserOrderWebSocketHandler(UserOrderService userOrderService, ObjectMapper objectMapper, OrderService orderService,
+                                     OrderModifyService orderModifyService, SnowflakeIdGenerator idGenerator) {
         this.userOrderService = userOrderService;
         this.objectMapper = objectMapper;
+        this.orderService = orderService;
+        this.orderModifyService = orderModifyService;
+        this.idGenerator = idGenerator;
     }
 
     @Override
     public void afterConnectionEstablished(WebSocketSession session) throws IOException {
         String userId = getUserIdFromSession(session);
 //        System.out.println("UserOrderWebSocket connection established for user: " + userId + ", sessionId: " + session.getId());
-        userSessions.put(userId, session);
+        // 發送逾時或緩衝超過上限時關閉連線（而不是丟棄 ACK），客戶端重新連線後會收到新的快照
+        WebSocketSession sender = new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_LIMIT);
+        session.getAttributes().put(SENDER_ATTRIBUTE, sender);
+        userSessions.put(userId, sender);
 
         // 發送快照
         List<OrderDTO> orders = userOrderService.getUserOrders(userId);
@@ -48,7 +93,84 @@ public class UserOrderWebSocketHandler extends TextWebSocketHandler {
     public void afterConnectionClosed(WebSocketSession session, CloseStatus status) {
         String userId = getUserIdFromSession(session);
 //        System.out.println("UserOrderWebSocket connection closed for user: " + userId);
-        userSessions.remove(userId);
+        // 同一用戶已建立新連線時不移除新的連線
+        userSessions.remove(userId, senderOf(session));
+    }
+
+    @Override
+    protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+        String userId = getUserIdFromSession(session);
+        ByteBuffer frame = message.getPayload();
+        int requestId = OrderEntryCodec.peekRequestId(frame);
+        if (isTokenExpired(session)) {
+            sendAck(session, requestId, TOKEN_EXPIRED, null, "登入已過期，請重新連線");
+            closeExpired(session);
+            return;
+        }
+        OrderEntryCodec.Command command;
+        try {
+            command = OrderEntryCodec.decode(frame);
+        } catch (IllegalArgumentException e) {
+            sendAck(session, requestId, 40001, null, e.getMessage());
+            return;
+        }
+
+        switch (command.getType()) {
+            case OrderEntryCodec.SUBMIT:
+                submitOrder(session, userId, command);
+                break;
+            case OrderEntryCodec.MODIFY:
+                sendAck(session, command.getRequestId(), command.getOrderId(),
+                        orderModifyService.modifyOrder(userId, command.getOrderId(), command.getRequest()));
+                break;
+            default:
+                sendAck(session, command.getRequestId(), command.getOrderId(),
+                        orderModifyService.cancelOrder(userId, command.getOrderId(), command.getRequest()));
+        }
+    }
+
+    // 驗證失敗立即回覆，成功送出時等 broker 確認後回覆，等待期間不占用 WebSocket 執行緒
+    private void submitOrder(WebSocketSession session, String userId, OrderEntryCodec.Command command) {
+        int requestId = command.getRequestId();
+        String orderId = String.valueOf(idGenerator.nextId());
+        Order order = orderService.buildOrder(orderId, userId, command.getRequest());
+        try {
+            orderService.saveOrderAcked(order)
+                    .orTimeout(ackTimeoutMs, TimeUnit.MILLISECONDS)
+                    .whenComplete((result, ex) -> {
+                        if (ex == null) {
+                            sendAck(session, requestId, OrderEntryCodec.OK, orderId, "訂單提交成功");
+                        } else {
+                            sendAck(session, requestId, 50001, orderId, "訂單提交失敗，請稍後再試");
+                        }
+                    });
+        } catch (IllegalArgumentException e) {
+            sendAck(session, requestId, 40001, orderId, e.getMessage());
+        }
+    }
+
+    // 將 REST 的回應轉為 ACK：2xx 為成功，其餘使用回應中的錯誤碼
+    private void sendAck(WebSocketSession session, int requestId, String orderId, ResponseEntity<ApiResponse<?>> response) {
+        ApiResponse<?> body = response.getBody();
+        int code = response.getStatusCode().is2xxSuccessful() ? OrderEntryCodec.OK : errorCode(response);
+        sendAck(session, requestId, code, orderId, body != null ? body.getMessage() : null);
+    }
+
+    private int errorCode(ResponseEntity<ApiResponse<?>> response) {
+        ApiResponse<?> body = response.getBody();
+        // 部分回應把錯誤碼放在 data（字串建構子），兩種都接受
+        String code = body == null ? null
+                : body.getErrorCode() != null ? body.getErrorCode()
+                : body.getData() instanceof String ? (String) body.getData() : null;
+        try {
+            return code != null ? Integer.parseInt(code) : response.getStatusCode().value() * 100;
+        } catch (NumberFormatException e) {
+            return response.getStatusCode().value() * 100;
+        }
+    }
+
+    private void sendAck(WebSocketSession session, int requestId, int code, String orderId, String message) {
+        send(senderOf(session), new BinaryMessage(OrderEntryCodec.encodeAck(requestId, code, orderId, message)));
     }
 
     public void sendOrderNotification(String userId, String eventType, OrderDTO order) {
@@ -67,16 +189,40 @@ public class UserOrderWebSocketHandler extends TextWebSocketHandler {
 
     private void sendMessageToUser(String userId, String message) {
         WebSocketSession session = userSessions.get(userId);
-        if (session != null && session.isOpen()) {
+        if (session != null) {
+            send(session, new TextMessage(message));
+        }
+    }
+
+    private void send(WebSocketSession session, WebSocketMessage<?> message) {
+        if (session.isOpen()) {
             try {
-                session.sendMessage(new TextMessage(message));
-            } catch (IOException e) {
-                e.printStackTrace();
+                session.sendMessage(message);
+            } catch (IOException | SessionLimitExceededException e) {
+                logger.warn("Failed to send to user order session {}: {}", session.getId(), e.getMessage());
             }
         }
     }
 
+    private boolean isTokenExpired(WebSocketSession session) {
+        Object expiresAt = session.getAttributes().get(TOKEN_EXPIRES_AT_ATTRIBUTE);
+        return expiresAt instanceof Long && (Long) expiresAt <= System.currentTimeMillis();
+    }
+
+    private void closeExpired(WebSocketSession session) {
+        try {
+            session.close(CloseStatus.POLICY_VIOLATION.withReason("token expired"));
+        } catch (IOException e) {
+            logger.warn("Failed to close expired user order session {}: {}", session.getId(), e.getMessage());
+        }
+    }
+
+    private WebSocketSession senderOf(WebSocketSession session) {
+        Object sender = session.getAttributes().get(SENDER_ATTRIBUTE);
+        return sender != null ? (WebSocketSession) sender : session;
+    }
+
     private String getUserIdFromSession(WebSocketSession session) {
         return (String) session.getAttributes().get("userId");
     }
-}
\ No newline at end of file
+}
@@ -353,6 +353,16 @@ document.getElementById('price').addEventListener('input', updateSubmitButtonSta
 document.getElementById('quantity').addEventListener('input', updateSubmitButtonState);
 
 
+// 同一筆下單（表單內容相同）在得到明確結果前都沿用同一個 Idempotency-Key，
+// 自動重試或使用者再按一次送出都不會重複建立訂單；成功或被拒絕後才換新的 key
+let pendingOrderSubmission = null;
+const ORDER_SUBMIT_RETRIES = 2;
+const ORDER_RETRY_DELAY_MS = 500;
+
+function newIdempotencyKey() {
+    return crypto.randomUUID ? crypto.randomUUID() : Date.now() + '-' + Math.random().toString(36).slice(2);
+}
+
 function submitOrder() {
     const data = {
         symbol: document.getElementById("symbol").value,
@@ -367,23 +377,55 @@ function submitOrder() {
         return;
     }
 
+    const body = JSON.stringify(data);
+    if (!pendingOrderSubmission || pendingOrderSubmission.body !== body) {
+        pendingOrderSubmission = { body: body, key: newIdempotencyKey() };
+    }
+    sendOrder(pendingOrderSubmission, ORDER_SUBMIT_RETRIES);
+}
+
+function retryableError(message) {
+    const error = new Error(message);
+    error.retryable = true;
+    return error;
+}
+
+// 網路錯誤與 5xx 以相同的 key 重送，伺服器只會建立一筆訂單；4xx 表示訂單本身被拒絕，不重試
+function sendOrder(submission, retriesLeft) {
     const token = localStorage.getItem('jwtToken');
-    fetch('/orders/submit', {
+    // 等 Kafka 確認後才顯示成功
+    fetch('/orders/submit?ack=true', {
         method: 'POST',
         headers: {
             'Content-Type': 'application/json',
-            'Authorization': 'Bearer ' + token
+            'Authorization': 'Bearer ' + token,
+            'Idempotency-Key': submission.key
         },
-        body: JSON.stringify(data),
+        body: submission.body,
     })
-        .then(response => response.json().then(data => {
-            if (response.ok) {
-                showSuccessPopup('下單成功: ' + data.message);
-            } else {
-                throw new Error(data.error || '下單失敗');
+        .then(response => {
+            if (response.status >= 500) {
+                throw retryableError('伺服器暫時無法處理，請稍後再試');
             }
-        }))
+            return response.json().then(data => {
+                if (pendingOrderSubmission === submission) {
+                    pendingOrderSubmission = null;
+                }
+                if (response.ok) {
+                    showSuccessPopup('下單成功: ' + data.message);
+                } else {
+                    throw new Error(data.error || '下單失敗');
+                }
+            });
+        }, () => {
+            throw retryableError('網路連線失敗');
+        })
         .catch((error) => {
+            if (error.retryable && retriesLeft > 0) {
+                const attempt = ORDER_SUBMIT_RETRIES - retriesLeft + 1;
+                setTimeout(() => sendOrder(submission, retriesLeft - 1), ORDER_RETRY_DELAY_MS * attempt);
+                return;
+            }
             showErrorPopup('下單失敗: ' + error.message);
         });
 }
@@ -534,6 +576,9 @@ let currentInterval = 1; // 默認為 1
 // 連接訂單簿 WebSocket
 let orderbookSocket;
 let currentSymbol;
+let orderbookEpoch = null; // 快照的 epoch，序號只在同一個 epoch 內連續
+let orderbookSeq = null; // 已套用的最後一筆增量序號
+let orderbookResyncing = false;
 
 function connectOrderbookWebSocket(symbol) {
     // 獲取選擇的價格間隔
@@ -544,6 +589,9 @@ function connectOrderbookWebSocket(symbol) {
     }
 
     orderbook = { buy: {}, sell: {} };
+    orderbookEpoch = null;
+    orderbookSeq = null;
+    orderbookResyncing = false;
     updateOrderbookDisplay(orderbook);
 
     currentSymbol = symbol;
@@ -557,23 +605,46 @@ function connectOrderbookWebSocket(symbol) {
     orderbookSocket.onmessage = function(event) {
         const orderbookUpdate = JSON.parse(event.data);
 
-        // 如果是完整快照（包含 `buy` 或 `sell`）
-        if (orderbookUpdate.buy || orderbookUpdate.sell) {
-            if (orderbookUpdate.buy) {
-                orderbook.buy = aggregateOrderbook(orderbookUpdate.buy, currentInterval, "BUY");
-            }
-
-            if (orderbookUpdate.sell) {
-                orderbook.sell = aggregateOrderbook(orderbookUpdate.sell, currentInterval, "SELL");
-            }
+        // 完整快照：重建訂單簿並記錄序號
+        if (orderbookUpdate.type === 'snapshot') {
+            orderbook.buy = orderbookUpdate.buy ? aggregateOrderbook(orderbookUpdate.buy, currentInterval, "BUY") : {};
+            orderbook.sell = orderbookUpdate.sell ? aggregateOrderbook(orderbookUpdate.sell, currentInterval, "SELL") : {};
+            orderbookEpoch = orderbookUpdate.epoch;
+            orderbookSeq = orderbookUpdate.seq;
+            orderbookResyncing = false;
 
             // 更新訂單簿顯示
-            // console.log("訂單簿快照更新：", orderbook);
             updateOrderbookDisplay(orderbook);
-        } else {
-            // 增量更新
-            // console.log("訂單簿增量：", orderbookUpdate);
-            updateOrderbookDelta(orderbookUpdate);
+        } else if (orderbookUpdate.type === 'resync') {
+            // 補送的增量：只套用尚未套用過的部分
+            orderbookUpdate.deltas.forEach(applySequencedDelta);
+            orderbookResyncing = false;
+            updateOrderbookDisplay(orderbook);
+        } else if (orderbookUpdate.type === 'raw') {
+            // 伺服器訂單簿尚未初始化時轉發的原始增量：unfilledQuantity 為變化量，自行分桶累加
+            const interval = currentInterval;
+            const price = parseFloat(orderbookUpdate.price);
+            let bucket = orderbookUpdate.side === "BUY"
+                ? Math.floor(price / interval + 1e-10) * interval
+                : Math.ceil(price / interval - 1e-10) * interval;
+            bucket = interval === 0.1 ? parseFloat(bucket.toFixed(1)) : bucket;
+            const levels = orderbookUpdate.side === "BUY" ? orderbook.buy : orderbook.sell;
+            setLevel(levels, bucket, (levels[bucket] || 0) + parseFloat(orderbookUpdate.unfilledQuantity));
+            updateOrderbookDisplay(orderbook);
+        } else if (orderbookUpdate.type === 'deltas') {
+            // 批次增量：同一價位在批次內只出現一次，quantity 為該價位的最新總量
+            if (orderbookSeq === null || orderbookResyncing || orderbookUpdate.seq <= orderbookSeq) {
+                return; // 尚未收到快照、等待補送中，或已包含在快照內
+            }
+            if (orderbookUpdate.epoch !== orderbookEpoch || orderbookUpdate.prevSeq > orderbookSeq) {
+                // 序號不連續：只請求缺少的增量，不需要重新載入整個訂單簿
+                requestOrderbookResync();
+                return;
+            }
+            // prevSeq <= 本地序號 < seq：批次內是最新總量，與快照重疊的部分重複套用也不影響結果
+            orderbookUpdate.updates.forEach(update => updateOrderbookDelta(update, false));
+            orderbookSeq = orderbookUpdate.seq;
+            updateOrderbookDisplay(orderbook);
         }
     };
 
@@ -609,52 +680,50 @@ function aggregateOrderbook(orderbookSide, interval, side) {
     return aggregated;
 }
 
-function updateOrderbookDelta(deltaUpdate) {
-    const { side, price, unfilledQuantity } = deltaUpdate;
+function requestOrderbookResync() {
+    orderbookResyncing = true;
+    orderbookSocket.send(JSON.stringify({ type: 'resync', epoch: orderbookEpoch, fromSeq: orderbookSeq }));
+}
 
-    // 將價格和未成交數量轉換為浮點數
-    const parsedPrice = parseFloat(price);
-    const parsedQuantity = parseFloat(unfilledQuantity);
+function applySequencedDelta(delta) {
+    if (delta.seq <= orderbookSeq) {
+        return;
+    }
+    updateOrderbookDelta(delta, false);
+    orderbookSeq = delta.seq;
+}
 
-    // 將價格調整到合適的精度來避免浮點數問題
-    let aggregatedPrice = side === "BUY"
-        ? Math.floor(parsedPrice / currentInterval + 1e-10) * currentInterval // 加入微小數字避免浮點數誤差
-        : Math.ceil(parsedPrice / currentInterval - 1e-10) * currentInterval; // 減去微小數字避免浮點數誤差
+function updateOrderbookDelta(deltaUpdate, refreshDisplay = true) {
+    // 伺服器已按目前的價格間隔聚合：price 為聚合後價位，quantity 為該價位的最新總量
+    const { side, price, quantity } = deltaUpdate;
 
-    // 如果 interval 是 0.1，保留一位小數；否則保持整數
+    // 使用與快照相同的價格表示方式當作 key
+    let aggregatedPrice = parseFloat(price);
     aggregatedPrice = currentInterval === 0.1 ? parseFloat(aggregatedPrice.toFixed(1)) : aggregatedPrice;
 
-    // console.log(`原始價格: ${parsedPrice}, 聚合後價格: ${aggregatedPrice}, 未成交數量: ${parsedQuantity}`);
-
     // 根據買賣方向更新對應的訂單簿
     if (side === "BUY") {
-        updateSide(orderbook.buy, aggregatedPrice, parsedQuantity);
+        setLevel(orderbook.buy, aggregatedPrice, parseFloat(quantity));
     } else if (side === "SELL") {
-        updateSide(orderbook.sell, aggregatedPrice, parsedQuantity);
+        setLevel(orderbook.sell, aggregatedPrice, parseFloat(quantity));
     }
 
     // 在增量更新時，動態檢查並更新訂單簿顯示範圍
-    updateOrderbookDisplay(orderbook);
-}
-
-
-function updateSide(orderbookSide, aggregatedPrice, parsedQuantity) {
-    // 定義精度閾值
-    const precisionThreshold = 1e-8;
-
-    // 如果該價格不存在，則新增
-    if (!orderbookSide[aggregatedPrice]) {
-        orderbookSide[aggregatedPrice] = 0;
+    if (refreshDisplay) {
+        updateOrderbookDisplay(orderbook);
     }
-    // 更新該價格的數量
-    orderbookSide[aggregatedPrice] += parsedQuantity;
+}
 
-    // 刪除數量為零、小於零，或精度小於閾值的價格
-    if (orderbookSide[aggregatedPrice] <= 0 || Math.abs(orderbookSide[aggregatedPrice]) <= precisionThreshold) {
+function setLevel(orderbookSide, aggregatedPrice, totalQuantity) {
+    // 數量為零（或精度小於閾值）時移除該價位
+    if (totalQuantity <= 1e-8) {
         delete orderbookSide[aggregatedPrice];
+    } else {
+        orderbookSide[aggregatedPrice] = totalQuantity;
     }
 }
 
+
 function updateOrderbookDisplay(orderbookUpdate) {
     const { buy, sell } = orderbookUpdate;
 
@@ -951,8 +1020,9 @@ function hideLoadingSpinner(spinnerId) {
     document.getElementById(spinnerId).style.display = 'none';
 }
 
-// 獲取歷史委託數據
-async function fetchHistoricalDelegatesData() {
+// 獲取歷史委託數據，每次一頁；傳入 cursor 時接在目前的表格後面（載入更多）
+async function fetchHistoricalDelegatesData(nextCursor) {
+    const cursor = typeof nextCursor === 'string' ? nextCursor : null; // 作為事件處理函式時會收到 event
     showLoadingSpinner('orders-loading-spinner');
     const timeRange = document.getElementById('timeRange').value;
     const orderType = document.getElementById('orderType').value; // 類型
@@ -969,6 +1039,7 @@ async function fetchHistoricalDelegatesData() {
         if (orderType) queryParams.append('orderType', orderType);
         if (side) queryParams.append('side', side);
         if (status) queryParams.append('status', status);
+        if (cursor) queryParams.append('cursor', cursor);
 
         // 發送請求到後端 API，包含篩選參數
         const response = await fetch(`/api/v1/orders/history?${queryParams.toString()}`, {
@@ -997,7 +1068,17 @@ async function fetchHistoricalDelegatesData() {
             return;
         }
 
-        tbody.innerHTML = '';
+        if (!cursor) {
+            tbody.innerHTML = '';
+        }
+
+        // 有下一頁時顯示「載入更多」
+        const loadMoreButton = document.getElementById('loadMoreOrders');
+        const next = response.headers.get('X-Next-Cursor');
+        if (loadMoreButton) {
+            loadMoreButton.style.display = next ? 'block' : 'none';
+            loadMoreButton.onclick = next ? () => fetchHistoricalDelegatesData(next) : null;
+        }
 
         // 迭代每個 orderHistory 條目，並將其渲染到表格中
         orderHistory.forEach(entry => {
@@ -1068,8 +1149,9 @@ async function fetchHistoricalDelegatesData() {
             tbody.appendChild(detailsRow);
         });
 
-        // 設置箭頭的事件
-        tbody.querySelectorAll('.arrow').forEach(arrow => {
+        // 設置箭頭的事件（只處理這一頁新增的列，之前的列已經綁定過）
+        tbody.querySelectorAll('.arrow:not([data-bound])').forEach(arrow => {
+            arrow.setAttribute('data-bound', 'true');
             arrow.addEventListener('click', (event) => {
                 const orderId = event.target.getAttribute('data-order-id');
                 const detailsRow = document.querySelector(`#details-${orderId}`).closest('tr');
@@ -1094,7 +1176,9 @@ async function fetchHistoricalDelegatesData() {
 }
 
 
-async function fetchHistoricalTradesData() {
+// 獲取歷史成交數據，每次一頁；傳入 cursor 時接在目前的表格後面（載入更多）
+async function fetchHistoricalTradesData(nextCursor) {
+    const cursor = typeof nextCursor === 'string' ? nextCursor : null; // 作為事件處理函式時會收到 event
     showLoadingSpinner('trades-loading-spinner');
     const timeRange = document.getElementById('timeRange').value;
     const side = document.getElementById('tradeSide').value;
@@ -1106,7 +1190,10 @@ async function fetchHistoricalTradesData() {
         tradeHistoryUrl += `timeRange=${timeRange}&`;
     }
     if (side) {
-        tradeHistoryUrl += `direction=${side}`;
+        tradeHistoryUrl += `direction=${side}&`;
+    }
+    if (cursor) {
+        tradeHistoryUrl += `cursor=${encodeURIComponent(cursor)}`;
     }
 
     try {
@@ -1129,7 +1216,15 @@ async function fetchHistoricalTradesData() {
         const tradeData = await response.json();
 
         // 渲染數據
-        renderTradeHistory(tradeData);
+        renderTradeHistory(tradeData, !cursor);
+
+        // 有下一頁時顯示「載入更多」
+        const loadMoreButton = document.getElementById('loadMoreTrades');
+        const next = response.headers.get('X-Next-Cursor');
+        if (loadMoreButton) {
+            loadMoreButton.style.display = next ? 'block' : 'none';
+            loadMoreButton.onclick = next ? () => fetchHistoricalTradesData(next) : null;
+        }
     } catch (error) {
         console.error('Error fetching trade history:', error);
     } finally {
@@ -1137,9 +1232,11 @@ async function fetchHistoricalTradesData() {
     }
 }
 
-function renderTradeHistory(tradeData) {
+function renderTradeHistory(tradeData, clear) {
     const tbody = document.getElementById('historicalTradesTable').getElementsByTagName('tbody')[0];
-    tbody.innerHTML = '';
+    if (clear) {
+        tbody.innerHTML = '';
+    }
 
     tradeData.forEach(trade => {
         const row = document.createElement('tr');
@@ -1247,11 +1344,13 @@ let lastCandle = null; // 用來儲存最新的未結束K棒
 
 // 設置 WebSocket 連接
 let kLineSocket = null;
+let klineSubscription = null; // 目前訂閱的 { symbol, timeFrame }
 let selectedSymbol = 'BTCUSDT'; // 默認幣種
 let selectedTimeFrame = '1m'; // 默認時間框架
 
 function calculateCurrentIntervalTime(time, timeFrame) {
     let intervalInSeconds;
+    let offset = 0;
     switch (timeFrame) {
         case '1m':
             intervalInSeconds = 60;
@@ -1259,36 +1358,86 @@ function calculateCurrentIntervalTime(time, timeFrame) {
         case '5m':
             intervalInSeconds = 300; // 5分鐘
             break;
+        case '15m':
+            intervalInSeconds = 900; // 15分鐘
+            break;
         case '1h':
             intervalInSeconds = 3600; // 1小時
             break;
+        case '4h':
+            intervalInSeconds = 14400; // 4小時
+            break;
+        case '1d':
+            intervalInSeconds = 86400; // 1天
+            break;
+        case '1w':
+            intervalInSeconds = 604800; // 1週
+            offset = 345600; // 1970-01-01 是週四，週線對齊到週一
+            break;
         default:
             intervalInSeconds = 60; // 默認為1分鐘
             break;
     }
-    return Math.floor(time / intervalInSeconds) * intervalInSeconds;
+    return Math.floor((time - offset) / intervalInSeconds) * intervalInSeconds + offset;
+}
+
+// 將欄位格式 { time: [], open: [], ... } 轉換為圖表使用的K棒陣列
+function columnsToCandles(columns) {
+    return columns.time.map((time, i) => ({
+        time: time,
+        open: columns.open[i],
+        high: columns.high[i],
+        low: columns.low[i],
+        close: columns.close[i]
+    }));
 }
 
 // 創建 WebSocket 連接
 function loadKlineData(symbol, timeFrame) {
-    // 如果已有 WebSocket 連接，先關閉它
+    lastCandle = null;
+    originalData = [];
+
+    // 已有連線時直接在同一條連線上改訂閱，不需要重新連線
+    if (kLineSocket && kLineSocket.readyState === WebSocket.OPEN) {
+        if (klineSubscription) {
+            kLineSocket.send(JSON.stringify({ type: 'unsubscribe', symbol: klineSubscription.symbol, timeFrame: klineSubscription.timeFrame }));
+        }
+        klineSubscription = { symbol, timeFrame };
+        kLineSocket.send(JSON.stringify({ type: 'subscribe', symbol, timeFrame, format: 'columnar' }));
+        return;
+    }
+
+    // 連線尚未建立完成（或已關閉）時，關閉舊連線後重新建立
     if (kLineSocket) {
         kLineSocket.close();
         // console.log('kline WebSocket 已斷開');
-        lastCandle = null;
-        originalData = [];
     }
+    klineSubscription = { symbol, timeFrame };
 
-    // 建立新的 WebSocket 連接，帶上選擇的幣種和時間框架
-    const wsUrl = `/ws/kline?symbol=${symbol}&timeFrame=${timeFrame}`;
+    // 建立新的 WebSocket 連接，帶上選擇的幣種和時間框架；歷史K線使用欄位格式以減少傳輸量
+    const wsUrl = `/ws/kline?symbol=${symbol}&timeFrame=${timeFrame}&format=columnar`;
     kLineSocket = new WebSocket(wsUrl);
 
     kLineSocket.onmessage = function(event) {
         const message = JSON.parse(event.data);
         // console.log("kline 收到消息: ", message);
 
+        // 只處理目前訂閱的交易對與時間框架（改訂閱前已送出的訊息可能還在路上）
+        const { symbol, timeFrame } = klineSubscription;
+        const current = Array.isArray(message) ? message[0] : message;
+        if (!current || current.symbol !== symbol || current.timeFrame !== timeFrame) {
+            return;
+        }
+
+        // 處理歷史K線數據（欄位格式，時間已由舊到新排序）
+        if (message.type === 'historical_columnar') {
+            originalData = columnsToCandles(message);
+            candleSeries.setData(originalData);
+            updateChart();
+        }
+
         // 處理歷史K線數據
-        if (Array.isArray(message) && message.length > 0 && message[0].type === 'historical') {
+        else if (Array.isArray(message) && message.length > 0 && message[0].type === 'historical') {
             originalData = message.map(d => ({
                 time: d.time, // 假設傳來的是秒級時間戳
                 open: d.open,
@@ -1476,14 +1625,15 @@ function loadMoreExistingData() {
         // console.log('本地數據已經顯示完，開始加載更多數據...');
         // console.log('幣種:', selectedSymbol);
         // 如果本地數據加載完，向後端請求更多數據
-        fetch(`/api/kline/${selectedSymbol}/${earliestTimestamp}?timeframe=${selectedTimeFrame}`)
+        fetch(`/api/kline/${selectedSymbol}/${earliestTimestamp}?timeframe=${selectedTimeFrame}&format=columnar`)
             .then(response => {
                 if (!response.ok) {
                     throw new Error('Network response was not ok');
                 }
                 return response.json();
             })
-            .then(newData => {
+            .then(columns => {
+                const newData = columnsToCandles(columns);
                 // console.log('接收到後端數據:', newData);
 
                 if (newData.length > 0) {
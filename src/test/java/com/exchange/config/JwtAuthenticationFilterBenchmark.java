@@ -0,0 +1,136 @@
+package com.exchange.config;
+
+import com.exchange.utils.JwtUtil;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import jakarta.servlet.FilterChain;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import javax.crypto.SecretKey;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 每個已驗證請求在 JwtAuthenticationFilter 的 CPU 時間（單執行緒平均 ns/op）：
+ * legacyFilter 為原本的流程（每個請求解析並驗證簽名 5 次，每次重新 base64 解碼密鑰與建立 parser），
+ * singleParseFilter 為目前的過濾器但關閉快取（每個請求解析一次），cachedFilter 為目前的過濾器（同一個 token 命中快取）。
+ * 預設不執行，使用 mvn test -Pbenchmark -Dtest=JwtAuthenticationFilterBenchmark 執行。
+ */
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class JwtAuthenticationFilterBenchmark {
+
+    private static final String SECRET = "UZ9+ZK8sCh/iR5qnbNBq9Kt5dSQdUd24jggr0zzTiE4=";
+    private static final FilterChain CHAIN = (request, response) -> { };
+
+    private final JwtUtil cachedJwtUtil = new JwtUtil(SECRET, 3_600_000, 10_000);
+    private final JwtAuthenticationFilter cachedFilter = new JwtAuthenticationFilter(cachedJwtUtil);
+    private final JwtAuthenticationFilter singleParseFilter = new JwtAuthenticationFilter(new JwtUtil(SECRET, 3_600_000, 0));
+    private final LegacyJwtUtil legacyJwtUtil = new LegacyJwtUtil();
+    private final String token = cachedJwtUtil.generateToken("1838029004616110080", "bench");
+
+    @Benchmark
+    public Object legacyFilter() {
+        MockHttpServletRequest request = request();
+        String jwt = request.getHeader("Authorization").substring(7);
+        String username = legacyJwtUtil.extractUsername(jwt);
+        if (username != null) {
+            Claims claims = legacyJwtUtil.extractAllClaims(jwt);
+            String userId = legacyJwtUtil.extractUserId(jwt);
+            if (claims != null && legacyJwtUtil.validateToken(jwt, username)) {
+                request.setAttribute("userId", userId);
+            }
+        }
+        return request.getAttribute("userId");
+    }
+
+    @Benchmark
+    public Object singleParseFilter() throws Exception {
+        return run(singleParseFilter);
+    }
+
+    @Benchmark
+    public Object cachedFilter() throws Exception {
+        return run(cachedFilter);
+    }
+
+    private Object run(JwtAuthenticationFilter filter) throws Exception {
+        MockHttpServletRequest request = request();
+        filter.doFilterInternal(request, new MockHttpServletResponse(), CHAIN);
+        SecurityContextHolder.clearContext();
+        return request.getAttribute("userId");
+    }
+
+    private MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/orders/submit");
+        request.addHeader("Authorization", "Bearer " + token);
+        return request;
+    }
+
+    @Test
+    public void runSingleThreaded() throws Exception {
+        Options options = new OptionsBuilder()
+                .include(JwtAuthenticationFilterBenchmark.class.getSimpleName())
+                .threads(1)
+                .forks(0)  // surefire 的 classpath 無法直接交給 fork 出來的 JVM
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(2))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(2))
+                .build();
+        new Runner(options).run();
+    }
+
+    // 原本的 JwtUtil：每次呼叫都解碼密鑰、建立 parser 並驗證簽名
+    static class LegacyJwtUtil {
+        private SecretKey getKey() {
+            return Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET));
+        }
+
+        Claims extractAllClaims(String token) {
+            try {
+                return Jwts.parserBuilder().setSigningKey(getKey()).build().parseClaimsJws(token).getBody();
+            } catch (JwtException | IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        String extractUsername(String token) {
+            Claims claims = extractAllClaims(token);
+            return claims != null ? claims.get("username", String.class) : null;
+        }
+
+        String extractUserId(String token) {
+            return extractAllClaims(token).get("userId", String.class);
+        }
+
+        boolean isTokenExpired(String token) {
+            Claims claims = extractAllClaims(token);
+            return claims != null && claims.getExpiration().before(new Date());
+        }
+
+        boolean validateToken(String token, String username) {
+            String extractedUsername = extractUsername(token);
+            return extractedUsername != null && extractedUsername.equals(username) && !isTokenExpired(token);
+        }
+    }
+}
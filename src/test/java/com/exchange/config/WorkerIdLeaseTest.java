@@ -0,0 +1,110 @@
+package com.exchange.config;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class WorkerIdLeaseTest {
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ValueOperations<String, String> valueOperations;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        when(valueOperations.setIfAbsent(anyString(), anyString(), any(Duration.class))).thenReturn(true);
+    }
+
+    @Test
+    public void testAcquiresFirstFreeNode() {
+        // 0 ~ 32 已被其他實例持有
+        for (int i = 0; i <= 32; i++) {
+            when(valueOperations.setIfAbsent(eq("snowflake:worker:" + i), anyString(), any(Duration.class))).thenReturn(false);
+        }
+
+        WorkerIdLease lease = new WorkerIdLease(redisTemplate, 30);
+
+        assertEquals(1, lease.getDatacenterId());
+        assertEquals(1, lease.getWorkerId());
+        verify(valueOperations).setIfAbsent(eq("snowflake:worker:33"), anyString(), eq(Duration.ofSeconds(30)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testLostLeaseSwitchesToNewNode() {
+        WorkerIdLease lease = new WorkerIdLease(redisTemplate, 30);
+        assertEquals(0, lease.getWorkerId());
+        AtomicLong reassignedWorker = new AtomicLong(-1);
+        lease.setOnReassigned((workerId, datacenterId) -> reassignedWorker.set(workerId));
+
+        // 續約失敗且原本的編號已被取走
+        when(redisTemplate.execute(any(RedisScript.class), eq(List.of("snowflake:worker:0")), any(), any())).thenReturn(0L);
+        when(valueOperations.setIfAbsent(eq("snowflake:worker:0"), anyString(), any(Duration.class))).thenReturn(false);
+        lease.renew();
+
+        assertEquals(1, lease.getWorkerId());
+        assertEquals(1, reassignedWorker.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRenewKeepsNodeWhileHeld() {
+        WorkerIdLease lease = new WorkerIdLease(redisTemplate, 30);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any())).thenReturn(1L);
+
+        lease.renew();
+
+        assertEquals(0, lease.getWorkerId());
+        verify(valueOperations, times(1)).setIfAbsent(anyString(), anyString(), any(Duration.class));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testExpiryOnlyAdvancesWhenRenewSucceeds() {
+        long before = System.currentTimeMillis();
+        WorkerIdLease lease = new WorkerIdLease(redisTemplate, 30);
+        long acquiredUntil = lease.getExpiresAt();
+        assertTrue(acquiredUntil >= before + 30_000);
+        AtomicLong notified = new AtomicLong(-1);
+        lease.setOnRenewed(notified::set);
+
+        // Redis 無法連線：到期時間不變，產生器到期後停止發號
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any())).thenThrow(new RuntimeException("redis down"));
+        lease.renew();
+        assertEquals(acquiredUntil, lease.getExpiresAt());
+        assertEquals(-1, notified.get());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testReleaseShortensLeaseInsteadOfDeleting() {
+        WorkerIdLease lease = new WorkerIdLease(redisTemplate, 30);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(), any())).thenReturn(1L);
+        AtomicLong notified = new AtomicLong(-1);
+        lease.setOnRenewed(notified::set);
+
+        long before = System.currentTimeMillis();
+        lease.release();
+
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("snowflake:worker:0")), anyString(),
+                eq(String.valueOf(WorkerIdLease.RELEASE_HOLD_MILLIS)));
+        assertTrue(notified.get() >= before + WorkerIdLease.RELEASE_HOLD_MILLIS);
+        assertTrue(notified.get() < before + 30_000);
+    }
+}
@@ -0,0 +1,87 @@
+package com.exchange.consumer;
+
+import com.exchange.model.Trade;
+import com.exchange.service.UserTradeLedger;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.KafkaTemplate;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class UserTradeLedgerConsumerTest {
+
+    private static final String DLT = "recent-trades.user-trade-ledger.dlt";
+    private static final String T1 = "{\"id\":\"t1\",\"buyOrder\":{\"id\":\"101\"},\"sellOrder\":{\"id\":\"102\"}}";
+    private static final String T2 = "{\"id\":\"t2\",\"buyOrder\":{\"id\":\"101\"},\"sellOrder\":{\"id\":\"999\"}}";
+
+    private UserTradeLedger userTradeLedger;
+    private KafkaTemplate<String, String> kafkaTemplate;
+    private UserTradeLedgerConsumer consumer;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        userTradeLedger = mock(UserTradeLedger.class);
+        kafkaTemplate = mock(KafkaTemplate.class);
+        when(kafkaTemplate.send(anyString(), anyString())).thenReturn(CompletableFuture.completedFuture(null));
+        consumer = new UserTradeLedgerConsumer(userTradeLedger, new ObjectMapper().registerModule(new JavaTimeModule()),
+                kafkaTemplate, DLT, 2, 0);
+    }
+
+    @Test
+    public void testUnresolvedTradesAreRetriedThenDeadLettered() {
+        // t2 的賣單一直找不到
+        when(userTradeLedger.append(anyList(), anyList())).thenAnswer(invocation -> {
+            List<Trade> trades = invocation.getArgument(0);
+            List<Trade> unresolved = invocation.getArgument(1);
+            trades.stream().filter(trade -> trade.getId().equals("t2")).forEach(unresolved::add);
+            return 0;
+        });
+
+        consumer.consume(List.of(T1, T2, "not json"));
+
+        verify(userTradeLedger, times(3)).append(anyList(), anyList());
+        verify(kafkaTemplate).send(DLT, "not json");
+        verify(kafkaTemplate).send(DLT, T2);
+        verifyNoMoreInteractions(kafkaTemplate);
+    }
+
+    @Test
+    public void testResolvedOnRetryIsNotDeadLettered() {
+        when(userTradeLedger.append(anyList(), anyList()))
+                .thenAnswer(invocation -> {
+                    List<Trade> trades = invocation.getArgument(0);
+                    List<Trade> unresolved = invocation.getArgument(1);
+                    unresolved.add(trades.get(0));
+                    return 0;
+                })
+                .thenReturn(2);
+
+        consumer.consume(List.of(T1));
+
+        verify(userTradeLedger, times(2)).append(anyList(), anyList());
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    public void testWriteFailurePropagatesSoOffsetIsNotCommitted() {
+        when(userTradeLedger.append(anyList(), anyList())).thenThrow(new IllegalStateException("db down"));
+
+        assertThrows(IllegalStateException.class, () -> consumer.consume(List.of(T1)));
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    public void testDeadLetterSendFailurePropagates() {
+        when(kafkaTemplate.send(anyString(), anyString())).thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker down")));
+
+        assertThrows(IllegalStateException.class, () -> consumer.consume(List.of("not json")));
+    }
+}
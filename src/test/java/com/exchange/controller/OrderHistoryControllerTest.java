@@ -0,0 +1,81 @@
+package com.exchange.controller;
+
+import com.exchange.dto.OrderHistoryDTO;
+import com.exchange.model.Order;
+import com.exchange.service.OrderHistoryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class OrderHistoryControllerTest {
+
+    private OrderHistoryService orderHistoryService;
+    private OrderHistoryController controller;
+    private MockHttpServletRequest request;
+
+    @BeforeEach
+    public void setup() {
+        orderHistoryService = mock(OrderHistoryService.class);
+        controller = new OrderHistoryController(orderHistoryService);
+        request = new MockHttpServletRequest();
+        request.setAttribute("userId", "u1");
+    }
+
+    @Test
+    public void testFullPageReturnsNextCursor() {
+        Instant createdAt = Instant.parse("2026-01-01T00:00:00.123456Z");
+        when(orderHistoryService.getOrderHistory(eq("u1"), any(), any(), any(), any(), any(), any(), isNull(), isNull(), eq(2)))
+                .thenReturn(page(2, createdAt));
+
+        ResponseEntity<List<OrderHistoryDTO>> response = controller.getOrderHistory(request, null, "7", null, null, null, 2, null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("2026-01-01T00:00:00.123456Z_1", response.getHeaders().getFirst(OrderHistoryController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    public void testCursorIsPassedAsKeysetAndLastPageHasNoCursor() {
+        Instant createdAt = Instant.parse("2026-01-01T00:00:00.123456Z");
+        when(orderHistoryService.getOrderHistory(eq("u1"), any(), any(), any(), any(), any(), any(), eq(createdAt), eq("1"), eq(2)))
+                .thenReturn(page(1, createdAt.minusSeconds(1)));
+
+        ResponseEntity<List<OrderHistoryDTO>> response = controller.getOrderHistory(request, null, "7", null, null, null, 2,
+                "2026-01-01T00:00:00.123456Z_1");
+
+        assertEquals(1, response.getBody().size());
+        assertNull(response.getHeaders().getFirst(OrderHistoryController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    public void testLimitIsClampedAndBadCursorRejected() {
+        when(orderHistoryService.getOrderHistory(any(), any(), any(), any(), any(), any(), any(), any(), any(), anyInt()))
+                .thenReturn(List.of());
+
+        controller.getOrderHistory(request, null, "1d", null, null, null, 100_000, null);
+        verify(orderHistoryService).getOrderHistory(eq("u1"), any(), any(), any(), any(), any(), any(), isNull(), isNull(), eq(500));
+
+        ResponseEntity<List<OrderHistoryDTO>> response = controller.getOrderHistory(request, null, "1d", null, null, null, 100, "yesterday_1");
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    private List<OrderHistoryDTO> page(int size, Instant createdAt) {
+        List<OrderHistoryDTO> page = new ArrayList<>();
+        for (int i = size; i >= 1; i--) {
+            Order order = new Order();
+            order.setId(String.valueOf(i));
+            order.setCreatedAt(createdAt);
+            page.add(new OrderHistoryDTO(order, List.of()));
+        }
+        return page;
+    }
+}
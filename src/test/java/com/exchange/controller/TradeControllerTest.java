@@ -0,0 +1,61 @@
+package com.exchange.controller;
+
+import com.exchange.model.Trade;
+import com.exchange.service.TradeService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+public class TradeControllerTest {
+
+    private static final Instant START = Instant.parse("2025-01-05T00:00:00Z");
+
+    private TradeService tradeService;
+    private TradeController controller;
+
+    @BeforeEach
+    public void setup() {
+        tradeService = mock(TradeService.class);
+        controller = new TradeController(tradeService);
+    }
+
+    @Test
+    public void testRangeIsPassedToServiceAndMapped() {
+        Trade trade = new Trade();
+        trade.setId("1");
+        trade.setTradeTime(START.plusMillis(1500));
+        trade.setPrice(new BigDecimal("50000.5"));
+        trade.setQuantity(new BigDecimal("0.1"));
+        trade.setDirection("buy");
+        Instant end = START.plusSeconds(3600);
+        when(tradeService.getTrades("BTCUSDT", START, end)).thenReturn(List.of(trade));
+
+        ResponseEntity<List<Map<String, Object>>> response =
+                controller.getTrades("BTCUSDT", START.getEpochSecond(), end.getEpochSecond());
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        Map<String, Object> row = response.getBody().get(0);
+        assertEquals("1", row.get("id"));
+        assertEquals(START.toEpochMilli() + 1500, row.get("time"));
+        assertEquals("buy", row.get("direction"));
+    }
+
+    @Test
+    public void testInvalidOrTooLongRangeRejected() {
+        long start = START.getEpochSecond();
+        assertEquals(HttpStatus.BAD_REQUEST, controller.getTrades("BTCUSDT", start, start - 1).getStatusCode());
+        assertEquals(HttpStatus.BAD_REQUEST, controller.getTrades("BTCUSDT", start,
+                start + TradeController.MAX_RANGE.getSeconds() + 1).getStatusCode());
+        verify(tradeService, never()).getTrades(any(), any(), any());
+    }
+}
@@ -0,0 +1,89 @@
+package com.exchange.controller;
+
+import com.exchange.dto.TradeHistoryRequest;
+import com.exchange.dto.TradeHistoryResponse;
+import com.exchange.service.TradeHistoryService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TradeHistoryControllerTest {
+
+    private TradeHistoryService tradeHistoryService;
+    private TradeHistoryController controller;
+    private MockHttpServletRequest request;
+
+    @BeforeEach
+    public void setup() {
+        tradeHistoryService = mock(TradeHistoryService.class);
+        controller = new TradeHistoryController(tradeHistoryService);
+        request = new MockHttpServletRequest();
+        request.setAttribute("userId", "u1");
+    }
+
+    @Test
+    public void testFullPageReturnsNextCursor() {
+        Instant tradeTime = Instant.parse("2026-01-01T00:00:00.123456Z");
+        when(tradeHistoryService.getTradeHistory(eq("u1"), any())).thenReturn(page(2, tradeTime));
+
+        ResponseEntity<List<TradeHistoryResponse>> response = controller.getTradeHistory("7", TradeHistoryRequest.TradeDirection.ALL,
+                2, null, request);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("2026-01-01T00:00:00.123456Z_1", response.getHeaders().getFirst(TradeHistoryController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    public void testCursorIsPassedAsKeysetAndLastPageHasNoCursor() {
+        Instant tradeTime = Instant.parse("2026-01-01T00:00:00.123456Z");
+        when(tradeHistoryService.getTradeHistory(eq("u1"), any())).thenReturn(page(1, tradeTime.minusSeconds(1)));
+
+        ResponseEntity<List<TradeHistoryResponse>> response = controller.getTradeHistory("7", TradeHistoryRequest.TradeDirection.SELL,
+                2, "2026-01-01T00:00:00.123456Z_1", request);
+
+        ArgumentCaptor<TradeHistoryRequest> captor = ArgumentCaptor.forClass(TradeHistoryRequest.class);
+        verify(tradeHistoryService).getTradeHistory(eq("u1"), captor.capture());
+        assertEquals(tradeTime, captor.getValue().getBeforeTradeTime());
+        assertEquals("1", captor.getValue().getBeforeId());
+        assertEquals(TradeHistoryRequest.TradeDirection.SELL, captor.getValue().getDirection());
+        assertEquals(1, response.getBody().size());
+        assertNull(response.getHeaders().getFirst(TradeHistoryController.NEXT_CURSOR_HEADER));
+    }
+
+    @Test
+    public void testLimitIsClampedAndBadCursorRejected() {
+        when(tradeHistoryService.getTradeHistory(any(), any())).thenReturn(List.of());
+
+        controller.getTradeHistory("1", TradeHistoryRequest.TradeDirection.ALL, 100_000, null, request);
+        ArgumentCaptor<TradeHistoryRequest> captor = ArgumentCaptor.forClass(TradeHistoryRequest.class);
+        verify(tradeHistoryService).getTradeHistory(eq("u1"), captor.capture());
+        assertEquals(500, captor.getValue().getLimit());
+        assertNull(captor.getValue().getBeforeTradeTime());
+
+        ResponseEntity<List<TradeHistoryResponse>> response = controller.getTradeHistory("1", TradeHistoryRequest.TradeDirection.ALL,
+                100, "yesterday_1", request);
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    private List<TradeHistoryResponse> page(int size, Instant tradeTime) {
+        List<TradeHistoryResponse> page = new ArrayList<>();
+        for (int i = size; i >= 1; i--) {
+            TradeHistoryResponse trade = new TradeHistoryResponse();
+            trade.setTradeId(String.valueOf(i));
+            trade.setTradeTime(tradeTime);
+            page.add(trade);
+        }
+        return page;
+    }
+}
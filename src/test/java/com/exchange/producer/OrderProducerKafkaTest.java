@@ -0,0 +1,152 @@
+package com.exchange.producer;
+
+import com.exchange.model.Order;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.kafka.test.EmbeddedKafkaBroker;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.kafka.test.utils.KafkaTestUtils;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 以內嵌 Kafka broker 驗證 new_orders 以 symbol 分區：同一個 symbol 只在一個 partition 且順序不變。
+ * 吞吐量測試預設不執行，使用 mvn test -Pbenchmark 執行。
+ */
+@EmbeddedKafka(partitions = OrderProducerKafkaTest.PARTITIONS, topics = "new_orders")
+public class OrderProducerKafkaTest {
+
+    static final int PARTITIONS = 4;
+    private static final List<String> SYMBOLS = List.of("BTCUSDT", "ETHUSDT", "SOLUSDT", "BNBUSDT", "XRPUSDT", "ADAUSDT");
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private EmbeddedKafkaBroker broker;
+    private DefaultKafkaProducerFactory<String, String> producerFactory;
+    private OrderProducer orderProducer;
+
+    @BeforeEach
+    public void setup(EmbeddedKafkaBroker broker) {
+        this.broker = broker;
+        Map<String, Object> props = new HashMap<>(KafkaTestUtils.producerProps(broker));
+        props.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class);
+        props.put(ProducerConfig.LINGER_MS_CONFIG, 5);
+        producerFactory = new DefaultKafkaProducerFactory<>(props);
+        orderProducer = new OrderProducer(new KafkaTemplate<>(producerFactory), objectMapper);
+    }
+
+    @AfterEach
+    public void teardown() {
+        producerFactory.destroy();
+    }
+
+    @Test
+    public void testEachSymbolStaysOnOnePartitionInOrder() throws Exception {
+        orderProducer.setSymbolPartitions("BTCUSDT:3");
+        int perSymbol = 200;
+        List<CompletableFuture<SendResult<String, String>>> futures = new ArrayList<>();
+        for (int i = 0; i < perSymbol; i++) {
+            for (String symbol : SYMBOLS) {
+                futures.add(orderProducer.sendNewOrderAcked(order(symbol, i)));
+            }
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+
+        Map<String, Set<Integer>> partitionsBySymbol = new HashMap<>();
+        Map<String, Long> lastSequence = new HashMap<>();
+        try (Consumer<String, String> consumer = consumer()) {
+            broker.consumeFromAnEmbeddedTopic(consumer, "new_orders");
+            for (ConsumerRecord<String, String> record : KafkaTestUtils.getRecords(consumer, Duration.ofSeconds(30), perSymbol * SYMBOLS.size())) {
+                Order order = objectMapper.readValue(record.value(), Order.class);
+                assertEquals(order.getSymbol(), record.key());
+                partitionsBySymbol.computeIfAbsent(record.key(), k -> new HashSet<>()).add(record.partition());
+                // 同一個 symbol 在 partition 內依送出順序排列
+                long sequence = Long.parseLong(order.getId().substring(order.getId().indexOf('-') + 1));
+                Long previous = lastSequence.put(record.key(), sequence);
+                assertTrue(previous == null || previous < sequence, "out of order for " + record.key());
+            }
+        }
+
+        assertEquals(Set.copyOf(SYMBOLS), partitionsBySymbol.keySet());
+        partitionsBySymbol.values().forEach(partitions -> assertEquals(1, partitions.size()));
+        assertEquals(Set.of(3), partitionsBySymbol.get("BTCUSDT"));
+        // 不同 symbol 會分散到多個 partition
+        Set<Integer> used = new HashSet<>();
+        partitionsBySymbol.values().forEach(used::addAll);
+        assertTrue(used.size() > 1);
+    }
+
+    @Test
+    @Tag("benchmark")
+    public void testKeyedThroughput() throws Exception {
+        int orders = 100_000;
+        // 暖機
+        orderProducer.sendNewOrders(batch(0, 10_000)).forEach(CompletableFuture::join);
+
+        long start = System.nanoTime();
+        List<CompletableFuture<SendResult<String, String>>> futures = new ArrayList<>(orders);
+        for (int from = 0; from < orders; from += 500) {
+            futures.addAll(orderProducer.sendNewOrders(batch(from, 500)));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(120, TimeUnit.SECONDS);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("new_orders keyed by symbol: %d orders over %d symbols / %d partitions in %.2f s (%.0f orders/s)%n",
+                orders, SYMBOLS.size(), PARTITIONS, seconds, orders / seconds);
+        futures.forEach(future -> assertFalse(future.isCompletedExceptionally()));
+    }
+
+    private List<Order> batch(int from, int size) {
+        List<Order> batch = new ArrayList<>(size);
+        for (int i = from; i < from + size; i++) {
+            batch.add(order(SYMBOLS.get(i % SYMBOLS.size()), i));
+        }
+        return batch;
+    }
+
+    private Order order(String symbol, long sequence) {
+        Order order = new Order();
+        order.setId(symbol + "-" + sequence);
+        order.setUserId("u1");
+        order.setSymbol(symbol);
+        order.setPrice(new BigDecimal("100"));
+        order.setQuantity(BigDecimal.ONE);
+        order.setUnfilledQuantity(BigDecimal.ONE);
+        order.setSide(Order.Side.BUY);
+        order.setOrderType(Order.OrderType.LIMIT);
+        return order;
+    }
+
+    private Consumer<String, String> consumer() {
+        Map<String, Object> props = KafkaTestUtils.consumerProps("order-producer-test-" + UUID.randomUUID(), "false", broker);
+        props.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        return new DefaultKafkaConsumerFactory<>(props, new StringDeserializer(), new StringDeserializer()).createConsumer();
+    }
+}
@@ -11,8 +11,10 @@ import org.mockito.MockitoAnnotations;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.kafka.support.SendResult;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
+import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
 
 public class OrderProducerTest {
@@ -43,13 +45,13 @@ public class OrderProducerTest {
 
         // 模擬 KafkaTemplate 的成功發送行為
         CompletableFuture<SendResult<String, String>> future = CompletableFuture.completedFuture(mock(SendResult.class));
-        when(kafkaTemplate.send("new_orders", orderJson)).thenReturn(future);
+        when(kafkaTemplate.send("new_orders", null, orderJson)).thenReturn(future);
 
         // 執行發送
         orderProducer.sendNewOrder(order);
 
         // 驗證是否調用了 KafkaTemplate 的 send 方法
-        verify(kafkaTemplate, times(1)).send("new_orders", orderJson);
+        verify(kafkaTemplate, times(1)).send("new_orders", null, orderJson);
     }
 
     @Test
@@ -65,13 +67,13 @@ public class OrderProducerTest {
         // 模擬 KafkaTemplate 發送失敗的情況
         CompletableFuture<SendResult<String, String>> future = new CompletableFuture<>();
         future.completeExceptionally(new RuntimeException("Kafka send failed"));
-        when(kafkaTemplate.send("new_orders", orderJson)).thenReturn(future);
+        when(kafkaTemplate.send("new_orders", null, orderJson)).thenReturn(future);
 
         // 執行發送
         orderProducer.sendNewOrder(order);
 
         // 驗證是否調用了 KafkaTemplate 的 send 方法
-        verify(kafkaTemplate, times(1)).send("new_orders", orderJson);
+        verify(kafkaTemplate, times(1)).send("new_orders", null, orderJson);
     }
 
     @Test
@@ -86,6 +88,74 @@ public class OrderProducerTest {
         orderProducer.sendNewOrder(order);
 
         // 確認 KafkaTemplate 的 send 方法沒有被調用，因為 JSON 轉換失敗
-        verify(kafkaTemplate, never()).send(anyString(), anyString());
+        verify(kafkaTemplate, never()).send(anyString(), any(), anyString());
+    }
+
+    @Test
+    public void testSendNewOrderAcked_ReturnsBrokerResult() throws JsonProcessingException {
+        Order order = new Order();
+        order.setId("123");
+        String orderJson = "{\"id\": \"123\"}";
+        when(objectMapper.writeValueAsString(order)).thenReturn(orderJson);
+        CompletableFuture<SendResult<String, String>> future = new CompletableFuture<>();
+        when(kafkaTemplate.send("new_orders", null, orderJson)).thenReturn(future);
+
+        CompletableFuture<SendResult<String, String>> acked = orderProducer.sendNewOrderAcked(order);
+
+        // broker 確認前不會完成，失敗會傳給呼叫端而不只是記錄
+        assertFalse(acked.isDone());
+        future.completeExceptionally(new RuntimeException("Kafka send failed"));
+        assertTrue(acked.isCompletedExceptionally());
+    }
+
+    @Test
+    public void testSendNewOrders_KeyedBySymbolAndFlushedOnce() throws JsonProcessingException {
+        Order btc = new Order();
+        btc.setId("1");
+        btc.setSymbol("BTCUSDT");
+        Order eth = new Order();
+        eth.setId("2");
+        eth.setSymbol("ETHUSDT");
+        Order broken = new Order();
+        broken.setId("3");
+        broken.setSymbol("BTCUSDT");
+
+        when(objectMapper.writeValueAsString(btc)).thenReturn("{\"id\": \"1\"}");
+        when(objectMapper.writeValueAsString(eth)).thenReturn("{\"id\": \"2\"}");
+        when(objectMapper.writeValueAsString(broken)).thenThrow(new JsonProcessingException("Error") {});
+        CompletableFuture<SendResult<String, String>> future = CompletableFuture.completedFuture(mock(SendResult.class));
+        when(kafkaTemplate.send(eq("new_orders"), anyString(), anyString())).thenReturn(future);
+
+        List<CompletableFuture<SendResult<String, String>>> futures = orderProducer.sendNewOrders(List.of(btc, eth, broken));
+
+        // 每筆以 symbol 為 key 送出，整批只 flush 一次
+        verify(kafkaTemplate).send("new_orders", "BTCUSDT", "{\"id\": \"1\"}");
+        verify(kafkaTemplate).send("new_orders", "ETHUSDT", "{\"id\": \"2\"}");
+        verify(kafkaTemplate, times(1)).flush();
+        assertEquals(3, futures.size());
+        assertFalse(futures.get(0).isCompletedExceptionally());
+        assertTrue(futures.get(2).isCompletedExceptionally());
+    }
+
+    @Test
+    public void testSendNewOrder_KeyedBySymbolWithConfiguredPartition() throws JsonProcessingException {
+        orderProducer.setSymbolPartitions("BTCUSDT:3, ETHUSDT:1");
+        Order btc = new Order();
+        btc.setSymbol("BTCUSDT");
+        Order sol = new Order();
+        sol.setSymbol("SOLUSDT");
+        when(objectMapper.writeValueAsString(btc)).thenReturn("{\"symbol\": \"BTCUSDT\"}");
+        when(objectMapper.writeValueAsString(sol)).thenReturn("{\"symbol\": \"SOLUSDT\"}");
+        CompletableFuture<SendResult<String, String>> future = CompletableFuture.completedFuture(mock(SendResult.class));
+        when(kafkaTemplate.send(eq("new_orders"), anyInt(), anyString(), anyString())).thenReturn(future);
+        when(kafkaTemplate.send(eq("new_orders"), anyString(), anyString())).thenReturn(future);
+
+        orderProducer.sendNewOrder(btc);
+        orderProducer.sendNewOrder(sol);
+
+        // 有指定的 symbol 送到固定 partition，其餘依 key hash
+        verify(kafkaTemplate).send("new_orders", 3, "BTCUSDT", "{\"symbol\": \"BTCUSDT\"}");
+        verify(kafkaTemplate).send("new_orders", "SOLUSDT", "{\"symbol\": \"SOLUSDT\"}");
+        assertThrows(IllegalArgumentException.class, () -> orderProducer.setSymbolPartitions("BTCUSDT"));
     }
 }
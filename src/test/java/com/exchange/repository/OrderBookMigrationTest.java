@@ -0,0 +1,152 @@
+package com.exchange.repository;
+
+import com.exchange.model.Order;
+import com.exchange.utils.PriceTimeKey;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.core.DefaultTypedTuple;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class OrderBookMigrationTest {
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule());
+
+    private OrderBookMigration migration;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(redisTemplate.renameIfAbsent(anyString(), anyString())).thenReturn(true);
+        migration = new OrderBookMigration(redisTemplate, new OrderCodec(objectMapper), List.of("BTCUSDT"), false);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMigrate_WritesPriceTimeMembersAndCountsLegacyCollisions() throws Exception {
+        long time = 1_700_000_000_000L;
+        // 價差 0.0001 與時間差 1 秒在舊 score 中互相抵銷
+        String lower = order("1", "65000.0000", time + 1000);
+        String higher = order("2", "65000.0001", time);
+        String bad = "not json";
+        Set<ZSetOperations.TypedTuple<String>> legacy = new LinkedHashSet<>();
+        legacy.add(new DefaultTypedTuple<>(higher, 650000001000.0 + time));
+        legacy.add(new DefaultTypedTuple<>(lower, 650000001000.0 + time));
+        legacy.add(new DefaultTypedTuple<>(bad, 700000000000.0 + time));
+        when(zSetOperations.rangeWithScores("BTCUSDT:SELL", 0, -1)).thenReturn(legacy);
+
+        OrderBookMigration.MigrationResult result = migration.migrate("BTCUSDT", Order.Side.SELL);
+
+        assertEquals(2, result.getMigrated());
+        assertEquals(1, result.getSkipped());
+        assertEquals(1, result.getAliased());
+        assertEquals(1, result.getReordered());
+
+        ArgumentCaptor<Set<ZSetOperations.TypedTuple<String>>> written = ArgumentCaptor.forClass(Set.class);
+        verify(zSetOperations).add(eq("BTCUSDT:SELL:PT:migrating"), written.capture());
+        List<String> members = new ArrayList<>();
+        written.getValue().forEach(tuple -> {
+            assertEquals(0.0, tuple.getScore());
+            members.add(tuple.getValue());
+        });
+        members.sort(null);
+        // 精確順序：低價先撮合，訂單改存為精簡格式
+        assertFalse(OrderCodec.isJson(PriceTimeKey.body(members.get(0))));
+        assertEquals("1", new OrderCodec(objectMapper).decode(PriceTimeKey.body(members.get(0))).getId());
+        assertEquals(PriceTimeKey.toTicks(new BigDecimal("65000.0001")), PriceTimeKey.ticks(Order.Side.SELL, members.get(1)));
+        verify(redisTemplate).renameIfAbsent("BTCUSDT:SELL:PT:migrating", "BTCUSDT:SELL:PT");
+    }
+
+    @Test
+    public void testMigrate_RefusesExistingTargetUnlessForced() throws Exception {
+        Set<ZSetOperations.TypedTuple<String>> legacy = new LinkedHashSet<>();
+        legacy.add(new DefaultTypedTuple<>(order("1", "65000", 1_700_000_000_000L), 1.0));
+        when(zSetOperations.rangeWithScores("BTCUSDT:SELL", 0, -1)).thenReturn(legacy);
+        when(redisTemplate.hasKey("BTCUSDT:SELL:PT")).thenReturn(true);
+
+        // 已轉換過的掛單簿可能已有撮合引擎寫入的訂單，不覆蓋也不刪除
+        assertThrows(IllegalStateException.class, () -> migration.migrate("BTCUSDT", Order.Side.SELL));
+        verify(redisTemplate, never()).rename(anyString(), anyString());
+        verify(redisTemplate, never()).renameIfAbsent(anyString(), anyString());
+        verify(redisTemplate, never()).delete("BTCUSDT:SELL:PT");
+
+        OrderBookMigration forced = new OrderBookMigration(redisTemplate, new OrderCodec(objectMapper), List.of("BTCUSDT"), true);
+        assertEquals(1, forced.migrate("BTCUSDT", Order.Side.SELL).getMigrated());
+        verify(redisTemplate).rename("BTCUSDT:SELL:PT:migrating", "BTCUSDT:SELL:PT");
+    }
+
+    @Test
+    public void testMigrate_AbortsWhenTargetAppearsDuringMigration() throws Exception {
+        Set<ZSetOperations.TypedTuple<String>> legacy = new LinkedHashSet<>();
+        legacy.add(new DefaultTypedTuple<>(order("1", "65000", 1_700_000_000_000L), 1.0));
+        when(zSetOperations.rangeWithScores("BTCUSDT:SELL", 0, -1)).thenReturn(legacy);
+        when(redisTemplate.renameIfAbsent("BTCUSDT:SELL:PT:migrating", "BTCUSDT:SELL:PT")).thenReturn(false);
+
+        assertThrows(IllegalStateException.class, () -> migration.migrate("BTCUSDT", Order.Side.SELL));
+        verify(redisTemplate, times(2)).delete("BTCUSDT:SELL:PT:migrating");
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testMigrate_SameMillisecondKeepsLegacyOrder() throws Exception {
+        long time = 1_700_000_000_000L;
+        // 同價位同毫秒：舊掛單簿中 "9" 排在 "10" 之前，ID 字典序相反
+        String first = order("9", "65000", time);
+        String second = order("10", "65000", time);
+        Set<ZSetOperations.TypedTuple<String>> legacy = new LinkedHashSet<>();
+        legacy.add(new DefaultTypedTuple<>(first, 650000000000.0 + time));
+        legacy.add(new DefaultTypedTuple<>(second, 650000000000.0 + time));
+        when(zSetOperations.rangeWithScores("BTCUSDT:SELL", 0, -1)).thenReturn(legacy);
+
+        OrderBookMigration.MigrationResult result = migration.migrate("BTCUSDT", Order.Side.SELL);
+        assertEquals(0, result.getReordered());
+
+        ArgumentCaptor<Set<ZSetOperations.TypedTuple<String>>> written = ArgumentCaptor.forClass(Set.class);
+        verify(zSetOperations).add(eq("BTCUSDT:SELL:PT:migrating"), written.capture());
+        List<String> members = new ArrayList<>();
+        written.getValue().forEach(tuple -> members.add(tuple.getValue()));
+        members.sort(null);
+        OrderCodec codec = new OrderCodec(objectMapper);
+        assertEquals("9", codec.decode(PriceTimeKey.body(members.get(0))).getId());
+        assertEquals("10", codec.decode(PriceTimeKey.body(members.get(1))).getId());
+        assertEquals(PriceTimeKey.sequence(time, 0), PriceTimeKey.sequence(members.get(0)));
+        assertEquals(PriceTimeKey.sequence(time, 1), PriceTimeKey.sequence(members.get(1)));
+    }
+
+    private String order(String id, String price, long modifiedAt) throws Exception {
+        Order order = new Order();
+        order.setId(id);
+        order.setUserId("u1");
+        order.setSymbol("BTCUSDT");
+        order.setPrice(new BigDecimal(price));
+        order.setQuantity(BigDecimal.ONE);
+        order.setUnfilledQuantity(BigDecimal.ONE);
+        order.setSide(Order.Side.SELL);
+        order.setModifiedAt(Instant.ofEpochMilli(modifiedAt));
+        return objectMapper.writeValueAsString(order);
+    }
+}
@@ -0,0 +1,106 @@
+package com.exchange.repository;
+
+import com.exchange.model.Order;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 掛單簿 member 的大小與解碼速度：Jackson JSON 與 OrderCodec 精簡格式。預設不執行，使用 mvn test -Pbenchmark 執行。
+ * 大小以 UTF-8 位元組計算，不含 Redis ZSet 每個 member 固定的 skiplist / dict 開銷（兩種格式相同）。
+ */
+@Tag("benchmark")
+public class OrderCodecBenchmarkTest {
+
+    private static final int ORDERS = 100_000;
+    private static final int ROUNDS = 5;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    private final OrderCodec codec = new OrderCodec(objectMapper);
+
+    @Test
+    public void testMemoryAndDecodeThroughput() throws Exception {
+        List<String> json = new ArrayList<>(ORDERS);
+        List<String> compact = new ArrayList<>(ORDERS);
+        Random random = new Random(42);
+        for (int i = 0; i < ORDERS; i++) {
+            Order order = randomOrder(random, i);
+            json.add(objectMapper.writeValueAsString(order));
+            compact.add(codec.encode(order));
+        }
+
+        double jsonBytes = averageBytes(json);
+        double compactBytes = averageBytes(compact);
+        System.out.printf("order member size: json %.1f B, compact %.1f B (%.0f%% smaller)%n",
+                jsonBytes, compactBytes, 100 * (1 - compactBytes / jsonBytes));
+
+        double jsonFull = measure(json, value -> codec.decode(value).getPrice());
+        double compactFull = measure(compact, value -> codec.decode(value).getPrice());
+        double jsonLevel = measure(json, value -> codec.decodeLevel(value).getPrice());
+        double compactLevel = measure(compact, value -> codec.decodeLevel(value).getPrice());
+        System.out.printf("decode Order: json %.0f/s, compact %.0f/s%n", jsonFull, compactFull);
+        System.out.printf("decode price+quantity: json %.0f/s, compact %.0f/s%n", jsonLevel, compactLevel);
+
+        assertTrue(compactBytes < jsonBytes / 2);
+        assertTrue(compactFull > jsonFull);
+    }
+
+    private interface Decoder {
+        Object decode(String value) throws Exception;
+    }
+
+    // 每秒解碼筆數，取最後一輪（前幾輪當作暖機）
+    private double measure(List<String> values, Decoder decoder) throws Exception {
+        double perSecond = 0;
+        Object sink = null;
+        for (int round = 0; round < ROUNDS; round++) {
+            long start = System.nanoTime();
+            for (String value : values) {
+                sink = decoder.decode(value);
+            }
+            perSecond = values.size() / ((System.nanoTime() - start) / 1e9);
+        }
+        assertNotNull(sink);
+        return perSecond;
+    }
+
+    private double averageBytes(List<String> values) {
+        long total = 0;
+        for (String value : values) {
+            total += value.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return (double) total / values.size();
+    }
+
+    private Order randomOrder(Random random, int i) {
+        Instant time = Instant.ofEpochMilli(1_700_000_000_000L + i);
+        BigDecimal quantity = BigDecimal.valueOf(1 + random.nextInt(100_000), 5).setScale(8);
+        Order order = new Order();
+        order.setId(String.valueOf(1_834_567_890_123_456_789L + i));
+        order.setUserId(String.valueOf(1_000 + random.nextInt(50_000)));
+        order.setSymbol("BTCUSDT");
+        order.setPrice(BigDecimal.valueOf(6_000_000 + random.nextInt(100_000), 2).setScale(8));
+        order.setQuantity(quantity);
+        order.setFilledQuantity(BigDecimal.ZERO.setScale(8));
+        order.setUnfilledQuantity(quantity);
+        order.setSide(random.nextBoolean() ? Order.Side.BUY : Order.Side.SELL);
+        order.setOrderType(Order.OrderType.LIMIT);
+        order.setStatus(Order.OrderStatus.PENDING);
+        order.setCreatedAt(time);
+        order.setUpdatedAt(time);
+        order.setModifiedAt(time);
+        return order;
+    }
+}
@@ -0,0 +1,91 @@
+package com.exchange.repository;
+
+import com.exchange.dto.OrderDTO;
+import com.exchange.model.Order;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderCodecTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper().registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private final OrderCodec codec = new OrderCodec(objectMapper);
+
+    @Test
+    public void testCompactRoundTrip() throws Exception {
+        Order order = order();
+        String encoded = codec.encode(order);
+
+        assertEquals("1|1834567890123456789|42|BTCUSDT|1|0|1|65000.12|0.5|0.1|0.4|||1700000000000|1700000000500|1700000000500", encoded);
+        Order decoded = codec.decode(encoded);
+        assertEquals(order.getId(), decoded.getId());
+        assertEquals(order.getUserId(), decoded.getUserId());
+        assertEquals(Order.Side.SELL, decoded.getSide());
+        assertEquals(Order.OrderType.LIMIT, decoded.getOrderType());
+        assertEquals(Order.OrderStatus.PARTIALLY_FILLED, decoded.getStatus());
+        assertEquals(0, order.getPrice().compareTo(decoded.getPrice()));
+        assertEquals(0, order.getFilledQuantity().compareTo(decoded.getFilledQuantity()));
+        assertEquals(0, order.getUnfilledQuantity().compareTo(decoded.getUnfilledQuantity()));
+        assertNull(decoded.getStopPrice());
+        assertEquals(order.getModifiedAt(), decoded.getModifiedAt());
+
+        OrderDTO dto = codec.decodeDto(encoded);
+        assertEquals("SELL", dto.getSide());
+        assertEquals("PARTIALLY_FILLED", dto.getStatus());
+        assertEquals(order.getCreatedAt(), dto.getCreatedAt().toInstant());
+        // Order 與 OrderDTO 的編碼結果相同
+        assertEquals(encoded, codec.encode(dto));
+    }
+
+    @Test
+    public void testReadsEngineJson() throws Exception {
+        Order order = order();
+        String json = objectMapper.writeValueAsString(order);
+
+        Order decoded = codec.decode(json);
+        assertEquals(order.getId(), decoded.getId());
+        assertEquals(0, order.getPrice().compareTo(decoded.getPrice()));
+
+        OrderCodec.Level fromJson = codec.decodeLevel(json);
+        OrderCodec.Level fromCompact = codec.decodeLevel(codec.encode(order));
+        assertEquals(0, fromJson.getPrice().compareTo(fromCompact.getPrice()));
+        assertEquals(0, fromJson.getUnfilledQuantity().compareTo(fromCompact.getUnfilledQuantity()));
+        assertTrue(codec.encode(order).getBytes(StandardCharsets.UTF_8).length * 3 < json.getBytes(StandardCharsets.UTF_8).length);
+    }
+
+    @Test
+    public void testRejectsUnknownVersionAndSeparatorInFields() {
+        assertThrows(IllegalArgumentException.class, () -> codec.decode("2|1|42|BTCUSDT|1|0|1|1|1|0|1||||||"));
+        assertThrows(IllegalArgumentException.class, () -> codec.decode("1|1|42|BTCUSDT"));
+        Order order = order();
+        order.setUserId("4|2");
+        assertThrows(IllegalArgumentException.class, () -> codec.encode(order));
+    }
+
+    static Order order() {
+        Order order = new Order();
+        order.setId("1834567890123456789");
+        order.setUserId("42");
+        order.setSymbol("BTCUSDT");
+        order.setPrice(new BigDecimal("65000.12000000"));
+        order.setQuantity(new BigDecimal("0.50000000"));
+        order.setFilledQuantity(new BigDecimal("0.10000000"));
+        order.setUnfilledQuantity(new BigDecimal("0.40000000"));
+        order.setSide(Order.Side.SELL);
+        order.setOrderType(Order.OrderType.LIMIT);
+        order.setStatus(Order.OrderStatus.PARTIALLY_FILLED);
+        order.setCreatedAt(Instant.ofEpochMilli(1_700_000_000_000L));
+        order.setUpdatedAt(Instant.ofEpochMilli(1_700_000_000_500L));
+        order.setModifiedAt(Instant.ofEpochMilli(1_700_000_000_500L));
+        return order;
+    }
+}
@@ -0,0 +1,244 @@
+package com.exchange.repository;
+
+import com.exchange.dto.OrderDTO;
+import com.exchange.model.Order;
+import com.exchange.utils.PriceTimeKey;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.redis.core.HashOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class RedisOrderRepositoryTest {
+
+    @Mock
+    private RedisTemplate<String, String> redisTemplate;
+
+    @Mock
+    private HashOperations<String, Object, Object> hashOperations;
+
+    @Mock
+    private ZSetOperations<String, String> zSetOperations;
+
+    @Mock
+    private SetOperations<String, String> setOperations;
+
+    private final OrderCodec codec = new OrderCodec(new ObjectMapper());
+
+    private RedisOrderRepository repository;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        doReturn(hashOperations).when(redisTemplate).opsForHash();
+        when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        when(redisTemplate.opsForSet()).thenReturn(setOperations);
+        repository = new RedisOrderRepository(redisTemplate, codec, new OrderBookLayout(OrderBookLayout.SCORE),
+                List.of("BTCUSDT", "ETHUSDT", "SOLUSDT"), 300);
+    }
+
+    @Test
+    public void testGetUserOrders_ReadsOnlyUserIndex() {
+        // 精簡格式與舊版本留下的 JSON 都可以讀取
+        when(hashOperations.values("user-orders:u1")).thenReturn(List.of(
+                "{\"id\":\"1\",\"userId\":\"u1\",\"symbol\":\"BTCUSDT\",\"price\":50000,\"side\":\"BUY\",\"status\":\"PENDING\"}",
+                "1|2|u1|BTCUSDT|1|0|1|51000.5|2|0.5|1.5|||||"));
+
+        List<OrderDTO> orders = repository.getUserOrders("u1");
+
+        assertEquals(2, orders.size());
+        assertEquals("1", orders.get(0).getId());
+        assertEquals(0, new BigDecimal("50000").compareTo(orders.get(0).getPrice()));
+        assertEquals("SELL", orders.get(1).getSide());
+        assertEquals("PARTIALLY_FILLED", orders.get(1).getStatus());
+        assertEquals(0, new BigDecimal("1.5").compareTo(orders.get(1).getUnfilledQuantity()));
+        // 不再掃描任何掛單簿
+        verifyNoInteractions(zSetOperations);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testApplyOrderUpdate_OpenOrdersIndexedClosedOrdersRemoved() {
+        OrderDTO order = new OrderDTO();
+        order.setId("1");
+        order.setUserId("u1");
+        order.setSymbol("BTCUSDT");
+        order.setSide("BUY");
+        order.setStatus("PARTIALLY_FILLED");
+        repository.applyOrderUpdate(order, "{\"id\":\"1\"}");
+        // 沒有價格時無法縮小範圍，只比對訂單 JSON 與原本記錄的位置
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(List.of("user-orders:u1", "open-order-users", "order-members", "BTCUSDT:BUY")),
+                eq("1"), eq("1|1|u1|BTCUSDT|0||1|||||||||"), eq("u1"), eq("{\"id\":\"1\"}"), eq("score"), eq(""), eq(""));
+
+        order.setStatus("COMPLETED");
+        repository.applyOrderUpdate(order, "{\"id\":\"1\"}");
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("user-orders:u1", "open-order-users", "order-members")),
+                eq("1"), eq("u1"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testApplyOrderUpdate_LocatesMemberByIdAndCountsMisses() {
+        OrderDTO order = new OrderDTO();
+        order.setId("1");
+        order.setUserId("u1");
+        order.setSymbol("BTCUSDT");
+        order.setSide("BUY");
+        order.setStatus("PENDING");
+        order.setPrice(new BigDecimal("50000"));
+        order.setModifiedAt(ZonedDateTime.parse("2026-01-01T00:00:00Z"));
+        String score = BigDecimal.valueOf(OrderBookLayout.legacyScore(new BigDecimal("50000"),
+                order.getModifiedAt().toInstant().toEpochMilli(), "BUY")).toPlainString();
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(2L, 0L);
+
+        // JSON 與 member 不同時由腳本依價位（score）範圍以 orderId 定位
+        repository.applyOrderUpdate(order, "{\"userId\":\"u1\",\"id\":\"1\"}");
+        verify(redisTemplate).execute(any(RedisScript.class), anyList(), eq("1"), anyString(), eq("u1"),
+                eq("{\"userId\":\"u1\",\"id\":\"1\"}"), eq("score"), eq(score), eq(score));
+        assertEquals(0, repository.getMemberMisses());
+
+        repository.applyOrderUpdate(order, "{\"id\":\"1\"}");
+        assertEquals(1, repository.getMemberMisses());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRebuild_CoversConfiguredSymbolsAndClearsStaleUsers() {
+        String order = "{\"id\":\"7\",\"userId\":\"u2\",\"symbol\":\"SOLUSDT\",\"side\":\"SELL\"}";
+        when(zSetOperations.range(anyString(), eq(0L), eq(-1L))).thenReturn(Set.of());
+        when(zSetOperations.range("SOLUSDT:SELL", 0, -1)).thenReturn(Set.of(order));
+        when(setOperations.members("open-order-users")).thenReturn(Set.of("stale"));
+
+        assertEquals(1, repository.rebuildUserIndex());
+
+        // 設定中的每個交易對、每一邊都讀取一次
+        verify(zSetOperations, times(6)).range(anyString(), eq(0L), eq(-1L));
+        // 合併時需要檢查所有掛單簿，SOLUSDT:SELL 是第 6 個
+        List<String> books = List.of("BTCUSDT:BUY", "BTCUSDT:SELL", "ETHUSDT:BUY", "ETHUSDT:SELL", "SOLUSDT:BUY", "SOLUSDT:SELL");
+        List<String> u2Keys = new ArrayList<>(List.of("user-orders:u2", "open-order-users", "order-members"));
+        u2Keys.addAll(books);
+        verify(redisTemplate).execute(any(RedisScript.class), eq(u2Keys),
+                eq("u2"), eq("7"), eq("1|7|u2|SOLUSDT|1|||||||||||"), eq(order), eq("6"));
+        // 掛單簿中已沒有訂單的用戶，索引中已不在掛單簿的訂單被清掉
+        List<String> staleKeys = new ArrayList<>(List.of("user-orders:stale", "open-order-users", "order-members"));
+        staleKeys.addAll(books);
+        verify(redisTemplate).execute(any(RedisScript.class), eq(staleKeys), eq("stale"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRebuildOnStartup_SkippedWhenBuiltOrLocked() {
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+
+        // 索引已建立
+        when(redisTemplate.hasKey("user-orders:built")).thenReturn(true);
+        repository.rebuildUserIndexOnStartup();
+        verifyNoInteractions(zSetOperations);
+
+        // 其他實例正在重建
+        when(redisTemplate.hasKey("user-orders:built")).thenReturn(false);
+        when(valueOperations.setIfAbsent(eq("user-orders:rebuild-lock"), anyString(), any(Duration.class))).thenReturn(false);
+        repository.rebuildUserIndexOnStartup();
+        verifyNoInteractions(zSetOperations);
+
+        // 取得鎖後重建、標記已建立並釋放鎖
+        when(valueOperations.setIfAbsent(eq("user-orders:rebuild-lock"), anyString(), any(Duration.class))).thenReturn(true);
+        when(zSetOperations.range(anyString(), eq(0L), eq(-1L))).thenReturn(Set.of());
+        repository.rebuildUserIndexOnStartup();
+        verify(zSetOperations, times(6)).range(anyString(), eq(0L), eq(-1L));
+        verify(valueOperations).set(eq("user-orders:built"), anyString());
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("user-orders:rebuild-lock")), anyString());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRemoveOrder_SingleScriptByOrderId() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn(List.of(1L, "{\"id\":\"1\"}"));
+
+        RedisOrderRepository.RemoveResult result = repository.removeOrder("BTCUSDT", "BUY", "1", "u1", null, null, new BigDecimal("2"));
+
+        assertEquals(RedisOrderRepository.RemoveStatus.REMOVED, result.getStatus());
+        assertEquals("{\"id\":\"1\"}", result.getEncodedOrder());
+        // 沒有價格提示時傳空字串，只靠 orderId 定位
+        verify(redisTemplate).execute(any(RedisScript.class),
+                eq(List.of("BTCUSDT:BUY", "order-members", "user-orders:u1", "open-order-users")),
+                eq("1"), eq("u1"), eq(""), eq("2"), eq("score"), eq(""));
+        verifyNoInteractions(zSetOperations);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRemoveOrder_MapsScriptResults() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn(List.of(-1L), List.of(-2L), List.of(0L));
+
+        assertEquals(RedisOrderRepository.RemoveStatus.FORBIDDEN,
+                repository.removeOrder("BTCUSDT", "BUY", "1", "u2", new BigDecimal("50000"), 1_000L, null).getStatus());
+        assertEquals(RedisOrderRepository.RemoveStatus.QUANTITY_TOO_LOW,
+                repository.removeOrder("BTCUSDT", "BUY", "1", "u1", null, null, BigDecimal.ONE).getStatus());
+        assertEquals(RedisOrderRepository.RemoveStatus.NOT_FOUND,
+                repository.removeOrder("BTCUSDT", "BUY", "9", "u1", null, null, null).getStatus());
+        // 舊格式的 score 提示以一般小數字串傳給腳本（買單 price * 10^7 - modifiedAt）
+        verify(redisTemplate).execute(any(RedisScript.class), anyList(), eq("1"), eq("u2"), eq("499999999000"), eq(""),
+                eq("score"), eq("499999999000"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRemoveOrder_PriceTimeLayoutUsesExactLevelRange() {
+        repository = new RedisOrderRepository(redisTemplate, codec, new OrderBookLayout(OrderBookLayout.PRICE_TIME),
+                List.of("BTCUSDT"), 300);
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class))).thenReturn(List.of(0L));
+
+        repository.removeOrder("BTCUSDT", "SELL", "1", "u1", new BigDecimal("50000.5"), null, null);
+
+        long ticks = PriceTimeKey.toTicks(new BigDecimal("50000.5"));
+        verify(redisTemplate).execute(any(RedisScript.class), eq(List.of("BTCUSDT:SELL:PT", "order-members", "user-orders:u1", "open-order-users")),
+                eq("1"), eq("u1"), eq(PriceTimeKey.levelMin(Order.Side.SELL, ticks)), eq(""), eq("price-time"),
+                eq(PriceTimeKey.levelMax(Order.Side.SELL, ticks)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void testRemoveOrders_OneScriptCallForWholeBatch() {
+        when(redisTemplate.execute(any(RedisScript.class), anyList(), any(Object[].class)))
+                .thenReturn(List.of(1L, "{\"id\":\"1\"}", 0L, "", -1L, ""));
+
+        List<RedisOrderRepository.RemoveResult> results = repository.removeOrders("u1", List.of(
+                new RedisOrderRepository.RemoveRequest("BTCUSDT", "BUY", "1", null, null),
+                new RedisOrderRepository.RemoveRequest("ETHUSDT", "SELL", "2", new BigDecimal("50000"), 1_000L),
+                new RedisOrderRepository.RemoveRequest("BTCUSDT", "BUY", "3", null, null)));
+
+        assertEquals(RedisOrderRepository.RemoveStatus.REMOVED, results.get(0).getStatus());
+        assertEquals("{\"id\":\"1\"}", results.get(0).getEncodedOrder());
+        assertEquals(RedisOrderRepository.RemoveStatus.NOT_FOUND, results.get(1).getStatus());
+        assertEquals(RedisOrderRepository.RemoveStatus.FORBIDDEN, results.get(2).getStatus());
+        // 同一個掛單簿只出現一次，每筆訂單以位置指向掛單簿
+        verify(redisTemplate, times(1)).execute(any(RedisScript.class),
+                eq(List.of("order-members", "user-orders:u1", "open-order-users", "BTCUSDT:BUY", "ETHUSDT:SELL")),
+                eq("u1"), eq("score"),
+                eq("1"), eq("1"), eq(""), eq(""),
+                eq("2"), eq("2"), eq("500000001000"), eq("500000001000"),
+                eq("1"), eq("3"), eq(""), eq(""));
+    }
+}
@@ -0,0 +1,131 @@
+package com.exchange.repository;
+
+import com.exchange.model.MarketData;
+import com.exchange.model.Trade;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.math.BigDecimal;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeSeriesArchiveTest {
+
+    @TempDir
+    Path dir;
+
+    private TimeSeriesArchive archive;
+
+    @BeforeEach
+    public void setup() {
+        archive = new TimeSeriesArchive(dir, true);
+    }
+
+    @Test
+    public void testTradesRoundTripAndRangeFilter() {
+        try (TimeSeriesArchive.PartitionWriter writer = archive.openPartition(TimeSeriesTable.TRADES, YearMonth.of(2025, 1))) {
+            writer.append(trade("1", "BTCUSDT", "2025-01-05T00:00:00.123456Z"));
+            writer.append(trade("2", "BTCUSDT", "2025-01-20T00:00:00Z"));
+            writer.append(trade("3", "ETHUSDT", "2025-01-06T00:00:00Z"));
+            writer.commit();
+        }
+        try (TimeSeriesArchive.PartitionWriter writer = archive.openPartition(TimeSeriesTable.TRADES, YearMonth.of(2025, 2))) {
+            writer.append(trade("4", "BTCUSDT", "2025-02-01T00:00:00Z"));
+            writer.commit();
+        }
+
+        assertEquals(List.of(YearMonth.of(2025, 1), YearMonth.of(2025, 2)), archive.archivedMonths(TimeSeriesTable.TRADES, "BTCUSDT"));
+        List<Trade> trades = archive.readTrades("BTCUSDT", Instant.parse("2025-01-05T00:00:00.123456Z"),
+                Instant.parse("2025-02-01T00:00:00Z"));
+        assertEquals(List.of("1", "2", "4"), trades.stream().map(Trade::getId).toList());
+
+        Trade first = trades.get(0);
+        assertEquals("b1", first.getBuyOrder().getId());
+        assertEquals("s1", first.getSellOrder().getId());
+        assertEquals(0, new BigDecimal("50000.5").compareTo(first.getPrice()));
+        assertEquals(Instant.parse("2025-01-05T00:00:00.123456Z"), first.getTradeTime());
+        assertNull(first.getDirection());
+
+        assertEquals(List.of("2"), archive.readTrades("BTCUSDT", Instant.parse("2025-01-10T00:00:00Z"),
+                Instant.parse("2025-01-31T00:00:00Z")).stream().map(Trade::getId).toList());
+    }
+
+    @Test
+    public void testMarketDataBeforeWalksBackAcrossMonths() {
+        try (TimeSeriesArchive.PartitionWriter writer = archive.openPartition(TimeSeriesTable.MARKET_DATA, YearMonth.of(2025, 1))) {
+            writer.append(bar("1d", "2025-01-30T00:00:00Z"));
+            writer.append(bar("1m", "2025-01-31T00:00:00Z"));
+            writer.append(bar("1d", "2025-01-31T00:00:00Z"));
+            writer.commit();
+        }
+        try (TimeSeriesArchive.PartitionWriter writer = archive.openPartition(TimeSeriesTable.MARKET_DATA, YearMonth.of(2025, 2))) {
+            writer.append(bar("1d", "2025-02-01T00:00:00Z"));
+            writer.append(bar("1d", "2025-02-02T00:00:00Z"));
+            writer.commit();
+        }
+
+        List<MarketData> bars = archive.readMarketDataBefore("BTCUSDT", "1d", Instant.parse("2025-02-02T00:00:00Z"), 3);
+        assertEquals(List.of(Instant.parse("2025-02-01T00:00:00Z"), Instant.parse("2025-01-31T00:00:00Z"),
+                Instant.parse("2025-01-30T00:00:00Z")), bars.stream().map(MarketData::getTimestamp).toList());
+        assertEquals("1d", bars.get(0).getTimeFrame());
+        assertTrue(archive.readMarketDataBefore("ETHUSDT", "1d", Instant.parse("2025-02-02T00:00:00Z"), 3).isEmpty());
+    }
+
+    @Test
+    public void testReadRowsStopsWhenVisitorReturnsFalse() {
+        try (TimeSeriesArchive.PartitionWriter writer = archive.openPartition(TimeSeriesTable.TRADES, YearMonth.of(2025, 1))) {
+            for (int day = 1; day <= 9; day++) {
+                writer.append(trade(String.valueOf(day), "BTCUSDT", "2025-01-0" + day + "T00:00:00Z"));
+            }
+            writer.commit();
+        }
+
+        List<String> visited = new ArrayList<>();
+        archive.readRows(TimeSeriesTable.TRADES, "BTCUSDT", YearMonth.of(2025, 1), row -> {
+            visited.add(row[TimeSeriesTable.TRADES.columnIndex("id")]);
+            return visited.size() < 3;
+        });
+        assertEquals(List.of("1", "2", "3"), visited);
+        assertEquals(List.of("4", "5"), archive.readTrades("BTCUSDT", Instant.parse("2025-01-04T00:00:00Z"),
+                Instant.parse("2025-01-05T00:00:00Z")).stream().map(Trade::getId).toList());
+    }
+
+    @Test
+    public void testUncommittedPartitionLeavesNoFiles() throws Exception {
+        try (TimeSeriesArchive.PartitionWriter writer = archive.openPartition(TimeSeriesTable.TRADES, YearMonth.of(2025, 1))) {
+            writer.append(trade("1", "BTCUSDT", "2025-01-05T00:00:00Z"));
+            writer.append(trade("2", "ETHUSDT", "2025-01-05T00:00:00Z"));
+            // 沒有依 symbol 排序
+            assertThrows(IllegalStateException.class, () -> writer.append(trade("3", "BTCUSDT", "2025-01-05T00:00:00Z")));
+        }
+
+        assertTrue(archive.archivedMonths(TimeSeriesTable.TRADES, "BTCUSDT").isEmpty());
+        try (var files = Files.walk(dir)) {
+            assertTrue(files.noneMatch(Files::isRegularFile));
+        }
+    }
+
+    @Test
+    public void testOnlyExistingSharedDirectoryIsWritable() {
+        assertTrue(archive.isWritable());
+        assertFalse(new TimeSeriesArchive(dir, false).isWritable());
+        // 共用目錄沒有掛載時不建立本機目錄
+        assertFalse(new TimeSeriesArchive(dir.resolve("missing"), true).isWritable());
+        assertFalse(Files.exists(dir.resolve("missing")));
+    }
+
+    private String[] trade(String id, String symbol, String tradeTime) {
+        return new String[]{id, "b" + id, "s" + id, symbol, "50000.50000000", "0.10000000", tradeTime, null, "b" + id};
+    }
+
+    private String[] bar(String timeFrame, String timestamp) {
+        return new String[]{"BTCUSDT", timeFrame, timestamp, "1", "2", "0.5", "1.5", "10"};
+    }
+}
@@ -0,0 +1,38 @@
+package com.exchange.repository;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TimeSeriesPartitionsTest {
+
+    @Test
+    public void testPartitionByDatetimeColumn() {
+        String ddl = TimeSeriesPartitions.partitionBy("trade_time", false,
+                TimeSeriesPartitions.months(YearMonth.of(2025, 11), YearMonth.of(2026, 1)));
+        assertEquals("PARTITION BY RANGE COLUMNS (`trade_time`) (" +
+                "PARTITION p202511 VALUES LESS THAN ('2025-12-01 00:00:00'), " +
+                "PARTITION p202512 VALUES LESS THAN ('2026-01-01 00:00:00'), " +
+                "PARTITION p202601 VALUES LESS THAN ('2026-02-01 00:00:00'), " +
+                "PARTITION pmax VALUES LESS THAN (MAXVALUE))", ddl);
+    }
+
+    @Test
+    public void testPartitionByTimestampColumnUsesEpochSeconds() {
+        String ddl = TimeSeriesPartitions.partitionBy("timestamp", true, List.of(YearMonth.of(2026, 1)));
+        assertEquals("PARTITION BY RANGE (UNIX_TIMESTAMP(`timestamp`)) (" +
+                "PARTITION p202601 VALUES LESS THAN (1769904000), " +
+                "PARTITION pmax VALUES LESS THAN (MAXVALUE))", ddl);
+    }
+
+    @Test
+    public void testPartitionNames() {
+        assertEquals("p202603", TimeSeriesPartitions.partitionName(YearMonth.of(2026, 3)));
+        assertEquals(YearMonth.of(2026, 3), TimeSeriesPartitions.monthOf("p202603"));
+        assertNull(TimeSeriesPartitions.monthOf("pmax"));
+        assertNull(TimeSeriesPartitions.monthOf("p2026xx"));
+    }
+}
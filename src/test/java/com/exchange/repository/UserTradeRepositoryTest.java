@@ -0,0 +1,95 @@
+package com.exchange.repository;
+
+import com.exchange.model.Order;
+import com.exchange.model.UserTrade;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.data.domain.PageRequest;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用戶成交帳本查詢在內嵌 H2（MySQL 模式）上的行為：用戶與方向過濾、時間範圍、同一時間多筆成交的 keyset 分頁。
+ */
+@DataJpaTest(properties = "spring.datasource.url=jdbc:h2:mem:user-trades;MODE=MySQL")
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+public class UserTradeRepositoryTest {
+
+    private static final Instant T0 = Instant.parse("2026-01-01T00:00:00.123456Z");
+
+    @Autowired
+    private UserTradeRepository userTradeRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @BeforeEach
+    public void setup() {
+        trade("t1", Order.Side.BUY, "u1", "101", T0);
+        trade("t2", Order.Side.BUY, "u1", "101", T0);
+        trade("t3", Order.Side.BUY, "u1", "101", T0);
+        trade("t4", Order.Side.SELL, "u1", "102", T0.plusSeconds(1));
+        // u1 的 101 買單與 102 賣單互相成交
+        trade("t5", Order.Side.BUY, "u1", "101", T0.plusSeconds(2));
+        trade("t5", Order.Side.SELL, "u1", "102", T0.plusSeconds(2));
+        // 其他用戶的成交與時間範圍外的成交
+        trade("t4", Order.Side.BUY, "u2", "201", T0.plusSeconds(1));
+        trade("t7", Order.Side.BUY, "u1", "101", T0.minusSeconds(3600));
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Test
+    public void testTradesArePagedByTradeTimeAndId() {
+        Instant start = T0.minusSeconds(60);
+        Instant end = T0.plusSeconds(60);
+
+        List<UserTrade> first = userTradeRepository.findUserTrades("u1", null, start, end, null, null, PageRequest.of(0, 3));
+        assertEquals(List.of("t5:BUY", "t5:SELL", "t4:SELL"), keys(first));
+
+        UserTrade last = first.get(2);
+        List<UserTrade> second = userTradeRepository.findUserTrades("u1", null, start, end, last.getTradeTime(), last.getTradeId(),
+                PageRequest.of(0, 3));
+        assertEquals(List.of("t3:BUY", "t2:BUY", "t1:BUY"), keys(second));
+    }
+
+    @Test
+    public void testSideFilterAndOrderLookup() {
+        List<UserTrade> sells = userTradeRepository.findUserTrades("u1", Order.Side.SELL, T0.minusSeconds(60), T0.plusSeconds(60),
+                null, null, PageRequest.of(0, 10));
+        assertEquals(List.of("t5:SELL", "t4:SELL"), keys(sells));
+
+        List<UserTrade> byOrder = userTradeRepository.findByOrderIdInOrderByTradeTime(List.of("102", "201"));
+        // t4 的兩列時間相同，先後不固定
+        assertEquals(Set.of("t4:SELL", "t4:BUY"), Set.copyOf(keys(byOrder).subList(0, 2)));
+        assertEquals("t5:SELL", keys(byOrder).get(2));
+        assertEquals(3, byOrder.size());
+    }
+
+    private List<String> keys(List<UserTrade> rows) {
+        return rows.stream().map(row -> row.getTradeId() + ":" + row.getSide()).toList();
+    }
+
+    private void trade(String tradeId, Order.Side side, String userId, String orderId, Instant tradeTime) {
+        UserTrade trade = new UserTrade();
+        trade.setTradeId(tradeId);
+        trade.setSide(side);
+        trade.setUserId(userId);
+        trade.setOrderId(orderId);
+        trade.setSymbol("BTCUSDT");
+        trade.setRole(side == Order.Side.BUY ? "TAKER" : "MAKER");
+        trade.setPrice(new BigDecimal("50000"));
+        trade.setQuantity(new BigDecimal("0.1"));
+        trade.setTradeTime(tradeTime);
+        entityManager.persist(trade);
+    }
+}
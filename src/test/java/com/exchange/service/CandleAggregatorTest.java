@@ -0,0 +1,172 @@
+package com.exchange.service;
+
+import com.exchange.dto.Candle;
+import com.exchange.model.MarketData;
+import com.exchange.model.Trade;
+import com.exchange.repository.MarketDataRepository;
+import com.exchange.repository.TradeRepository;
+import com.exchange.utils.TimeFrame;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class CandleAggregatorTest {
+
+    // 2024-01-01 10:02:30 UTC（週一）
+    private static final Instant NOW = Instant.parse("2024-01-01T10:02:30Z");
+
+    @Mock
+    private MarketDataRepository marketDataRepository;
+
+    @Mock
+    private TradeRepository tradeRepository;
+
+    @Mock
+    private KlineCache klineCache;
+
+    private CandleAggregator aggregator;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        aggregator = new CandleAggregator(marketDataRepository, tradeRepository, klineCache, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void testSeed_MergesClosedMinutesAndCurrentMinuteTrades() {
+        when(marketDataRepository.findBySymbolAndTimeFrameAndTimestampBetween(eq("BTCUSDT"), eq("1m"), any(), any()))
+                .thenReturn(List.of(
+                        minute("2024-01-01T10:00:00Z", "100", "110", "95", "105", "2"),
+                        minute("2024-01-01T10:01:00Z", "105", "108", "101", "102", "3")));
+        Trade seeded = trade("t1", "2024-01-01T10:02:10Z", "107", "1");
+        when(tradeRepository.findBySymbolAndTradeTimeBetween(eq("BTCUSDT"), any(), any())).thenReturn(List.of(seeded));
+
+        Candle fiveMinutes = aggregator.getCurrentBar("BTCUSDT", TimeFrame.M5);
+        assertEquals(Instant.parse("2024-01-01T10:00:00Z"), fiveMinutes.getOpenTime());
+        assertEquals(0, new BigDecimal("100").compareTo(fiveMinutes.getOpen()));
+        assertEquals(0, new BigDecimal("110").compareTo(fiveMinutes.getHigh()));
+        assertEquals(0, new BigDecimal("95").compareTo(fiveMinutes.getLow()));
+        assertEquals(0, new BigDecimal("107").compareTo(fiveMinutes.getClose()));
+        assertEquals(0, new BigDecimal("6").compareTo(fiveMinutes.getVolume()));
+
+        // 初始化時已讀過的成交再從 Kafka 收到時不重複計算
+        aggregator.onTrade(seeded);
+        aggregator.onTrade(trade("t2", "2024-01-01T10:02:20Z", "111", "0.5"));
+
+        Candle oneMinute = aggregator.getCurrentBar("BTCUSDT", TimeFrame.M1);
+        // 當前分鐘的開盤價為上一分鐘收盤價
+        assertEquals(0, new BigDecimal("102").compareTo(oneMinute.getOpen()));
+        assertEquals(0, new BigDecimal("111").compareTo(oneMinute.getHigh()));
+        assertEquals(0, new BigDecimal("1.5").compareTo(oneMinute.getVolume()));
+
+        // 進入下一分鐘時，已結束的 1m K 棒寫入快取
+        aggregator.onTrade(trade("t3", "2024-01-01T10:03:05Z", "109", "1"));
+        verify(klineCache).put(argThat(bar -> "1m".equals(bar.getTimeFrame())
+                && Instant.parse("2024-01-01T10:02:00Z").equals(bar.getTimestamp())
+                && new BigDecimal("1.5").compareTo(bar.getVolume()) == 0));
+
+        // 1m K 線只查詢一次，之後都由記憶體提供
+        aggregator.getCurrentBar("BTCUSDT", TimeFrame.H1);
+        verify(marketDataRepository, times(1)).findBySymbolAndTimeFrameAndTimestampBetween(any(), any(), any(), any());
+    }
+
+    @Test
+    public void testCurrentBar_FlatWhenNoTradesInCurrentPeriod() {
+        MarketData previous = minute("2024-01-01T09:59:00Z", "90", "92", "89", "91", "1");
+        when(marketDataRepository.findLatestBeforeTime(eq("ETHUSDT"), any())).thenReturn(previous);
+
+        Candle candle = aggregator.getCurrentBar("ETHUSDT", TimeFrame.M1);
+        assertEquals(Instant.parse("2024-01-01T10:02:00Z"), candle.getOpenTime());
+        assertEquals(0, new BigDecimal("91").compareTo(candle.getOpen()));
+        assertEquals(0, new BigDecimal("91").compareTo(candle.getClose()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(candle.getVolume()));
+    }
+
+    @Test
+    public void testSeed_RetriedWithBackoffAfterFailure() {
+        Clock clock = mock(Clock.class);
+        when(clock.instant()).thenReturn(NOW);
+        aggregator = new CandleAggregator(marketDataRepository, tradeRepository, klineCache, clock);
+        MarketData previous = minute("2024-01-01T09:59:00Z", "90", "92", "89", "91", "1");
+        when(marketDataRepository.findLatestBeforeTime(eq("ETHUSDT"), any()))
+                .thenThrow(new RuntimeException("database unavailable"))
+                .thenReturn(previous);
+
+        assertNull(aggregator.getCurrentBar("ETHUSDT", TimeFrame.M1));
+        // 退避時間內不再查詢資料庫
+        assertNull(aggregator.getCurrentBar("ETHUSDT", TimeFrame.M1));
+        verify(marketDataRepository, times(1)).findLatestBeforeTime(any(), any());
+
+        // 退避時間過後重新初始化，成功後不再查詢
+        when(clock.instant()).thenReturn(NOW.plusSeconds(1));
+        Candle candle = aggregator.getCurrentBar("ETHUSDT", TimeFrame.M1);
+        assertEquals(0, new BigDecimal("91").compareTo(candle.getOpen()));
+        aggregator.getCurrentBar("ETHUSDT", TimeFrame.M5);
+        verify(marketDataRepository, times(2)).findLatestBeforeTime(any(), any());
+    }
+
+    @Test
+    public void testLateTrade_SkippedForAllTimeFrames() {
+        aggregator.onTrade(trade("t1", "2024-01-01T10:02:10Z", "100", "1"));
+        aggregator.onTrade(trade("t2", "2024-01-01T10:03:05Z", "101", "1"));
+        // 10:02 這一根 1m 已結束，延遲到達的成交也不計入 5m
+        aggregator.onTrade(trade("t3", "2024-01-01T10:02:50Z", "150", "5"));
+
+        Candle fiveMinutes = aggregator.getCurrentBar("BTCUSDT", TimeFrame.M5);
+        assertEquals(0, new BigDecimal("101").compareTo(fiveMinutes.getHigh()));
+        assertEquals(0, new BigDecimal("101").compareTo(fiveMinutes.getClose()));
+        assertEquals(0, new BigDecimal("2").compareTo(fiveMinutes.getVolume()));
+    }
+
+    @Test
+    public void testCurrentBar_NullWithoutAnyData() {
+        assertNull(aggregator.getCurrentBar("ETHUSDT", TimeFrame.M1));
+    }
+
+    @Test
+    public void testTimeFrame_BarStartAlignment() {
+        Instant time = Instant.parse("2024-01-03T13:47:12Z"); // 週三
+        assertEquals(Instant.parse("2024-01-03T13:45:00Z"), TimeFrame.M15.barStart(time));
+        assertEquals(Instant.parse("2024-01-03T12:00:00Z"), TimeFrame.H4.barStart(time));
+        assertEquals(Instant.parse("2024-01-03T00:00:00Z"), TimeFrame.D1.barStart(time));
+        // 週線對齊到週一
+        assertEquals(Instant.parse("2024-01-01T00:00:00Z"), TimeFrame.W1.barStart(time));
+        assertNull(TimeFrame.fromCode("2m"));
+    }
+
+    private MarketData minute(String time, String open, String high, String low, String close, String volume) {
+        MarketData marketData = new MarketData();
+        marketData.setSymbol("BTCUSDT");
+        marketData.setTimeFrame("1m");
+        marketData.setTimestamp(Instant.parse(time));
+        marketData.setOpen(new BigDecimal(open));
+        marketData.setHigh(new BigDecimal(high));
+        marketData.setLow(new BigDecimal(low));
+        marketData.setClose(new BigDecimal(close));
+        marketData.setVolume(new BigDecimal(volume));
+        return marketData;
+    }
+
+    private Trade trade(String id, String time, String price, String quantity) {
+        Trade trade = new Trade();
+        trade.setId(id);
+        trade.setSymbol("BTCUSDT");
+        trade.setTradeTime(Instant.parse(time));
+        trade.setPrice(new BigDecimal(price));
+        trade.setQuantity(new BigDecimal(quantity));
+        return trade;
+    }
+}
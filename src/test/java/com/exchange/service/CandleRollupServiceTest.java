@@ -0,0 +1,119 @@
+package com.exchange.service;
+
+import com.exchange.model.MarketData;
+import com.exchange.repository.MarketDataRepository;
+import com.exchange.repository.TimeSeriesArchive;
+import com.exchange.utils.TimeFrame;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.math.BigDecimal;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class CandleRollupServiceTest {
+
+    private static final Instant NOW = Instant.parse("2024-01-01T10:31:00Z");
+
+    @Mock
+    private MarketDataRepository marketDataRepository;
+
+    @Mock
+    private TimeSeriesArchive timeSeriesArchive;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private KlineCache klineCache;
+
+    private CandleRollupService rollupService;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        klineCache = new KlineCache(marketDataRepository, timeSeriesArchive, List.of("BTCUSDT"), 500);
+        rollupService = new CandleRollupService(marketDataRepository, jdbcTemplate, klineCache, List.of("BTCUSDT"), List.of("15m"),
+                500, 10, Clock.fixed(NOW, ZoneOffset.UTC));
+    }
+
+    @Test
+    public void testAggregate_MergesMinutesAndFillsEmptyBars() {
+        List<MarketData> minutes = new ArrayList<>(List.of(
+                minute("2024-01-01T10:00:00Z", "100", "105", "99", "104", "1"),
+                minute("2024-01-01T10:14:00Z", "104", "110", "103", "108", "2")));
+
+        List<MarketData> bars = CandleRollupService.aggregate("BTCUSDT", TimeFrame.M15,
+                Instant.parse("2024-01-01T10:00:00Z"), Instant.parse("2024-01-01T10:30:00Z"), minutes, null);
+
+        assertEquals(2, bars.size());
+        MarketData first = bars.get(0);
+        assertEquals("15m", first.getTimeFrame());
+        assertEquals(0, new BigDecimal("100").compareTo(first.getOpen()));
+        assertEquals(0, new BigDecimal("110").compareTo(first.getHigh()));
+        assertEquals(0, new BigDecimal("99").compareTo(first.getLow()));
+        assertEquals(0, new BigDecimal("108").compareTo(first.getClose()));
+        assertEquals(0, new BigDecimal("3").compareTo(first.getVolume()));
+        // 沒有 1m K 線的區間以前一根收盤價補平盤
+        MarketData flat = bars.get(1);
+        assertEquals(Instant.parse("2024-01-01T10:15:00Z"), flat.getTimestamp());
+        assertEquals(0, new BigDecimal("108").compareTo(flat.getOpen()));
+        assertEquals(0, BigDecimal.ZERO.compareTo(flat.getVolume()));
+    }
+
+    @Test
+    public void testRollup_ContinuesFromLastDerivedBarAndCaches() {
+        MarketData lastDerived = minute("2024-01-01T10:00:00Z", "90", "95", "89", "100", "5");
+        lastDerived.setTimeFrame("15m");
+        when(marketDataRepository.findFirstBySymbolAndTimeFrameOrderByTimestampDesc("BTCUSDT", "15m")).thenReturn(lastDerived);
+        when(marketDataRepository.findBySymbolAndTimeFrameOrderByTimestampDesc(eq("BTCUSDT"), eq("15m"), any()))
+                .thenReturn(List.of(lastDerived));
+        when(marketDataRepository.findBySymbolAndTimeFrameAndTimestampBetween(eq("BTCUSDT"), eq("1m"), any(), any()))
+                .thenReturn(List.of(minute("2024-01-01T10:20:00Z", "100", "102", "98", "101", "1")));
+
+        // 只補 10:15 這一根（10:30 這一根尚未結束）
+        assertEquals(1, rollupService.rollup("BTCUSDT", TimeFrame.M15));
+        verify(marketDataRepository).findBySymbolAndTimeFrameAndTimestampBetween("BTCUSDT", "1m",
+                Instant.parse("2024-01-01T10:15:00Z"), Instant.parse("2024-01-01T10:29:59Z"));
+        // 以 upsert 批次寫入，多個實例同時推導同一根 K 棒不會撞到重複主鍵
+        ArgumentCaptor<BatchPreparedStatementSetter> saved = ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+        verify(jdbcTemplate).batchUpdate(eq(CandleRollupService.UPSERT_SQL), saved.capture());
+        assertEquals(1, saved.getValue().getBatchSize());
+        verify(marketDataRepository, never()).saveAll(any());
+
+        // 已經是最新狀態時不再查詢 1m K 線
+        assertEquals(0, rollupService.rollup("BTCUSDT", TimeFrame.M15));
+        verify(marketDataRepository, times(1)).findBySymbolAndTimeFrameAndTimestampBetween(any(), any(), any(), any());
+
+        // 寫入的 K 棒同步進入快取，查詢不需要回到資料庫
+        List<MarketData> bars = klineCache.getBefore("BTCUSDT", TimeFrame.M15, NOW, 500);
+        assertEquals(2, bars.size());
+        assertEquals(Instant.parse("2024-01-01T10:15:00Z"), bars.get(0).getTimestamp());
+        verify(marketDataRepository, never()).findTop500BySymbolAndTimeFrameAndTimestampBeforeOrderByTimestampDesc(any(), any(), any());
+    }
+
+    private MarketData minute(String time, String open, String high, String low, String close, String volume) {
+        MarketData marketData = new MarketData();
+        marketData.setSymbol("BTCUSDT");
+        marketData.setTimeFrame("1m");
+        marketData.setTimestamp(Instant.parse(time));
+        marketData.setOpen(new BigDecimal(open));
+        marketData.setHigh(new BigDecimal(high));
+        marketData.setLow(new BigDecimal(low));
+        marketData.setClose(new BigDecimal(close));
+        marketData.setVolume(new BigDecimal(volume));
+        return marketData;
+    }
+}
@@ -0,0 +1,87 @@
+package com.exchange.service;
+
+import com.exchange.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class IdempotencyCacheTest {
+
+    @Test
+    public void testRegister_ReplaysSameKeyPerUser() {
+        IdempotencyCache cache = new IdempotencyCache(10, 60, Clock.fixed(Instant.EPOCH, ZoneOffset.UTC));
+        Order first = order("1");
+
+        IdempotencyCache.Entry entry = cache.register("u1", "k", "fp", first);
+        assertSame(first, entry.getOrder());
+
+        // 重送相同 key 回傳第一次的訂單，不同用戶的相同 key 互不影響
+        assertSame(first, cache.register("u1", "k", "fp", order("2")).getOrder());
+        Order other = order("3");
+        assertSame(other, cache.register("u2", "k", "fp", other).getOrder());
+    }
+
+    @Test
+    public void testRemoveAfterFailureAllowsRetry() {
+        IdempotencyCache cache = new IdempotencyCache(10, 60, Clock.fixed(Instant.EPOCH, ZoneOffset.UTC));
+        IdempotencyCache.Entry entry = cache.register("u1", "k", "fp", order("1"));
+
+        cache.remove("u1", "k", entry);
+
+        Order retry = order("2");
+        assertSame(retry, cache.register("u1", "k", "fp", retry).getOrder());
+    }
+
+    @Test
+    public void testBoundedByCapacityAndTtl() {
+        MutableClock clock = new MutableClock();
+        IdempotencyCache cache = new IdempotencyCache(2, 60, clock);
+        cache.register("u1", "a", "fp", order("1"));
+        cache.register("u1", "b", "fp", order("2"));
+        cache.register("u1", "c", "fp", order("3"));
+
+        // 容量為 2，最舊的 key 被移除
+        assertEquals(2, cache.size());
+        Order again = order("4");
+        assertSame(again, cache.register("u1", "a", "fp", again).getOrder());
+
+        // 超過 ttl 的 key 視為新的請求
+        clock.advance(Duration.ofSeconds(61));
+        Order expired = order("5");
+        assertSame(expired, cache.register("u1", "c", "fp", expired).getOrder());
+    }
+
+    private Order order(String id) {
+        Order order = new Order();
+        order.setId(id);
+        return order;
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.EPOCH;
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
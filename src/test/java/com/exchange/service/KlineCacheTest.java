@@ -0,0 +1,174 @@
+package com.exchange.service;
+
+import com.exchange.model.MarketData;
+import com.exchange.repository.MarketDataRepository;
+import com.exchange.repository.TimeSeriesArchive;
+import com.exchange.utils.TimeFrame;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class KlineCacheTest {
+
+    private static final Instant BASE = Instant.parse("2024-01-01T00:00:00Z");
+
+    @Mock
+    private MarketDataRepository marketDataRepository;
+
+    @Mock
+    private TimeSeriesArchive timeSeriesArchive;
+
+    private KlineCache klineCache;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        klineCache = new KlineCache(marketDataRepository, timeSeriesArchive, List.of("BTCUSDT"), 5);
+    }
+
+    @Test
+    public void testGetBefore_LoadsOnceAndPaginatesFromMemory() {
+        // 資料庫只有 3 根，緩衝區包含全部資料
+        when(marketDataRepository.findBySymbolAndTimeFrameOrderByTimestampDesc(eq("BTCUSDT"), eq("1h"), any()))
+                .thenReturn(newestFirst(0, 3));
+
+        List<MarketData> page = klineCache.getBefore("BTCUSDT", TimeFrame.H1, hour(3), 2);
+        assertEquals(List.of(hour(2), hour(1)), timestamps(page));
+
+        // 往前翻頁不足 limit 也由記憶體回答
+        page = klineCache.getBefore("BTCUSDT", TimeFrame.H1, hour(1), 2);
+        assertEquals(List.of(hour(0)), timestamps(page));
+
+        verify(marketDataRepository, times(1)).findBySymbolAndTimeFrameOrderByTimestampDesc(any(), any(), any());
+        verify(marketDataRepository, never()).findTop500BySymbolAndTimeFrameAndTimestampBeforeOrderByTimestampDesc(any(), any(), any());
+        Map<String, Object> stats = klineCache.getStats();
+        assertEquals(2L, stats.get("hits"));
+        assertEquals(0L, stats.get("misses"));
+    }
+
+    @Test
+    public void testGetBefore_FallsBackToDatabaseBeyondBuffer() {
+        // 資料庫筆數超過容量，緩衝區只保存最近 5 根
+        when(marketDataRepository.findBySymbolAndTimeFrameOrderByTimestampDesc(eq("BTCUSDT"), eq("1h"), any()))
+                .thenReturn(newestFirst(5, 10));
+        when(marketDataRepository.findTop500BySymbolAndTimeFrameAndTimestampBeforeOrderByTimestampDesc("BTCUSDT", "1h", hour(6)))
+                .thenReturn(newestFirst(0, 6));
+
+        List<MarketData> page = klineCache.getBefore("BTCUSDT", TimeFrame.H1, hour(6), 3);
+        assertEquals(List.of(hour(5), hour(4), hour(3)), timestamps(page));
+
+        Map<String, Object> stats = klineCache.getStats();
+        assertEquals(0L, stats.get("hits"));
+        assertEquals(1L, stats.get("misses"));
+    }
+
+    @Test
+    public void testGetBefore_ReadsArchiveOnceDatabaseIsExhausted() {
+        // 資料庫只剩 hour(3) 之後的 K 棒，更早的已歸檔
+        when(marketDataRepository.findBySymbolAndTimeFrameOrderByTimestampDesc(eq("BTCUSDT"), eq("1h"), any()))
+                .thenReturn(newestFirst(3, 5));
+        when(timeSeriesArchive.readMarketDataBefore("BTCUSDT", "1h", hour(3), 2))
+                .thenReturn(newestFirst(1, 3));
+
+        List<MarketData> page = klineCache.getBefore("BTCUSDT", TimeFrame.H1, hour(5), 4);
+        assertEquals(List.of(hour(4), hour(3), hour(2), hour(1)), timestamps(page));
+
+        // 緩衝區可以湊滿時不讀取歸檔
+        klineCache.getBefore("BTCUSDT", TimeFrame.H1, hour(5), 2);
+        verify(timeSeriesArchive, times(1)).readMarketDataBefore(any(), any(), any(), anyInt());
+        verify(marketDataRepository, never()).findTop500BySymbolAndTimeFrameAndTimestampBeforeOrderByTimestampDesc(any(), any(), any());
+        assertEquals(1L, klineCache.getStats().get("archiveReads"));
+    }
+
+    @Test
+    public void testPut_AppendsEvictsAndReplaces() {
+        when(marketDataRepository.findBySymbolAndTimeFrameOrderByTimestampDesc(eq("BTCUSDT"), eq("1h"), any()))
+                .thenReturn(newestFirst(0, 5));
+        assertEquals(hour(4), klineCache.latest("BTCUSDT", TimeFrame.H1).getTimestamp());
+
+        // 新的 K 棒附加在最後，最舊的一根被淘汰
+        klineCache.put(bar(5, "1"));
+        assertEquals(hour(5), klineCache.latest("BTCUSDT", TimeFrame.H1).getTimestamp());
+        assertEquals(List.of(hour(5), hour(4), hour(3), hour(2), hour(1)),
+                timestamps(klineCache.getBefore("BTCUSDT", TimeFrame.H1, hour(6), 5)));
+
+        // 相同時間的 K 棒覆蓋原本的資料
+        klineCache.put(bar(5, "2"));
+        assertEquals(0, new BigDecimal("2").compareTo(klineCache.latest("BTCUSDT", TimeFrame.H1).getClose()));
+
+        Map<String, Object> stats = klineCache.getStats();
+        assertEquals(1L, stats.get("evictions"));
+        assertEquals(1L, stats.get("loads"));
+    }
+
+    @Test
+    public void testPut_InsertsMissingBarInOrder() {
+        List<MarketData> stored = new ArrayList<>(newestFirst(0, 3));
+        stored.remove(1); // 缺少 hour(1)
+        when(marketDataRepository.findBySymbolAndTimeFrameOrderByTimestampDesc(eq("BTCUSDT"), eq("1h"), any()))
+                .thenReturn(stored);
+        klineCache.latest("BTCUSDT", TimeFrame.H1);
+
+        klineCache.put(bar(1, "1"));
+        assertEquals(List.of(hour(2), hour(1), hour(0)),
+                timestamps(klineCache.getBefore("BTCUSDT", TimeFrame.H1, hour(3), 5)));
+    }
+
+    @Test
+    public void testPut_IgnoredBeforeLoad() {
+        klineCache.put(bar(0, "1"));
+        assertEquals(0, klineCache.getStats().get("buffers"));
+    }
+
+    @Test
+    public void testUnsupportedSymbol_NoBufferOrQuery() {
+        assertFalse(klineCache.isSupported("XXXUSDT"));
+        assertTrue(klineCache.getBefore("XXXUSDT", TimeFrame.H1, hour(3), 5).isEmpty());
+        assertNull(klineCache.latest("XXXUSDT", TimeFrame.H1));
+
+        // 任意 symbol 不會建立緩衝區，也不會查詢資料庫或歸檔
+        assertEquals(0, klineCache.getStats().get("buffers"));
+        verifyNoInteractions(marketDataRepository, timeSeriesArchive);
+    }
+
+    private List<MarketData> newestFirst(int fromHour, int toHour) {
+        List<MarketData> bars = new ArrayList<>();
+        for (int i = toHour - 1; i >= fromHour; i--) {
+            bars.add(bar(i, "1"));
+        }
+        return bars;
+    }
+
+    private MarketData bar(int hour, String close) {
+        MarketData marketData = new MarketData();
+        marketData.setSymbol("BTCUSDT");
+        marketData.setTimeFrame("1h");
+        marketData.setTimestamp(hour(hour));
+        marketData.setOpen(BigDecimal.ONE);
+        marketData.setHigh(BigDecimal.ONE);
+        marketData.setLow(BigDecimal.ONE);
+        marketData.setClose(new BigDecimal(close));
+        marketData.setVolume(BigDecimal.ZERO);
+        return marketData;
+    }
+
+    private Instant hour(int hour) {
+        return BASE.plusSeconds(hour * 3600L);
+    }
+
+    private List<Instant> timestamps(List<MarketData> bars) {
+        return bars.stream().map(MarketData::getTimestamp).toList();
+    }
+}
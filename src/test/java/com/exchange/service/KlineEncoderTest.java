@@ -0,0 +1,106 @@
+package com.exchange.service;
+
+import com.exchange.model.MarketData;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class KlineEncoderTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final KlineEncoder klineEncoder = new KlineEncoder(objectMapper);
+
+    // 快取回傳新到舊
+    private final List<MarketData> bars = List.of(
+            bar("2024-01-01T00:01:00Z", "42000.5", "42010", "41990.25", "42005", "1.23456789"),
+            bar("2024-01-01T00:00:00Z", "41980", "42001", "41975", "42000.5", "0.5"));
+
+    @Test
+    public void testRows_MatchesOriginalFormat() throws Exception {
+        JsonNode rows = objectMapper.readTree(klineEncoder.encodeRows(bars, "BTCUSDT", "1m"));
+
+        assertEquals(2, rows.size());
+        JsonNode first = rows.get(0);
+        assertEquals("historical", first.get("type").asText());
+        assertEquals("BTCUSDT", first.get("symbol").asText());
+        assertEquals("1m", first.get("timeFrame").asText());
+        assertEquals(Instant.parse("2024-01-01T00:01:00Z").getEpochSecond(), first.get("time").asLong());
+        assertEquals(0, new BigDecimal("42000.5").compareTo(first.get("open").decimalValue()));
+    }
+
+    @Test
+    public void testColumnar_ParallelArraysOldestFirst() throws Exception {
+        JsonNode columns = objectMapper.readTree(klineEncoder.encodeColumnar(bars, "BTCUSDT", "1m"));
+
+        assertEquals("historical_columnar", columns.get("type").asText());
+        assertEquals("BTCUSDT", columns.get("symbol").asText());
+        assertEquals(Instant.parse("2024-01-01T00:00:00Z").getEpochSecond(), columns.get("time").get(0).asLong());
+        assertEquals(Instant.parse("2024-01-01T00:01:00Z").getEpochSecond(), columns.get("time").get(1).asLong());
+        assertEquals(0, new BigDecimal("41990.25").compareTo(columns.get("low").get(1).decimalValue()));
+        assertEquals(0, new BigDecimal("1.23456789").compareTo(columns.get("volume").get(1).decimalValue()));
+        for (String column : List.of("open", "high", "low", "close", "volume")) {
+            assertEquals(2, columns.get(column).size());
+        }
+    }
+
+    @Test
+    public void testBinary_FixedWidthScaledLongs() {
+        ByteBuffer buffer = ByteBuffer.wrap(klineEncoder.encodeBinary(bars, "BTCUSDT", "1m"));
+
+        assertEquals(KlineEncoder.BINARY_VERSION, buffer.get());
+        assertEquals(KlineEncoder.BINARY_SCALE, buffer.get());
+        assertEquals("BTCUSDT", readString(buffer));
+        assertEquals("1m", readString(buffer));
+        int count = buffer.getInt();
+        assertEquals(2, count);
+        long[][] columns = new long[6][count];
+        for (long[] column : columns) {
+            for (int i = 0; i < count; i++) {
+                column[i] = buffer.getLong();
+            }
+        }
+        assertFalse(buffer.hasRemaining());
+
+        assertEquals(Instant.parse("2024-01-01T00:00:00Z").getEpochSecond(), columns[0][0]);
+        assertEquals(4_198_000_000_000L, columns[1][0]);       // open 41980
+        assertEquals(4_200_500_000_000L, columns[4][1]);       // close 42005
+        assertEquals(123_456_789L, columns[5][1]);             // volume 1.23456789
+    }
+
+    @Test
+    public void testFormat_Negotiation() {
+        assertEquals(KlineEncoder.Format.ROWS, KlineEncoder.Format.of(null, "application/json"));
+        assertEquals(KlineEncoder.Format.COLUMNAR, KlineEncoder.Format.of("columnar", null));
+        assertEquals(KlineEncoder.Format.BINARY, KlineEncoder.Format.of(null, "application/octet-stream"));
+        // 參數優先於 Accept
+        assertEquals(KlineEncoder.Format.ROWS, KlineEncoder.Format.of("rows", "application/octet-stream"));
+        assertNull(KlineEncoder.Format.of("xml", null));
+    }
+
+    private String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getShort()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private MarketData bar(String time, String open, String high, String low, String close, String volume) {
+        MarketData marketData = new MarketData();
+        marketData.setSymbol("BTCUSDT");
+        marketData.setTimeFrame("1m");
+        marketData.setTimestamp(Instant.parse(time));
+        marketData.setOpen(new BigDecimal(open));
+        marketData.setHigh(new BigDecimal(high));
+        marketData.setLow(new BigDecimal(low));
+        marketData.setClose(new BigDecimal(close));
+        marketData.setVolume(new BigDecimal(volume));
+        return marketData;
+    }
+}
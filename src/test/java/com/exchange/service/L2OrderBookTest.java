@@ -0,0 +1,144 @@
+package com.exchange.service;
+
+import com.exchange.model.Order;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class L2OrderBookTest {
+
+    private L2OrderBook book;
+
+    @BeforeEach
+    public void setup() {
+        book = new L2OrderBook();
+        book.seedIfAbsent(side -> {
+            Map<BigDecimal, BigDecimal> levels = new TreeMap<>();
+            if (side == Order.Side.BUY) {
+                levels.put(new BigDecimal("50000"), new BigDecimal("1"));
+                levels.put(new BigDecimal("49999.5"), new BigDecimal("2"));
+            } else {
+                levels.put(new BigDecimal("50001"), new BigDecimal("3"));
+            }
+            return levels;
+        });
+    }
+
+    @Test
+    public void testApplyDelta_AddAndRemoveLevel() {
+        book.applyDelta(Order.Side.BUY, new BigDecimal("50000.00000000"), new BigDecimal("0.5"));
+        book.applyDelta(Order.Side.SELL, new BigDecimal("50001"), new BigDecimal("-3"));
+
+        Map<BigDecimal, BigDecimal> bids = book.aggregate(Order.Side.BUY, new BigDecimal("0.1"), 10);
+        // 不同 scale 的同一價格應合併到同一價位
+        assertEquals(0, new BigDecimal("1.5").compareTo(bids.get(new BigDecimal("50000.0"))));
+        // 數量歸零的價位應被移除
+        assertEquals(0, book.levelCount(Order.Side.SELL));
+    }
+
+    @Test
+    public void testAggregate_BucketsAndOrdersByBestPrice() {
+        Map<BigDecimal, BigDecimal> bids = book.aggregate(Order.Side.BUY, new BigDecimal("10"), 10);
+        List<BigDecimal> prices = new ArrayList<>(bids.keySet());
+
+        // 買單向下取整，並且最優價在前
+        assertEquals(0, new BigDecimal("50000").compareTo(prices.get(0)));
+        assertEquals(0, new BigDecimal("49990").compareTo(prices.get(1)));
+
+        Map<BigDecimal, BigDecimal> asks = book.aggregate(Order.Side.SELL, new BigDecimal("10"), 10);
+        // 賣單向上取整
+        assertEquals(0, new BigDecimal("3").compareTo(asks.get(new BigDecimal("50010"))));
+    }
+
+    @Test
+    public void testApplyDelta_IgnoredBeforeSeed() {
+        L2OrderBook unseeded = new L2OrderBook();
+        unseeded.applyDelta(Order.Side.BUY, new BigDecimal("100"), new BigDecimal("1"));
+
+        assertFalse(unseeded.isSeeded());
+        assertEquals(0, unseeded.levelCount(Order.Side.BUY));
+        // 已初始化的訂單簿不應被再次初始化
+        assertFalse(book.seedIfAbsent(side -> new TreeMap<>()));
+    }
+
+    @Test
+    public void testReseed_ReplacesLevelsAndChangesEpoch() {
+        book.applyDelta(Order.Side.BUY, new BigDecimal("50000"), new BigDecimal("1"));
+        L2OrderBook.Snapshot before = book.snapshot(BigDecimal.ONE, 10);
+
+        Map<BigDecimal, BigDecimal> bids = new TreeMap<>();
+        bids.put(new BigDecimal("50000.0"), new BigDecimal("1"));
+        Map<BigDecimal, BigDecimal> asks = new TreeMap<>();
+        asks.put(new BigDecimal("50001"), new BigDecimal("3"));
+        // 重複套用的增量讓記憶體與 Redis 不一致
+        assertFalse(book.matches(bids, asks));
+
+        book.reseed(side -> side == Order.Side.BUY ? bids : asks);
+        assertTrue(book.matches(bids, asks));
+        L2OrderBook.Snapshot after = book.snapshot(BigDecimal.ONE, 10);
+        assertNotEquals(before.getEpoch(), after.getEpoch());
+        assertEquals(0, after.getSeq());
+        // 舊 epoch 的補送全部失效
+        assertNull(book.deltasSince(before.getEpoch(), before.getSeq()));
+    }
+
+    @Test
+    public void testDeltasSince_ReturnsMissedDeltasOrNullWhenEvicted() {
+        L2OrderBook small = new L2OrderBook(2, L2OrderBook.DEFAULT_GRANULARITIES);
+        small.seedIfAbsent(side -> new TreeMap<>());
+        long epoch = small.snapshot(BigDecimal.ONE, 10).getEpoch();
+
+        for (int i = 1; i <= 3; i++) {
+            L2OrderBook.Delta delta = small.applyDelta(Order.Side.BUY, new BigDecimal("100"), BigDecimal.ONE);
+            assertEquals(i, delta.getSeq());
+        }
+
+        // 只保留最近兩筆：從序號 1 之後補送可以，從 0 之後已經補不齊
+        List<L2OrderBook.Delta> missed = small.deltasSince(epoch, 1);
+        assertEquals(2, missed.size());
+        assertEquals(2, missed.get(0).getSeq());
+        assertNull(small.deltasSince(epoch, 0));
+        // 已是最新序號時不需要補送
+        assertTrue(small.deltasSince(epoch, 3).isEmpty());
+        // epoch 不同表示訂單簿已重新初始化
+        assertNull(small.deltasSince(epoch + 1, 3));
+
+        L2OrderBook.Snapshot snapshot = small.snapshot(BigDecimal.ONE, 10);
+        assertEquals(3, snapshot.getSeq());
+        assertEquals(0, new BigDecimal("3").compareTo(snapshot.getBuy().get(new BigDecimal("100"))));
+    }
+
+    @Test
+    public void testLadders_UpdatedIncrementallyAndMatchRawLevels() {
+        L2OrderBook.Delta delta = book.applyDelta(Order.Side.BUY, new BigDecimal("49995.25"), new BigDecimal("4"));
+        int tenIndex = book.granularityIndex(BigDecimal.TEN);
+
+        // 增量帶有各間隔下的價位與更新後總量
+        assertEquals(0, new BigDecimal("49990").compareTo(delta.getBucketPrice(tenIndex)));
+        assertEquals(0, new BigDecimal("6").compareTo(delta.getBucketQuantity(tenIndex)));
+
+        // 超額扣減只套用實際生效的部分，聚合深度仍等於原始價位加總
+        L2OrderBook.Delta over = book.applyDelta(Order.Side.BUY, new BigDecimal("49999.5"), new BigDecimal("-5"));
+        assertEquals(0, new BigDecimal("4").compareTo(over.getBucketQuantity(tenIndex)));
+
+        // 不支援的間隔從原始價位重新分桶，支援的間隔直接讀取聚合深度，兩者結果一致
+        Map<BigDecimal, BigDecimal> fromLadder = book.aggregate(Order.Side.BUY, BigDecimal.TEN, 10);
+        Map<BigDecimal, BigDecimal> fromRaw = book.aggregate(Order.Side.BUY, new BigDecimal("5"), 10);
+        assertEquals(0, new BigDecimal("4").compareTo(fromLadder.get(new BigDecimal("49990"))));
+        assertEquals(0, new BigDecimal("4").compareTo(fromRaw.get(new BigDecimal("49995"))));
+    }
+
+    @Test
+    public void testResolveGranularity() {
+        assertEquals(0, BigDecimal.TEN.compareTo(book.resolveGranularity(new BigDecimal("50"))));
+        assertEquals(0, new BigDecimal("0.01").compareTo(book.resolveGranularity(new BigDecimal("0.001"))));
+        assertEquals(-1, book.granularityIndex(new BigDecimal("5")));
+    }
+}
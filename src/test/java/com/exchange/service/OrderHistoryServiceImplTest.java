@@ -0,0 +1,116 @@
+package com.exchange.service;
+
+import com.exchange.dto.OrderHistoryDTO;
+import com.exchange.model.Order;
+import com.exchange.model.UserTrade;
+import com.exchange.repository.OrderRepository;
+import com.exchange.repository.UserTradeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class OrderHistoryServiceImplTest {
+
+    private static final Instant START = Instant.parse("2026-01-01T00:00:00Z");
+    private static final Instant END = Instant.parse("2026-01-08T00:00:00Z");
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    @Mock
+    private UserTradeRepository userTradeRepository;
+
+    @InjectMocks
+    private OrderHistoryServiceImpl orderHistoryService;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void testTradesForTheWholePageAreFetchedOnce() {
+        Order buy = order("101", Order.Side.BUY);
+        Order sell = order("102", Order.Side.SELL);
+        Order open = order("103", Order.Side.BUY);
+        when(orderRepository.findOrderHistoryPage(eq("u1"), isNull(), eq(START), eq(END), isNull(), isNull(), isNull(),
+                isNull(), isNull(), any(Pageable.class))).thenReturn(List.of(buy, sell, open));
+        when(userTradeRepository.findByOrderIdInOrderByTradeTime(anyCollection())).thenReturn(List.of(
+                // 101 吃掉其他用戶的賣單
+                trade("t1", "101", Order.Side.BUY, "TAKER", new BigDecimal("50000"), START.plusSeconds(1)),
+                // 同一用戶的 102 賣單與 101 買單互相成交，102 為 taker，帳本中買賣各一列
+                trade("t2", "101", Order.Side.BUY, "MAKER", new BigDecimal("50010"), START.plusSeconds(2)),
+                trade("t2", "102", Order.Side.SELL, "TAKER", new BigDecimal("50010"), START.plusSeconds(2))));
+
+        List<OrderHistoryDTO> history = orderHistoryService.getOrderHistory("u1", null, START, END, null, null, null, null, null, 100);
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Collection<String>> orderIds = ArgumentCaptor.forClass(Collection.class);
+        verify(userTradeRepository, times(1)).findByOrderIdInOrderByTradeTime(orderIds.capture());
+        assertEquals(Set.of("101", "102", "103"), Set.copyOf(orderIds.getValue()));
+
+        assertEquals(List.of("101", "102", "103"), history.stream().map(dto -> dto.getOrder().getId()).toList());
+        assertEquals(List.of("TAKER", "MAKER"), history.get(0).getTrades().stream().map(t -> t.getRole()).toList());
+        assertEquals(1, history.get(1).getTrades().size());
+        assertEquals("TAKER", history.get(1).getTrades().get(0).getRole());
+        assertTrue(history.get(2).getTrades().isEmpty());
+    }
+
+    @Test
+    public void testPassesCursorAndLimit() {
+        Instant before = START.plusSeconds(60);
+        when(orderRepository.findOrderHistoryPage(any(), any(), any(), any(), any(), any(), any(), any(), any(), any(Pageable.class)))
+                .thenReturn(List.of());
+
+        List<OrderHistoryDTO> history = orderHistoryService.getOrderHistory("u1", "BTCUSDT", START, END,
+                Order.OrderType.LIMIT, Order.Side.BUY, Order.OrderStatus.COMPLETED, before, "105", 50);
+
+        ArgumentCaptor<Pageable> page = ArgumentCaptor.forClass(Pageable.class);
+        verify(orderRepository).findOrderHistoryPage(eq("u1"), eq("BTCUSDT"), eq(START), eq(END), eq(Order.OrderType.LIMIT),
+                eq(Order.Side.BUY), eq(Order.OrderStatus.COMPLETED), eq(before), eq("105"), page.capture());
+        assertEquals(50, page.getValue().getPageSize());
+        assertEquals(0, page.getValue().getPageNumber());
+        // 沒有訂單時不查詢成交
+        assertTrue(history.isEmpty());
+        verifyNoInteractions(userTradeRepository);
+    }
+
+    private Order order(String id, Order.Side side) {
+        Order order = new Order();
+        order.setId(id);
+        order.setUserId("u1");
+        order.setSymbol("BTCUSDT");
+        order.setSide(side);
+        order.setOrderType(Order.OrderType.LIMIT);
+        order.setCreatedAt(START);
+        return order;
+    }
+
+    private UserTrade trade(String tradeId, String orderId, Order.Side side, String role, BigDecimal price, Instant tradeTime) {
+        UserTrade trade = new UserTrade();
+        trade.setTradeId(tradeId);
+        trade.setOrderId(orderId);
+        trade.setSide(side);
+        trade.setUserId("u1");
+        trade.setSymbol("BTCUSDT");
+        trade.setRole(role);
+        trade.setPrice(price);
+        trade.setQuantity(new BigDecimal("0.1"));
+        trade.setTradeTime(tradeTime);
+        return trade;
+    }
+}
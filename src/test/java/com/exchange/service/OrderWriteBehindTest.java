@@ -0,0 +1,119 @@
+package com.exchange.service;
+
+import com.exchange.model.Order;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 訂單 write-behind 的合併與 upsert（內嵌 H2，MySQL 模式）。不啟動背景執行緒，
+ * 由測試直接呼叫 flush，避免與背景寫入競爭。
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:order-write-behind;MODE=MySQL",
+        "orders.write-behind.background-flush=false",
+        "orders.write-behind.batch-size=2",
+        "orders.write-behind.max-pending=3"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(OrderWriteBehind.class)
+public class OrderWriteBehindTest {
+
+    private static final Instant T0 = Instant.parse("2026-01-01T00:00:00.123456Z");
+
+    @Autowired
+    private OrderWriteBehind orderWriteBehind;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Test
+    public void testUpdatesAreCoalescedAndUpserted() {
+        entityManager.persistAndFlush(order("101", Order.OrderStatus.PENDING, "1"));
+
+        orderWriteBehind.enqueue(order("101", Order.OrderStatus.PENDING, "2"));
+        orderWriteBehind.enqueue(order("101", Order.OrderStatus.CANCELLED, "2"));
+        // 撮合引擎尚未寫入的訂單直接新增
+        orderWriteBehind.enqueue(order("102", Order.OrderStatus.CANCELLED, "3"));
+        assertEquals(2, orderWriteBehind.getPendingCount());
+
+        assertEquals(2, orderWriteBehind.flush());
+        assertEquals(0, orderWriteBehind.getPendingCount());
+        assertEquals(0, orderWriteBehind.flush());
+
+        entityManager.clear();
+        Order updated = entityManager.find(Order.class, "101");
+        assertEquals(Order.OrderStatus.CANCELLED, updated.getStatus());
+        assertEquals(0, new BigDecimal("2").compareTo(updated.getQuantity()));
+        assertEquals(T0, updated.getCreatedAt());
+        Order inserted = entityManager.find(Order.class, "102");
+        assertEquals("u1", inserted.getUserId());
+        assertEquals(Order.OrderStatus.CANCELLED, inserted.getStatus());
+    }
+
+    @Test
+    public void testCallerWritesWhenPendingIsFull() {
+        orderWriteBehind.enqueueAll(List.of(order("201", Order.OrderStatus.CANCELLED, "1"),
+                order("202", Order.OrderStatus.CANCELLED, "1")));
+        assertEquals(2, orderWriteBehind.getPendingCount());
+
+        orderWriteBehind.enqueue(order("203", Order.OrderStatus.CANCELLED, "1"));
+        assertEquals(0, orderWriteBehind.getPendingCount());
+
+        entityManager.clear();
+        for (String id : List.of("201", "202", "203")) {
+            assertNotNull(entityManager.find(Order.class, id));
+        }
+    }
+
+    @Test
+    public void testStaleCopyDoesNotOverwriteFill() {
+        // 撮合引擎已寫入部分成交
+        Order filled = order("301", Order.OrderStatus.PARTIALLY_FILLED, "2");
+        filled.setFilledQuantity(new BigDecimal("1"));
+        filled.setUnfilledQuantity(new BigDecimal("1"));
+        entityManager.persistAndFlush(filled);
+
+        // 成交前的副本稍後才寫入
+        orderWriteBehind.enqueue(order("301", Order.OrderStatus.CANCELLED, "2"));
+        assertEquals(1, orderWriteBehind.flush());
+
+        entityManager.clear();
+        Order stored = entityManager.find(Order.class, "301");
+        assertEquals(Order.OrderStatus.PARTIALLY_FILLED, stored.getStatus());
+        assertEquals(0, BigDecimal.ONE.compareTo(stored.getFilledQuantity()));
+    }
+
+    @Test
+    public void testWriteNowReplacesPendingVersion() {
+        orderWriteBehind.enqueue(order("401", Order.OrderStatus.PENDING, "1"));
+        Order modified = order("401", Order.OrderStatus.PENDING, "5");
+        modified.setModifiedAt(T0.plusSeconds(2));
+        orderWriteBehind.writeNow(modified);
+        assertEquals(0, orderWriteBehind.getPendingCount());
+
+        entityManager.clear();
+        assertEquals(0, new BigDecimal("5").compareTo(entityManager.find(Order.class, "401").getQuantity()));
+
+        // 較舊的 modified_at 不會覆蓋
+        orderWriteBehind.enqueue(order("401", Order.OrderStatus.CANCELLED, "1"));
+        orderWriteBehind.flush();
+        entityManager.clear();
+        assertEquals(Order.OrderStatus.PENDING, entityManager.find(Order.class, "401").getStatus());
+    }
+
+    private Order order(String id, Order.OrderStatus status, String quantity) {
+        BigDecimal qty = new BigDecimal(quantity);
+        return new Order(id, "u1", "BTCUSDT", new BigDecimal("50000"), qty, BigDecimal.ZERO, qty,
+                Order.Side.BUY, Order.OrderType.LIMIT, status, null, null, T0, T0, T0.plusSeconds(1));
+    }
+}
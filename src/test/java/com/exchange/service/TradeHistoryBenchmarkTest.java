@@ -0,0 +1,223 @@
+package com.exchange.service;
+
+import com.exchange.dto.TradeHistoryRequest;
+import com.exchange.dto.TradeHistoryResponse;
+import com.exchange.model.Order;
+import com.exchange.model.Trade;
+import com.exchange.repository.OrderRepository;
+import com.exchange.repository.TradeRepository;
+import com.exchange.repository.UserTradeRepository;
+import jakarta.persistence.EntityManager;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.function.ToIntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 在 1,000,000 筆成交（5,000 個用戶、200,000 筆訂單，時間分布在最近 7 天）上比較成交歷史的查詢時間：
+ * legacy 為原本的流程（查出時間範圍內更新過的訂單，逐筆訂單載入 Trade 實體與其 buyOrder / sellOrder，再在記憶體中過濾方向），
+ * firstPage 為目前從用戶成交帳本讀取的第一頁（100 筆），allPages 為沿著游標讀完該用戶所有成交。
+ * 帳本由 UserTradeBackfill 從 trades 回填，同時量測回填時間。
+ * 資料庫為記憶體中的 H2（MySQL 模式），只用來比較兩種存取方式的相對成本，不代表 MySQL 上的絕對時間。
+ * 預設不執行，使用 mvn test -Pbenchmark -Dtest=TradeHistoryBenchmarkTest 執行。
+ */
+@Tag("benchmark")
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:trade-history-benchmark;MODE=MySQL;DB_CLOSE_DELAY=-1",
+        "spring.jpa.hibernate.ddl-auto=create"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+public class TradeHistoryBenchmarkTest {
+
+    private static final int USERS = 5_000;
+    private static final int ORDERS = 200_000;
+    private static final int TRADES = 1_000_000;
+    private static final int BATCH = 10_000;
+    private static final int SAMPLED_USERS = 50;
+    private static final int PAGE_SIZE = 100;
+
+    private static final Instant NOW = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    private static final Instant START = NOW.minus(7, ChronoUnit.DAYS);
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TradeRepository tradeRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private UserTradeRepository userTradeRepository;
+
+    @BeforeAll
+    public void seed() {
+        Random random = new Random(42);
+        long started = System.nanoTime();
+        List<Object[]> orders = new ArrayList<>(BATCH);
+        for (int i = 0; i < ORDERS; i++) {
+            Timestamp time = Timestamp.from(randomTime(random));
+            orders.add(new Object[]{orderId(i), userId(i % USERS), i % 2 == 0 ? "BUY" : "SELL", time, time, time});
+            if (orders.size() == BATCH) {
+                insertOrders(orders);
+            }
+        }
+        insertOrders(orders);
+
+        List<Object[]> trades = new ArrayList<>(BATCH);
+        for (int i = 0; i < TRADES; i++) {
+            // 偶數訂單為買單、奇數為賣單
+            String buyOrderId = orderId(random.nextInt(ORDERS / 2) * 2);
+            String sellOrderId = orderId(random.nextInt(ORDERS / 2) * 2 + 1);
+            boolean buyerIsTaker = random.nextBoolean();
+            trades.add(new Object[]{String.valueOf(1_000_000_000L + i), buyOrderId, sellOrderId, Timestamp.from(randomTime(random)),
+                    buyerIsTaker ? "buy" : "sell", buyerIsTaker ? buyOrderId : sellOrderId});
+            if (trades.size() == BATCH) {
+                insertTrades(trades);
+            }
+        }
+        insertTrades(trades);
+        System.out.printf("Seeded %,d orders and %,d trades in %.1f s%n", ORDERS, TRADES, (System.nanoTime() - started) / 1e9);
+
+        // 以回填工作建立用戶成交帳本
+        started = System.nanoTime();
+        UserTradeBackfill backfill = new UserTradeBackfill(tradeRepository, new UserTradeLedger(jdbcTemplate, orderRepository), 1000);
+        UserTradeBackfill.BackfillResult result = backfill.backfill();
+        System.out.printf("Backfilled %,d ledger rows from %,d trades in %.1f s%n", result.getInserted(), result.getTrades(),
+                (System.nanoTime() - started) / 1e9);
+    }
+
+    @Test
+    public void testTradeHistoryQueryTime() {
+        TradeHistoryServiceImpl service = new TradeHistoryServiceImpl(userTradeRepository);
+        String[] users = new String[SAMPLED_USERS];
+        for (int i = 0; i < SAMPLED_USERS; i++) {
+            users[i] = userId(i * (USERS / SAMPLED_USERS));
+        }
+
+        // 暖機後每個用戶各量一次，並確認兩種方式回傳的成交數相同
+        for (String user : users) {
+            assertEquals(legacy(user).size(), allPages(service, user));
+        }
+        long[] legacy = measure(users, user -> legacy(user).size());
+        long[] firstPage = measure(users, user -> service.getTradeHistory(user, request(null, null)).size());
+        long[] allPages = measure(users, user -> allPages(service, user));
+
+        System.out.printf("Trades per user: %d%n", legacy(users[0]).size());
+        report("legacy (orders + per-order trades)", legacy);
+        report("firstPage (" + PAGE_SIZE + " rows)", firstPage);
+        report("allPages (cursor walk)", allPages);
+        assertTrue(median(firstPage) < median(legacy));
+    }
+
+    // 原本 TradeHistoryServiceImpl 的存取方式。原本的 buyOrder.id = ? OR sellOrder.id = ? 在 MySQL 上走兩個索引合併，
+    // H2 不會合併 OR 兩邊的索引而是全表掃描，因此這裡拆成買方、賣方兩次索引查詢，以免誇大原本流程的成本
+    private List<Trade> legacy(String userId) {
+        List<Order> orders = entityManager.createQuery(
+                        "SELECT o FROM Order o WHERE o.userId = :userId AND o.updatedAt BETWEEN :start AND :end", Order.class)
+                .setParameter("userId", userId).setParameter("start", START).setParameter("end", NOW)
+                .getResultList();
+        List<Trade> trades = new ArrayList<>();
+        for (Order order : orders) {
+            // direction = ALL，買方與賣方的成交都保留
+            trades.addAll(entityManager.createQuery("SELECT t FROM Trade t WHERE t.buyOrder.id = :orderId", Trade.class)
+                    .setParameter("orderId", order.getId()).getResultList());
+            trades.addAll(entityManager.createQuery("SELECT t FROM Trade t WHERE t.sellOrder.id = :orderId", Trade.class)
+                    .setParameter("orderId", order.getId()).getResultList());
+        }
+        entityManager.clear();
+        return trades;
+    }
+
+    private int allPages(TradeHistoryServiceImpl service, String userId) {
+        int count = 0;
+        List<TradeHistoryResponse> page = service.getTradeHistory(userId, request(null, null));
+        while (true) {
+            count += page.size();
+            if (page.size() < PAGE_SIZE) {
+                return count;
+            }
+            TradeHistoryResponse last = page.get(page.size() - 1);
+            page = service.getTradeHistory(userId, request(last.getTradeTime(), last.getTradeId()));
+        }
+    }
+
+    private TradeHistoryRequest request(Instant beforeTradeTime, String beforeId) {
+        TradeHistoryRequest request = new TradeHistoryRequest();
+        request.setStartTime(START);
+        request.setEndTime(NOW);
+        request.setDirection(TradeHistoryRequest.TradeDirection.ALL);
+        request.setBeforeTradeTime(beforeTradeTime);
+        request.setBeforeId(beforeId);
+        request.setLimit(PAGE_SIZE);
+        return request;
+    }
+
+    private long[] measure(String[] users, ToIntFunction<String> call) {
+        long[] nanos = new long[users.length];
+        for (int i = 0; i < users.length; i++) {
+            long start = System.nanoTime();
+            call.applyAsInt(users[i]);
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private void report(String name, long[] sorted) {
+        System.out.printf("%-36s p50 %8.2f ms, p90 %8.2f ms, max %8.2f ms%n", name,
+                median(sorted) / 1e6, sorted[(int) Math.ceil(0.9 * sorted.length) - 1] / 1e6, sorted[sorted.length - 1] / 1e6);
+    }
+
+    private long median(long[] sorted) {
+        return sorted[sorted.length / 2];
+    }
+
+    private void insertOrders(List<Object[]> rows) {
+        jdbcTemplate.batchUpdate("INSERT INTO orders (id, user_id, symbol, price, quantity, filled_quantity, unfilled_quantity, " +
+                "side, order_type, status, created_at, updated_at, modified_at) " +
+                "VALUES (?, ?, 'BTCUSDT', 50000, 1, 0, 1, ?, 'LIMIT', 'PENDING', ?, ?, ?)", rows);
+        rows.clear();
+    }
+
+    private void insertTrades(List<Object[]> rows) {
+        jdbcTemplate.batchUpdate("INSERT INTO trades (id, buy_order_id, sell_order_id, symbol, price, quantity, trade_time, " +
+                "direction, taker_order_id) VALUES (?, ?, ?, 'BTCUSDT', 50000, 0.1, ?, ?, ?)", rows);
+        rows.clear();
+    }
+
+    private static Instant randomTime(Random random) {
+        return START.plusMillis(1 + (long) (random.nextDouble() * (ChronoUnit.DAYS.getDuration().toMillis() * 7 - 2)));
+    }
+
+    private static String orderId(int i) {
+        return String.valueOf(100_000_000L + i);
+    }
+
+    private static String userId(int i) {
+        return String.valueOf(10_000L + i);
+    }
+}
@@ -0,0 +1,105 @@
+package com.exchange.service;
+
+import com.exchange.dto.TradeHistoryRequest;
+import com.exchange.dto.TradeHistoryResponse;
+import com.exchange.model.Order;
+import com.exchange.model.UserTrade;
+import com.exchange.repository.UserTradeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.springframework.data.domain.Pageable;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+public class TradeHistoryServiceImplTest {
+
+    private static final Instant START = Instant.parse("2026-01-01T00:00:00Z");
+    private static final Instant END = Instant.parse("2026-01-08T00:00:00Z");
+
+    @Mock
+    private UserTradeRepository userTradeRepository;
+
+    @InjectMocks
+    private TradeHistoryServiceImpl tradeHistoryService;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+    }
+
+    @Test
+    public void testDirectionIsFilteredByTheQuery() {
+        when(userTradeRepository.findUserTrades(eq("u1"), eq(Order.Side.BUY), eq(START), eq(END), isNull(), isNull(), any(Pageable.class)))
+                .thenReturn(List.of(row("t1", Order.Side.BUY, "TAKER", 1)));
+
+        List<TradeHistoryResponse> history = tradeHistoryService.getTradeHistory("u1", request(TradeHistoryRequest.TradeDirection.BUY, 100));
+
+        assertEquals(1, history.size());
+        TradeHistoryResponse trade = history.get(0);
+        assertEquals("t1", trade.getTradeId());
+        assertEquals("BUY", trade.getDirection());
+        assertEquals("TAKER", trade.getRole());
+        assertEquals(0, new BigDecimal("5000").compareTo(trade.getTotalAmount()));
+    }
+
+    @Test
+    public void testAllReadsOnePageWithoutSideFilter() {
+        when(userTradeRepository.findUserTrades(any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(List.of(row("t4", Order.Side.BUY, "MAKER", 4), row("t3", Order.Side.SELL, "TAKER", 3),
+                        row("t2", Order.Side.SELL, "MAKER", 2), row("t1", Order.Side.BUY, "TAKER", 1)));
+
+        List<TradeHistoryResponse> history = tradeHistoryService.getTradeHistory("u1", request(TradeHistoryRequest.TradeDirection.ALL, 3));
+
+        ArgumentCaptor<Pageable> page = ArgumentCaptor.forClass(Pageable.class);
+        verify(userTradeRepository).findUserTrades(eq("u1"), isNull(), eq(START), eq(END), isNull(), isNull(), page.capture());
+        assertEquals(4, page.getValue().getPageSize());
+        assertEquals(List.of("t4", "t3", "t2"), history.stream().map(TradeHistoryResponse::getTradeId).toList());
+        assertEquals(List.of("BUY", "SELL", "SELL"), history.stream().map(TradeHistoryResponse::getDirection).toList());
+        assertEquals(List.of("MAKER", "TAKER", "MAKER"), history.stream().map(TradeHistoryResponse::getRole).toList());
+    }
+
+    @Test
+    public void testSelfTradeIsNotSplitAcrossPages() {
+        // 用戶自己的買單與賣單互相成交，帳本中買賣各一列
+        when(userTradeRepository.findUserTrades(any(), any(), any(), any(), any(), any(), any()))
+                .thenReturn(List.of(row("t2", Order.Side.BUY, "MAKER", 2), row("t2", Order.Side.SELL, "TAKER", 2)));
+
+        List<TradeHistoryResponse> history = tradeHistoryService.getTradeHistory("u1", request(TradeHistoryRequest.TradeDirection.ALL, 1));
+
+        assertEquals(List.of("t2", "t2"), history.stream().map(TradeHistoryResponse::getTradeId).toList());
+        assertEquals(List.of("BUY", "SELL"), history.stream().map(TradeHistoryResponse::getDirection).toList());
+    }
+
+    private TradeHistoryRequest request(TradeHistoryRequest.TradeDirection direction, int limit) {
+        TradeHistoryRequest request = new TradeHistoryRequest();
+        request.setStartTime(START);
+        request.setEndTime(END);
+        request.setDirection(direction);
+        request.setLimit(limit);
+        return request;
+    }
+
+    private UserTrade row(String tradeId, Order.Side side, String role, int seconds) {
+        UserTrade row = new UserTrade();
+        row.setTradeId(tradeId);
+        row.setSide(side);
+        row.setUserId("u1");
+        row.setOrderId(side == Order.Side.BUY ? "101" : "102");
+        row.setSymbol("BTCUSDT");
+        row.setRole(role);
+        row.setPrice(new BigDecimal("50000"));
+        row.setQuantity(new BigDecimal("0.1"));
+        row.setTradeTime(START.plusSeconds(seconds));
+        return row;
+    }
+}
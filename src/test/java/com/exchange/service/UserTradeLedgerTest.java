@@ -0,0 +1,145 @@
+package com.exchange.service;
+
+import com.exchange.model.Order;
+import com.exchange.model.Trade;
+import com.exchange.model.UserTrade;
+import com.exchange.repository.UserTradeRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 用戶成交帳本的寫入與回填（內嵌 H2，MySQL 模式）。
+ */
+@DataJpaTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:user-trade-ledger;MODE=MySQL",
+        "user-trades.backfill.enabled=true",
+        "user-trades.backfill.batch-size=2"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({UserTradeLedger.class, UserTradeBackfill.class})
+public class UserTradeLedgerTest {
+
+    private static final Instant T0 = Instant.parse("2026-01-01T00:00:00.123456Z");
+
+    @Autowired
+    private UserTradeLedger userTradeLedger;
+
+    @Autowired
+    private UserTradeBackfill userTradeBackfill;
+
+    @Autowired
+    private UserTradeRepository userTradeRepository;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    private Order buy;
+    private Order sell;
+    private Order otherSell;
+
+    @BeforeEach
+    public void setup() {
+        buy = order("101", "u1", Order.Side.BUY);
+        sell = order("102", "u1", Order.Side.SELL);
+        otherSell = order("202", "u2", Order.Side.SELL);
+        entityManager.flush();
+    }
+
+    @Test
+    public void testAppendWritesBothSidesOnce() {
+        // Kafka 訊息中的訂單只有 ID 時，從 orders 查出用戶
+        Trade trade = trade("t1", idOnly("101"), idOnly("202"), "202", T0);
+
+        assertEquals(2, userTradeLedger.append(List.of(trade)));
+        assertEquals(0, userTradeLedger.append(List.of(trade)));
+
+        UserTrade buyer = find("t1", Order.Side.BUY);
+        assertEquals("u1", buyer.getUserId());
+        assertEquals("101", buyer.getOrderId());
+        assertEquals("MAKER", buyer.getRole());
+        assertEquals(T0, buyer.getTradeTime());
+        assertEquals(0, new BigDecimal("50000").compareTo(buyer.getPrice()));
+        UserTrade seller = find("t1", Order.Side.SELL);
+        assertEquals("u2", seller.getUserId());
+        assertEquals("TAKER", seller.getRole());
+    }
+
+    @Test
+    public void testAppendReturnsTradesWithUnknownOrders() {
+        Trade unknown = trade("t1", idOnly("999"), sell, "999", T0);
+        Trade known = trade("t2", buy, sell, "101", T0);
+
+        List<Trade> unresolved = new ArrayList<>();
+        assertEquals(2, userTradeLedger.append(List.of(unknown, known), unresolved));
+        assertEquals(List.of(unknown), unresolved);
+        assertEquals(2, userTradeRepository.count());
+
+        // 訂單寫入後重試即可補上
+        order("999", "u3", Order.Side.BUY);
+        entityManager.flush();
+        unresolved = new ArrayList<>();
+        assertEquals(2, userTradeLedger.append(List.of(unknown), unresolved));
+        assertTrue(unresolved.isEmpty());
+        assertEquals("u3", find("t1", Order.Side.BUY).getUserId());
+    }
+
+    @Test
+    public void testBackfillIsRepeatable() {
+        for (int i = 1; i <= 5; i++) {
+            entityManager.persist(trade("t" + i, buy, i % 2 == 0 ? sell : otherSell, "101", T0.plusSeconds(i)));
+        }
+        entityManager.flush();
+        // 已由即時寫入的成交不會重複
+        userTradeLedger.append(List.of(trade("t3", buy, otherSell, "101", T0.plusSeconds(3))));
+
+        UserTradeBackfill.BackfillResult result = userTradeBackfill.backfill();
+        assertEquals(5, result.getTrades());
+        assertEquals(8, result.getInserted());
+        assertEquals(10, userTradeRepository.count());
+        assertEquals(0, userTradeBackfill.backfill().getInserted());
+    }
+
+    private UserTrade find(String tradeId, Order.Side side) {
+        return userTradeRepository.findAll().stream()
+                .filter(row -> row.getTradeId().equals(tradeId) && row.getSide() == side)
+                .findFirst().orElseThrow();
+    }
+
+    private Order idOnly(String id) {
+        Order order = new Order();
+        order.setId(id);
+        return order;
+    }
+
+    private Order order(String id, String userId, Order.Side side) {
+        Order order = new Order(id, userId, "BTCUSDT", new BigDecimal("50000"), BigDecimal.ONE, BigDecimal.ZERO, BigDecimal.ONE,
+                side, Order.OrderType.LIMIT, Order.OrderStatus.PENDING, null, null, T0, T0, T0);
+        return entityManager.persist(order);
+    }
+
+    private Trade trade(String id, Order buyOrder, Order sellOrder, String takerOrderId, Instant tradeTime) {
+        Trade trade = new Trade();
+        trade.setId(id);
+        trade.setBuyOrder(buyOrder);
+        trade.setSellOrder(sellOrder);
+        trade.setSymbol("BTCUSDT");
+        trade.setPrice(new BigDecimal("50000"));
+        trade.setQuantity(new BigDecimal("0.1"));
+        trade.setTradeTime(tradeTime);
+        trade.setDirection(takerOrderId.equals(buyOrder.getId()) ? "buy" : "sell");
+        trade.setTakerOrderId(takerOrderId);
+        return trade;
+    }
+}
@@ -0,0 +1,110 @@
+package com.exchange.utils;
+
+import io.jsonwebtoken.Claims;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JwtUtilTest {
+
+    private static final String SECRET = "UZ9+ZK8sCh/iR5qnbNBq9Kt5dSQdUd24jggr0zzTiE4=";
+    private static final String OTHER_SECRET = "c2VjcmV0LWZvci1hLWRpZmZlcmVudC1zaWduaW5nLWtleQ==";
+
+    @Test
+    public void testVerifiedClaimsAreCached() {
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 60_000, 10, new MutableClock());
+        String token = jwtUtil.generateToken("1838029004616110080", "alice");
+
+        Claims claims = jwtUtil.extractAllClaims(token);
+        assertEquals("alice", claims.get("username", String.class));
+        assertEquals("1838029004616110080", claims.get("userId", String.class));
+        // 之後的呼叫取用同一份已驗證的 claims
+        assertSame(claims, jwtUtil.extractAllClaims(token));
+        assertEquals(1, jwtUtil.cacheSize());
+    }
+
+    @Test
+    public void testExpiredTokenIsRejectedAndEvicted() {
+        MutableClock clock = new MutableClock();
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 60_000, 10, clock);
+        String token = jwtUtil.generateToken("1", "alice");
+        assertNotNull(jwtUtil.extractAllClaims(token));
+
+        clock.advance(Duration.ofSeconds(61));
+
+        assertNull(jwtUtil.extractAllClaims(token));
+        assertEquals(0, jwtUtil.cacheSize());
+    }
+
+    @Test
+    public void testInvalidTokensAreNotCached() {
+        MutableClock clock = new MutableClock();
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 60_000, 10, clock);
+        String forged = new JwtUtil(OTHER_SECRET, 60_000, 10, clock).generateToken("1", "mallory");
+
+        assertNull(jwtUtil.extractAllClaims(forged));
+        assertNull(jwtUtil.extractAllClaims("not-a-jwt"));
+        assertNull(jwtUtil.extractAllClaims(null));
+        assertEquals(0, jwtUtil.cacheSize());
+    }
+
+    @Test
+    public void testCacheIsBounded() {
+        MutableClock clock = new MutableClock();
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 60_000, 2, clock);
+        for (int i = 0; i < 5; i++) {
+            // 每個 token 的簽發時間不同
+            clock.advance(Duration.ofSeconds(1));
+            assertNotNull(jwtUtil.extractAllClaims(jwtUtil.generateToken(String.valueOf(i), "user" + i)));
+        }
+        assertEquals(2, jwtUtil.cacheSize());
+    }
+
+    @Test
+    public void testEvictionRemovesSoonestExpiringTokens() {
+        MutableClock clock = new MutableClock();
+        JwtUtil jwtUtil = new JwtUtil(SECRET, 60_000, 10, clock);
+        String first = jwtUtil.generateToken("0", "user0");
+        Claims firstClaims = jwtUtil.extractAllClaims(first);
+        String last = null;
+        for (int i = 1; i <= 10; i++) {
+            clock.advance(Duration.ofSeconds(1));
+            last = jwtUtil.generateToken(String.valueOf(i), "user" + i);
+            jwtUtil.extractAllClaims(last);
+        }
+
+        // 超過上限後降到九成，最早過期的 token 被移除，較新的 token 仍在快取中
+        assertEquals(9, jwtUtil.cacheSize());
+        Claims lastClaims = jwtUtil.extractAllClaims(last);
+        assertSame(lastClaims, jwtUtil.extractAllClaims(last));
+        assertNotSame(firstClaims, jwtUtil.extractAllClaims(first));
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2026-01-01T00:00:00Z");
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public ZoneOffset getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(java.time.ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.exchange.utils;
+
+import com.exchange.model.Order;
+import net.jqwik.api.Example;
+import net.jqwik.api.ForAll;
+import net.jqwik.api.Property;
+import net.jqwik.api.constraints.BigRange;
+import net.jqwik.api.constraints.LongRange;
+import net.jqwik.api.constraints.Scale;
+
+import java.math.BigDecimal;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PriceTimeKeyTest {
+
+    // 舊格式：price * 10^7 ± epochMillis；買單由大到小、賣單由小到大撮合
+    private static BigDecimal legacyExactScore(Order.Side side, BigDecimal price, long millis) {
+        BigDecimal pricePart = price.movePointRight(7);
+        return side == Order.Side.BUY ? pricePart.subtract(BigDecimal.valueOf(millis)) : pricePart.add(BigDecimal.valueOf(millis));
+    }
+
+    private static double legacyDoubleScore(Order.Side side, BigDecimal price, long millis) {
+        return legacyExactScore(side, price, millis).doubleValue();
+    }
+
+    // 小於 0 表示第一筆先撮合
+    private static int legacyPriority(Order.Side side, BigDecimal p1, long t1, BigDecimal p2, long t2) {
+        int compare = legacyExactScore(side, p1, t1).compareTo(legacyExactScore(side, p2, t2));
+        return side == Order.Side.BUY ? -compare : compare;
+    }
+
+    private static int keyPriority(Order.Side side, BigDecimal p1, long t1, BigDecimal p2, long t2) {
+        String k1 = PriceTimeKey.encode(side, PriceTimeKey.toTicks(p1), t1);
+        String k2 = PriceTimeKey.encode(side, PriceTimeKey.toTicks(p2), t2);
+        return Integer.signum(k1.compareTo(k2));
+    }
+
+    @Property
+    public void keyOrderIsPriceThenTimePriority(
+            @ForAll Order.Side side,
+            @ForAll @BigRange(min = "0.00000001", max = "10000000") @Scale(8) BigDecimal p1,
+            @ForAll @LongRange(min = 1_600_000_000_000L, max = 1_900_000_000_000L) long t1,
+            @ForAll @BigRange(min = "0.00000001", max = "10000000") @Scale(8) BigDecimal p2,
+            @ForAll @LongRange(min = 1_600_000_000_000L, max = 1_900_000_000_000L) long t2) {
+        int priceOrder = side == Order.Side.BUY ? p2.compareTo(p1) : p1.compareTo(p2);
+        int expected = priceOrder != 0 ? Integer.signum(priceOrder) : Long.signum(Long.compare(t1, t2));
+        assertEquals(expected, keyPriority(side, p1, t1, p2, t2));
+    }
+
+    // 舊 score 在價格差距大於時間差（價差 * 10^7 > 毫秒差）或同價位時是價格-時間優先，這個範圍內兩者順序一致
+    @Property
+    public void keyOrderMatchesLegacyWhereLegacyIsPriceTime(
+            @ForAll Order.Side side,
+            @ForAll @BigRange(min = "1", max = "200000") @Scale(8) BigDecimal p1,
+            @ForAll @LongRange(min = 1_700_000_000_000L, max = 1_700_000_100_000L) long t1,
+            @ForAll @BigRange(min = "1", max = "200000") @Scale(8) BigDecimal p2,
+            @ForAll @LongRange(min = 1_700_000_000_000L, max = 1_700_000_100_000L) long t2,
+            @ForAll boolean samePrice) {
+        BigDecimal second = samePrice ? p1 : p2;
+        BigDecimal priceGap = p1.subtract(second).abs().movePointRight(7);
+        if (!samePrice && priceGap.compareTo(BigDecimal.valueOf(Math.abs(t1 - t2))) <= 0) {
+            return;
+        }
+        assertEquals(Integer.signum(legacyPriority(side, p1, t1, second, t2)), keyPriority(side, p1, t1, second, t2));
+    }
+
+    @Property
+    public void memberRoundTrip(
+            @ForAll Order.Side side,
+            @ForAll @BigRange(min = "0", max = "90000000000") @Scale(8) BigDecimal price,
+            @ForAll @LongRange(min = 0, max = Long.MAX_VALUE) long sequence) {
+        long ticks = PriceTimeKey.toTicks(price);
+        String member = PriceTimeKey.member(side, ticks, sequence, "{\"id\":\"1\"}");
+
+        assertEquals(ticks, PriceTimeKey.ticks(side, member));
+        assertEquals(sequence, PriceTimeKey.sequence(member));
+        assertEquals(0, price.compareTo(PriceTimeKey.fromTicks(ticks)));
+        assertEquals("{\"id\":\"1\"}", PriceTimeKey.body(member));
+        // ZRANGEBYLEX 的價位範圍剛好包含這個價位
+        assertTrue(member.compareTo(PriceTimeKey.levelMin(side, ticks).substring(1)) >= 0);
+        String max = PriceTimeKey.levelMax(side, ticks);
+        assertTrue("+".equals(max) || member.compareTo(max.substring(1)) < 0);
+    }
+
+    @Example
+    public void legacyScoreCollidesAcrossPriceAndTime() {
+        long time = 1_700_000_000_000L;
+        BigDecimal lower = new BigDecimal("65000.0000");
+        BigDecimal higher = new BigDecimal("65000.0001");
+        // 價差 0.0001 * 10^7 等於 1 秒的毫秒數：晚 1 秒的低價賣單與高價賣單 score 相同
+        assertEquals(legacyDoubleScore(Order.Side.SELL, lower, time + 1000), legacyDoubleScore(Order.Side.SELL, higher, time));
+        assertEquals(-1, keyPriority(Order.Side.SELL, lower, time + 1000, higher, time));
+    }
+
+    @Example
+    public void legacyDoubleScoreLosesTicksAtLargePrices() {
+        long time = 1_700_000_000_000L;
+        BigDecimal price = new BigDecimal("2000000000.00000000");
+        BigDecimal nextTick = price.add(new BigDecimal("0.00000001"));
+        // price * 10^7 超過 2^53 後 double 無法區分相鄰的 tick
+        assertEquals(legacyDoubleScore(Order.Side.BUY, price, time), legacyDoubleScore(Order.Side.BUY, nextTick, time));
+        assertEquals(1, keyPriority(Order.Side.BUY, price, time, nextTick, time));
+    }
+
+    @Example
+    public void rejectsPricesFinerThanTick() {
+        assertThrows(IllegalArgumentException.class, () -> PriceTimeKey.toTicks(new BigDecimal("1.000000001")));
+        assertThrows(IllegalArgumentException.class, () -> PriceTimeKey.toTicks(new BigDecimal("-1")));
+        assertEquals(150_000_000L, PriceTimeKey.toTicks(new BigDecimal("1.50")));
+    }
+}
@@ -0,0 +1,86 @@
+package com.exchange.utils;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 64 執行緒競爭下的雪花 ID 產生速度：CAS 版本（nextId / nextIds(64)）與原本 synchronized 版本的對照。
+ * 每個 worker 每毫秒最多 4096 個 ID，吞吐量上限約 4.1 個/µs，兩者都會到達上限；差別在於等待時間的分布（SampleTime）。
+ * 預設不執行，使用 mvn test -Pbenchmark -Dtest=SnowflakeIdGeneratorBenchmark 執行。
+ */
+@Tag("benchmark")
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SnowflakeIdGeneratorBenchmark {
+
+    private final SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 1);
+    private final LockedSnowflake locked = new LockedSnowflake();
+
+    @Benchmark
+    public long casNextId() {
+        return generator.nextId();
+    }
+
+    // 每次操作取得 64 個 ID
+    @Benchmark
+    public long[] casNextIds64() {
+        return generator.nextIds(64);
+    }
+
+    @Benchmark
+    public long synchronizedNextId() {
+        return locked.nextId();
+    }
+
+    @Test
+    public void runUnder64Threads() throws Exception {
+        Options options = new OptionsBuilder()
+                .include(SnowflakeIdGeneratorBenchmark.class.getSimpleName())
+                .threads(64)
+                .forks(0)  // surefire 的 classpath 無法直接交給 fork 出來的 JVM
+                .warmupIterations(2)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(3)
+                .measurementTime(TimeValue.seconds(2))
+                .build();
+        new Runner(options).run();
+    }
+
+    // 原本的實作：synchronized，序號用完時在鎖內自旋等下一毫秒
+    static class LockedSnowflake {
+        private long lastTimestamp = -1L;
+        private long sequence = 0L;
+
+        synchronized long nextId() {
+            long timestamp = System.currentTimeMillis();
+            if (timestamp < lastTimestamp) {
+                throw new IllegalStateException("Clock moved backwards");
+            }
+            if (lastTimestamp == timestamp) {
+                sequence = (sequence + 1) & 4095;
+                if (sequence == 0) {
+                    while (timestamp <= lastTimestamp) {
+                        timestamp = System.currentTimeMillis();
+                    }
+                }
+            } else {
+                sequence = 0L;
+            }
+            lastTimestamp = timestamp;
+            return ((timestamp - 1288834974657L) << 22) | (1L << 17) | (1L << 12) | sequence;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.exchange.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnowflakeIdGeneratorTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+
+    @Test
+    public void testNextIds_UniqueAndIncreasingAcrossSequenceRollover() {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 1);
+        long before = generator.nextId();
+
+        // 超過單一毫秒 4096 個序號，需要跨毫秒
+        long[] ids = generator.nextIds(10_000);
+
+        Set<Long> unique = new HashSet<>();
+        long previous = before;
+        for (long id : ids) {
+            assertTrue(id > previous);
+            assertTrue(unique.add(id));
+            previous = id;
+        }
+        assertTrue(generator.nextId() > previous);
+    }
+
+    @Test
+    public void testSmallClockRegressionBorrowsFromSequence() {
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(3, 2, 1000, clock::get);
+        long first = generator.nextId();
+
+        // 時鐘倒退 500ms：沿用上次的時間繼續遞增，不拋出例外
+        clock.addAndGet(-500);
+        long second = generator.nextId();
+        assertTrue(second > first);
+        assertEquals(first >>> 22, second >>> 22);
+        assertEquals(2, (second >> 17) & 31);
+        assertEquals(3, (second >> 12) & 31);
+
+        // 時鐘追上後回到正常的時間戳
+        clock.set(NOW + 10);
+        assertEquals(((NOW + 10 - 1288834974657L) << 22) | (2L << 17) | (3L << 12), generator.nextId());
+    }
+
+    @Test
+    public void testLargeClockRegressionIsRejected() {
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 1, 1000, clock::get);
+        generator.nextId();
+
+        clock.addAndGet(-5_000);
+        assertThrows(IllegalStateException.class, generator::nextId);
+    }
+
+    @Test
+    public void testRefusesIdsOnceLeaseHasExpired() {
+        AtomicLong clock = new AtomicLong(NOW);
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 1, 1000, clock::get);
+        generator.setLeaseExpiresAt(NOW + 100);
+        generator.nextId();
+
+        // 租約未續約：到期後不再發號
+        clock.set(NOW + 100);
+        assertThrows(IllegalStateException.class, generator::nextId);
+
+        // 續約成功後恢復
+        generator.setLeaseExpiresAt(NOW + 30_000);
+        assertEquals(NOW + 100 - 1288834974657L, generator.nextId() >>> 22);
+    }
+
+    @Test
+    public void testConcurrentCallersNeverCollide() throws Exception {
+        SnowflakeIdGenerator generator = new SnowflakeIdGenerator(1, 1);
+        Set<Long> ids = ConcurrentHashMap.newKeySet();
+        ExecutorService executor = Executors.newFixedThreadPool(16);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 16; t++) {
+                boolean blocks = t % 2 == 0;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 2_000; i++) {
+                        if (blocks) {
+                            for (long id : generator.nextIds(8)) {
+                                assertTrue(ids.add(id));
+                            }
+                        } else {
+                            assertTrue(ids.add(generator.nextId()));
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertEquals(8 * 2_000 * 8 + 8 * 2_000, ids.size());
+    }
+}
@@ -0,0 +1,213 @@
+package com.exchange.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.Principal;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 單一 symbol 一萬個以上訂閱者的廣播壓力測試。預設不執行，使用 mvn test -Pbenchmark 執行。
+ */
+@Tag("benchmark")
+public class BroadcastEngineLoadTest {
+
+    private static final int SUBSCRIBERS = 10_000;
+    private static final int EVENTS = 200;
+    private static final String CHANNEL = "recent-trades:BTCUSDT";
+
+    private BroadcastEngine engine;
+
+    @AfterEach
+    public void teardown() {
+        engine.shutdown();
+    }
+
+    @Test
+    public void testBroadcastThroughput_10kSubscribers() throws Exception {
+        engine = new BroadcastEngine(new ObjectMapper(), 8, EVENTS, SUBSCRIBERS * 2);
+        LongAdder sent = new LongAdder();
+        for (int i = 0; i < SUBSCRIBERS; i++) {
+            engine.subscribe(CHANNEL, fakeSession("s" + i, sent, 0));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < EVENTS; i++) {
+            engine.broadcast(CHANNEL, trade(i));
+        }
+        long publishedNanos = System.nanoTime() - start;
+        long expected = (long) SUBSCRIBERS * EVENTS;
+        awaitCount(sent, expected, 60);
+        long totalNanos = System.nanoTime() - start;
+
+        System.out.printf("broadcast: %d subscribers x %d events, publish %.1f ms, delivered %d msgs in %.1f ms (%.0f msgs/s)%n",
+                SUBSCRIBERS, EVENTS, publishedNanos / 1e6, sent.sum(), totalNanos / 1e6,
+                sent.sum() / (totalNanos / 1e9));
+        assertEquals(expected, sent.sum());
+        assertEquals(EVENTS, ((Number) engine.getStats().get("publishedFrames")).longValue());
+    }
+
+    @Test
+    public void testSlowConsumersDoNotDelayOthers() throws Exception {
+        engine = new BroadcastEngine(new ObjectMapper(), 8, 16, SUBSCRIBERS * 2);
+        LongAdder fastSent = new LongAdder();
+        LongAdder slowSent = new LongAdder();
+        // 少數每則訊息要 50ms 的慢速連線，只會丟棄自己的訊息
+        for (int i = 0; i < 4; i++) {
+            engine.subscribe(CHANNEL, fakeSession("slow" + i, slowSent, 50));
+        }
+        int fastSubscribers = 2_000;
+        for (int i = 0; i < fastSubscribers; i++) {
+            engine.subscribe(CHANNEL, fakeSession("fast" + i, fastSent, 0));
+        }
+
+        int events = 16;
+        for (int i = 0; i < events; i++) {
+            engine.broadcast(CHANNEL, trade(i));
+        }
+        awaitCount(fastSent, (long) fastSubscribers * events, 30);
+
+        assertEquals((long) fastSubscribers * events, fastSent.sum());
+        // 慢速連線還沒送完，但快速連線已全部送達
+        assertTrue(slowSent.sum() < 4L * events);
+    }
+
+    private WebSocketSession fakeSession(String id, LongAdder sent, long delayMillis) {
+        return new CountingSession(id, sent, delayMillis);
+    }
+
+    private Map<String, Object> trade(int i) {
+        Map<String, Object> trade = new LinkedHashMap<>();
+        trade.put("id", String.valueOf(i));
+        trade.put("symbol", "BTCUSDT");
+        trade.put("price", "50000.5");
+        trade.put("quantity", "0.01");
+        return trade;
+    }
+
+    private void awaitCount(LongAdder counter, long expected, int timeoutSeconds) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        while (counter.sum() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    // 只計算送出訊息數的輕量 session，避免 mock 本身的開銷影響測量結果
+    private static class CountingSession implements WebSocketSession {
+        private final String id;
+        private final LongAdder sent;
+        private final long delayMillis;
+
+        CountingSession(String id, LongAdder sent, long delayMillis) {
+            this.id = id;
+            this.sent = sent;
+            this.delayMillis = delayMillis;
+        }
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) throws IOException {
+            if (delayMillis > 0) {
+                try {
+                    Thread.sleep(delayMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException(e);
+                }
+            }
+            sent.increment();
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public URI getUri() {
+            return null;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return new HashMap<>();
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return 0;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return 0;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.exchange.websocket;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.socket.WebSocketSession;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class BroadcastEngineTest {
+
+    private BroadcastEngine engine;
+
+    @BeforeEach
+    public void setup() {
+        engine = new BroadcastEngine(new ObjectMapper(), 1, 4, 16);
+    }
+
+    @AfterEach
+    public void teardown() {
+        engine.shutdown();
+    }
+
+    @Test
+    public void testChannelRemovedWhenLastSubscriberLeaves() {
+        WebSocketSession first = session("s1");
+        WebSocketSession second = session("s2");
+        engine.subscribe("kline:BTCUSDT:1m", first);
+        engine.subscribe("kline:BTCUSDT:1m", second);
+        engine.subscribe("kline:BTCUSDT:5m", first);
+        assertEquals(2, engine.getStats().get("channels"));
+
+        engine.unsubscribe("kline:BTCUSDT:5m", first);
+        assertFalse(engine.hasSubscribers("kline:BTCUSDT:5m"));
+        assertTrue(engine.hasSubscribers("kline:BTCUSDT:1m"));
+
+        // 連線關閉後不留下空頻道
+        engine.unregister(first);
+        engine.unregister(second);
+        assertEquals(0, engine.getStats().get("channels"));
+        assertEquals(0, engine.broadcast("kline:BTCUSDT:1m", "trade"));
+    }
+
+    private WebSocketSession session(String id) {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn(id);
+        when(session.isOpen()).thenReturn(true);
+        return session;
+    }
+}
@@ -0,0 +1,144 @@
+package com.exchange.websocket;
+
+import com.exchange.service.CandleAggregator;
+import com.exchange.service.KlineCache;
+import com.exchange.service.KlineEncoder;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class KlineWebSocketHandlerTest {
+
+    @Mock
+    private BroadcastEngine broadcastEngine;
+
+    @Mock
+    private KlineCache klineCache;
+
+    @Mock
+    private CandleAggregator candleAggregator;
+
+    @Spy
+    private ObjectMapper objectMapper = new ObjectMapper();
+
+    @Spy
+    private KlineEncoder klineEncoder = new KlineEncoder(new ObjectMapper());
+
+    @InjectMocks
+    private KlineWebSocketHandler klineWebSocketHandler;
+
+    private WebSocketSession session;
+
+    @BeforeEach
+    public void setup() {
+        MockitoAnnotations.openMocks(this);
+        session = mock(WebSocketSession.class);
+        when(session.getUri()).thenReturn(URI.create("ws://localhost/ws/kline?symbol=BTCUSDT&timeFrame=1m"));
+        when(klineCache.isSupported("BTCUSDT")).thenReturn(true);
+        when(broadcastEngine.hasSubscribers(startsWith("kline:BTCUSDT"))).thenReturn(true);
+    }
+
+    @Test
+    public void testConnect_SubscribesToRequestedSymbolAndTimeFrame() throws Exception {
+        klineWebSocketHandler.afterConnectionEstablished(session);
+
+        verify(broadcastEngine).subscribe("kline:BTCUSDT:1m", session);
+        // 歷史K線與當前K棒都經過同一個發送佇列
+        verify(broadcastEngine).send(eq(session), any(TextMessage.class));
+        verify(broadcastEngine).send(eq(session), any(Object.class));
+    }
+
+    @Test
+    public void testBroadcast_OnlyToSubscribedChannels() throws Exception {
+        klineWebSocketHandler.afterConnectionEstablished(session);
+        klineWebSocketHandler.handleTextMessage(session,
+                new TextMessage("{\"type\":\"subscribe\",\"symbol\":\"BTCUSDT\",\"timeFrame\":\"5m\"}"));
+
+        klineWebSocketHandler.broadcastKlineUpdate("BTCUSDT", new BigDecimal("50000"), Instant.now());
+        klineWebSocketHandler.broadcastKlineUpdate("ETHUSDT", new BigDecimal("3000"), Instant.now());
+
+        verify(broadcastEngine).broadcast(eq("kline:BTCUSDT:1m"), any());
+        verify(broadcastEngine).broadcast(eq("kline:BTCUSDT:5m"), any());
+        // 沒有人訂閱的交易對不會推送
+        verify(broadcastEngine, never()).broadcast(startsWith("kline:ETHUSDT"), any());
+    }
+
+    @Test
+    public void testUnsubscribe_RemovesChannel() throws Exception {
+        klineWebSocketHandler.handleTextMessage(session,
+                new TextMessage("{\"type\":\"unsubscribe\",\"symbol\":\"BTCUSDT\",\"timeFrame\":\"1m\"}"));
+
+        verify(broadcastEngine).unsubscribe("kline:BTCUSDT:1m", session);
+        verify(broadcastEngine, never()).subscribe(anyString(), any());
+    }
+
+    @Test
+    public void testSubscribe_RejectsUnsupportedTimeFrame() throws Exception {
+        klineWebSocketHandler.handleTextMessage(session,
+                new TextMessage("{\"type\":\"subscribe\",\"symbol\":\"BTCUSDT\",\"timeFrame\":\"2m\"}"));
+
+        // 不支援的時間框架不會默默改用 1m
+        verify(broadcastEngine, never()).subscribe(anyString(), any());
+        verify(broadcastEngine).send(eq(session), any(Object.class));
+    }
+
+    @Test
+    public void testSubscribe_HistoricalFormatFromMessageOrConnection() throws Exception {
+        klineWebSocketHandler.handleTextMessage(session,
+                new TextMessage("{\"type\":\"subscribe\",\"symbol\":\"BTCUSDT\",\"timeFrame\":\"5m\",\"format\":\"binary\"}"));
+        verify(broadcastEngine).send(eq(session), any(BinaryMessage.class));
+
+        // 訂閱訊息沒有指定格式時沿用連線參數
+        when(session.getUri()).thenReturn(URI.create("ws://localhost/ws/kline?symbol=BTCUSDT&timeFrame=1m&format=columnar"));
+        klineWebSocketHandler.handleTextMessage(session,
+                new TextMessage("{\"type\":\"subscribe\",\"symbol\":\"BTCUSDT\",\"timeFrame\":\"1h\"}"));
+        verify(klineEncoder).encodeColumnar(any(), eq("BTCUSDT"), eq("1h"));
+
+        // 不支援的格式回傳錯誤，不加入頻道
+        klineWebSocketHandler.handleTextMessage(session,
+                new TextMessage("{\"type\":\"subscribe\",\"symbol\":\"BTCUSDT\",\"timeFrame\":\"1d\",\"format\":\"xml\"}"));
+        verify(broadcastEngine, never()).subscribe(eq("kline:BTCUSDT:1d"), any());
+    }
+
+    @Test
+    public void testSubscribe_RejectsUnknownSymbol() throws Exception {
+        klineWebSocketHandler.handleTextMessage(session,
+                new TextMessage("{\"type\":\"subscribe\",\"symbol\":\"XXXUSDT\",\"timeFrame\":\"1m\"}"));
+
+        verify(broadcastEngine, never()).subscribe(anyString(), any());
+        verify(klineCache, never()).getBefore(anyString(), any(), any(), anyInt());
+        assertEquals(0, klineWebSocketHandler.getTrackedSymbolCount());
+    }
+
+    @Test
+    public void testUnsubscribe_PrunesSymbolWithoutSubscribers() throws Exception {
+        klineWebSocketHandler.afterConnectionEstablished(session);
+        assertEquals(1, klineWebSocketHandler.getTrackedSymbolCount());
+
+        when(broadcastEngine.hasSubscribers("kline:BTCUSDT:1m")).thenReturn(false);
+        klineWebSocketHandler.handleTextMessage(session,
+                new TextMessage("{\"type\":\"unsubscribe\",\"symbol\":\"BTCUSDT\",\"timeFrame\":\"1m\"}"));
+
+        assertEquals(0, klineWebSocketHandler.getTrackedSymbolCount());
+        klineWebSocketHandler.broadcastKlineUpdate("BTCUSDT", new BigDecimal("50000"), Instant.now());
+        verify(broadcastEngine, never()).broadcast(anyString(), any());
+    }
+}
@@ -0,0 +1,109 @@
+package com.exchange.websocket;
+
+import com.exchange.model.Order;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderEntryCodecTest {
+
+    @Test
+    public void testDecodeSubmit() {
+        OrderEntryCodec.Command command = OrderEntryCodec.decode(submitFrame(7, Order.Side.BUY, Order.OrderType.LIMIT,
+                "BTCUSDT", 5_000_012_345_678L, 10_000_000L));
+
+        assertEquals(OrderEntryCodec.SUBMIT, command.getType());
+        assertEquals(7, command.getRequestId());
+        assertNull(command.getOrderId());
+        assertEquals("BTCUSDT", command.getRequest().getSymbol());
+        assertEquals(Order.Side.BUY, command.getRequest().getSide());
+        assertEquals(Order.OrderType.LIMIT, command.getRequest().getOrderType());
+        assertEquals(0, new BigDecimal("50000.12345678").compareTo(command.getRequest().getPrice()));
+        assertEquals(0, new BigDecimal("0.1").compareTo(command.getRequest().getQuantity()));
+    }
+
+    @Test
+    public void testDecodeMarketOrderWithoutPrice() {
+        OrderEntryCodec.Command command = OrderEntryCodec.decode(submitFrame(1, Order.Side.SELL, Order.OrderType.MARKET,
+                "ETHUSDT", OrderEntryCodec.NO_PRICE, 100_000_000L));
+
+        assertNull(command.getRequest().getPrice());
+        assertEquals(Order.OrderType.MARKET, command.getRequest().getOrderType());
+    }
+
+    @Test
+    public void testDecodeModifyAndCancel() {
+        ByteBuffer modify = header(OrderEntryCodec.MODIFY, 9, 8 + 1 + 1 + 7 + 24)
+                .putLong(1838029004616110080L).put((byte) Order.Side.SELL.ordinal());
+        putSymbol(modify, "BTCUSDT").putLong(OrderEntryCodec.NO_PRICE).putLong(6_000_000_000_000L).putLong(200_000_000L).flip();
+        OrderEntryCodec.Command command = OrderEntryCodec.decode(modify);
+
+        assertEquals(OrderEntryCodec.MODIFY, command.getType());
+        assertEquals("1838029004616110080", command.getOrderId());
+        assertEquals("1838029004616110080", command.getRequest().getOrderId());
+        assertNull(command.getRequest().getOldPrice());
+        assertEquals(0, new BigDecimal("60000").compareTo(command.getRequest().getPrice()));
+        assertEquals(0, new BigDecimal("2").compareTo(command.getRequest().getQuantity()));
+
+        ByteBuffer cancel = header(OrderEntryCodec.CANCEL, 10, 8 + 1 + 1 + 7 + 8)
+                .putLong(42L).put((byte) Order.Side.BUY.ordinal());
+        putSymbol(cancel, "BTCUSDT").putLong(5_000_000_000_000L).flip();
+        command = OrderEntryCodec.decode(cancel);
+
+        assertEquals(OrderEntryCodec.CANCEL, command.getType());
+        assertEquals("42", command.getOrderId());
+        assertEquals(Order.Side.BUY, command.getRequest().getSide());
+        assertEquals(0, new BigDecimal("50000").compareTo(command.getRequest().getPrice()));
+    }
+
+    @Test
+    public void testRejectsMalformedFrames() {
+        ByteBuffer truncated = submitFrame(3, Order.Side.BUY, Order.OrderType.LIMIT, "BTCUSDT", 1L, 1L);
+        truncated.limit(truncated.limit() - 1);
+        assertThrows(IllegalArgumentException.class, () -> OrderEntryCodec.decode(truncated));
+
+        ByteBuffer badSide = submitFrame(3, Order.Side.BUY, Order.OrderType.LIMIT, "BTCUSDT", 1L, 1L);
+        badSide.put(6, (byte) 9);
+        assertThrows(IllegalArgumentException.class, () -> OrderEntryCodec.decode(badSide));
+
+        ByteBuffer badType = header((byte) 99, 3, 0).flip();
+        assertThrows(IllegalArgumentException.class, () -> OrderEntryCodec.decode(badType));
+
+        // 格式錯誤時仍可取得 requestId 回覆 ACK
+        assertEquals(3, OrderEntryCodec.peekRequestId(header((byte) 99, 3, 0).flip()));
+    }
+
+    @Test
+    public void testEncodeAck() {
+        ByteBuffer ack = ByteBuffer.wrap(OrderEntryCodec.encodeAck(5, 40401, "1838029004616110080", "訂單未找到"));
+
+        assertEquals(OrderEntryCodec.VERSION, ack.get());
+        assertEquals(OrderEntryCodec.ACK, ack.get());
+        assertEquals(5, ack.getInt());
+        assertEquals(40401, ack.getInt());
+        assertEquals(1838029004616110080L, ack.getLong());
+        byte[] message = new byte[ack.getShort()];
+        ack.get(message);
+        assertEquals("訂單未找到", new String(message, StandardCharsets.UTF_8));
+        assertFalse(ack.hasRemaining());
+    }
+
+    static ByteBuffer submitFrame(int requestId, Order.Side side, Order.OrderType orderType, String symbol, long price, long quantity) {
+        ByteBuffer frame = header(OrderEntryCodec.SUBMIT, requestId, 1 + 1 + 1 + symbol.length() + 16)
+                .put((byte) side.ordinal()).put((byte) orderType.ordinal());
+        putSymbol(frame, symbol).putLong(price).putLong(quantity);
+        return frame.flip();
+    }
+
+    static ByteBuffer header(byte type, int requestId, int bodyLength) {
+        return ByteBuffer.allocate(6 + bodyLength).put(OrderEntryCodec.VERSION).put(type).putInt(requestId);
+    }
+
+    static ByteBuffer putSymbol(ByteBuffer frame, String symbol) {
+        return frame.put((byte) symbol.length()).put(symbol.getBytes(StandardCharsets.US_ASCII));
+    }
+}
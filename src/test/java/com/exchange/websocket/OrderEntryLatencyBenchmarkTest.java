@@ -0,0 +1,181 @@
+package com.exchange.websocket;
+
+import com.exchange.config.JwtAuthenticationFilter;
+import com.exchange.config.SecurityConfig;
+import com.exchange.config.WebSocketConfig;
+import com.exchange.controller.OrderController;
+import com.exchange.model.Order;
+import com.exchange.producer.OrderBookDeltaProducer;
+import com.exchange.producer.OrderProducer;
+import com.exchange.service.IdempotencyCache;
+import com.exchange.service.OrderModifyService;
+import com.exchange.service.OrderService;
+import com.exchange.service.OrderWriteBehind;
+import com.exchange.service.UserOrderService;
+import com.exchange.utils.JwtUtil;
+import com.exchange.utils.SnowflakeIdGenerator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringBootConfiguration;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisAutoConfiguration;
+import org.springframework.boot.autoconfigure.data.redis.RedisRepositoriesAutoConfiguration;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceAutoConfiguration;
+import org.springframework.boot.autoconfigure.kafka.KafkaAutoConfiguration;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.handler.AbstractWebSocketHandler;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * 單筆下單的往返延遲：REST（POST /orders/submit?ack=true，每次經過 JwtAuthenticationFilter 與 JSON 綁定）
+ * 與 /ws 二進位下單（連線時驗證一次）。兩者都在同一個內嵌 Tomcat 上經過 loopback，
+ * Kafka 發送以立即完成的 future 代替，因此量到的是接入層（HTTP/WS、驗證、編解碼、Spring 分派）的差異。
+ * 預設不執行，使用 mvn test -Pbenchmark 執行。
+ */
+@Tag("benchmark")
+@SpringBootTest(classes = OrderEntryLatencyBenchmarkTest.LatencyApp.class,
+        webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT,
+        properties = {
+                "jwt.secret=UZ9+ZK8sCh/iR5qnbNBq9Kt5dSQdUd24jggr0zzTiE4=",
+                "jwt.expiration=3600000"
+        })
+public class OrderEntryLatencyBenchmarkTest {
+
+    private static final int WARMUP = 5_000;
+    private static final int ORDERS = 20_000;
+
+    @SpringBootConfiguration
+    @EnableAutoConfiguration(exclude = {DataSourceAutoConfiguration.class, HibernateJpaAutoConfiguration.class,
+            RedisAutoConfiguration.class, RedisRepositoriesAutoConfiguration.class, KafkaAutoConfiguration.class})
+    @Import({OrderController.class, OrderService.class, IdempotencyCache.class, JwtUtil.class, JwtAuthenticationFilter.class,
+            SecurityConfig.class, WebSocketConfig.class, UserOrderWebSocketHandler.class})
+    static class LatencyApp {
+        @Bean
+        SnowflakeIdGenerator snowflakeIdGenerator() {
+            return new SnowflakeIdGenerator(1, 1);
+        }
+    }
+
+    @MockBean
+    private OrderProducer orderProducer;
+    @MockBean
+    private OrderModifyService orderModifyService;
+    @MockBean
+    private OrderWriteBehind orderWriteBehind;
+    @MockBean
+    private OrderBookDeltaProducer orderBookDeltaProducer;
+    @MockBean
+    private UserOrderService userOrderService;
+    @MockBean
+    private OrderbookWebSocketHandler orderbookWebSocketHandler;
+    @MockBean
+    private RecentTradesWebSocketHandler recentTradesWebSocketHandler;
+    @MockBean
+    private KlineWebSocketHandler klineWebSocketHandler;
+
+    @Autowired
+    private JwtUtil jwtUtil;
+
+    @LocalServerPort
+    private int port;
+
+    private String token;
+
+    @BeforeEach
+    public void setup() {
+        when(orderProducer.sendNewOrderAcked(any(Order.class))).thenReturn(CompletableFuture.completedFuture(null));
+        token = jwtUtil.generateToken("1838029004616110080", "bench");
+    }
+
+    @Test
+    public void testRoundTripLatency() throws Exception {
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        HttpRequest rest = HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/orders/submit?ack=true"))
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + token)
+                .POST(HttpRequest.BodyPublishers.ofString(
+                        "{\"symbol\":\"BTCUSDT\",\"side\":\"BUY\",\"orderType\":\"LIMIT\",\"price\":50000,\"quantity\":0.1}"))
+                .build();
+        long[] restNanos = measure(() -> {
+            HttpResponse<String> response = http.send(rest, HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, response.statusCode(), response.body());
+        });
+
+        BlockingQueue<ByteBuffer> acks = new LinkedBlockingQueue<>();
+        // 快照與訂單更新為文字 frame，ACK 為二進位 frame
+        WebSocketSession session = new StandardWebSocketClient().execute(new AbstractWebSocketHandler() {
+            @Override
+            protected void handleBinaryMessage(WebSocketSession session, BinaryMessage message) {
+                acks.add(message.getPayload());
+            }
+        }, "ws://localhost:" + port + "/ws?token=" + token).get(10, TimeUnit.SECONDS);
+        int[] requestId = {0};
+        long[] wsNanos = measure(() -> {
+            int id = ++requestId[0];
+            session.sendMessage(new BinaryMessage(OrderEntryCodecTest.submitFrame(id, Order.Side.BUY, Order.OrderType.LIMIT,
+                    "BTCUSDT", 5_000_000_000_000L, 10_000_000L)));
+            ByteBuffer ack = acks.poll(5, TimeUnit.SECONDS);
+            assertNotNull(ack);
+            assertEquals(id, ack.getInt(2));
+            assertEquals(OrderEntryCodec.OK, ack.getInt(6));
+        });
+        session.close();
+
+        report("REST /orders/submit?ack=true", restNanos);
+        report("WS binary SUBMIT", wsNanos);
+        assertTrue(percentile(wsNanos, 50) < percentile(restNanos, 50));
+    }
+
+    private interface Call {
+        void run() throws Exception;
+    }
+
+    // 依序送出（同一時間只有一筆在途），回傳正式量測的每筆往返時間
+    private long[] measure(Call call) throws Exception {
+        for (int i = 0; i < WARMUP; i++) {
+            call.run();
+        }
+        long[] nanos = new long[ORDERS];
+        for (int i = 0; i < ORDERS; i++) {
+            long start = System.nanoTime();
+            call.run();
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos;
+    }
+
+    private void report(String name, long[] sorted) {
+        System.out.printf("%-30s p50 %6.1f us, p90 %6.1f us, p99 %6.1f us, p99.9 %7.1f us%n", name,
+                percentile(sorted, 50) / 1e3, percentile(sorted, 90) / 1e3,
+                percentile(sorted, 99) / 1e3, percentile(sorted, 99.9) / 1e3);
+    }
+
+    private long percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) Math.ceil(percentile / 100 * sorted.length) - 1)];
+    }
+}
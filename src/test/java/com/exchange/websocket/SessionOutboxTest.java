@@ -0,0 +1,85 @@
+package com.exchange.websocket;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+public class SessionOutboxTest {
+
+    private WebSocketSession session;
+    private List<Runnable> tasks;
+    private SessionOutbox outbox;
+
+    @BeforeEach
+    public void setup() {
+        session = mock(WebSocketSession.class);
+        when(session.isOpen()).thenReturn(true);
+        when(session.getId()).thenReturn("s1");
+        // 先收集發送工作，模擬發送執行緒跟不上的情況
+        tasks = new ArrayList<>();
+        outbox = new SessionOutbox(session, tasks::add, 2);
+    }
+
+    @Test
+    public void testOffer_SendsInOrderOnExecutor() throws Exception {
+        assertTrue(outbox.offer(new TextMessage("a")));
+        assertTrue(outbox.offer(new TextMessage("b")));
+
+        // 同一時間只排程一個發送工作，呼叫端不會直接寫入 session
+        assertEquals(1, tasks.size());
+        verify(session, never()).sendMessage(any());
+
+        tasks.remove(0).run();
+        assertEquals(List.of("a", "b"), sentPayloads());
+        assertEquals(0, outbox.getQueueDepth());
+        assertEquals(2, outbox.getSentMessages());
+    }
+
+    @Test
+    public void testOfferOrReset_CollapsesFullQueueToSnapshot() throws Exception {
+        outbox.offer(new TextMessage("a"));
+        outbox.offer(new TextMessage("b"));
+        assertFalse(outbox.offer(new TextMessage("c")));
+        assertEquals(2, outbox.getQueueDepth());
+
+        // 佇列已滿：丟棄排隊中的訊息，改送快照，之後的訊息接在快照後面
+        outbox.offerOrReset(new TextMessage("d"), () -> new TextMessage("snapshot"));
+        outbox.offer(new TextMessage("e"));
+        // c、d 放不進佇列，a、b 在重置時被丟棄
+        assertEquals(4, outbox.getDroppedMessages());
+        assertEquals(1, outbox.getResets());
+
+        tasks.remove(0).run();
+        assertEquals(List.of("snapshot", "e"), sentPayloads());
+    }
+
+    @Test
+    public void testDrain_StopsWhenSessionClosed() throws Exception {
+        when(session.isOpen()).thenReturn(false);
+        outbox.offer(new TextMessage("a"));
+
+        tasks.remove(0).run();
+        verify(session, never()).sendMessage(any());
+        assertTrue(tasks.isEmpty());
+    }
+
+    private List<String> sentPayloads() throws Exception {
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<WebSocketMessage<?>> captor = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(session, atLeastOnce()).sendMessage(captor.capture());
+        List<String> payloads = new ArrayList<>();
+        for (WebSocketMessage<?> message : captor.getAllValues()) {
+            payloads.add((String) message.getPayload());
+        }
+        return payloads;
+    }
+}
@@ -0,0 +1,191 @@
+package com.exchange.websocket;
+
+import com.exchange.dto.OrderRequest;
+import com.exchange.model.Order;
+import com.exchange.producer.OrderProducer;
+import com.exchange.service.OrderModifyService;
+import com.exchange.service.OrderService;
+import com.exchange.service.UserOrderService;
+import com.exchange.utils.ApiResponse;
+import com.exchange.utils.SnowflakeIdGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.kafka.support.SendResult;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+public class UserOrderWebSocketHandlerTest {
+
+    private OrderProducer orderProducer;
+    private OrderModifyService orderModifyService;
+    private UserOrderWebSocketHandler handler;
+    private WebSocketSession session;
+
+    @BeforeEach
+    public void setup() throws Exception {
+        orderProducer = mock(OrderProducer.class);
+        orderModifyService = mock(OrderModifyService.class);
+        UserOrderService userOrderService = mock(UserOrderService.class);
+        when(userOrderService.getUserOrders("u1")).thenReturn(List.of());
+        handler = new UserOrderWebSocketHandler(userOrderService, new ObjectMapper(), new OrderService(orderProducer),
+                orderModifyService, new SnowflakeIdGenerator(1, 1));
+
+        Map<String, Object> attributes = new HashMap<>();
+        attributes.put("userId", "u1");
+        session = mock(WebSocketSession.class);
+        when(session.getAttributes()).thenReturn(attributes);
+        when(session.getId()).thenReturn("s1");
+        when(session.isOpen()).thenReturn(true);
+        handler.afterConnectionEstablished(session);
+    }
+
+    @Test
+    public void testSubmit_AcksAfterBrokerConfirms() throws Exception {
+        CompletableFuture<SendResult<String, String>> sent = new CompletableFuture<>();
+        when(orderProducer.sendNewOrderAcked(any(Order.class))).thenReturn(sent);
+
+        handler.handleMessage(session, new BinaryMessage(OrderEntryCodecTest.submitFrame(11, Order.Side.BUY,
+                Order.OrderType.LIMIT, "BTCUSDT", 5_000_000_000_000L, 10_000_000L)));
+
+        ArgumentCaptor<Order> order = ArgumentCaptor.forClass(Order.class);
+        verify(orderProducer).sendNewOrderAcked(order.capture());
+        assertEquals("u1", order.getValue().getUserId());
+        assertEquals("BTCUSDT", order.getValue().getSymbol());
+        assertEquals(Order.OrderStatus.PENDING, order.getValue().getStatus());
+        // broker 確認前不回覆
+        assertTrue(binaryAcks().isEmpty());
+
+        sent.complete(null);
+        ByteBuffer ack = binaryAcks().get(0);
+        assertEquals(11, ack.getInt(2));
+        assertEquals(OrderEntryCodec.OK, ack.getInt(6));
+        assertEquals(Long.parseLong(order.getValue().getId()), ack.getLong(10));
+    }
+
+    @Test
+    public void testSubmit_ValidationFailureAcksImmediately() throws Exception {
+        handler.handleMessage(session, new BinaryMessage(OrderEntryCodecTest.submitFrame(12, Order.Side.SELL,
+                Order.OrderType.MARKET, "BTCUSDT", 5_000_000_000_000L, 10_000_000L)));
+
+        verify(orderProducer, never()).sendNewOrderAcked(any());
+        ByteBuffer ack = binaryAcks().get(0);
+        assertEquals(12, ack.getInt(2));
+        assertEquals(40001, ack.getInt(6));
+    }
+
+    @Test
+    public void testSubmit_BrokerFailureAcksWithError() throws Exception {
+        when(orderProducer.sendNewOrderAcked(any(Order.class))).thenReturn(CompletableFuture.failedFuture(new RuntimeException("down")));
+
+        handler.handleMessage(session, new BinaryMessage(OrderEntryCodecTest.submitFrame(13, Order.Side.BUY,
+                Order.OrderType.LIMIT, "BTCUSDT", 5_000_000_000_000L, 10_000_000L)));
+
+        assertEquals(50001, binaryAcks().get(0).getInt(6));
+    }
+
+    @Test
+    public void testCancel_UsesModifyServiceAndMapsErrorCode() throws Exception {
+        when(orderModifyService.cancelOrder(eq("u1"), eq("42"), any(OrderRequest.class)))
+                .thenReturn(ResponseEntity.badRequest().body(new ApiResponse<>("訂單未找到", "40401")));
+        ByteBuffer cancel = OrderEntryCodecTest.header(OrderEntryCodec.CANCEL, 14, 8 + 1 + 1 + 7 + 8)
+                .putLong(42L).put((byte) Order.Side.BUY.ordinal());
+        OrderEntryCodecTest.putSymbol(cancel, "BTCUSDT").putLong(OrderEntryCodec.NO_PRICE).flip();
+
+        handler.handleMessage(session, new BinaryMessage(cancel));
+
+        ArgumentCaptor<OrderRequest> request = ArgumentCaptor.forClass(OrderRequest.class);
+        verify(orderModifyService).cancelOrder(eq("u1"), eq("42"), request.capture());
+        assertEquals("BTCUSDT", request.getValue().getSymbol());
+        assertNull(request.getValue().getPrice());
+        ByteBuffer ack = binaryAcks().get(0);
+        assertEquals(14, ack.getInt(2));
+        assertEquals(40401, ack.getInt(6));
+        assertEquals(42L, ack.getLong(10));
+    }
+
+    @Test
+    public void testModify_SuccessAcksOk() throws Exception {
+        when(orderModifyService.modifyOrder(eq("u1"), eq("42"), any(OrderRequest.class)))
+                .thenReturn(ResponseEntity.status(HttpStatus.OK).body(new ApiResponse<>("訂單修改成功", new Order())));
+        ByteBuffer modify = OrderEntryCodecTest.header(OrderEntryCodec.MODIFY, 15, 8 + 1 + 1 + 7 + 24)
+                .putLong(42L).put((byte) Order.Side.BUY.ordinal());
+        OrderEntryCodecTest.putSymbol(modify, "BTCUSDT").putLong(OrderEntryCodec.NO_PRICE)
+                .putLong(5_000_000_000_000L).putLong(10_000_000L).flip();
+
+        handler.handleMessage(session, new BinaryMessage(modify));
+
+        assertEquals(OrderEntryCodec.OK, binaryAcks().get(0).getInt(6));
+    }
+
+    @Test
+    public void testMalformedFrame_AcksWithRequestId() throws Exception {
+        handler.handleMessage(session, new BinaryMessage(OrderEntryCodecTest.header((byte) 99, 16, 0).flip()));
+
+        ByteBuffer ack = binaryAcks().get(0);
+        assertEquals(16, ack.getInt(2));
+        assertEquals(40001, ack.getInt(6));
+    }
+
+    @Test
+    public void testCommandsRejectedAfterTokenExpires() throws Exception {
+        session.getAttributes().put(UserOrderWebSocketHandler.TOKEN_EXPIRES_AT_ATTRIBUTE, System.currentTimeMillis() - 1);
+
+        handler.handleMessage(session, new BinaryMessage(OrderEntryCodecTest.submitFrame(17, Order.Side.BUY,
+                Order.OrderType.LIMIT, "BTCUSDT", 5_000_000_000_000L, 10_000_000L)));
+
+        verify(orderProducer, never()).sendNewOrderAcked(any());
+        ByteBuffer ack = binaryAcks().get(0);
+        assertEquals(17, ack.getInt(2));
+        assertEquals(UserOrderWebSocketHandler.TOKEN_EXPIRED, ack.getInt(6));
+        verify(session).close(any(CloseStatus.class));
+    }
+
+    @Test
+    public void testCommandsAcceptedBeforeTokenExpires() throws Exception {
+        session.getAttributes().put(UserOrderWebSocketHandler.TOKEN_EXPIRES_AT_ATTRIBUTE, System.currentTimeMillis() + 60_000);
+        when(orderProducer.sendNewOrderAcked(any(Order.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+        handler.handleMessage(session, new BinaryMessage(OrderEntryCodecTest.submitFrame(18, Order.Side.BUY,
+                Order.OrderType.LIMIT, "BTCUSDT", 5_000_000_000_000L, 10_000_000L)));
+
+        assertEquals(OrderEntryCodec.OK, binaryAcks().get(0).getInt(6));
+        verify(session, never()).close(any(CloseStatus.class));
+    }
+
+    @Test
+    public void testNotificationsShareTheConnection() throws Exception {
+        handler.sendOrderNotification("u1", "ORDER_UPDATED", new com.exchange.dto.OrderDTO());
+
+        ArgumentCaptor<WebSocketMessage<?>> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(session, times(2)).sendMessage(sent.capture());
+        // 快照與更新都是文字 frame
+        assertTrue(sent.getAllValues().stream().allMatch(message -> message instanceof TextMessage));
+    }
+
+    private List<ByteBuffer> binaryAcks() throws Exception {
+        ArgumentCaptor<WebSocketMessage<?>> sent = ArgumentCaptor.forClass(WebSocketMessage.class);
+        verify(session, atLeast(0)).sendMessage(sent.capture());
+        return sent.getAllValues().stream()
+                .filter(message -> message instanceof BinaryMessage)
+                .map(message -> ((BinaryMessage) message).getPayload().duplicate())
+                .toList();
+    }
+}